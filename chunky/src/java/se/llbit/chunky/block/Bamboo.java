@@ -1,5 +1,6 @@
 package se.llbit.chunky.block;
 
+import se.llbit.chunky.model.BakedQuadModel;
 import se.llbit.chunky.model.BambooModel;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.resources.Texture;
@@ -20,4 +21,9 @@ public class Bamboo extends MinecraftBlockTranslucent {
     public boolean intersect(Ray ray, Scene scene) {
         return BambooModel.intersect(ray, this.age, this.leaves);
     }
+
+    @Override
+    public BakedQuadModel bake() {
+        return BambooModel.bake(this.age, this.leaves);
+    }
 }
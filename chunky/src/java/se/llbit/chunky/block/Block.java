@@ -1,6 +1,8 @@
 package se.llbit.chunky.block;
 
 import se.llbit.chunky.entity.Entity;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.model.BakedQuadModel;
 import se.llbit.chunky.model.TexturedBlockModel;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.resources.Texture;
@@ -28,6 +30,12 @@ public abstract class Block extends Material {
    */
   public boolean invisible = false;
 
+  /**
+   * The baked model of this block, or <code>null</code> if the block is intersected with
+   * {@link #intersect(Ray, Scene)}. This is set by {@link BlockPalette#bakeModels()}.
+   */
+  public BakedQuadModel bakedModel = null;
+
   public Block(String name, Texture texture) {
     super(name, texture);
   }
@@ -45,6 +53,20 @@ public abstract class Block extends Material {
     return TexturedBlockModel.intersect(ray, texture);
   }
 
+  /**
+   * Compile the model of this block into a flat list of textured quads. Blocks whose model
+   * consists only of alpha-tested textured quads can override this so that the octree can
+   * intersect them with {@link BakedQuadModel#intersect(Ray)} instead of calling
+   * {@link #intersect(Ray, Scene)}. The baked model must give the same result as
+   * {@link #intersect(Ray, Scene)}. The baked model is not used for subclasses that override
+   * the intersection method of a baked block without also overriding this method.
+   *
+   * @return the baked model, or <code>null</code> if this block can not be baked (default)
+   */
+  public BakedQuadModel bake() {
+    return null;
+  }
+
   @Override
   public JsonValue toJson() {
     return new JsonString(name);
@@ -1,5 +1,6 @@
 package se.llbit.chunky.block;
 
+import se.llbit.chunky.model.BakedQuadModel;
 import se.llbit.chunky.model.CropsModel;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.resources.Texture;
@@ -23,6 +24,10 @@ public class Carrots extends MinecraftBlockTranslucent {
     return CropsModel.intersect(ray, texture[age]);
   }
 
+  @Override public BakedQuadModel bake() {
+    return CropsModel.bake(texture[age]);
+  }
+
   @Override public String description() {
     return "age=" + age;
   }
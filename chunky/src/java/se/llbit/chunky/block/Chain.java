@@ -1,5 +1,6 @@
 package se.llbit.chunky.block;
 
+import se.llbit.chunky.model.BakedQuadModel;
 import se.llbit.chunky.model.ChainModel;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.resources.Texture;
@@ -19,4 +20,9 @@ public class Chain extends MinecraftBlockTranslucent {
   public boolean intersect(Ray ray, Scene scene) {
     return ChainModel.intersect(ray, axis);
   }
+
+  @Override
+  public BakedQuadModel bake() {
+    return ChainModel.bake(axis);
+  }
 }
@@ -1,5 +1,6 @@
 package se.llbit.chunky.block;
 
+import se.llbit.chunky.model.BakedQuadModel;
 import se.llbit.chunky.model.LanternModel;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.resources.Texture;
@@ -19,6 +20,11 @@ public class Lantern extends MinecraftBlockTranslucent {
         return LanternModel.intersect(ray, this.hanging, this.texture);
     }
 
+    @Override
+    public BakedQuadModel bake() {
+        return LanternModel.bake(this.hanging, this.texture);
+    }
+
     @Override
     public String description() {
         return "hanging=" + hanging;
@@ -1,5 +1,6 @@
 package se.llbit.chunky.block;
 
+import se.llbit.chunky.model.BakedQuadModel;
 import se.llbit.chunky.model.SpriteModel;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.resources.Texture;
@@ -28,6 +29,14 @@ public class SpriteBlock extends MinecraftBlockTranslucent {
     return SpriteModel.intersect(ray, texture);
   }
 
+  @Override
+  public BakedQuadModel bake() {
+    if (facing != null) {
+      return SpriteModel.bake(texture, facing);
+    }
+    return SpriteModel.bake(texture);
+  }
+
   @Override
   public String description() {
     if (facing != null) {
@@ -18,7 +18,9 @@ package se.llbit.chunky.chunk;
 
 import se.llbit.chunky.block.*;
 import se.llbit.chunky.plugin.PluginApi;
+import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.math.Octree;
+import se.llbit.math.Ray;
 import se.llbit.nbt.CompoundTag;
 import se.llbit.nbt.IntTag;
 import se.llbit.nbt.StringTag;
@@ -230,6 +232,33 @@ public class BlockPalette {
     palette.forEach(this::applyMaterial);
   }
 
+  /**
+   * Bake the models of all blocks in this palette that support it (see {@link Block#bake()}).
+   * This should be called after the palette is complete, before rendering.
+   */
+  public void bakeModels() {
+    for (Block block : palette) {
+      block.bakedModel = canBake(block) ? block.bake() : null;
+    }
+  }
+
+  /**
+   * A baked model is only used if {@link Block#bake()} is declared in the same class as
+   * {@link Block#intersect(Ray, Scene)}, or in a subclass of it. A subclass (for example from a
+   * plugin) that overrides the intersection method of a baked block without also overriding
+   * {@code bake()} is intersected with its own intersection method.
+   */
+  public static boolean canBake(Block block) {
+    try {
+      Class<?> intersectClass =
+          block.getClass().getMethod("intersect", Ray.class, Scene.class).getDeclaringClass();
+      Class<?> bakeClass = block.getClass().getMethod("bake").getDeclaringClass();
+      return intersectClass.isAssignableFrom(bakeClass);
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
   /** @return Default material properties. */
   public static Map<String, Consumer<Block>> getDefaultMaterialProperties() {
     Map<String, Consumer<Block>> materialProperties = new HashMap<>();
@@ -1,5 +1,6 @@
 package se.llbit.chunky.entity;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import se.llbit.chunky.model.Model;
@@ -295,6 +296,11 @@ public class Campfire extends Entity {
     return faces;
   }
 
+  @Override
+  public Object getInstanceKey() {
+    return Arrays.asList("campfire", kind, facing, isLit);
+  }
+
   @Override
   public JsonValue toJson() {
     JsonObject json = new JsonObject();
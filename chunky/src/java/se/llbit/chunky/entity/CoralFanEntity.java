@@ -30,6 +30,7 @@ import se.llbit.math.Vector3;
 import se.llbit.math.Vector4;
 import se.llbit.math.primitive.Primitive;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 
@@ -99,6 +100,10 @@ public class CoralFanEntity extends Entity {
     return faces;
   }
 
+  @Override public Object getInstanceKey() {
+    return Arrays.asList("coral_fan", coralType);
+  }
+
   @Override public JsonValue toJson() {
     JsonObject json = new JsonObject();
     json.add("kind", "coral_fan");
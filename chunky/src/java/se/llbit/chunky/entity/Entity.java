@@ -43,6 +43,18 @@ abstract public class Entity {
 
   abstract public Collection<Primitive> primitives(Vector3 offset);
 
+  /**
+   * Entities with equal instance keys must have the same geometry and materials
+   * relative to their position. Such entities may share a single copy of their
+   * primitives in the entity BVH.
+   *
+   * @return a key identifying the geometry of this entity, or {@code null} if
+   * the geometry should not be shared with other entities
+   */
+  public Object getInstanceKey() {
+    return null;
+  }
+
   public Grid.EmitterPosition[] getEmitterPosition() { return new Grid.EmitterPosition[0]; }
 
   /**
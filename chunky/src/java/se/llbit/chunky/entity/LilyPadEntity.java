@@ -26,6 +26,7 @@ import se.llbit.math.primitive.Primitive;
 import se.llbit.math.primitive.TexturedTriangle;
 import se.llbit.util.MinecraftPRNG;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 
@@ -78,6 +79,10 @@ public class LilyPadEntity extends Entity {
     return primitives;
   }
 
+  @Override public Object getInstanceKey() {
+    return Arrays.asList("lily_pad", rotation);
+  }
+
   @Override public JsonValue toJson() {
     JsonObject json = new JsonObject();
     json.add("kind", "lily_pad");
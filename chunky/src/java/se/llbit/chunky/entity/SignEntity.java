@@ -34,6 +34,7 @@ import se.llbit.nbt.Tag;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -269,6 +270,10 @@ public class SignEntity extends Entity {
     return primitives;
   }
 
+  @Override public Object getInstanceKey() {
+    return Arrays.asList("sign", angle, material, textToJson(text).toCompactString());
+  }
+
   @Override public JsonValue toJson() {
     JsonObject json = new JsonObject();
     json.add("kind", "sign");
@@ -24,6 +24,11 @@ public class SporeBlossom extends Entity {
     return SporeBlossomModel.primitives(Transform.NONE.translate(position).translate(offset));
   }
 
+  @Override
+  public Object getInstanceKey() {
+    return "sporeBlossom";
+  }
+
   @Override
   public JsonValue toJson() {
     JsonObject json = new JsonObject();
@@ -31,6 +31,7 @@ import se.llbit.math.Vector3;
 import se.llbit.math.Vector4;
 import se.llbit.math.primitive.Primitive;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 
@@ -96,6 +97,10 @@ public class WallCoralFanEntity extends Entity {
     return faces;
   }
 
+  @Override public Object getInstanceKey() {
+    return Arrays.asList("wall_coral_fan", coralType, facing);
+  }
+
   @Override public JsonValue toJson() {
     JsonObject json = new JsonObject();
     json.add("kind", "wall_coral_fan");
@@ -17,6 +17,7 @@
  */
 package se.llbit.chunky.entity;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 
@@ -118,6 +119,10 @@ public class WallSignEntity extends Entity {
     return primitives;
   }
 
+  @Override public Object getInstanceKey() {
+    return Arrays.asList("wallsign", orientation, material, textToJson(text).toCompactString());
+  }
+
   @Override public JsonValue toJson() {
     JsonObject json = new JsonObject();
     json.add("kind", "wallsign");
@@ -28,6 +28,11 @@ import se.llbit.chunky.plugin.ChunkyPlugin;
 import se.llbit.chunky.plugin.TabTransformer;
 import se.llbit.chunky.renderer.*;
 import se.llbit.chunky.renderer.RenderManager;
+import se.llbit.chunky.renderer.batch.BatchJob;
+import se.llbit.chunky.renderer.batch.BatchRenderer;
+import se.llbit.chunky.renderer.batch.SequenceRenderer;
+import se.llbit.chunky.renderer.distributed.RenderCoordinator;
+import se.llbit.chunky.renderer.distributed.RenderNode;
 import se.llbit.chunky.renderer.export.PictureExportFormat;
 import se.llbit.chunky.renderer.scene.AsynchronousSceneManager;
 import se.llbit.chunky.renderer.scene.Scene;
@@ -46,6 +51,7 @@ import se.llbit.log.Level;
 import se.llbit.log.Log;
 import se.llbit.log.Receiver;
 import se.llbit.util.TaskTracker;
+import se.llbit.util.ThreadBudget;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -53,6 +59,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ForkJoinPool;
 
@@ -88,6 +95,7 @@ public class Chunky {
   private TabTransformer mainTabTransformer = tabs -> tabs;
   private boolean headless = false;
 
+  private static ThreadBudget threadBudget;
   private static ForkJoinPool commonThreads;
 
   /**
@@ -129,20 +137,37 @@ public class Chunky {
           }
         });
     sceneManager.setTaskTracker(taskTracker);
+    // The time budget starts before the scene is loaded, to include the loading time.
+    RenderBudget budget = options.timeBudget > 0
+        ? new RenderBudget(options, options.timeBudget)
+        : null;
+    SnapshotWriter snapshotWriter = new SnapshotWriter(taskTracker);
     renderManager.setSnapshotControl(SnapshotControl.DEFAULT);
     renderManager.setOnFrameCompleted((scene, spp) -> {
-      if (renderManager.getSnapshotControl().saveSnapshot(scene, spp)) {
-        scene.saveSnapshot(new File(getRenderContext().getSceneDirectory(), "snapshots"),
-            taskTracker, getRenderContext().numRenderThreads());
+      // Size the next pass, or stop the render in time to save the last frame.
+      boolean stop = budget != null && !budget.passCompleted(scene);
+      long saveStart = System.currentTimeMillis();
+      boolean saved = false;
+      if (stop || renderManager.getSnapshotControl().saveSnapshot(scene, spp)) {
+        snapshotWriter.save(scene, new File(getRenderContext().getSceneDirectory(), "snapshots"));
+        saved = true;
       }
 
-      if (renderManager.getSnapshotControl().saveRenderDump(scene, spp)) {
+      if (stop || renderManager.getSnapshotControl().saveRenderDump(scene, spp)) {
         // Save the scene description and current render dump.
         try {
           sceneManager.saveScene();
         } catch (InterruptedException e) {
           throw new Error(e);
         }
+        saved = true;
+      }
+      if (budget != null && saved) {
+        budget.saveCompleted(
+            System.currentTimeMillis() - saveStart + snapshotWriter.writeTime());
+      }
+      if (stop) {
+        renderManager.stopRender();
       }
     });
     renderManager.setRenderTask(taskTracker.backgroundTask());
@@ -170,9 +195,13 @@ public class Chunky {
         }
       }
       sceneManager.getScene().startHeadlessRender();
+      if (budget != null) {
+        budget.start(sceneManager.getScene());
+      }
 
       renderManager.start();
       renderManager.join();
+      snapshotWriter.awaitIdle();
       return 0;
     } catch (FileNotFoundException e) {
       System.err.format("Scene \"%s\" not found!%n", options.sceneName);
@@ -206,10 +235,12 @@ public class Chunky {
     if (cmdline.mode == CommandLineOptions.Mode.NOTHING) {
       exitCode = cmdline.exitCode;
     } else {
-      commonThreads = new ForkJoinPool(PersistentSettings.getNumThreads());
+      // The render workers and the common thread pool share one thread budget.
+      threadBudget = new ThreadBudget(cmdline.options.renderThreads);
+      commonThreads = new ForkJoinPool(threadBudget.threads());
 
       Chunky chunky = new Chunky(cmdline.options);
-      chunky.headless = cmdline.mode == Mode.HEADLESS_RENDER || cmdline.mode == Mode.SNAPSHOT;
+      chunky.headless = cmdline.mode != Mode.DEFAULT;
       chunky.loadPlugins();
 
       try {
@@ -220,6 +251,18 @@ public class Chunky {
           case SNAPSHOT:
             exitCode = chunky.doSnapshot();
             break;
+          case COORDINATOR:
+            exitCode = chunky.doCoordinator();
+            break;
+          case RENDER_NODE:
+            exitCode = chunky.doRenderNode();
+            break;
+          case BATCH_RENDER:
+            exitCode = chunky.doBatchRender();
+            break;
+          case SEQUENCE_RENDER:
+            exitCode = chunky.doSequenceRender();
+            break;
           case DEFAULT:
             ChunkyFx.startChunkyUI(chunky);
             break;
@@ -324,14 +367,140 @@ public class Chunky {
     }
   }
 
+  /**
+   * Render a scene on render nodes connecting over TCP.
+   *
+   * @return error code
+   */
+  private int doCoordinator() {
+    System.setProperty("java.awt.headless", "true");
+    Log.setReceiver(HEADLESS_LOG_RECEIVER, Level.INFO, Level.WARNING, Level.ERROR);
+    File file = options.getSceneDescriptionFile();
+    try (FileInputStream in = new FileInputStream(file)) {
+      Scene scene = new Scene();
+      scene.loadDescription(in);
+      if (options.target != -1) {
+        scene.setTargetSpp(options.target);
+      }
+      // Post process snapshots with the render filter rather than the preview filter.
+      scene.startHeadlessRender();
+      RenderContext context = new RenderContext(this);
+      context.setSceneDirectory(file.getParentFile());
+      TaskTracker taskTracker = new TaskTracker(new ConsoleProgressListener());
+      scene.loadDump(context, taskTracker);
+      new RenderCoordinator(scene, context, options.jobSpp).render(options.port, taskTracker);
+      System.out.println("Render job finished.");
+      return 0;
+    } catch (FileNotFoundException e) {
+      System.err.format("Scene \"%s\" not found!%n", options.sceneName);
+      return 1;
+    } catch (IOException e) {
+      System.err.println("Distributed render failed: " + e.getMessage());
+      e.printStackTrace();
+      return 1;
+    } catch (InterruptedException e) {
+      System.err.println("Distributed render interrupted");
+      return 1;
+    }
+  }
+
+  /**
+   * Render jobs for a render coordinator.
+   *
+   * @return error code
+   */
+  private int doRenderNode() {
+    System.setProperty("java.awt.headless", "true");
+    Log.setReceiver(HEADLESS_LOG_RECEIVER, Level.INFO, Level.WARNING, Level.ERROR);
+    try {
+      new RenderNode(this).render(options.coordinatorHost, options.port,
+          new TaskTracker(new ConsoleProgressListener()));
+      return 0;
+    } catch (IOException e) {
+      System.err.println("Render node failed: " + e.getMessage());
+      e.printStackTrace();
+      return 1;
+    } catch (InterruptedException e) {
+      System.err.println("Render node interrupted");
+      return 1;
+    }
+  }
+
+  /**
+   * Render all jobs in a batch file.
+   *
+   * @return error code
+   */
+  private int doBatchRender() {
+    System.setProperty("java.awt.headless", "true");
+    Log.setReceiver(HEADLESS_LOG_RECEIVER, Level.INFO, Level.WARNING, Level.ERROR);
+    BatchRenderer renderer = null;
+    try {
+      List<BatchJob> jobs = BatchJob.load(options.batchFile);
+      renderer = new BatchRenderer(this);
+      int failed = renderer.render(jobs, new TaskTracker(new ConsoleProgressListener()));
+      if (failed > 0) {
+        System.err.format("%d batch images failed%n", failed);
+        return 1;
+      }
+      return 0;
+    } catch (IOException e) {
+      System.err.println("Failed to read batch file: " + e.getMessage());
+      return 1;
+    } catch (InterruptedException e) {
+      System.err.println("Batch render interrupted");
+      return 1;
+    } finally {
+      if (renderer != null) {
+        renderer.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Render the frames of an animated camera sequence.
+   *
+   * @return error code
+   */
+  private int doSequenceRender() {
+    System.setProperty("java.awt.headless", "true");
+    Log.setReceiver(HEADLESS_LOG_RECEIVER, Level.INFO, Level.WARNING, Level.ERROR);
+    SequenceRenderer renderer = new SequenceRenderer(this);
+    try {
+      renderer.render(options.sequenceFile, new TaskTracker(new ConsoleProgressListener()));
+      return 0;
+    } catch (IOException e) {
+      System.err.println("Failed to render sequence: " + e.getMessage());
+      return 1;
+    } catch (InterruptedException e) {
+      System.err.println("Sequence render interrupted");
+      return 1;
+    } finally {
+      renderer.shutdown();
+    }
+  }
+
   /**
    * Get the common thread pool. This should only be used for parallelized processing, not for wait tasks.
+   * In a background section of the thread budget this is the smaller background pool of the budget.
    */
   public static ForkJoinPool getCommonThreads() {
     if (commonThreads == null) {
-      commonThreads = new ForkJoinPool(PersistentSettings.getNumThreads());
+      commonThreads = new ForkJoinPool(getThreadBudget().threads());
+    }
+    return getThreadBudget().pool(commonThreads);
+  }
+
+  /**
+   * Get the thread budget shared by the render workers and the common thread pool.
+   * Work submitted to the common thread pool should be done in a section of the
+   * thread budget, with the priority of the work.
+   */
+  public static synchronized ThreadBudget getThreadBudget() {
+    if (threadBudget == null) {
+      threadBudget = new ThreadBudget(PersistentSettings.getNumThreads());
     }
-    return commonThreads;
+    return threadBudget;
   }
 
   public synchronized SceneManager getSceneManager() {
@@ -18,6 +18,7 @@ package se.llbit.chunky.main;
 
 import se.llbit.chunky.PersistentSettings;
 import se.llbit.chunky.renderer.RenderConstants;
+import se.llbit.chunky.renderer.distributed.RenderCoordinator;
 import se.llbit.chunky.renderer.scene.Scene;
 
 import java.io.File;
@@ -39,9 +40,27 @@ public class ChunkyOptions {
   public File worldDir = null;
   public int target = -1;
 
+  /** Wall-clock time budget for a headless render, in milliseconds. */
+  public long timeBudget = -1;
+
   public int tileWidth = RenderConstants.TILE_WIDTH_DEFAULT;
   public int sppPerPass = RenderConstants.SPP_PER_PASS_DEFAULT;
 
+  /** The port to accept render nodes on, or the port of the coordinator to render for. */
+  public int port = -1;
+
+  /** Host name of the coordinator to render for. */
+  public String coordinatorHost = null;
+
+  /** Samples per pixel in each job handed out to render nodes. */
+  public int jobSpp = RenderCoordinator.DEFAULT_JOB_SPP;
+
+  /** The job list for a batch render. */
+  public File batchFile = null;
+
+  /** The sequence file for a camera sequence render. */
+  public File sequenceFile = null;
+
   /** Ignore scene loading errors when starting a headless render. */
   public boolean force = false;
 
@@ -55,6 +55,10 @@ public class CommandLineOptions {
     NOTHING,
     HEADLESS_RENDER,
     SNAPSHOT,
+    COORDINATOR,
+    RENDER_NODE,
+    BATCH_RENDER,
+    SEQUENCE_RENDER,
   }
 
   /**
@@ -70,6 +74,9 @@ public class CommandLineOptions {
           "  -tile-width <NUM>      use the specified tile width for rendering",
           "  -spp-per-pass <NUM>    use the specified samples per pixel per pass for rendering",
           "  -target <NUM>          override target SPP to be NUM in headless mode",
+          "  -time <TIME>           stop a headless render after TIME and save it, where TIME",
+          "                         is a number of seconds, or minutes or hours with the",
+          "                         suffix m or h (e.g. 90m)",
           "  -set <NAME> <VALUE>    set a global configuration option and exit",
           "  -set <NAME> <VALUE> <SCENE>",
           "                         set a configuration option for a scene and exit",
@@ -77,8 +84,21 @@ public class CommandLineOptions {
           "  -reset <NAME> <SCENE>  reset an option for a particular scene and exit",
           "  -download-mc <VERSION> download the given Minecraft version and exit",
           "  -list-scenes           print a list of all scenes in the scene directory",
-          "  -merge-dump <SCENE> <PATH>",
-          "                         merge a render dump into the given scene",
+          "  -merge-dump <SCENE> <PATH>...",
+          "                         merge one or more render dumps into the given scene;",
+          "                         dumps with a scene description next to them are",
+          "                         checked to match the scene settings",
+          "  -coordinator <SCENE> <PORT> [SPP]",
+          "                         render the scene on render nodes connecting to PORT,",
+          "                         handing out jobs of SPP samples per pixel",
+          "  -node <HOST>:<PORT>    render jobs for the coordinator at HOST:PORT",
+          "  -batch <FILE>          render the scenes and camera presets listed in FILE",
+          "  -sequence <FILE>       render the animated camera sequence described in FILE",
+          "  -shard <SCENE> <COLUMNS> <ROWS>",
+          "                         split the frame of a scene into COLUMNS x ROWS shard",
+          "                         scenes that can be rendered separately, and exit",
+          "  -stitch <SCENE> <COLUMNS> <ROWS> [PNG]",
+          "                         combine the rendered shards of a scene into one image",
           "  -help                  show this text", "", "Notes:",
           "<SCENE> can be either the path to a Scene Description File ("
               + Scene.EXTENSION + "),",
@@ -214,6 +234,15 @@ public class CommandLineOptions {
     registerOption("-target", new Range(1),
         arguments -> options.target = Math.max(1, Integer.parseInt(arguments.get(0))));
 
+    registerOption("-time", new Range(1), arguments -> {
+      try {
+        options.timeBudget = parseDuration(arguments.get(0));
+      } catch (NumberFormatException e) {
+        System.err.println("Invalid render time: " + arguments.get(0));
+        configurationError = true;
+      }
+    });
+
     registerOption("-threads", new Range(1),
         arguments -> options.renderThreads = Math.max(1, Integer.parseInt(arguments.get(0))));
 
@@ -349,16 +378,19 @@ public class CommandLineOptions {
       }
     });
 
-    registerOption("-merge-dump", new Range(2), arguments -> {
+    registerOption("-merge-dump", new Range(2, Integer.MAX_VALUE), arguments -> {
       mode = Mode.NOTHING;
       options.sceneName = arguments.get(0);
-      String dumpPath = arguments.get(1);
-      File dumpfile = new File(dumpPath);
-      if (!dumpfile.isFile()) {
-        Log.error("Not a valid render dump file: " + dumpPath);
-        configurationError = true;
-        exitCode = 1;
-        return;
+      List<File> dumpFiles = new ArrayList<>();
+      for (String dumpPath : arguments.subList(1, arguments.size())) {
+        File dumpfile = new File(dumpPath);
+        if (!dumpfile.isFile()) {
+          Log.error("Not a valid render dump file: " + dumpPath);
+          configurationError = true;
+          exitCode = 1;
+          return;
+        }
+        dumpFiles.add(dumpfile);
       }
       File sceneFile = options.getSceneDescriptionFile();
       if (!sceneFile.isFile()) {
@@ -368,6 +400,7 @@ public class CommandLineOptions {
         return;
       }
       try {
+        dumpFiles = matchingDumps(Scene.renderHash(readSceneJson(sceneFile)), dumpFiles);
         Scene scene = new Scene();
         try (FileInputStream in = new FileInputStream(sceneFile)) {
           scene.loadDescription(in);
@@ -383,18 +416,104 @@ public class CommandLineOptions {
             });
         scene.loadDump(context, taskTracker); // Load the render dump.
         Log.info("Original scene SPP: " + scene.spp);
-        scene.mergeDump(dumpfile, taskTracker);
+        scene.mergeDumps(dumpFiles, taskTracker);
         Log.info("Current scene SPP: " + scene.spp);
         scene.saveDump(context, taskTracker);
         try (FileOutputStream out = new FileOutputStream(sceneFile)) {
           scene.saveDescription(out);
         }
-      } catch (IOException e) {
+      } catch (IOException | SyntaxError e) {
         Log.error("Failed to merge render dump.", e);
         exitCode = 1;
       }
     });
 
+    registerOption("-coordinator", new Range(2, 3), arguments -> {
+      mode = Mode.COORDINATOR;
+      options.sceneName = arguments.get(0);
+      try {
+        options.port = Integer.parseInt(arguments.get(1));
+        if (arguments.size() == 3) {
+          options.jobSpp = Math.max(1, Integer.parseInt(arguments.get(2)));
+        }
+      } catch (NumberFormatException e) {
+        System.err.println("Invalid number: " + e.getMessage());
+        configurationError = true;
+      }
+    });
+
+    registerOption("-node", new Range(1), arguments -> {
+      mode = Mode.RENDER_NODE;
+      String address = arguments.get(0);
+      int separator = address.lastIndexOf(':');
+      try {
+        if (separator <= 0) {
+          throw new NumberFormatException("missing port in " + address);
+        }
+        options.coordinatorHost = address.substring(0, separator);
+        options.port = Integer.parseInt(address.substring(separator + 1));
+      } catch (NumberFormatException e) {
+        System.err.println("Invalid coordinator address: " + e.getMessage());
+        configurationError = true;
+      }
+    });
+
+    registerOption("-batch", new Range(1), arguments -> {
+      mode = Mode.BATCH_RENDER;
+      options.batchFile = new File(arguments.get(0));
+    });
+
+    registerOption("-sequence", new Range(1), arguments -> {
+      mode = Mode.SEQUENCE_RENDER;
+      options.sequenceFile = new File(arguments.get(0));
+    });
+
+    registerOption("-shard", new Range(3), arguments -> {
+      mode = Mode.NOTHING;
+      options.sceneName = arguments.get(0);
+      try {
+        int columns = Math.max(1, Integer.parseInt(arguments.get(1)));
+        int rows = Math.max(1, Integer.parseInt(arguments.get(2)));
+        for (File shard : SceneShards.split(options.getSceneDescriptionFile(), columns, rows)) {
+          System.out.println("Created shard " + shard.getAbsolutePath());
+        }
+      } catch (NumberFormatException e) {
+        System.err.println("Invalid number: " + e.getMessage());
+        exitCode = 1;
+      } catch (IOException | SyntaxError e) {
+        Log.error("Failed to split the scene into shards.", e);
+        exitCode = 1;
+      }
+    });
+
+    registerOption("-stitch", new Range(3, 4), arguments -> {
+      mode = Mode.NOTHING;
+      options.sceneName = arguments.get(0);
+      try {
+        File sceneFile = options.getSceneDescriptionFile();
+        int columns = Math.max(1, Integer.parseInt(arguments.get(1)));
+        int rows = Math.max(1, Integer.parseInt(arguments.get(2)));
+        File output = new File(arguments.size() == 4
+            ? arguments.get(3)
+            : readSceneJson(sceneFile).get("name").stringValue(options.sceneName) + ".png");
+        TaskTracker taskTracker = new TaskTracker(new ConsoleProgressListener(),
+            TaskTracker.Task::new,
+            (tracker, previous, name, size) -> new TaskTracker.Task(tracker, previous, name, size) {
+              @Override public void update() {
+                // Don't report task state to progress listener.
+              }
+            });
+        SceneShards.stitch(new Chunky(options), sceneFile, columns, rows, output, taskTracker);
+        System.out.println("Saved stitched image to " + output.getAbsolutePath());
+      } catch (NumberFormatException e) {
+        System.err.println("Invalid number: " + e.getMessage());
+        exitCode = 1;
+      } catch (IOException | SyntaxError e) {
+        Log.error("Failed to stitch the shards.", e);
+        exitCode = 1;
+      }
+    });
+
     // When mode is set to Mode.NOTHING, then an option handler has performed
     // something and we should quit.
     // If configurationError is set to true then an option handler encountered an
@@ -484,14 +603,71 @@ public class CommandLineOptions {
     System.out.println();
   }
 
-  private static JsonObject readSceneJson(File file) throws IOException, SyntaxError {
+  /**
+   * Reject render dumps that were rendered from a different scene. A dump is
+   * checked against the scene description next to it, with the same name as
+   * the dump. The dump itself does not record which scene settings it was
+   * rendered with, so dumps without a scene description are merged with a
+   * warning.
+   */
+  private static List<File> matchingDumps(String sceneHash, List<File> dumpFiles)
+      throws IOException, SyntaxError {
+    List<File> matching = new ArrayList<>(dumpFiles.size());
+    for (File dumpFile : dumpFiles) {
+      String name = dumpFile.getName();
+      if (name.endsWith(".dump")) {
+        name = name.substring(0, name.length() - ".dump".length());
+      }
+      File description = new File(dumpFile.getAbsoluteFile().getParentFile(), name + Scene.EXTENSION);
+      if (!description.isFile()) {
+        // Dumps are often copied without their scene description, so they
+        // are still merged, but their settings can't be checked.
+        Log.warn("Render dump " + dumpFile + " has no scene description "
+            + description.getName() + " next to it. Merging it without checking"
+            + " that it was rendered with the same settings.");
+        matching.add(dumpFile);
+      } else if (sceneHash.equals(Scene.renderHash(readSceneJson(description)))) {
+        matching.add(dumpFile);
+      } else {
+        Log.warn("Rejected render dump " + dumpFile
+            + ": it was rendered with different scene settings.");
+      }
+    }
+    return matching;
+  }
+
+  /**
+   * Parse a duration given in seconds, or in minutes or hours with the suffix m or h.
+   *
+   * @return the duration in milliseconds
+   * @throws NumberFormatException if the duration is not a positive number
+   */
+  static long parseDuration(String duration) {
+    double scale = 1000;
+    if (duration.endsWith("h")) {
+      scale = 3600 * 1000;
+      duration = duration.substring(0, duration.length() - 1);
+    } else if (duration.endsWith("m")) {
+      scale = 60 * 1000;
+      duration = duration.substring(0, duration.length() - 1);
+    } else if (duration.endsWith("s")) {
+      duration = duration.substring(0, duration.length() - 1);
+    }
+    double value = Double.parseDouble(duration);
+    if (!(value > 0) || Double.isInfinite(value)) {
+      throw new NumberFormatException("Duration must be positive: " + duration);
+    }
+    return (long) (value * scale);
+  }
+
+  static JsonObject readSceneJson(File file) throws IOException, SyntaxError {
     try (FileInputStream in = new FileInputStream(file)) {
       JsonParser parser = new JsonParser(in);
       return parser.parse().object();
     }
   }
 
-  private static void writeSceneJson(File file, JsonObject desc) throws IOException {
+  static void writeSceneJson(File file, JsonObject desc) throws IOException {
     try (FileOutputStream out = new FileOutputStream(file)) {
       PrettyPrinter pp = new PrettyPrinter("  ", new PrintStream(out));
       desc.prettyPrint(pp);
@@ -0,0 +1,270 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.main;
+
+import se.llbit.chunky.renderer.AlphaBuffer;
+import se.llbit.chunky.renderer.AuxiliaryBuffers;
+import se.llbit.chunky.renderer.RenderContext;
+import se.llbit.chunky.renderer.export.PictureExportFormats;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.json.JsonNumber;
+import se.llbit.json.JsonObject;
+import se.llbit.json.JsonParser.SyntaxError;
+import se.llbit.json.JsonString;
+import se.llbit.log.Log;
+import se.llbit.util.TaskTracker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the frame of a scene into a grid of shards, and stitches the
+ * rendered shards into one image.
+ *
+ * <p>Each shard is a separate scene whose canvas is a crop window of the
+ * full frame, so it can be rendered on its own, on any machine, and only
+ * needs sample buffers for its part of the frame. Shards share the octree
+ * and emitter grid of the original scene.
+ */
+final class SceneShards {
+  private static final String[] SHARED_FILES = { ".octree2", ".emittergrid" };
+
+  private SceneShards() { }
+
+  private static String shardName(String sceneName, int index) {
+    return String.format("%s-shard%d", sceneName, index);
+  }
+
+  /**
+   * @return the scene description file of a shard
+   */
+  private static File shardFile(File sceneFile, String sceneName, int index) {
+    File sceneDir = sceneFile.getParentFile();
+    String shardName = shardName(sceneName, index);
+    // Scenes stored in their own directory get one directory per shard.
+    File shardDir = sceneDir.getName().equals(sceneName)
+        ? new File(sceneDir.getParentFile(), shardName)
+        : sceneDir;
+    return new File(shardDir, shardName + Scene.EXTENSION);
+  }
+
+  /**
+   * @return the first pixel of the shard in the given row or column
+   */
+  private static int edge(int size, int shards, int index) {
+    return (int) ((long) size * index / shards);
+  }
+
+  /**
+   * Create the shard scenes for a scene. Shards are numbered row by row,
+   * starting from the top left corner of the frame.
+   *
+   * @return the scene description files of the shards
+   */
+  static List<File> split(File sceneFile, int columns, int rows)
+      throws IOException, SyntaxError {
+    JsonObject desc = CommandLineOptions.readSceneJson(sceneFile);
+    if (desc.get("crop").isObject()) {
+      throw new IOException("The scene is already a crop window");
+    }
+    String name = desc.get("name").stringValue("");
+    int width = desc.get("width").intValue(0);
+    int height = desc.get("height").intValue(0);
+    if (width / columns < Scene.MIN_CANVAS_WIDTH || height / rows < Scene.MIN_CANVAS_HEIGHT) {
+      throw new IOException(String.format("Can not split a %dx%d frame into %dx%d shards",
+          width, height, columns, rows));
+    }
+    File sceneDir = sceneFile.getParentFile();
+    List<File> shards = new ArrayList<>();
+    for (int row = 0; row < rows; ++row) {
+      for (int column = 0; column < columns; ++column) {
+        String shardName = shardName(name, shards.size());
+        File shardFile = shardFile(sceneFile, name, shards.size());
+        int x0 = edge(width, columns, column);
+        int y0 = edge(height, rows, row);
+        JsonObject crop = new JsonObject();
+        crop.add("fullWidth", width);
+        crop.add("fullHeight", height);
+        crop.add("x", x0);
+        crop.add("y", y0);
+        JsonObject shard = desc.copy();
+        shard.set("name", new JsonString(shardName));
+        shard.set("width", new JsonNumber(edge(width, columns, column + 1) - x0));
+        shard.set("height", new JsonNumber(edge(height, rows, row + 1) - y0));
+        shard.set("crop", crop);
+        shard.set("spp", new JsonNumber(0));
+        shard.set("renderTime", new JsonNumber(0));
+
+        File shardDir = shardFile.getParentFile();
+        if (!shardDir.isDirectory() && !shardDir.mkdirs()) {
+          throw new IOException("Failed to create scene directory " + shardDir);
+        }
+        for (String extension : SHARED_FILES) {
+          File source = new File(sceneDir, name + extension);
+          if (source.isFile()) {
+            share(source.toPath(), new File(shardDir, shardName + extension).toPath());
+          }
+        }
+        CommandLineOptions.writeSceneJson(shardFile, shard);
+        shards.add(shardFile);
+      }
+    }
+    return shards;
+  }
+
+  /**
+   * Link a file, or copy it if the file system does not support links.
+   * Scenes save the shared files by replacing them, so a shard never writes
+   * through a link into the files of another scene.
+   */
+  private static void share(Path source, Path target) throws IOException {
+    Files.deleteIfExists(target);
+    try {
+      Files.createLink(target, source);
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Stitch the render dumps of the shards of a scene into a full frame,
+   * then post process the frame once and write it as a PNG image.
+   *
+   * <p>The sample, auxiliary and alpha buffers of the shards are stitched,
+   * rather than the post processed shard images, so that the denoiser sees
+   * the whole frame and the sky coverage of the shards is kept. Only one
+   * shard is loaded at a time.
+   */
+  static void stitch(Chunky chunky, File sceneFile, int columns, int rows, File output,
+      TaskTracker taskTracker) throws IOException {
+    Scene frame = new Scene();
+    try (FileInputStream in = new FileInputStream(sceneFile)) {
+      frame.loadDescription(in);
+    }
+    if (frame.isCropped()) {
+      throw new IOException("The scene is a crop window: " + sceneFile);
+    }
+    int width = frame.canvasWidth();
+    int height = frame.canvasHeight();
+    double[] samples = frame.getSampleBuffer();
+    AuxiliaryBuffers frameAux = frame.getAuxiliaryBuffers();
+    AlphaBuffer frameAlpha = frame.getAlphaBuffer();
+    boolean aux = true;
+    boolean alpha = true;
+    int spp = Integer.MAX_VALUE;
+    int maxSpp = 0;
+    long renderTime = 0;
+    for (int i = 0; i < columns * rows; ++i) {
+      File shardFile = shardFile(sceneFile, frame.name(), i);
+      Scene shard = new Scene();
+      try (FileInputStream in = new FileInputStream(shardFile)) {
+        shard.loadDescription(in);
+      }
+      if (!shard.isCropped()) {
+        throw new IOException("Not a shard scene: " + shardFile);
+      }
+      if (shard.fullWidth() != width || shard.fullHeight() != height) {
+        throw new IOException("Shard frame size does not match the scene: " + shardFile);
+      }
+      // The shard is only post processed when the dump is loaded, and the
+      // result is not used.
+      shard.setDenoise(false);
+      shard.startHeadlessRender();
+      RenderContext context = new RenderContext(chunky);
+      context.setSceneDirectory(shardFile.getParentFile());
+      if (!shard.loadDump(context, taskTracker)) {
+        throw new IOException("Failed to load the render dump of " + shard.name());
+      }
+      Log.infof("Stitching %s (%d SPP)", shard.name(), shard.spp);
+      spp = Math.min(spp, shard.spp);
+      maxSpp = Math.max(maxSpp, shard.spp);
+      renderTime = Math.max(renderTime, shard.renderTime);
+      copyRows(shard, shard.getSampleBuffer(), samples, width, 3);
+      AuxiliaryBuffers shardAux = shard.getAuxiliaryBuffers();
+      aux &= shardAux.hasSamples() && shardAux.spp() == shard.spp;
+      if (aux) {
+        frameAux.allocate();
+        copyRows(shard, shardAux.getAlbedo(), frameAux.getAlbedo(), width, 3);
+        copyRows(shard, shardAux.getNormal(), frameAux.getNormal(), width, 3);
+        copyRows(shard, shardAux.getDepth(), frameAux.getDepth(), width, 1);
+        copyRows(shard, shardAux.getEmission(), frameAux.getEmission(), width, 3);
+      }
+      AlphaBuffer shardAlpha = shard.getAlphaBuffer();
+      alpha &= shardAlpha.hasSamples() && shardAlpha.spp() == shard.spp;
+      if (alpha) {
+        frameAlpha.allocate();
+        copyRows(shard, shardAlpha.getAlpha(), frameAlpha.getAlpha(), width, 1);
+      }
+    }
+    if (spp != maxSpp) {
+      Log.warnf("The shards have %d to %d SPP, the stitched frame is saved as %d SPP",
+          spp, maxSpp, spp);
+    }
+    frame.spp = spp;
+    frame.renderTime = renderTime;
+    // Buffers that are missing in some shard are left without samples.
+    if (aux) {
+      frameAux.setSpp(spp);
+    }
+    if (alpha) {
+      frameAlpha.setSpp(spp);
+    } else if (frame.transparentSky()) {
+      // The world is not loaded, so the sky coverage can not be traced.
+      Log.warn("Some shards have no sky coverage, the stitched image is written without transparency");
+      frame.setTransparentSky(false);
+    }
+    frame.startHeadlessRender();
+    try (FileOutputStream out = new FileOutputStream(output)) {
+      frame.writeFrame(out, PictureExportFormats.PNG, taskTracker, chunky.options.renderThreads);
+    }
+  }
+
+  /**
+   * Copy the rows of a shard buffer into the corresponding part of a full frame buffer.
+   *
+   * @param channels number of values per pixel
+   */
+  private static void copyRows(Scene shard, double[] source, double[] target, int width,
+      int channels) {
+    for (int y = 0; y < shard.canvasHeight(); ++y) {
+      System.arraycopy(source, y * shard.canvasWidth() * channels, target,
+          ((shard.cropY() + y) * width + shard.cropX()) * channels,
+          shard.canvasWidth() * channels);
+    }
+  }
+
+  /**
+   * Copy the rows of a shard buffer into the corresponding part of a full frame buffer.
+   *
+   * @param channels number of values per pixel
+   */
+  private static void copyRows(Scene shard, float[] source, float[] target, int width,
+      int channels) {
+    for (int y = 0; y < shard.canvasHeight(); ++y) {
+      System.arraycopy(source, y * shard.canvasWidth() * channels, target,
+          ((shard.cropY() + y) * width + shard.cropX()) * channels,
+          shard.canvasWidth() * channels);
+    }
+  }
+}
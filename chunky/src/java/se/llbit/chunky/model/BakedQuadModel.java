@@ -0,0 +1,186 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.model;
+
+import java.util.Arrays;
+
+import se.llbit.chunky.resources.Texture;
+import se.llbit.math.DoubleSidedQuad;
+import se.llbit.math.Quad;
+import se.llbit.math.QuickMath;
+import se.llbit.math.Ray;
+
+/**
+ * A block model compiled to a flat array of textured quads.
+ *
+ * <p>Block models that consist only of alpha-tested textured quads can be baked
+ * once per block state (see {@link se.llbit.chunky.block.Block#bake()}), so that
+ * the octree intersects all of them with the same kernel instead of calling a
+ * model-specific intersection method that resolves the block state at every hit.
+ * The intersection gives the same result as intersecting the quads one by one
+ * with {@link Quad#intersect(Ray)}.
+ */
+public final class BakedQuadModel {
+  /** The quad is intersected from both sides (see {@link DoubleSidedQuad}). */
+  private static final int DOUBLE_SIDED = 1;
+
+  /** The hit normal is flipped to face the incoming ray. */
+  private static final int FACE_RAY = 2;
+
+  private static final int FLAGS = Quad.PACKED_SIZE;
+  private static final int STRIDE = Quad.PACKED_SIZE + 1;
+
+  private final double[] quads;
+  private final Texture[] textures;
+  private final int size;
+
+  private BakedQuadModel(double[] quads, Texture[] textures, int size) {
+    this.quads = quads;
+    this.textures = textures;
+    this.size = size;
+  }
+
+  /**
+   * @return the number of quads in this model
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Find the closest intersection between the ray and the quads of this model.
+   * The ray origin must be inside the block.
+   *
+   * @return <code>true</code> if the ray intersected the model
+   */
+  public boolean intersect(Ray ray) {
+    boolean hit = false;
+    ray.t = Double.POSITIVE_INFINITY;
+
+    double dx = ray.d.x;
+    double dy = ray.d.y;
+    double dz = ray.d.z;
+    double ox = ray.o.x - QuickMath.floor(ray.o.x + dx * Ray.OFFSET);
+    double oy = ray.o.y - QuickMath.floor(ray.o.y + dy * Ray.OFFSET);
+    double oz = ray.o.z - QuickMath.floor(ray.o.z + dz * Ray.OFFSET);
+
+    double[] quads = this.quads;
+    for (int i = 0, offset = 0; i < size; ++i, offset += STRIDE) {
+      double nx = quads[offset + 9];
+      double ny = quads[offset + 10];
+      double nz = quads[offset + 11];
+      int flags = (int) quads[offset + FLAGS];
+
+      double denom = dx * nx + dy * ny + dz * nz;
+      if ((flags & DOUBLE_SIDED) != 0 ? QuickMath.abs(denom) <= Ray.EPSILON : denom >= -Ray.EPSILON) {
+        continue;
+      }
+      double t = -(ox * nx + oy * ny + oz * nz + quads[offset + 12]) / denom;
+      if (t > -Ray.EPSILON && t < ray.t) {
+        // Translate to get hit point relative to the quad origin.
+        double ix = ox + dx * t - quads[offset];
+        double iy = oy + dy * t - quads[offset + 1];
+        double iz = oz + dz * t - quads[offset + 2];
+        double u = ix * quads[offset + 3] + iy * quads[offset + 4] + iz * quads[offset + 5];
+        u *= quads[offset + 13];
+        double v = ix * quads[offset + 6] + iy * quads[offset + 7] + iz * quads[offset + 8];
+        v *= quads[offset + 14];
+        if (u >= 0 && u <= 1 && v >= 0 && v <= 1) {
+          ray.u = quads[offset + 15] + u * quads[offset + 16];
+          ray.v = quads[offset + 17] + v * quads[offset + 18];
+          ray.tNext = t;
+          float[] color = textures[i].getColor(ray.u, ray.v);
+          if (color[3] > Ray.EPSILON) {
+            ray.color.set(color);
+            ray.t = t;
+            ray.n.set(nx, ny, nz);
+            if ((flags & FACE_RAY) != 0) {
+              ray.n.scale(QuickMath.signum(-(dx * nx + dy * ny + dz * nz)));
+            }
+            hit = true;
+          }
+        }
+      }
+    }
+    if (hit) {
+      ray.distance += ray.t;
+      ray.o.scaleAdd(ray.t, ray.d);
+    }
+    return hit;
+  }
+
+  /**
+   * Builds a baked model. Quads are intersected in the order they are added,
+   * which matters for coplanar quads.
+   */
+  public static class Builder {
+    private double[] quads = new double[STRIDE * 8];
+    private Texture[] textures = new Texture[8];
+    private int size = 0;
+
+    public Builder add(Quad quad, Texture texture) {
+      return add(quad, texture, false);
+    }
+
+    /**
+     * Add a quad.
+     *
+     * @param faceRay flip the hit normal so that it faces the incoming ray
+     */
+    public Builder add(Quad quad, Texture texture, boolean faceRay) {
+      if (size == textures.length) {
+        quads = Arrays.copyOf(quads, quads.length * 2);
+        textures = Arrays.copyOf(textures, textures.length * 2);
+      }
+      int offset = size * STRIDE;
+      quad.pack(quads, offset);
+      int flags = 0;
+      if (quad instanceof DoubleSidedQuad) {
+        flags |= DOUBLE_SIDED;
+      }
+      if (faceRay) {
+        flags |= FACE_RAY;
+      }
+      quads[offset + FLAGS] = flags;
+      textures[size] = texture;
+      size += 1;
+      return this;
+    }
+
+    public Builder add(Quad[] quads, Texture texture) {
+      for (Quad quad : quads) {
+        add(quad, texture, false);
+      }
+      return this;
+    }
+
+    /**
+     * Add quads with one texture per quad.
+     */
+    public Builder add(Quad[] quads, Texture[] textures) {
+      for (int i = 0; i < quads.length; ++i) {
+        add(quads[i], textures[i], false);
+      }
+      return this;
+    }
+
+    public BakedQuadModel build() {
+      return new BakedQuadModel(Arrays.copyOf(quads, size * STRIDE),
+          Arrays.copyOf(textures, size), size);
+    }
+  }
+}
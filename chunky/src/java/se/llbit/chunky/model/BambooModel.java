@@ -208,4 +208,18 @@ public class BambooModel {
         }
         return hit;
     }
+
+    public static BakedQuadModel bake(int age, String leaves) {
+        if (age < 0 || age >= stemQuads.length) {
+            return null;
+        }
+        BakedQuadModel.Builder builder = new BakedQuadModel.Builder();
+        builder.add(stemQuads[age], tex);
+        if ("small".equals(leaves)) {
+            builder.add(smallLeaves, smallLeavesTex);
+        } else if ("large".equals(leaves)) {
+            builder.add(largeLeaves, largeLeavesTex);
+        }
+        return builder.build();
+    }
 }
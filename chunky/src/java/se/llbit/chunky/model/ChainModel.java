@@ -44,25 +44,23 @@ public class ChainModel {
     axis[2] = quadsZ;
   }
 
-  public static boolean intersect(Ray ray, String axisName) {
-    boolean hit = false;
-    ray.t = Double.POSITIVE_INFINITY;
-
-    int axisId;
+  private static int getAxisIndex(String axisName) {
     switch(axisName) {
       default:
       case "y":
-        axisId = 0;
-        break;
+        return 0;
       case "x":
-        axisId = 1;
-        break;
+        return 1;
       case "z":
-        axisId = 2;
-        break;
+        return 2;
     }
+  }
 
-    for (Quad quad : axis[axisId]) {
+  public static boolean intersect(Ray ray, String axisName) {
+    boolean hit = false;
+    ray.t = Double.POSITIVE_INFINITY;
+
+    for (Quad quad : axis[getAxisIndex(axisName)]) {
       if (quad.intersect(ray)) {
         float[] color = Texture.chain.getColor(ray.u, ray.v);
         if (color[3] > Ray.EPSILON) {
@@ -80,4 +78,8 @@ public class ChainModel {
     }
     return hit;
   }
+
+  public static BakedQuadModel bake(String axisName) {
+    return new BakedQuadModel.Builder().add(axis[getAxisIndex(axisName)], Texture.chain).build();
+  }
 }
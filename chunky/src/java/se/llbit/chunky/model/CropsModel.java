@@ -60,4 +60,12 @@ public class CropsModel {
     }
     return hit;
   }
+
+  public static BakedQuadModel bake(Texture texture) {
+    BakedQuadModel.Builder builder = new BakedQuadModel.Builder();
+    for (Quad quad : quads) {
+      builder.add(quad, texture, true);
+    }
+    return builder.build();
+  }
 }
@@ -206,4 +206,8 @@ public class LanternModel {
     }
     return hit;
   }
+
+  public static BakedQuadModel bake(boolean hanging, Texture texture) {
+    return new BakedQuadModel.Builder().add(hanging ? quadsHanging : quads, texture).build();
+  }
 }
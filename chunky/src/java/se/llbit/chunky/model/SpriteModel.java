@@ -90,6 +90,16 @@ public class SpriteModel {
     return hit;
   }
 
+  public static BakedQuadModel bake(Texture material) {
+    return new BakedQuadModel.Builder().add(quads, material).build();
+  }
+
+  public static BakedQuadModel bake(Texture material, String facing) {
+    return new BakedQuadModel.Builder()
+        .add(orientedQuads[getOrientationIndex(facing)], material)
+        .build();
+  }
+
   private static int getOrientationIndex(String facing) {
     switch (facing) {
       case "down":
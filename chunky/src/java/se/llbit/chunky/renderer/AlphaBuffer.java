@@ -0,0 +1,117 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+/**
+ * Sky coverage of each pixel, accumulated by the path tracer when rendering
+ * with a transparent sky. The coverage of a pixel is the fraction of its
+ * camera rays that did not reach the sky, weighted by the transmittance of
+ * the surfaces they passed through, and is used as the alpha channel of the
+ * output image.
+ *
+ * <p>The buffer is only allocated when needed and keeps its own sample count,
+ * like {@link AuxiliaryBuffers}.
+ */
+public class AlphaBuffer {
+  public final int width;
+  public final int height;
+
+  private float[] alpha;
+
+  /** Samples per pixel accumulated in the buffer. */
+  private int spp = 0;
+
+  public AlphaBuffer(int width, int height) {
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Allocate the buffer, if not already allocated.
+   */
+  public synchronized void allocate() {
+    if (alpha == null) {
+      alpha = new float[width * height];
+      spp = 0;
+    }
+  }
+
+  /**
+   * @return {@code true} if the buffer contains any samples
+   */
+  public synchronized boolean hasSamples() {
+    return alpha != null && spp > 0;
+  }
+
+  /**
+   * @return the number of samples per pixel accumulated in the buffer
+   */
+  public synchronized int spp() {
+    return spp;
+  }
+
+  /**
+   * Discard all accumulated samples.
+   */
+  public synchronized void clear() {
+    spp = 0;
+  }
+
+  /**
+   * Called after a render pass with the given number of samples per pixel
+   * has been accumulated.
+   */
+  public synchronized void addPass(int passSpp) {
+    spp += passSpp;
+  }
+
+  /**
+   * Set the number of samples per pixel in the buffer, after the buffer
+   * has been loaded from a render dump.
+   */
+  public synchronized void setSpp(int spp) {
+    this.spp = spp;
+  }
+
+  /**
+   * Average sky coverage, one value in the range [0, 1] per pixel.
+   */
+  public float[] getAlpha() {
+    return alpha;
+  }
+
+  /**
+   * Store the samples of one pixel from a render pass.
+   *
+   * @param covered the sum of the coverage of the samples in the pass
+   * @param spp the number of samples accumulated before this pass
+   */
+  public void store(int x, int y, double covered, int passSpp, int spp) {
+    int index = y * width + x;
+    alpha[index] = (float) ((alpha[index] * spp + covered) / (passSpp + spp));
+  }
+
+  /**
+   * Convert the coverage to an 8-bit alpha channel.
+   */
+  public void toAlphaChannel(byte[] alphaChannel) {
+    for (int i = 0; i < alphaChannel.length; ++i) {
+      float coverage = Math.max(0, Math.min(1, alpha[i]));
+      alphaChannel[i] = (byte) (255 * coverage + 0.5f);
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import se.llbit.math.Ray;
+import se.llbit.math.Vector3;
+import se.llbit.math.Vector3i;
+
+/**
+ * Auxiliary render buffers (AOVs) holding the average albedo, normal, depth
+ * and emission of the first diffuse hit of each pixel. These are used as
+ * guides for denoising, and can be saved in render dumps and exported for
+ * external denoising or compositing.
+ *
+ * <p>The buffers are only allocated once something needs them, and are
+ * accumulated independently of the sample buffer so that they can be
+ * enabled in the middle of a render.
+ */
+public class AuxiliaryBuffers {
+  public final int width;
+  public final int height;
+
+  private float[] albedo;
+  private float[] normal;
+  private float[] depth;
+  private float[] emission;
+
+  /** Samples per pixel accumulated in the buffers. */
+  private int spp = 0;
+
+  public AuxiliaryBuffers(int width, int height) {
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Create a copy of the buffers of another frame.
+   */
+  public AuxiliaryBuffers(AuxiliaryBuffers other) {
+    this.width = other.width;
+    this.height = other.height;
+    synchronized (other) {
+      if (other.albedo != null) {
+        albedo = other.albedo.clone();
+        normal = other.normal.clone();
+        depth = other.depth.clone();
+        emission = other.emission.clone();
+      }
+      spp = other.spp;
+    }
+  }
+
+  /**
+   * Allocate the buffers, if not already allocated.
+   */
+  public synchronized void allocate() {
+    if (albedo == null) {
+      albedo = new float[width * height * 3];
+      normal = new float[width * height * 3];
+      depth = new float[width * height];
+      emission = new float[width * height * 3];
+      spp = 0;
+    }
+  }
+
+  /**
+   * @return {@code true} if the buffers contain any samples
+   */
+  public synchronized boolean hasSamples() {
+    return albedo != null && spp > 0;
+  }
+
+  /**
+   * @return the number of samples per pixel accumulated in the buffers
+   */
+  public synchronized int spp() {
+    return spp;
+  }
+
+  /**
+   * Discard all accumulated samples.
+   */
+  public synchronized void clear() {
+    spp = 0;
+  }
+
+  /**
+   * Called after a render pass with the given number of samples per pixel
+   * has been accumulated.
+   */
+  public synchronized void addPass(int passSpp) {
+    spp += passSpp;
+  }
+
+  /**
+   * Set the number of samples per pixel in the buffers, after the buffers
+   * have been loaded from a render dump.
+   */
+  public synchronized void setSpp(int spp) {
+    this.spp = spp;
+  }
+
+  /**
+   * Average albedo, three values (RGB) per pixel.
+   */
+  public float[] getAlbedo() {
+    return albedo;
+  }
+
+  /**
+   * Average normal, three values per pixel. The average normal is not
+   * normalized.
+   */
+  public float[] getNormal() {
+    return normal;
+  }
+
+  /**
+   * Average distance from the camera, one value per pixel.
+   * Pixels where nothing was hit have depth zero.
+   */
+  public float[] getDepth() {
+    return depth;
+  }
+
+  /**
+   * Average emitted light, three values (RGB) per pixel.
+   */
+  public float[] getEmission() {
+    return emission;
+  }
+
+  /**
+   * Store the samples of one pixel from a render pass.
+   *
+   * @param spp the number of samples accumulated before this pass
+   */
+  public void store(int x, int y, Accumulator pixel, int passSpp, int spp) {
+    double sinv = 1.0 / (passSpp + spp);
+    int index = y * width + x;
+    for (int i = 0; i < 3; ++i) {
+      int offset = index * 3 + i;
+      albedo[offset] = (float) ((albedo[offset] * spp + pixel.albedo[i]) * sinv);
+      normal[offset] = (float) ((normal[offset] * spp + pixel.normal[i]) * sinv);
+      emission[offset] = (float) ((emission[offset] * spp + pixel.emission[i]) * sinv);
+    }
+    depth[index] = (float) ((depth[index] * spp + pixel.depth) * sinv);
+  }
+
+  /**
+   * Collects the first diffuse hit of the samples for one pixel.
+   */
+  public static class Accumulator {
+    final double[] albedo = new double[3];
+    final double[] normal = new double[3];
+    final double[] emission = new double[3];
+    double depth;
+
+    private boolean recorded;
+
+    /**
+     * Start accumulating a new pixel.
+     */
+    public void startPixel() {
+      for (int i = 0; i < 3; ++i) {
+        albedo[i] = 0;
+        normal[i] = 0;
+        emission[i] = 0;
+      }
+      depth = 0;
+    }
+
+    /**
+     * Start a new sample.
+     */
+    public void startSample() {
+      recorded = false;
+    }
+
+    /**
+     * Record a diffuse hit. Only the first recorded hit of each sample is used.
+     *
+     * @param ray the ray at the hit, its color is the albedo at the hit
+     * @param camera the camera position, in world coordinates
+     * @param origin the octree origin: the ray origin is relative to this
+     * @param emittance emittance of the hit material
+     */
+    public void recordHit(Ray ray, Vector3 camera, Vector3i origin, double emittance) {
+      if (!recorded) {
+        recorded = true;
+        albedo[0] += ray.color.x;
+        albedo[1] += ray.color.y;
+        albedo[2] += ray.color.z;
+        normal[0] += ray.n.x;
+        normal[1] += ray.n.y;
+        normal[2] += ray.n.z;
+        // Same emission model as the path tracer.
+        emission[0] += ray.color.x * ray.color.x * emittance;
+        emission[1] += ray.color.y * ray.color.y * emittance;
+        emission[2] += ray.color.z * ray.color.z * emittance;
+        double dx = ray.o.x + origin.x - camera.x;
+        double dy = ray.o.y + origin.y - camera.y;
+        double dz = ray.o.z + origin.z - camera.z;
+        depth += Math.sqrt(dx * dx + dy * dy + dz * dz);
+      }
+    }
+  }
+}
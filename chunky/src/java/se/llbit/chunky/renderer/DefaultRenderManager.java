@@ -26,8 +26,8 @@ import se.llbit.chunky.renderer.scene.PreviewRayTracer;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.resources.BitmapImage;
 import se.llbit.log.Log;
-import se.llbit.math.ColorUtil;
 import se.llbit.util.TaskTracker;
+import se.llbit.util.ThreadBudget;
 
 import java.util.*;
 import java.util.function.BiConsumer;
@@ -124,6 +124,19 @@ public class DefaultRenderManager extends Thread implements RenderManager {
    */
   protected boolean finalizeAllFrames = false;
 
+  /**
+   * Tiles of the frame that were updated since the frame was last finalized.
+   */
+  protected final DirtyTiles dirtyTiles = new DirtyTiles();
+
+  /**
+   * The back buffer, filter and exposure after the last frame was finalized.
+   * If these are unchanged, only the dirty tiles need to be finalized.
+   */
+  private BitmapImage finalizedBackBuffer = null;
+  private PostProcessingFilter finalizedFilter = null;
+  private double finalizedExposure = Double.NaN;
+
   /**
    * Listeners that need to be called on every frame when rendering.
    */
@@ -146,6 +159,11 @@ public class DefaultRenderManager extends Thread implements RenderManager {
    */
   private final boolean headless;
 
+  /**
+   * Set by {@link #stopRender()} to end the current render after the frame in progress.
+   */
+  private volatile boolean stopRequested = false;
+
   /**
    * Current renderer mode.
    */
@@ -223,7 +241,8 @@ public class DefaultRenderManager extends Thread implements RenderManager {
         frameCompletionListener.accept(bufferedScene, bufferedScene.spp);
         updateRenderProgress();
 
-        if (bufferedScene.spp > bufferedScene.getTargetSpp()) {
+        if (stopRequested || bufferedScene.spp > bufferedScene.getTargetSpp()) {
+          stopRequested = false;
           renderCompletionListener.accept(bufferedScene.renderTime, samplesPerSecond());
           return true;
         }
@@ -258,6 +277,9 @@ public class DefaultRenderManager extends Thread implements RenderManager {
             finalizeAllFrames = scene.shouldFinalizeBuffer();
             updateRenderState(scene);
 
+            // The sample buffer may have been changed, so the whole frame must be finalized.
+            finalizedBackBuffer = null;
+
             if (reason == ResetReason.SCENE_LOADED) {
               // Make sure frame is finalized
               bufferedScene.postProcessFrame(renderTask);
@@ -293,11 +315,11 @@ public class DefaultRenderManager extends Thread implements RenderManager {
         if (mode == RenderMode.PREVIEW) {
           // Bail early if the preview is not visible
           if (finalizeAllFrames) {
-            // Preview with no CPU limit
-            pool.setCpuLoad(100);
+            // Preview with no CPU limit, ahead of other work
+            pool.setPriority(ThreadBudget.Priority.INTERACTIVE);
             render.setPostRender(previewCallback);
             render.render(this);
-            pool.setCpuLoad(cpuLoad);
+            pool.setPriority(ThreadBudget.Priority.RENDER);
           }
         } else {
           // Bail early if render is already done
@@ -326,10 +348,27 @@ public class DefaultRenderManager extends Thread implements RenderManager {
    */
   @PluginApi
   public void redrawScreen() {
+    finalizedBackBuffer = null;
     bufferedScene.swapBuffers();
     canvas.repaint();
   }
 
+  /**
+   * Report that a region of the sample buffer was updated by the renderer.
+   * If the renderer reports all updated regions, only those regions are post
+   * processed and redrawn when the frame is finalized. Renderers that do not
+   * report any regions get the whole frame finalized.
+   *
+   * @param x0 the first column of the region
+   * @param y0 the first row of the region
+   * @param x1 the column after the last column of the region
+   * @param y1 the row after the last row of the region
+   */
+  @PluginApi
+  public void markDirty(int x0, int y0, int x1, int y1) {
+    dirtyTiles.mark(x0, y0, x1, y1);
+  }
+
   /**
    * Get if there is a need for this frame to be finalized.
    */
@@ -409,11 +448,17 @@ public class DefaultRenderManager extends Thread implements RenderManager {
    * Finalize the frame if necessary. This uses the internal {@code RenderWorkerPool}.
    */
   protected void finalizeFrame(boolean force) {
-    if (force || snapshotControl.saveSnapshot(bufferedScene, bufferedScene.spp)) {
+    boolean snapshot = snapshotControl.saveSnapshot(bufferedScene, bufferedScene.spp);
+    if (force || snapshot) {
       PostProcessingFilter filter = bufferedScene.getPostProcessingFilter();
       if (mode == RenderMode.PREVIEW) filter = PreviewFilter.INSTANCE;
 
-      if (filter instanceof PixelPostProcessingFilter) {
+      // Denoising needs the whole frame, so it is done by the scene. It is too
+      // slow to do for every frame, so intermediate frames are shown without
+      // denoising and only snapshots and the last frame are denoised.
+      boolean denoise = bufferedScene.getDenoise() && mode != RenderMode.PREVIEW
+          && (snapshot || bufferedScene.spp >= bufferedScene.getTargetSpp());
+      if (filter instanceof PixelPostProcessingFilter && !denoise) {
         PixelPostProcessingFilter pixelFilter = (PixelPostProcessingFilter) filter;
 
         int width = bufferedScene.width;
@@ -421,27 +466,27 @@ public class DefaultRenderManager extends Thread implements RenderManager {
         double[] sampleBuffer = bufferedScene.getSampleBuffer();
         double exposure = bufferedScene.getExposure();
 
-        // Split up to 10 tasks per thread
-        int tasksPerThread = 10;
-        int pixelsPerTask = (bufferedScene.width * bufferedScene.height) / (pool.threads * tasksPerThread - 1);
-        ArrayList<RenderWorkerPool.RenderJobFuture> jobs = new ArrayList<>(pool.threads * tasksPerThread);
-
-        for (int i = 0; i < bufferedScene.width * bufferedScene.height; i += pixelsPerTask) {
-          int start = i;
-          int end = Math.min(bufferedScene.width * bufferedScene.height, i + pixelsPerTask);
-          jobs.add(pool.submit(worker -> {
-            double[] pixelbuffer = new double[3];
+        BitmapImage backBuffer = bufferedScene.getBackBuffer();
 
-            for (int j = start; j < end; j++) {
-              int x = j % width;
-              int y = j / width;
-
-              pixelFilter.processPixel(width, height, sampleBuffer, x, y, exposure, pixelbuffer);
-              Arrays.setAll(pixelbuffer, k -> Math.min(1, pixelbuffer[k]));
-              bufferedScene.getBackBuffer().setPixel(x, y, ColorUtil.getRGB(pixelbuffer));
-            }
-          }));
+        dirtyTiles.resize(width, height);
+        if (backBuffer != finalizedBackBuffer || filter != finalizedFilter
+            || exposure != finalizedExposure || dirtyTiles.isEmpty()) {
+          dirtyTiles.markAll();
         }
+        finalizedBackBuffer = null;
+        List<TileBasedRenderer.RenderTile> regions = dirtyTiles.take();
+
+        ThreadBudget.Priority priority = pool.getPriority();
+        pool.setPriority(mode == RenderMode.PREVIEW
+            ? ThreadBudget.Priority.INTERACTIVE
+            : ThreadBudget.Priority.FINALIZE);
+        ArrayList<RenderWorkerPool.RenderJobFuture> jobs = new ArrayList<>(regions.size());
+        for (TileBasedRenderer.RenderTile region : regions) {
+          jobs.add(pool.submit(worker ->
+              pixelFilter.processRegion(width, height, sampleBuffer, region.x0, region.y0, region.x1,
+                  region.y1, exposure, backBuffer)));
+        }
+        pool.setPriority(priority);
 
         try {
           for (RenderWorkerPool.RenderJobFuture job : jobs) {
@@ -449,12 +494,36 @@ public class DefaultRenderManager extends Thread implements RenderManager {
           }
         } catch (InterruptedException e) {
           // Interrupted
+          return;
+        }
+
+        bufferedScene.swapBuffers();
+
+        // Copy the finalized regions to the new back buffer so that it is up to
+        // date when only the dirty tiles of the next frame are finalized.
+        BitmapImage newBackBuffer = bufferedScene.getBackBuffer();
+        int x0 = width, y0 = height, x1 = 0, y1 = 0;
+        for (TileBasedRenderer.RenderTile region : regions) {
+          for (int y = region.y0; y < region.y1; ++y) {
+            int offset = y * width + region.x0;
+            System.arraycopy(backBuffer.data, offset, newBackBuffer.data, offset, region.x1 - region.x0);
+          }
+          x0 = Math.min(x0, region.x0);
+          y0 = Math.min(y0, region.y0);
+          x1 = Math.max(x1, region.x1);
+          y1 = Math.max(y1, region.y1);
+        }
+        finalizedBackBuffer = newBackBuffer;
+        finalizedFilter = filter;
+        finalizedExposure = exposure;
+
+        if (x0 < x1 && y0 < y1) {
+          canvas.repaint(x0, y0, x1, y1);
         }
       } else {
-        bufferedScene.postProcessFrame(TaskTracker.Task.NONE);
+        bufferedScene.postProcessFrame(TaskTracker.Task.NONE, denoise);
+        redrawScreen();
       }
-
-      redrawScreen();
     }
   }
 
@@ -575,6 +644,11 @@ public class DefaultRenderManager extends Thread implements RenderManager {
     interrupt();
   }
 
+  @Override
+  public void stopRender() {
+    stopRequested = true;
+  }
+
   /**
    * Add a new renderer.
    * Do not use, use {@code Chunky.addRenderer()}.
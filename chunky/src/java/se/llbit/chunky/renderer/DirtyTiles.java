@@ -0,0 +1,129 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tracks which parts of the frame were updated by the renderer since the
+ * frame was last finalized, so that only those parts need to be post
+ * processed and redrawn.
+ *
+ * <p>The frame is divided into square tiles of {@link #TILE_SIZE} pixels, and
+ * a tile is dirty if any pixel in it was updated.
+ */
+public class DirtyTiles {
+  public static final int TILE_SIZE = 32;
+
+  private int width = 0;
+  private int height = 0;
+  private int cols = 0;
+  private int rows = 0;
+  private boolean[] dirty = new boolean[0];
+  private int count = 0;
+
+  /**
+   * Set the frame size. If the size changed, all tiles are marked dirty.
+   */
+  public synchronized void resize(int width, int height) {
+    if (width != this.width || height != this.height) {
+      this.width = width;
+      this.height = height;
+      cols = (width + TILE_SIZE - 1) / TILE_SIZE;
+      rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+      dirty = new boolean[cols * rows];
+      markAll();
+    }
+  }
+
+  /**
+   * Mark the tiles overlapping a region of the frame as dirty.
+   *
+   * @param x0 the first column of the region
+   * @param y0 the first row of the region
+   * @param x1 the column after the last column of the region
+   * @param y1 the row after the last row of the region
+   */
+  public synchronized void mark(int x0, int y0, int x1, int y1) {
+    // Clip to the frame first, since the last tiles may extend past it.
+    x0 = Math.max(0, x0);
+    y0 = Math.max(0, y0);
+    x1 = Math.min(width, x1);
+    y1 = Math.min(height, y1);
+    if (x0 >= x1 || y0 >= y1) {
+      return;
+    }
+    int col0 = x0 / TILE_SIZE;
+    int col1 = (x1 + TILE_SIZE - 1) / TILE_SIZE;
+    int row0 = y0 / TILE_SIZE;
+    int row1 = (y1 + TILE_SIZE - 1) / TILE_SIZE;
+    for (int row = row0; row < row1; ++row) {
+      for (int col = col0; col < col1; ++col) {
+        int index = row * cols + col;
+        if (!dirty[index]) {
+          dirty[index] = true;
+          count += 1;
+        }
+      }
+    }
+  }
+
+  /**
+   * Mark the whole frame as dirty.
+   */
+  public synchronized void markAll() {
+    Arrays.fill(dirty, true);
+    count = dirty.length;
+  }
+
+  /**
+   * @return {@code true} if no tile is dirty
+   */
+  public synchronized boolean isEmpty() {
+    return count == 0;
+  }
+
+  /**
+   * Clear all dirty tiles and return the dirty regions. Dirty tiles next to
+   * each other in the same tile row are merged into one region.
+   */
+  public synchronized List<TileBasedRenderer.RenderTile> take() {
+    List<TileBasedRenderer.RenderTile> regions = new ArrayList<>();
+    for (int row = 0; row < rows && count > 0; ++row) {
+      int y0 = row * TILE_SIZE;
+      int y1 = Math.min(height, y0 + TILE_SIZE);
+      int col = 0;
+      while (col < cols) {
+        if (!dirty[row * cols + col]) {
+          col += 1;
+          continue;
+        }
+        int start = col;
+        while (col < cols && dirty[row * cols + col]) {
+          dirty[row * cols + col] = false;
+          count -= 1;
+          col += 1;
+        }
+        regions.add(new TileBasedRenderer.RenderTile(start * TILE_SIZE,
+            Math.min(width, col * TILE_SIZE), y0, y1));
+      }
+    }
+    return regions;
+  }
+}
@@ -0,0 +1,62 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+/**
+ * Heuristic used to weight samples when combining sampling strategies with
+ * multiple importance sampling.
+ */
+public enum MisHeuristic {
+  /** Multiple importance sampling is disabled. */
+  NONE("None") {
+    @Override public double weight(double pdf, double otherPdf) {
+      return 1;
+    }
+  },
+
+  /** Veach's balance heuristic. */
+  BALANCE("Balance heuristic") {
+    @Override public double weight(double pdf, double otherPdf) {
+      return pdf / (pdf + otherPdf);
+    }
+  },
+
+  /** Veach's power heuristic with exponent 2. */
+  POWER("Power heuristic") {
+    @Override public double weight(double pdf, double otherPdf) {
+      double p2 = pdf * pdf;
+      return p2 / (p2 + otherPdf * otherPdf);
+    }
+  };
+
+  private final String name;
+
+  MisHeuristic(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @param pdf the probability density of the strategy that generated the sample
+   * @param otherPdf the probability density of the other strategy for the same sample
+   * @return the weight of the sample
+   */
+  public abstract double weight(double pdf, double otherPdf);
+
+  @Override public String toString() {
+    return name;
+  }
+}
@@ -48,24 +48,53 @@ public class PathTracingRenderer extends TileBasedRenderer {
     return description;
   }
 
+  @Override
+  protected Sampler createSampler(DefaultRenderManager manager, RenderWorkerPool.RenderWorker worker) {
+    Scene scene = manager.bufferedScene;
+    return scene.getSamplerType().create(worker.random, scene.getRenderSeed());
+  }
+
   @Override
   public void render(DefaultRenderManager manager) throws InterruptedException {
     Scene scene = manager.bufferedScene;
     int width = scene.width;
-    int height = scene.height;
 
-    int sppPerPass = manager.context.sppPerPass();
     Camera cam = scene.camera();
-    double halfWidth = width / (2.0 * height);
-    double invHeight = 1.0 / height;
+    // Rays and samples are computed in full frame coordinates, so that a
+    // cropped canvas renders the same pixels as the full frame.
+    int cropX = scene.cropX();
+    int cropY = scene.cropY();
+    double halfWidth = scene.fullWidth() / (2.0 * scene.fullHeight());
+    double invHeight = 1.0 / scene.fullHeight();
 
     double[] sampleBuffer = scene.getSampleBuffer();
+    AuxiliaryBuffers aux = scene.getAuxiliaryBuffers();
+    AlphaBuffer alpha = scene.getAlphaBuffer();
 
     while (scene.spp < scene.getTargetSpp()) {
+      // The pass size is read for every pass, so that it can be tuned while rendering.
+      int sppPerPass = manager.context.sppPerPass();
       int spp = scene.spp;
-      double passinv = 1.0 / sppPerPass;
       double sinv = 1.0 / (sppPerPass + spp);
 
+      boolean recordAux = scene.recordAuxiliaryBuffers();
+      if (recordAux) {
+        aux.allocate();
+        if (spp == 0) {
+          aux.clear();
+        }
+      }
+      int auxSpp = recordAux ? aux.spp() : 0;
+
+      boolean recordAlpha = scene.transparentSky() && tracer.tracksSkyHits();
+      if (recordAlpha) {
+        alpha.allocate();
+        if (spp == 0) {
+          alpha.clear();
+        }
+      }
+      int alphaSpp = recordAlpha ? alpha.spp() : 0;
+
       submitTiles(manager, (state, pixel) -> {
         int x = pixel.firstInt();
         int y = pixel.secondInt();
@@ -73,29 +102,57 @@ public class PathTracingRenderer extends TileBasedRenderer {
         double sr = 0;
         double sg = 0;
         double sb = 0;
+        double covered = 0;
+
+        if (recordAux) {
+          if (state.aux == null) {
+            state.aux = new AuxiliaryBuffers.Accumulator();
+          }
+          state.aux.startPixel();
+        }
 
         for (int k = 0; k < sppPerPass; k++) {
+          state.sampler.startSample(cropX + x, cropY + y, spp + k);
+          if (recordAux) {
+            state.aux.startSample();
+          }
+          state.skyTransmittance = 0;
           double ox = state.random.nextDouble();
           double oy = state.random.nextDouble();
 
           cam.calcViewRay(state.ray, state.random,
-              -halfWidth + (x + ox) * invHeight,
-              -0.5 + (y + oy) * invHeight);
+              -halfWidth + (cropX + x + ox) * invHeight,
+              -0.5 + (cropY + y + oy) * invHeight);
           scene.rayTrace(tracer, state);
 
           sr += state.ray.color.x;
           sg += state.ray.color.y;
           sb += state.ray.color.z;
+          covered += 1 - state.skyTransmittance;
         }
 
         int offset = 3 * (y*width + x);
-        sampleBuffer[offset + 0] = (sampleBuffer[offset + 0] * spp + (sr * passinv)) * sinv;
-        sampleBuffer[offset + 1] = (sampleBuffer[offset + 1] * spp + (sg * passinv)) * sinv;
-        sampleBuffer[offset + 2] = (sampleBuffer[offset + 2] * spp + (sb * passinv)) * sinv;
+        // The pass adds the sum of sppPerPass samples to the running mean.
+        sampleBuffer[offset + 0] = (sampleBuffer[offset + 0] * spp + sr) * sinv;
+        sampleBuffer[offset + 1] = (sampleBuffer[offset + 1] * spp + sg) * sinv;
+        sampleBuffer[offset + 2] = (sampleBuffer[offset + 2] * spp + sb) * sinv;
+
+        if (recordAux) {
+          aux.store(x, y, state.aux, sppPerPass, auxSpp);
+        }
+        if (recordAlpha) {
+          alpha.store(x, y, covered, sppPerPass, alphaSpp);
+        }
       });
 
       manager.pool.awaitEmpty();
       scene.spp += sppPerPass;
+      if (recordAux) {
+        aux.addPass(sppPerPass);
+      }
+      if (recordAlpha) {
+        alpha.addPass(sppPerPass);
+      }
       if (postRender.getAsBoolean()) break;
     }
   }
@@ -61,8 +61,10 @@ public class PreviewRenderer extends TileBasedRenderer {
     int height = scene.height;
 
     Camera cam = scene.camera();
-    double halfWidth = width / (2.0 * height);
-    double invHeight = 1.0 / height;
+    int cropX = scene.cropX();
+    int cropY = scene.cropY();
+    double halfWidth = scene.fullWidth() / (2.0 * scene.fullHeight());
+    double invHeight = 1.0 / scene.fullHeight();
 
     Ray target = new Ray();
     boolean hit = scene.traceTarget(target);
@@ -94,8 +96,8 @@ public class PreviewRenderer extends TileBasedRenderer {
         }
 
         cam.calcViewRay(state.ray, state.random,
-            -halfWidth + x * invHeight,
-            -0.5 + y * invHeight);
+            -halfWidth + (cropX + x) * invHeight,
+            -0.5 + (cropY + y) * invHeight);
         scene.rayTrace(tracer, state);
 
         // Target highlighting.
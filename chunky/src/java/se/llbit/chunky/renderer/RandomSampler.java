@@ -0,0 +1,68 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import java.util.Random;
+
+import se.llbit.util.XoshiroRandom;
+
+/**
+ * Independent random samples. This is plain Monte Carlo sampling.
+ *
+ * <p>The random number generator is reseeded from the render seed, the pixel
+ * and the sample index at the start of each sample, so the result does not
+ * depend on which worker rendered which pixel. Renders with different render
+ * seeds produce independent samples. Until the first sample is started the
+ * generator is seeded from the random number generator of the render worker.
+ */
+public class RandomSampler extends Sampler {
+  private final XoshiroRandom random;
+  private final long seed;
+
+  /**
+   * Create a sampler with a render seed taken from the given random number generator.
+   */
+  public RandomSampler(Random random) {
+    this(random, random.nextLong());
+  }
+
+  /**
+   * @param random the random number generator of the render worker
+   * @param seed the render seed
+   */
+  public RandomSampler(Random random, long seed) {
+    this.random = new XoshiroRandom(random.nextLong());
+    this.seed = XoshiroRandom.splitMix64(seed);
+  }
+
+  @Override public void startSample(int x, int y, int sample) {
+    random.setSeed(XoshiroRandom.splitMix64(seed ^ (((long) x << 32) | (y & 0xFFFFFFFFL)))
+        + sample);
+  }
+
+  @Override protected int nextSample() {
+    return random.nextInt();
+  }
+
+  @Override public double nextDouble() {
+    return random.nextDouble();
+  }
+
+  @Override public float nextFloat() {
+    return random.nextFloat();
+  }
+}
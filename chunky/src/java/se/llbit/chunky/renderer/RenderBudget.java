@@ -0,0 +1,159 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import se.llbit.chunky.main.ChunkyOptions;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.log.Log;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A wall-clock time budget for a headless render.
+ *
+ * <p>After each pass the budget measures the wall-clock time per sample per
+ * pixel and sizes the next pass: passes are made about {@link #PASS_TIME}
+ * milliseconds long, so that the per-pass overhead stays small, and are
+ * shortened as the deadline comes closer, so that the last pass ends just
+ * in time to save the frame before the deadline. The tile width is chosen so that a tile takes long
+ * enough to render to amortize the cost of scheduling it, while there are
+ * still enough tiles per pass to keep all render threads busy until the end
+ * of the pass.
+ *
+ * <p>The time taken to finalize and save snapshots and render dumps is
+ * measured separately, with {@link #saveCompleted(long)}, and the longest
+ * save is reserved before the deadline for saving the final frame. When
+ * there is not enough time left for another sample per pixel,
+ * {@link #passCompleted(Scene)} returns {@code false} and the caller should
+ * save the frame and stop the render. The target SPP of the scene is never
+ * changed.
+ */
+public class RenderBudget {
+  /** Preferred pass length, in milliseconds. */
+  static final long PASS_TIME = 5000;
+
+  /** Minimum time to render one tile, in milliseconds. */
+  static final double MIN_TILE_TIME = 2;
+
+  /** Minimum number of tiles per render thread in each pass. */
+  static final int TILES_PER_THREAD = 4;
+
+  private final ChunkyOptions options;
+  private final LongSupplier clock;
+  private final long deadline;
+
+  /** Measured render time per sample per pixel, in milliseconds. */
+  private double sampleTime = 0;
+
+  /** Longest measured time to save the frame, in milliseconds. */
+  private long saveTime = 0;
+
+  private int lastSpp = -1;
+  private long lastTime;
+
+  /**
+   * @param options the options that hold the pass size and tile width
+   * @param budget the time budget, in milliseconds, starting now
+   */
+  public RenderBudget(ChunkyOptions options, long budget) {
+    this(options, budget, System::currentTimeMillis);
+  }
+
+  RenderBudget(ChunkyOptions options, long budget, LongSupplier clock) {
+    this.options = options;
+    this.clock = clock;
+    this.deadline = clock.getAsLong() + budget;
+  }
+
+  /**
+   * @return the remaining time, in milliseconds
+   */
+  public long remaining() {
+    return Math.max(0, deadline - clock.getAsLong());
+  }
+
+  /**
+   * Record the render progress of the scene before rendering starts.
+   */
+  public void start(Scene scene) {
+    lastSpp = scene.spp;
+    lastTime = clock.getAsLong();
+  }
+
+  /**
+   * Measure the pass that just completed and size the next pass.
+   *
+   * <p>This must be called after every pass with the scene being rendered.
+   *
+   * @return {@code false} if there is no time left for another pass, and the
+   * render should be stopped
+   */
+  public boolean passCompleted(Scene scene) {
+    long now = clock.getAsLong();
+    if (lastSpp >= 0 && scene.spp > lastSpp) {
+      double time = (now - lastTime) / (double) (scene.spp - lastSpp);
+      // Smooth the estimate to not overreact to a single slow pass.
+      sampleTime = sampleTime == 0 ? time : (sampleTime + time) / 2;
+    }
+    lastSpp = scene.spp;
+    lastTime = now;
+
+    int samplesLeft = scene.getTargetSpp() - scene.spp;
+    if (samplesLeft <= 0 || sampleTime <= 0) {
+      return true;
+    }
+    long remaining = remaining() - saveTime;
+    int sppPerPass = (int) Math.min(samplesLeft, Math.min(PASS_TIME, remaining) / sampleTime);
+    if (sppPerPass < 1) {
+      Log.infof("Render time budget used up at %d SPP", scene.spp);
+      return false;
+    }
+    options.sppPerPass = sppPerPass;
+    options.tileWidth = tileWidth(scene.width, scene.height, Math.max(1, options.renderThreads),
+        sppPerPass, sampleTime);
+    return true;
+  }
+
+  /**
+   * Record the time taken to finalize and save the frame after a pass. The
+   * save time is not counted as render time, and the longest save time is
+   * reserved for saving the final frame.
+   *
+   * <p>This must be called after the saves that follow
+   * {@link #passCompleted(Scene)}, before the next pass starts.
+   *
+   * @param time the time taken to save the frame, in milliseconds
+   */
+  public void saveCompleted(long time) {
+    saveTime = Math.max(saveTime, time);
+    lastTime = clock.getAsLong();
+  }
+
+  /**
+   * @param sampleTime render time for one sample per pixel of the whole canvas, in milliseconds
+   * @return the tile width to use for a pass with the given number of samples per pixel
+   */
+  static int tileWidth(int width, int height, int threads, int sppPerPass, double sampleTime) {
+    double pixels = (double) width * height;
+    // Tile width giving the minimum number of tiles per thread.
+    int maxWidth = (int) Math.sqrt(pixels / (threads * TILES_PER_THREAD));
+    // Tile width where a tile takes the minimum time to render on one thread.
+    double pixelTime = sampleTime * sppPerPass * threads / pixels;
+    int minWidth = (int) Math.ceil(Math.sqrt(MIN_TILE_TIME / pixelTime));
+    return Math.max(1, Math.min(Math.max(minWidth, RenderConstants.TILE_WIDTH_DEFAULT), maxWidth));
+  }
+}
@@ -127,6 +127,12 @@ public interface RenderManager {
    */
   void shutdown();
 
+  /**
+   * Stop the current render after the frame in progress, as if the target
+   * SPP had been reached. The target SPP of the scene is not changed.
+   */
+  void stopRender();
+
   interface SampleBufferConsumer {
     void accept(double[] samples, int width, int height);
   }
@@ -17,7 +17,10 @@
  */
 package se.llbit.chunky.renderer;
 
+import se.llbit.chunky.main.Chunky;
 import se.llbit.log.Log;
+import se.llbit.util.ThreadBudget;
+import se.llbit.util.XoshiroRandom;
 
 import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -25,6 +28,12 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Performs rendering work.
+ *
+ * <p>Each job runs in a section of the global {@link ThreadBudget}, with the
+ * priority the job was submitted with. Workers wait before starting a job
+ * while work of a higher priority is running, for example while the common
+ * thread pool is finalizing a frame. While background work is running, some
+ * workers pause between jobs to leave the background work its thread share.
  */
 public class RenderWorkerPool {
 
@@ -51,7 +60,7 @@ public class RenderWorkerPool {
 
       this.pool = pool;
       this.id = id;
-      this.random = new Random(seed);
+      this.random = new XoshiroRandom(seed);
 
       lastSleep = System.currentTimeMillis();
     }
@@ -62,8 +71,9 @@ public class RenderWorkerPool {
     public void workSleep() throws InterruptedException {
       long workTime = System.currentTimeMillis() - lastSleep;
       if (workTime > SLEEP_INTERVAL) {
-        if (pool.cpuLoad < 100) {
-          double load = (100.0 - pool.cpuLoad) / pool.cpuLoad;
+        int cpuLoad = pool.budget.getCpuLoad();
+        if (cpuLoad < 100) {
+          double load = (100.0 - cpuLoad) / cpuLoad;
           sleep(Math.min((long) (workTime * load), MAX_SLEEP_TIME));
         }
         lastSleep = System.currentTimeMillis();
@@ -99,7 +109,8 @@ public class RenderWorkerPool {
 
   public final int threads;
 
-  private volatile int cpuLoad = 100;
+  private final ThreadBudget budget = Chunky.getThreadBudget();
+  private volatile ThreadBudget.Priority priority = ThreadBudget.Priority.RENDER;
 
   private final ConcurrentLinkedQueue<RenderJobFuture> workQueue = new ConcurrentLinkedQueue<>();
   private final AtomicInteger progress = new AtomicInteger(0);
@@ -124,21 +135,28 @@ public class RenderWorkerPool {
       }
     }
 
-    worker.resetSleep();
-
     RenderJobFuture task = workQueue.poll();
     if (task == null) return;
-    task.task.accept(worker);
+    try (ThreadBudget.Section section = budget.enter(task.priority)) {
+      // Waiting for higher priority work does not count as work time.
+      worker.resetSleep();
+      task.task.accept(worker);
+    }
     task.finished();
 
-    worker.workSleep();
+    if (task.priority == ThreadBudget.Priority.RENDER) {
+      worker.workSleep();
+    }
 
     progress.incrementAndGet();
     synchronized (progress) { progress.notifyAll(); }
   }
 
+  /**
+   * Submit a job with the current priority of the pool.
+   */
   public RenderJobFuture submit(RenderJob task) {
-    RenderJobFuture future = new RenderJobFuture(task);
+    RenderJobFuture future = new RenderJobFuture(task, priority);
     workQueue.add(future);
     synchronized (workQueue) { workQueue.notifyAll(); }
     localProgress.incrementAndGet();
@@ -147,11 +165,25 @@ public class RenderWorkerPool {
 
   /**
    * Set the cpu load. The pools will attempt (not guaranteed) to limit cpu usage to this value.
+   * This sets the CPU load of the global thread budget, so it also applies to the common thread pool.
    * @param cpuLoad percentage of cpu usage, will be clamped to [1..100]
    */
   public void setCpuLoad(int cpuLoad) {
-    // Clamp to 1-100
-    this.cpuLoad = Math.max(Math.min(cpuLoad, 100), 1);
+    budget.setCpuLoad(cpuLoad);
+  }
+
+  /**
+   * @return the priority of submitted jobs
+   */
+  public ThreadBudget.Priority getPriority() {
+    return priority;
+  }
+
+  /**
+   * Set the priority of submitted jobs.
+   */
+  public void setPriority(ThreadBudget.Priority priority) {
+    this.priority = priority;
   }
 
   /**
@@ -177,9 +209,15 @@ public class RenderWorkerPool {
   public static class RenderJobFuture {
     private volatile boolean done = false;
     protected final RenderJob task;
+    protected final ThreadBudget.Priority priority;
 
     protected RenderJobFuture(RenderJob task) {
+      this(task, ThreadBudget.Priority.RENDER);
+    }
+
+    protected RenderJobFuture(RenderJob task, ThreadBudget.Priority priority) {
       this.task = task;
+      this.priority = priority;
     }
 
     protected synchronized void finished() {
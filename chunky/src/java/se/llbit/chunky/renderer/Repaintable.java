@@ -28,4 +28,12 @@ public interface Repaintable {
    * The canvas will try to repaint itself when feasible.
    */
   void repaint();
+
+  /**
+   * Trigger a repaint of a region of the canvas. Only the given region
+   * of the frame has changed since the last repaint.
+   */
+  default void repaint(int x0, int y0, int x1, int y1) {
+    repaint();
+  }
 }
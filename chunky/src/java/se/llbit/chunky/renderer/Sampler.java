@@ -0,0 +1,71 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import java.util.Random;
+
+/**
+ * Source of the random numbers used to render a sample.
+ *
+ * <p>A sampler is a {@link Random}, so it can be passed to everything that
+ * takes the worker random number generator. Each call to {@link #nextDouble()},
+ * {@link #nextFloat()}, {@link #nextInt(int)} etc. consumes one dimension of the
+ * current sample. Samplers that produce stratified sample points rely on the
+ * dimensions being used in the same order for every sample, which is the case
+ * as long as all sampling decisions along a path use the sampler.
+ */
+public abstract class Sampler extends Random {
+
+  protected Sampler() {
+    super(0);
+  }
+
+  /**
+   * Start a new sample. The sample index should count the samples rendered
+   * for the pixel so far.
+   */
+  public abstract void startSample(int x, int y, int sample);
+
+  /**
+   * @return 32 random bits for the next dimension of the current sample
+   */
+  protected abstract int nextSample();
+
+  @Override protected int next(int bits) {
+    return nextSample() >>> (32 - bits);
+  }
+
+  @Override public double nextDouble() {
+    return (nextSample() & 0xFFFFFFFFL) * 0x1.0p-32;
+  }
+
+  @Override public float nextFloat() {
+    return (nextSample() >>> 8) * 0x1.0p-24f;
+  }
+
+  /**
+   * Mix the bits of a 32-bit integer.
+   */
+  protected static int hash(int x) {
+    x ^= x >>> 16;
+    x *= 0x7FEB352D;
+    x ^= x >>> 15;
+    x *= 0x846CA68B;
+    x ^= x >>> 16;
+    return x;
+  }
+}
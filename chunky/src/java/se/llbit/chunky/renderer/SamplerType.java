@@ -0,0 +1,53 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import java.util.Random;
+
+/**
+ * The sampler used by the path tracing renderer.
+ */
+public enum SamplerType {
+  RANDOM("Random") {
+    @Override public Sampler create(Random random, long seed) {
+      return new RandomSampler(random, seed);
+    }
+  },
+  SOBOL("Sobol") {
+    @Override public Sampler create(Random random, long seed) {
+      return new SobolSampler(seed);
+    }
+  };
+
+  private final String name;
+
+  SamplerType(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Create a sampler for a render worker.
+   *
+   * @param random the random number generator of the worker
+   * @param seed the render seed (see {@link se.llbit.chunky.renderer.scene.Scene#getRenderSeed()})
+   */
+  public abstract Sampler create(Random random, long seed);
+
+  @Override public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,166 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.log.Log;
+import se.llbit.util.TaskTracker;
+import se.llbit.util.ThreadBudget;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+
+/**
+ * Writes snapshots on a background thread, so that rendering does not wait
+ * for the image to be written.
+ *
+ * <p>The finalized frame is copied when the snapshot is taken, and the copy
+ * is written by the writer thread. At most {@link #MAX_PENDING} snapshots
+ * wait to be written: if the writer falls behind, the newest waiting
+ * snapshot is replaced by the new one. This bounds the memory used by frame
+ * copies, and the latest frame is always written.
+ *
+ * <p>Each snapshot is written to a temporary file that is renamed when it is
+ * complete, so an exit during the write never leaves a truncated image.
+ */
+public class SnapshotWriter {
+  /** Maximum number of snapshots waiting to be written. */
+  static final int MAX_PENDING = 2;
+
+  private static class Snapshot {
+    final Scene frame;
+    final File file;
+
+    Snapshot(Scene frame, File file) {
+      this.frame = frame;
+      this.file = file;
+    }
+  }
+
+  private final TaskTracker taskTracker;
+  private final ArrayDeque<Snapshot> pending = new ArrayDeque<>();
+  private boolean writing = false;
+  private volatile long writeTime = 0;
+
+  public SnapshotWriter(TaskTracker taskTracker) {
+    this.taskTracker = taskTracker;
+    Thread thread = new Thread(this::run, "Snapshot Writer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Copy the current frame of the scene and queue it to be written to the
+   * given directory. The scene must not be rendering while the frame is copied.
+   */
+  public void save(Scene scene, File directory) {
+    if (directory == null) {
+      Log.error("Can't save snapshot: bad output directory!");
+      return;
+    }
+    Snapshot snapshot = new Snapshot(scene.copyFrame(taskTracker),
+        new File(directory, scene.snapshotFileName()));
+    synchronized (this) {
+      if (pending.size() >= MAX_PENDING) {
+        Snapshot skipped = pending.removeLast();
+        Log.infof("Skipped snapshot %s because the previous snapshots are still being written",
+            skipped.file.getName());
+      }
+      pending.addLast(snapshot);
+      notifyAll();
+    }
+  }
+
+  /**
+   * @return the time taken to write the latest written snapshot, in milliseconds
+   */
+  public long writeTime() {
+    return writeTime;
+  }
+
+  /**
+   * Wait until all queued snapshots have been written.
+   */
+  public synchronized void awaitIdle() throws InterruptedException {
+    while (writing || !pending.isEmpty()) {
+      wait();
+    }
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        Snapshot snapshot;
+        synchronized (this) {
+          while (pending.isEmpty()) {
+            wait();
+          }
+          snapshot = pending.removeFirst();
+          writing = true;
+        }
+        long start = System.currentTimeMillis();
+        // Snapshots are encoded with the background share of the thread
+        // budget, so rendering continues while they are written.
+        try (ThreadBudget.Section section = Chunky.getThreadBudget().enter(ThreadBudget.Priority.BACKGROUND)) {
+          write(snapshot.frame, snapshot.file);
+        } catch (Throwable e) {
+          Log.error("Unchecked exception while writing snapshot.", e);
+        } finally {
+          writeTime = System.currentTimeMillis() - start;
+          synchronized (this) {
+            writing = false;
+            notifyAll();
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      // Interrupted.
+    }
+  }
+
+  /**
+   * Write a finalized frame copy in its output format. Called on the writer
+   * thread, in a background section of the thread budget.
+   */
+  void write(Scene frame, File file) {
+    File directory = file.getParentFile();
+    if (!directory.exists()) {
+      directory.mkdirs();
+    }
+    File temp = new File(directory, file.getName() + ".part");
+    try {
+      try (FileOutputStream out = new FileOutputStream(temp)) {
+        frame.getOutputMode().write(out, frame, taskTracker);
+      }
+      try {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      Log.warn("Failed to write file: " + file.getAbsolutePath(), e);
+      temp.delete();
+    }
+  }
+}
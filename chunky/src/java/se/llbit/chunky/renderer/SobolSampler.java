@@ -0,0 +1,121 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+/**
+ * Owen-scrambled Sobol sampler.
+ *
+ * <p>The dimensions of a sample are split into groups of four, and each group
+ * is a point from the first four dimensions of the Sobol sequence. The sample
+ * index is shuffled and the point is scrambled with a hash-based Owen scramble
+ * seeded by the pixel and the group. This keeps the good stratification of the
+ * low dimensions of the Sobol sequence for every group of four dimensions (for
+ * example the pixel offset, or the two dimensions used at each bounce) while
+ * avoiding correlation between groups and between pixels.
+ *
+ * <p>The sample points only depend on the render seed, the pixel and the
+ * sample index, so renders are deterministic and independent of which worker
+ * rendered which pixel.
+ *
+ * <p>See Burley, "Practical Hash-based Owen Scrambling", JCGT 2020.
+ */
+public class SobolSampler extends Sampler {
+  private static final int[][] DIRECTIONS = new int[4][32];
+
+  static {
+    for (int i = 0; i < 32; ++i) {
+      DIRECTIONS[0][i] = 1 << (31 - i);
+    }
+    // Primitive polynomial degree, coefficients and initial direction numbers
+    // for dimensions 2-4 from the Joe-Kuo table.
+    directions(DIRECTIONS[1], 1, 0, new int[] { 1 });
+    directions(DIRECTIONS[2], 2, 1, new int[] { 1, 3 });
+    directions(DIRECTIONS[3], 3, 1, new int[] { 1, 3, 1 });
+  }
+
+  private static void directions(int[] v, int s, int a, int[] m) {
+    for (int i = 0; i < s; ++i) {
+      v[i] = m[i] << (31 - i);
+    }
+    for (int i = s; i < 32; ++i) {
+      v[i] = v[i - s] ^ (v[i - s] >>> s);
+      for (int k = 1; k < s; ++k) {
+        v[i] ^= ((a >>> (s - 1 - k)) & 1) * v[i - k];
+      }
+    }
+  }
+
+  private final int[] point = new int[4];
+  private final int seed;
+  private int pixelSeed;
+  private int index;
+  private int dimension;
+
+  public SobolSampler() {
+    this(0);
+  }
+
+  /**
+   * @param seed the render seed
+   */
+  public SobolSampler(long seed) {
+    this.seed = hash((int) seed ^ hash((int) (seed >>> 32)));
+  }
+
+  @Override public void startSample(int x, int y, int sample) {
+    pixelSeed = hash(hash(seed ^ x) ^ y);
+    index = sample;
+    dimension = 0;
+  }
+
+  @Override protected int nextSample() {
+    int component = dimension & 3;
+    if (component == 0) {
+      int seed = hash(pixelSeed ^ hash(dimension >>> 2));
+      int shuffled = scramble(index, seed);
+      for (int d = 0; d < 4; ++d) {
+        point[d] = scramble(sobol(shuffled, d), hash(seed + d + 1));
+      }
+    }
+    dimension += 1;
+    return point[component];
+  }
+
+  private static int sobol(int index, int dimension) {
+    int[] v = DIRECTIONS[dimension];
+    int x = 0;
+    for (int bit = 0; index != 0; ++bit, index >>>= 1) {
+      if ((index & 1) != 0) {
+        x ^= v[bit];
+      }
+    }
+    return x;
+  }
+
+  /**
+   * Nested uniform scramble (Owen scramble) using a Laine-Karras style hash.
+   */
+  private static int scramble(int x, int seed) {
+    x = Integer.reverse(x);
+    x ^= x * 0x3D20ADEA;
+    x += seed;
+    x *= (seed >>> 16) | 1;
+    x ^= x * 0x05526C56;
+    x ^= x * 0x53A22864;
+    return Integer.reverse(x);
+  }
+}
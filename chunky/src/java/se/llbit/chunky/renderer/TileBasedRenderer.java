@@ -33,6 +33,7 @@ import java.util.function.BooleanSupplier;
  * A tile based renderer. Simply call {@code submitTiles} to submit a frame's worth of tiles to the work queue.
  * Call {@code manager.pool.awaitEmpty()} to block until all tiles are finished rendering.
  * Call {@code postRender.getAsBoolean()} after each frame (and terminate if it returns {@code true}).
+ * Finished tiles are reported to the render manager, so that only updated tiles are finalized.
  *
  * Implementation detail: Tiles are cached for faster rendering.
  */
@@ -42,6 +43,7 @@ public abstract class TileBasedRenderer implements Renderer {
   private final ArrayList<RenderTile> cachedTiles = new ArrayList<>();
   private int prevWidth = -1;
   private int prevHeight = -1;
+  private int prevTileWidth = -1;
 
   public static class RenderTile {
     public int x0, x1;
@@ -75,7 +77,8 @@ public abstract class TileBasedRenderer implements Renderer {
           WorkerState state = new WorkerState();
           state.ray = new Ray();
           state.ray.n.set(0, 0, -1);
-          state.random = worker.random;
+          state.sampler = createSampler(manager, worker);
+          state.random = state.sampler;
 
           IntIntMutablePair pair = new IntIntMutablePair(0, 0);
 
@@ -85,19 +88,30 @@ public abstract class TileBasedRenderer implements Renderer {
               perPixel.accept(state, pair);
             }
           }
+          manager.markDirty(tile.x0, tile.y0, tile.x1, tile.y1);
         })
     );
   }
 
+  /**
+   * Create the sampler used by a worker to render a tile.
+   * Renderers that use stratified samplers must call {@code Sampler.startSample}
+   * before rendering each sample.
+   */
+  protected Sampler createSampler(DefaultRenderManager manager, RenderWorkerPool.RenderWorker worker) {
+    return new RandomSampler(worker.random);
+  }
+
   private void initTiles(DefaultRenderManager manager) {
     Scene bufferedScene = manager.bufferedScene;
     int width = bufferedScene.width;
     int height = bufferedScene.height;
     int tileWidth = manager.context.tileWidth();
 
-    if (prevWidth != width || prevHeight != height) {
+    if (prevWidth != width || prevHeight != height || prevTileWidth != tileWidth) {
       prevWidth = width;
       prevHeight = height;
+      prevTileWidth = tileWidth;
       cachedTiles.clear();
 
       for (int i = 0; i < width; i += tileWidth) {
@@ -28,4 +28,30 @@ public class WorkerState {
   public Ray ray;
   public Vector4 attenuation = new Vector4();
   public Random random;
+
+  /**
+   * The sampler for the current sample. This is also used as {@code random}
+   * by renderers that use samplers.
+   */
+  public Sampler sampler;
+
+  /**
+   * Collects the first diffuse hit of each sample for the auxiliary buffers.
+   * This is {@code null} when the auxiliary buffers are not recorded.
+   */
+  public AuxiliaryBuffers.Accumulator aux;
+
+  /**
+   * Set by the ray tracer to the fraction of the camera ray of the current
+   * sample that reached the sky through transparent and translucent surfaces.
+   * This is zero if the camera ray hit something opaque.
+   */
+  public double skyTransmittance;
+
+  /**
+   * Transmittance of the camera ray, passed by the path tracer to the ray
+   * that continues it through a translucent surface. This is zero for rays
+   * that do not continue the camera ray.
+   */
+  public double primaryTransmittance;
 }
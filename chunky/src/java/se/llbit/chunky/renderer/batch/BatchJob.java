@@ -0,0 +1,121 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.batch;
+
+import se.llbit.json.JsonArray;
+import se.llbit.json.JsonObject;
+import se.llbit.json.JsonParser;
+import se.llbit.json.JsonValue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One scene in a batch render: the camera presets to render and the
+ * target SPP for each of them.
+ *
+ * <p>A batch file is a JSON array of jobs:
+ * <pre>
+ * [
+ *   { "scene": "castle", "presets": [ "front", "tower" ], "spp": 256 },
+ *   { "scene": "village" }
+ * ]
+ * </pre>
+ * Without presets the saved camera of the scene is rendered, and without
+ * a target SPP the target of the scene is used.
+ */
+public class BatchJob {
+  /** Scene name or path to a scene description file. */
+  public final String scene;
+
+  /** Camera presets to render. If empty the current camera is rendered. */
+  public final List<String> presets;
+
+  /** Target SPP, or -1 to use the scene target. */
+  public final int spp;
+
+  public BatchJob(String scene, List<String> presets, int spp) {
+    this.scene = scene;
+    this.presets = Collections.unmodifiableList(new ArrayList<>(presets));
+    this.spp = spp;
+  }
+
+  /**
+   * Read jobs from a batch file.
+   *
+   * @throws IOException if the file could not be read or is not a valid batch file
+   */
+  public static List<BatchJob> load(File file) throws IOException {
+    try (InputStream in = new FileInputStream(file);
+        JsonParser parser = new JsonParser(in)) {
+      JsonValue value = parser.parse();
+      if (!value.isArray()) {
+        throw new IOException("Batch file must contain an array of jobs");
+      }
+      List<BatchJob> jobs = new ArrayList<>();
+      for (JsonValue item : value.array()) {
+        JsonObject job = item.object();
+        String scene = job.get("scene").stringValue("");
+        if (scene.isEmpty()) {
+          throw new IOException("Missing scene name in batch job " + (jobs.size() + 1));
+        }
+        List<String> presets = new ArrayList<>();
+        JsonArray presetArray = job.get("presets").array();
+        for (JsonValue preset : presetArray) {
+          presets.add(preset.stringValue(""));
+        }
+        jobs.add(new BatchJob(scene, presets, job.get("spp").intValue(-1)));
+      }
+      return jobs;
+    } catch (JsonParser.SyntaxError e) {
+      throw new IOException("JSON syntax error in batch file: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Make a camera preset name safe to use as part of a file name.
+   *
+   * <p>Path separators, characters reserved on Windows and control
+   * characters are replaced by underscores, as are runs of dots, so a
+   * preset name can not point outside of the snapshot directory.
+   */
+  public static String fileName(String preset) {
+    StringBuilder name = new StringBuilder(preset.length());
+    for (int i = 0; i < preset.length(); ++i) {
+      char c = preset.charAt(i);
+      if (c < 0x20 || c == 0x7F || "/\\:*?\"<>|".indexOf(c) >= 0) {
+        name.append('_');
+      } else if (c == '.' && (i > 0 && preset.charAt(i - 1) == '.'
+          || i + 1 < preset.length() && preset.charAt(i + 1) == '.')) {
+        name.append('_');
+      } else {
+        name.append(c);
+      }
+    }
+    // Windows silently drops trailing dots and spaces.
+    int end = name.length();
+    while (end > 0 && (name.charAt(end - 1) == '.' || name.charAt(end - 1) == ' ')) {
+      name.setCharAt(--end, '_');
+    }
+    return name.length() == 0 ? "_" : name.toString();
+  }
+}
@@ -0,0 +1,255 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.batch;
+
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.main.ChunkyOptions;
+import se.llbit.chunky.renderer.DefaultRenderManager;
+import se.llbit.chunky.renderer.RenderContext;
+import se.llbit.chunky.renderer.Renderer;
+import se.llbit.chunky.renderer.ResetReason;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.json.JsonObject;
+import se.llbit.log.Log;
+import se.llbit.util.TaskTracker;
+import se.llbit.util.ThreadBudget;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders a list of scenes and camera presets in one go.
+ *
+ * <p>All jobs share one render worker pool, and resource packs are only
+ * loaded once. Jobs are grouped by scene, so each scene, with its octree
+ * and BVHs, is loaded once and all of its camera presets are rendered
+ * back-to-back. A snapshot is written to the snapshot directory of the
+ * scene as soon as each job is done. Scene files are never modified.
+ */
+public class BatchRenderer {
+  protected final Chunky chunky;
+  protected final RenderContext context;
+  protected final DefaultRenderManager manager;
+
+  public BatchRenderer(Chunky chunky) {
+    this.chunky = chunky;
+    this.context = new RenderContext(chunky);
+    this.manager = new DefaultRenderManager(context, true);
+  }
+
+  /**
+   * Render all jobs. A job renders one image for each of its camera presets,
+   * or one image with the scene camera if it has no presets. Images that fail
+   * are logged and skipped.
+   *
+   * @return the number of images that failed, including the images of jobs
+   * whose scene could not be loaded
+   */
+  public int render(List<BatchJob> jobs, TaskTracker taskTracker) throws InterruptedException {
+    // Group the jobs by scene file, keeping the order in which scenes first appear.
+    // A scene can be named by its name or by different paths to its description.
+    Map<File, List<BatchJob>> scenes = new LinkedHashMap<>();
+    int failed = 0;
+    for (BatchJob job : jobs) {
+      try {
+        scenes.computeIfAbsent(sceneFile(job.scene), file -> new ArrayList<>()).add(job);
+      } catch (IOException e) {
+        Log.errorf("Failed to load scene %s: %s", job.scene, e.getMessage());
+        failed += images(job);
+      }
+    }
+    for (Map.Entry<File, List<BatchJob>> entry : scenes.entrySet()) {
+      Scene scene;
+      Renderer renderer;
+      try {
+        scene = loadScene(entry.getKey(), taskTracker);
+        renderer = renderer(scene);
+      } catch (IOException e) {
+        Log.errorf("Failed to load scene %s: %s", entry.getKey(), e.getMessage());
+        for (BatchJob job : entry.getValue()) {
+          failed += images(job);
+        }
+        continue;
+      }
+      JsonObject camera = scene.camera().toJson();
+      int sceneTarget = scene.getTargetSpp();
+      for (BatchJob job : entry.getValue()) {
+        int target = job.spp > 0 ? job.spp : sceneTarget;
+        if (job.presets.isEmpty()) {
+          scene.camera().importFromJson(camera);
+          if (!renderSnapshot(scene, renderer, scene.name(), target, taskTracker)) {
+            failed += 1;
+          }
+        }
+        for (String preset : job.presets) {
+          if (!scene.getCameraPresets().get(preset).isObject()) {
+            Log.errorf("Scene %s has no camera preset named %s", scene.name(), preset);
+            failed += 1;
+            continue;
+          }
+          scene.loadCameraPreset(preset);
+          if (!renderSnapshot(scene, renderer,
+              scene.name() + "-" + BatchJob.fileName(preset), target, taskTracker)) {
+            failed += 1;
+          }
+        }
+      }
+    }
+    return failed;
+  }
+
+  /**
+   * @return the number of images rendered by a job
+   */
+  private static int images(BatchJob job) {
+    return Math.max(1, job.presets.size());
+  }
+
+  /**
+   * @param sceneName scene name or path to a scene description file
+   * @return the canonical path of the scene description file
+   */
+  protected File sceneFile(String sceneName) throws IOException {
+    ChunkyOptions options = chunky.options.clone();
+    options.sceneName = sceneName;
+    return options.getSceneDescriptionFile().getCanonicalFile();
+  }
+
+  /**
+   * Load a scene into the scene of the render manager.
+   *
+   * @param sceneName scene name or path to a scene description file
+   */
+  protected Scene loadScene(String sceneName, TaskTracker taskTracker) throws IOException {
+    return loadScene(sceneFile(sceneName), taskTracker);
+  }
+
+  /**
+   * Load a scene into the scene of the render manager.
+   *
+   * @param file the scene description file
+   */
+  protected Scene loadScene(File file, TaskTracker taskTracker) throws IOException {
+    if (!file.isFile()) {
+      throw new IOException("Scene not found: " + file);
+    }
+    String name = file.getName();
+    name = name.substring(0, name.length() - Scene.EXTENSION.length());
+    context.setSceneDirectory(file.getParentFile());
+    Scene scene = manager.bufferedScene;
+    scene.loadScene(context, name, taskTracker);
+    scene.startHeadlessRender();
+    return scene;
+  }
+
+  /**
+   * @return the renderer selected by the scene, ready to render the loaded scene
+   */
+  protected Renderer renderer(Scene scene) throws IOException {
+    Renderer renderer = DefaultRenderManager.renderers.get(scene.getRenderer());
+    if (renderer == null) {
+      throw new IOException("Unknown renderer: " + scene.getRenderer());
+    }
+    renderer.sceneReset(manager, ResetReason.SCENE_LOADED, 1);
+    return renderer;
+  }
+
+  /**
+   * Render the scene from scratch to the target SPP and save a snapshot.
+   *
+   * @param imageName image file name without SPP and extension
+   * @return {@code false} if the snapshot could not be saved
+   */
+  protected boolean renderSnapshot(Scene scene, Renderer renderer, String imageName, int target,
+      TaskTracker taskTracker) throws InterruptedException {
+    renderFrame(scene, renderer, imageName, target, taskTracker);
+    File directory = new File(context.getSceneDirectory(), "snapshots");
+    return saveFrame(scene, new File(directory, String.format("%s-%d%s", imageName, scene.spp,
+        scene.getOutputMode().getExtension())), taskTracker);
+  }
+
+  /**
+   * Render the scene from scratch to the target SPP.
+   */
+  protected void renderFrame(Scene scene, Renderer renderer, String name, int target,
+      TaskTracker taskTracker) throws InterruptedException {
+    scene.spp = 0;
+    scene.setTargetSpp(target);
+    long start = System.currentTimeMillis();
+    try (TaskTracker.Task task = taskTracker.task("Rendering " + name, target)) {
+      while (scene.spp < target) {
+        renderer.render(manager);
+        task.update(target, scene.spp);
+      }
+    }
+    scene.renderTime = System.currentTimeMillis() - start;
+  }
+
+  /**
+   * Post process the current frame and write it in the output format of the scene.
+   *
+   * <p>The image is first written to a temporary file next to the target
+   * file and then renamed, so the target file either does not exist or
+   * holds a complete image, even if the write is interrupted.
+   *
+   * @return {@code false} if the image could not be written
+   */
+  protected boolean saveFrame(Scene scene, File file, TaskTracker taskTracker) {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      Log.errorf("Failed to create output directory %s", directory);
+      return false;
+    }
+    scene.postProcessFrame(taskTracker);
+    File temp = new File(directory, file.getName() + ".part");
+    try {
+      try (ThreadBudget.Section section = Chunky.getThreadBudget().enter(ThreadBudget.Priority.FINALIZE);
+          OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+        scene.writeFrame(out, scene.getOutputMode(), taskTracker, context.numRenderThreads());
+      }
+      try {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      Log.error("Failed to write " + file, e);
+      temp.delete();
+      return false;
+    }
+    Log.infof("Saved %s (%d SPP in %.1f s)", file, scene.spp, scene.renderTime / 1000.0);
+    return true;
+  }
+
+  /**
+   * Stop the render workers.
+   */
+  public void shutdown() {
+    manager.pool.interrupt();
+  }
+}
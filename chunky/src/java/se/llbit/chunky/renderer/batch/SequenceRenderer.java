@@ -0,0 +1,240 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.batch;
+
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.Renderer;
+import se.llbit.chunky.renderer.scene.Camera;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.chunky.renderer.scene.Sun;
+import se.llbit.json.JsonObject;
+import se.llbit.json.JsonParser;
+import se.llbit.json.JsonValue;
+import se.llbit.log.Log;
+import se.llbit.math.Vector3;
+import se.llbit.util.TaskTracker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Renders an image sequence of a scene with an animated camera.
+ *
+ * <p>A sequence file is a JSON object naming the scene and listing
+ * keyframes:
+ * <pre>
+ * {
+ *   "scene": "castle",
+ *   "frames": 240,
+ *   "spp": 128,
+ *   "fps": 24,
+ *   "output": "castle-flythrough",
+ *   "keyframes": [
+ *     { "frame": 0, "preset": "gate", "sunAltitude": 0.3 },
+ *     { "frame": 120, "camera": { "position": { "x": 10, "y": 80, "z": -4 } } },
+ *     { "frame": 239, "preset": "tower", "sunAltitude": 0.9, "spp": 256 }
+ *   ]
+ * }
+ * </pre>
+ * Each keyframe sets the camera from a camera preset, a camera object in the
+ * format of the scene description, or otherwise the saved camera of the
+ * scene. The camera position and orientation follow a smooth path through
+ * the keyframes, while the field of view, depth of field, sun angles
+ * (in radians), animation time and target SPP are interpolated linearly.
+ * Without animation time keyframes the animation time advances with
+ * {@code fps} frames per second, if set.
+ *
+ * <p>The scene is loaded once for the whole sequence. The sun is only
+ * updated when it moves, so the sky cache is reused between frames with the
+ * same sun. Each frame is written as soon as it is done, and frames that
+ * already exist in the output directory are skipped, so that an interrupted
+ * sequence can be resumed. Frames are written to a temporary file and then
+ * renamed, so an interrupted write never leaves a truncated frame behind.
+ */
+public class SequenceRenderer extends BatchRenderer {
+  private static class Keyframe {
+    final int frame;
+    final JsonObject json;
+    final JsonObject camera;
+
+    Keyframe(JsonObject json, JsonObject camera) {
+      this.frame = json.get("frame").intValue(0);
+      this.json = json;
+      this.camera = camera;
+    }
+  }
+
+  public SequenceRenderer(Chunky chunky) {
+    super(chunky);
+  }
+
+  /**
+   * Render all frames of the sequence.
+   */
+  public void render(File sequenceFile, TaskTracker taskTracker)
+      throws IOException, InterruptedException {
+    JsonObject sequence;
+    try (InputStream in = new FileInputStream(sequenceFile);
+        JsonParser parser = new JsonParser(in)) {
+      sequence = parser.parse().object();
+    } catch (JsonParser.SyntaxError e) {
+      throw new IOException("JSON syntax error in sequence file: " + e.getMessage());
+    }
+    String sceneName = sequence.get("scene").stringValue("");
+    if (sceneName.isEmpty()) {
+      throw new IOException("Missing scene name in sequence file");
+    }
+    Scene scene = loadScene(sceneName, taskTracker);
+    Renderer renderer = renderer(scene);
+    Camera camera = scene.camera();
+
+    List<Keyframe> keyframes = new ArrayList<>();
+    for (JsonValue value : sequence.get("keyframes").array()) {
+      JsonObject json = value.object();
+      JsonObject cameraJson = camera.toJson();
+      String preset = json.get("preset").stringValue("");
+      if (!preset.isEmpty()) {
+        if (!scene.getCameraPresets().get(preset).isObject()) {
+          throw new IOException("Scene has no camera preset named " + preset);
+        }
+        cameraJson = scene.getCameraPresets().get(preset).object();
+      } else if (json.get("camera").isObject()) {
+        cameraJson = json.get("camera").object();
+      }
+      keyframes.add(new Keyframe(json, cameraJson));
+    }
+    if (keyframes.isEmpty()) {
+      throw new IOException("The sequence has no keyframes");
+    }
+    keyframes.sort(Comparator.comparingInt(keyframe -> keyframe.frame));
+    // Projection mode and shift are taken from the first keyframe.
+    camera.importFromJson(keyframes.get(0).camera);
+
+    Vector3 position = camera.getPosition();
+    Track x = track(keyframes, true, k -> position(k.camera, "x", position.x));
+    Track y = track(keyframes, true, k -> position(k.camera, "y", position.y));
+    Track z = track(keyframes, true, k -> position(k.camera, "z", position.z));
+    Track yaw = angleTrack(keyframes, k -> orientation(k.camera, "yaw", camera.getYaw()));
+    Track pitch = angleTrack(keyframes, k -> orientation(k.camera, "pitch", camera.getPitch()));
+    Track roll = angleTrack(keyframes, k -> orientation(k.camera, "roll", camera.getRoll()));
+    Track fov = track(keyframes, false, k -> k.camera.get("fov").doubleValue(camera.getFov()));
+    Track subjectDistance = track(keyframes, false,
+        k -> k.camera.get("focalOffset").doubleValue(camera.getSubjectDistance()));
+    Track dof = track(keyframes, false, k -> dof(k.camera, camera.getDof()));
+    Track sunAzimuth = optionalTrack(keyframes, "sunAzimuth");
+    Track sunAltitude = optionalTrack(keyframes, "sunAltitude");
+    Track animationTime = optionalTrack(keyframes, "animationTime");
+    Track spp = optionalTrack(keyframes, "spp");
+
+    int frames = sequence.get("frames").intValue(keyframes.get(keyframes.size() - 1).frame + 1);
+    int defaultSpp = sequence.get("spp").intValue(scene.getTargetSpp());
+    double fps = sequence.get("fps").doubleValue(0);
+    double startTime = scene.getAnimationTime();
+    String outputDir = sequence.get("output").stringValue("");
+    File output = outputDir.isEmpty()
+        ? new File(context.getSceneDirectory(), scene.name() + "-frames")
+        : new File(outputDir);
+
+    Sun sun = scene.sun();
+    for (int frame = 0; frame < frames; ++frame) {
+      File file = new File(output, String.format("%s-%05d%s", scene.name(), frame,
+          scene.getOutputMode().getExtension()));
+      if (file.exists()) {
+        Log.infof("Skipping frame %d: %s already exists", frame, file);
+        continue;
+      }
+      camera.setPosition(new Vector3(x.valueAt(frame), y.valueAt(frame), z.valueAt(frame)));
+      camera.setView(yaw.valueAt(frame), pitch.valueAt(frame), roll.valueAt(frame));
+      camera.setFoV(fov.valueAt(frame));
+      camera.setSubjectDistance(subjectDistance.valueAt(frame));
+      camera.setDof(dof.valueAt(frame));
+      if (sunAzimuth != null && sun.getAzimuth() != sunAzimuth.valueAt(frame)) {
+        sun.setAzimuth(sunAzimuth.valueAt(frame));
+      }
+      if (sunAltitude != null && sun.getAltitude() != sunAltitude.valueAt(frame)) {
+        sun.setAltitude(sunAltitude.valueAt(frame));
+      }
+      if (animationTime != null) {
+        scene.setAnimationTime(animationTime.valueAt(frame));
+      } else if (fps > 0) {
+        scene.setAnimationTime(startTime + frame / fps);
+      }
+      int target = spp != null ? (int) Math.round(spp.valueAt(frame)) : defaultSpp;
+      renderFrame(scene, renderer, String.format("frame %d of %d", frame + 1, frames),
+          Math.max(1, target), taskTracker);
+      saveFrame(scene, file, taskTracker);
+    }
+  }
+
+  private static Track track(List<Keyframe> keyframes, boolean smooth,
+      ToDoubleFunction<Keyframe> value) {
+    int[] frames = new int[keyframes.size()];
+    double[] values = new double[keyframes.size()];
+    for (int i = 0; i < frames.length; ++i) {
+      frames[i] = keyframes.get(i).frame;
+      values[i] = value.applyAsDouble(keyframes.get(i));
+    }
+    return new Track(frames, values, smooth);
+  }
+
+  private static Track angleTrack(List<Keyframe> keyframes, ToDoubleFunction<Keyframe> value) {
+    int[] frames = new int[keyframes.size()];
+    double[] values = new double[keyframes.size()];
+    for (int i = 0; i < frames.length; ++i) {
+      frames[i] = keyframes.get(i).frame;
+      values[i] = value.applyAsDouble(keyframes.get(i));
+    }
+    return new Track(frames, Track.unwrapAngles(values), true);
+  }
+
+  /**
+   * @return a linear track for a keyframe setting, or {@code null} if no keyframe has the setting
+   */
+  private static Track optionalTrack(List<Keyframe> keyframes, String name) {
+    List<Keyframe> defined = new ArrayList<>();
+    for (Keyframe keyframe : keyframes) {
+      if (!keyframe.json.get(name).isUnknown()) {
+        defined.add(keyframe);
+      }
+    }
+    if (defined.isEmpty()) {
+      return null;
+    }
+    return track(defined, false, k -> k.json.get(name).doubleValue(0));
+  }
+
+  private static double position(JsonObject camera, String axis, double defaultValue) {
+    return camera.get("position").object().get(axis).doubleValue(defaultValue);
+  }
+
+  private static double orientation(JsonObject camera, String angle, double defaultValue) {
+    return camera.get("orientation").object().get(angle).doubleValue(defaultValue);
+  }
+
+  private static double dof(JsonObject camera, double defaultValue) {
+    if (camera.get("dof").stringValue("").equals("Infinity")) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return camera.get("dof").doubleValue(defaultValue);
+  }
+}
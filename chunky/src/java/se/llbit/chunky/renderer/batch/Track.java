@@ -0,0 +1,107 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.batch;
+
+import java.util.Arrays;
+
+/**
+ * The values of one animated property at a number of keyframes.
+ *
+ * <p>Smooth tracks are interpolated with a cubic Hermite spline whose
+ * tangents are the slopes between the neighboring keyframes (a Catmull-Rom
+ * spline adapted to uneven keyframe spacing). Other tracks are interpolated
+ * linearly. Before the first and after the last keyframe the value is
+ * constant.
+ */
+public class Track {
+  private final int[] frames;
+  private final double[] values;
+  private final boolean smooth;
+
+  /**
+   * @param frames keyframe frame numbers, in increasing order
+   * @param values the value at each keyframe
+   * @param smooth {@code true} for spline interpolation, {@code false} for linear interpolation
+   */
+  public Track(int[] frames, double[] values, boolean smooth) {
+    if (frames.length == 0 || frames.length != values.length) {
+      throw new IllegalArgumentException("A track needs one value for each keyframe");
+    }
+    for (int i = 1; i < frames.length; ++i) {
+      if (frames[i] <= frames[i - 1]) {
+        throw new IllegalArgumentException("Keyframes must be in increasing frame order");
+      }
+    }
+    this.frames = frames.clone();
+    this.values = values.clone();
+    this.smooth = smooth;
+  }
+
+  /**
+   * Shift angles by multiples of 2π so that each angle is within π of the
+   * previous angle. This makes rotations take the shortest way between keyframes.
+   */
+  public static double[] unwrapAngles(double[] angles) {
+    double[] result = angles.clone();
+    for (int i = 1; i < result.length; ++i) {
+      double delta = result[i] - result[i - 1];
+      result[i] -= 2 * Math.PI * Math.round(delta / (2 * Math.PI));
+    }
+    return result;
+  }
+
+  public double valueAt(double frame) {
+    int last = frames.length - 1;
+    if (frame <= frames[0]) {
+      return values[0];
+    }
+    if (frame >= frames[last]) {
+      return values[last];
+    }
+    int i = Arrays.binarySearch(frames, (int) Math.floor(frame));
+    if (i < 0) {
+      i = -i - 2;
+    }
+    double p0 = values[i];
+    double p1 = values[i + 1];
+    double h = frames[i + 1] - frames[i];
+    double t = (frame - frames[i]) / h;
+    if (Double.isInfinite(p0) || Double.isInfinite(p1)) {
+      // Infinite values can not be interpolated.
+      return t < 1 ? p0 : p1;
+    }
+    if (!smooth) {
+      return p0 + (p1 - p0) * t;
+    }
+    double m0 = h * slope(i);
+    double m1 = h * slope(i + 1);
+    double t2 = t * t;
+    double t3 = t2 * t;
+    return (2 * t3 - 3 * t2 + 1) * p0 + (t3 - 2 * t2 + t) * m0
+        + (-2 * t3 + 3 * t2) * p1 + (t3 - t2) * m1;
+  }
+
+  /**
+   * @return the tangent at a keyframe, per frame
+   */
+  private double slope(int i) {
+    int a = Math.max(0, i - 1);
+    int b = Math.min(frames.length - 1, i + 1);
+    double slope = (values[b] - values[a]) / (frames[b] - frames[a]);
+    return Double.isFinite(slope) ? slope : 0;
+  }
+}
@@ -0,0 +1,234 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Messages exchanged between a {@link RenderCoordinator} and its render nodes.
+ *
+ * <p>All messages start with a one byte message type. A node opens the
+ * connection with {@link #HELLO}, the coordinator replies with {@link #SCENE}
+ * and then sends one {@link #JOB} at a time. The node answers each job with
+ * a {@link #RESULT}, and sends {@link #KEEPALIVE} messages while it is
+ * rendering so that the coordinator can tell a slow node from a dead one.
+ * When there is no more work the coordinator sends {@link #STOP}.
+ */
+final class Protocol {
+  static final int MAGIC = 0x43484E4B; // "CHNK"
+  static final int VERSION = 1;
+
+  /** Node to coordinator: magic number and protocol version. */
+  static final int HELLO = 1;
+
+  /** Coordinator to node: scene name and render seed followed by the scene files. */
+  static final int SCENE = 2;
+
+  /** Coordinator to node: first sample index and sample count to render. */
+  static final int JOB = 3;
+
+  /** Node to coordinator: first sample index, render time and sample buffer. */
+  static final int RESULT = 4;
+
+  /** Node to coordinator: the node is still rendering. */
+  static final int KEEPALIVE = 5;
+
+  /** Coordinator to node: the render is done, close the connection. */
+  static final int STOP = 6;
+
+  /** Nodes send a keepalive message this often while rendering (in ms). */
+  static final int KEEPALIVE_INTERVAL = 10000;
+
+  /** The coordinator drops nodes that have been quiet for this long (in ms). */
+  static final int TIMEOUT = 6 * KEEPALIVE_INTERVAL;
+
+  private static final int BLOCK_SIZE = 1 << 16;
+
+  private Protocol() { }
+
+  static void writeHello(DataOutputStream out) throws IOException {
+    out.writeByte(HELLO);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.flush();
+  }
+
+  static void readHello(DataInputStream in) throws IOException {
+    expect(in, HELLO);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a Chunky render node");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException(String.format(
+          "Unsupported protocol version %d (expected %d)", version, VERSION));
+    }
+  }
+
+  /**
+   * Read the next message type.
+   *
+   * @throws IOException if the message type is not the expected type
+   */
+  static void expect(DataInputStream in, int type) throws IOException {
+    int actual = in.readUnsignedByte();
+    if (actual != type) {
+      throw new IOException(String.format("Unexpected message %d (expected %d)", actual, type));
+    }
+  }
+
+  /**
+   * Write a file as its name, length and content.
+   */
+  static void writeFile(DataOutputStream out, File file) throws IOException {
+    out.writeUTF(file.getName());
+    out.writeLong(file.length());
+    try (InputStream in = new FileInputStream(file)) {
+      copy(in, out, file.length());
+    }
+  }
+
+  /**
+   * Read a file written by {@link #writeFile} into the given directory.
+   */
+  static File readFile(DataInputStream in, File directory) throws IOException {
+    String name = new File(in.readUTF()).getName();
+    long length = in.readLong();
+    File file = new File(directory, name);
+    try (OutputStream out = new FileOutputStream(file)) {
+      copy(in, out, length);
+    }
+    return file;
+  }
+
+  private static void copy(InputStream in, OutputStream out, long length) throws IOException {
+    byte[] buffer = new byte[BLOCK_SIZE];
+    while (length > 0) {
+      int n = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+      if (n < 0) {
+        throw new EOFException();
+      }
+      out.write(buffer, 0, n);
+      length -= n;
+    }
+  }
+
+  /**
+   * Write a sample buffer as deflate compressed single precision floats.
+   * The compressed data is written in length-prefixed blocks, terminated
+   * by an empty block.
+   */
+  static void writeSamples(DataOutputStream out, double[] samples) throws IOException {
+    out.writeInt(samples.length);
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      byte[] input = new byte[BLOCK_SIZE];
+      byte[] output = new byte[BLOCK_SIZE];
+      for (int i = 0; i < samples.length; ) {
+        int n = 0;
+        for (; i < samples.length && n < input.length; ++i, n += 4) {
+          int bits = Float.floatToIntBits((float) samples[i]);
+          input[n] = (byte) (bits >>> 24);
+          input[n + 1] = (byte) (bits >>> 16);
+          input[n + 2] = (byte) (bits >>> 8);
+          input[n + 3] = (byte) bits;
+        }
+        deflater.setInput(input, 0, n);
+        while (!deflater.needsInput()) {
+          writeBlock(out, output, deflater.deflate(output));
+        }
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        writeBlock(out, output, deflater.deflate(output));
+      }
+      out.writeInt(0);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static void writeBlock(DataOutputStream out, byte[] block, int length)
+      throws IOException {
+    if (length > 0) {
+      out.writeInt(length);
+      out.write(block, 0, length);
+    }
+  }
+
+  /**
+   * Read a sample buffer written by {@link #writeSamples}.
+   *
+   * @throws IOException if the number of samples is not the expected number
+   */
+  static void readSamples(DataInputStream in, double[] samples) throws IOException {
+    int count = in.readInt();
+    if (count != samples.length) {
+      throw new IOException(String.format(
+          "Sample buffer size mismatch: got %d samples, expected %d", count, samples.length));
+    }
+    Inflater inflater = new Inflater();
+    try {
+      byte[] block = new byte[BLOCK_SIZE];
+      byte[] output = new byte[BLOCK_SIZE];
+      int i = 0;
+      int buffered = 0;
+      for (int length = in.readInt(); length > 0; length = in.readInt()) {
+        if (length > block.length) {
+          block = new byte[length];
+        }
+        in.readFully(block, 0, length);
+        inflater.setInput(block, 0, length);
+        int n;
+        while ((n = inflater.inflate(output, buffered, output.length - buffered)) > 0) {
+          buffered += n;
+          int end = buffered & ~3;
+          if (i + end / 4 > samples.length) {
+            throw new IOException("Corrupt sample buffer");
+          }
+          for (int j = 0; j < end; j += 4, ++i) {
+            samples[i] = Float.intBitsToFloat((output[j] & 0xFF) << 24
+                | (output[j + 1] & 0xFF) << 16
+                | (output[j + 2] & 0xFF) << 8
+                | (output[j + 3] & 0xFF));
+          }
+          // Keep the bytes of an incomplete sample for the next round.
+          System.arraycopy(output, end, output, 0, buffered - end);
+          buffered -= end;
+        }
+      }
+      if (i != samples.length || buffered != 0 || !inflater.finished()) {
+        throw new IOException("Truncated sample buffer");
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt sample buffer", e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
@@ -0,0 +1,322 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.distributed;
+
+import se.llbit.chunky.renderer.RenderContext;
+import se.llbit.chunky.renderer.SnapshotWriter;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.json.JsonObject;
+import se.llbit.json.PrettyPrinter;
+import se.llbit.log.Log;
+import se.llbit.util.TaskTracker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Distributes the rendering of a scene over render nodes connected over TCP.
+ *
+ * <p>The coordinator sends the scene description and the cached octree and
+ * emitter grid of the scene to each node that connects, so nodes do not need
+ * a copy of the world. The remaining samples up to the target SPP are split
+ * into jobs of consecutive sample indices. Samplers derive the samples of a
+ * pixel from the render seed and the sample index, and all nodes use the
+ * render seed of the coordinator, so a job renders the same samples on any
+ * node and two jobs never render the same sample. Each finished job is merged
+ * into the sample buffer of the scene as soon as it arrives.
+ *
+ * <p>Jobs of a node that disconnects, fails, or stops responding are handed
+ * out again to the remaining nodes.
+ *
+ * <p>Nodes must use the same resource packs as the coordinator, and a skymap
+ * file used by the scene must exist at the same path on each node.
+ */
+public class RenderCoordinator {
+  /** Default number of samples per pixel in each job. */
+  public static final int DEFAULT_JOB_SPP = 64;
+
+  private static final String[] SCENE_FILES = { Scene.EXTENSION, ".octree2", ".emittergrid" };
+
+  private static class Job {
+    final int start;
+    final int count;
+
+    Job(int start, int count) {
+      this.start = start;
+      this.count = count;
+    }
+  }
+
+  private final Scene scene;
+  private final RenderContext context;
+  private final int jobSpp;
+  private final Deque<Job> failedJobs = new ArrayDeque<>();
+  private final List<Socket> connections = new ArrayList<>();
+
+  /** Held while saving, so that saves from different node threads do not overlap. */
+  private final Object saveLock = new Object();
+  private int nextSample;
+  private int activeJobs = 0;
+  private long lastMerge;
+  private TaskTracker.Task renderTask = TaskTracker.Task.NONE;
+  private SnapshotWriter snapshotWriter;
+
+  /**
+   * @param scene the scene to render, with the current render dump loaded
+   * @param context render context with the scene directory of the scene
+   * @param jobSpp number of samples per pixel in each job
+   */
+  public RenderCoordinator(Scene scene, RenderContext context, int jobSpp) {
+    this.scene = scene;
+    this.context = context;
+    this.jobSpp = Math.max(1, jobSpp);
+    this.nextSample = scene.spp;
+  }
+
+  /**
+   * Accept render nodes on the given port and hand out jobs until the
+   * scene reaches its target SPP. The render dump of the scene is saved
+   * at the dump frequency of the scene and when the render is done.
+   */
+  public void render(int port, TaskTracker taskTracker) throws IOException, InterruptedException {
+    List<File> files = new ArrayList<>();
+    for (String extension : SCENE_FILES) {
+      File file = context.getSceneFile(scene.name() + extension);
+      if (file.isFile()) {
+        files.add(file);
+      }
+    }
+    if (files.size() < 2) {
+      throw new IOException("The scene has no saved octree. Save the scene before rendering it"
+          + " with render nodes.");
+    }
+
+    snapshotWriter = new SnapshotWriter(taskTracker);
+    try (TaskTracker.Task task = taskTracker.task("Rendering", scene.getTargetSpp());
+        ServerSocket server = new ServerSocket(port)) {
+      renderTask = task;
+      task.update(scene.getTargetSpp(), scene.spp);
+      Log.infof("Waiting for render nodes on port %d", server.getLocalPort());
+      server.setSoTimeout(1000);
+      lastMerge = System.currentTimeMillis();
+      List<Thread> threads = new ArrayList<>();
+      while (!isDone()) {
+        Socket socket;
+        try {
+          socket = server.accept();
+        } catch (SocketTimeoutException e) {
+          continue;
+        }
+        synchronized (connections) {
+          connections.add(socket);
+        }
+        Thread thread = new Thread(() -> serve(socket, files),
+            "Render Node " + socket.getRemoteSocketAddress());
+        thread.start();
+        threads.add(thread);
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } finally {
+      renderTask = TaskTracker.Task.NONE;
+      synchronized (connections) {
+        for (Socket socket : connections) {
+          socket.close();
+        }
+      }
+    }
+    saveDump(taskTracker);
+    snapshotWriter.awaitIdle();
+  }
+
+  private synchronized boolean isDone() {
+    return scene.spp >= scene.getTargetSpp();
+  }
+
+  /**
+   * Send the scene to a node, then keep it busy with jobs until there is no more work.
+   */
+  private void serve(Socket socket, List<File> files) {
+    String node = socket.getRemoteSocketAddress().toString();
+    Job job = null;
+    try {
+      socket.setSoTimeout(Protocol.TIMEOUT);
+      socket.setTcpNoDelay(true);
+      DataInputStream in =
+          new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      Protocol.readHello(in);
+      Log.infof("Render node connected: %s", node);
+      out.writeByte(Protocol.SCENE);
+      out.writeUTF(scene.name());
+      out.writeLong(scene.getRenderSeed());
+      out.writeInt(files.size());
+      for (File file : files) {
+        Protocol.writeFile(out, file);
+      }
+      out.flush();
+
+      double[] samples = new double[scene.getSampleBuffer().length];
+      while ((job = takeJob()) != null) {
+        out.writeByte(Protocol.JOB);
+        out.writeInt(job.start);
+        out.writeInt(job.count);
+        out.flush();
+        int type;
+        while ((type = in.readUnsignedByte()) == Protocol.KEEPALIVE) {
+          // The node is still working on the job.
+        }
+        if (type != Protocol.RESULT) {
+          throw new IOException("Unexpected message " + type);
+        }
+        if (in.readInt() != job.start) {
+          throw new IOException("Result does not match the current job");
+        }
+        Protocol.readSamples(in, samples);
+        merge(job, samples);
+        job = null;
+      }
+      out.writeByte(Protocol.STOP);
+      out.flush();
+      Log.infof("Render node finished: %s", node);
+    } catch (IOException e) {
+      if (!isDone()) {
+        Log.warnf("Render node %s failed: %s", node, e.getMessage());
+      }
+    } catch (InterruptedException e) {
+      // Stop serving the node.
+    } finally {
+      if (job != null) {
+        requeue(job);
+      }
+      synchronized (connections) {
+        connections.remove(socket);
+      }
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Ignored.
+      }
+    }
+  }
+
+  /**
+   * Wait for the next job. Returns {@code null} when there are no more jobs
+   * to render. While other nodes are rendering the last jobs this waits, in
+   * case one of those jobs fails and must be rendered again.
+   */
+  private synchronized Job takeJob() throws InterruptedException {
+    while (true) {
+      Job job = failedJobs.poll();
+      if (job == null && nextSample < scene.getTargetSpp()) {
+        job = new Job(nextSample, Math.min(jobSpp, scene.getTargetSpp() - nextSample));
+        nextSample += job.count;
+      }
+      if (job != null) {
+        activeJobs += 1;
+        return job;
+      }
+      if (activeJobs == 0) {
+        return null;
+      }
+      wait();
+    }
+  }
+
+  private synchronized void requeue(Job job) {
+    Log.infof("Rendering samples %d to %d again", job.start, job.start + job.count - 1);
+    failedJobs.add(job);
+    activeJobs -= 1;
+    notifyAll();
+  }
+
+  /**
+   * Add the samples of a finished job to the scene, weighted by the sample counts.
+   * Nodes do not send alpha or auxiliary buffers, so those of the scene no
+   * longer match the samples and are discarded.
+   */
+  private void merge(Job job, double[] samples) {
+    int previousSpp;
+    synchronized (this) {
+      double[] buffer = scene.getSampleBuffer();
+      previousSpp = scene.spp;
+      int spp = previousSpp + job.count;
+      double sa = previousSpp / (double) spp;
+      double sb = job.count / (double) spp;
+      for (int i = 0; i < buffer.length; ++i) {
+        buffer[i] = buffer[i] * sa + samples[i] * sb;
+      }
+      long time = System.currentTimeMillis();
+      scene.renderTime += time - lastMerge;
+      lastMerge = time;
+      scene.spp = spp;
+      scene.getAuxiliaryBuffers().clear();
+      scene.getAlphaBuffer().clear();
+      renderTask.update(scene.getTargetSpp(), spp);
+      activeJobs -= 1;
+      notifyAll();
+    }
+    int frequency = scene.getDumpFrequency();
+    if (scene.shouldSaveDumps() && !isDone()
+        && previousSpp / frequency != (previousSpp + job.count) / frequency) {
+      saveDump(TaskTracker.NONE);
+    }
+  }
+
+  /**
+   * Save the scene description and render dump, and a snapshot if the
+   * scene is done or should save snapshots. The samples are copied, and the
+   * copy is saved without holding the coordinator lock, so that jobs can be
+   * merged while saving. The snapshot is written by the snapshot writer.
+   */
+  private void saveDump(TaskTracker taskTracker) {
+    synchronized (saveLock) {
+      Scene copy;
+      JsonObject description;
+      boolean snapshot;
+      synchronized (this) {
+        copy = scene.copySamples();
+        description = scene.toJson();
+        snapshot = isDone() || scene.shouldSaveSnapshots();
+      }
+      copy.saveDump(context, taskTracker);
+      try (OutputStream out = context.getSceneDescriptionOutputStream(scene.name())) {
+        description.prettyPrint(new PrettyPrinter("  ", new PrintStream(out)));
+      } catch (IOException e) {
+        Log.warn("Failed to save the scene description", e);
+      }
+      if (snapshot) {
+        snapshotWriter.save(copy, new File(context.getSceneDirectory(), "snapshots"));
+      }
+    }
+  }
+}
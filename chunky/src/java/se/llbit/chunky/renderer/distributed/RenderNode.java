@@ -0,0 +1,191 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.distributed;
+
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.DefaultRenderManager;
+import se.llbit.chunky.renderer.RenderContext;
+import se.llbit.chunky.renderer.Renderer;
+import se.llbit.chunky.renderer.ResetReason;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.log.Log;
+import se.llbit.util.TaskTracker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Renders jobs for a {@link RenderCoordinator}.
+ *
+ * <p>The node receives the scene from the coordinator, loads it from a
+ * temporary scene directory, and then renders one job at a time with a
+ * render manager that is never started: the path tracer is driven directly
+ * from the node, one pass at a time, so that exactly the samples of the
+ * job are rendered.
+ */
+public class RenderNode {
+  /**
+   * Render context with a samples per pass setting that can be changed between passes.
+   */
+  private static class JobContext extends RenderContext {
+    private int sppPerPass;
+
+    JobContext(Chunky chunky) {
+      super(chunky);
+      sppPerPass = super.sppPerPass();
+    }
+
+    @Override public int sppPerPass() {
+      return sppPerPass;
+    }
+  }
+
+  private final Chunky chunky;
+
+  public RenderNode(Chunky chunky) {
+    this.chunky = chunky;
+  }
+
+  /**
+   * Connect to a coordinator and render jobs until the coordinator stops this node.
+   */
+  public void render(String host, int port, TaskTracker taskTracker)
+      throws IOException, InterruptedException {
+    File directory = Files.createTempDirectory("chunky-node").toFile();
+    JobContext context = new JobContext(chunky);
+    context.setSceneDirectory(directory);
+    DefaultRenderManager manager = new DefaultRenderManager(context, true);
+    Thread keepalive = null;
+    try (Socket socket = new Socket(host, port)) {
+      socket.setTcpNoDelay(true);
+      DataInputStream in =
+          new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      Protocol.writeHello(out);
+      keepalive = new Thread(() -> {
+        try {
+          while (true) {
+            Thread.sleep(Protocol.KEEPALIVE_INTERVAL);
+            synchronized (out) {
+              out.writeByte(Protocol.KEEPALIVE);
+              out.flush();
+            }
+          }
+        } catch (InterruptedException | IOException e) {
+          // Stop sending keepalive messages.
+        }
+      }, "Render Node Keepalive");
+      keepalive.setDaemon(true);
+      keepalive.start();
+
+      Protocol.expect(in, Protocol.SCENE);
+      String name = in.readUTF();
+      long seed = in.readLong();
+      int files = in.readInt();
+      for (int i = 0; i < files; ++i) {
+        Protocol.readFile(in, directory);
+      }
+      Scene scene = manager.bufferedScene;
+      scene.loadScene(context, name, taskTracker);
+      scene.setRenderSeed(seed);
+      scene.startHeadlessRender();
+      Renderer renderer = DefaultRenderManager.renderers.get(scene.getRenderer());
+      if (renderer == null) {
+        throw new IOException("Unknown renderer: " + scene.getRenderer());
+      }
+      renderer.sceneReset(manager, ResetReason.SCENE_LOADED, 1);
+      Log.infof("Rendering scene %s for %s:%d", name, host, port);
+
+      int type;
+      while ((type = in.readUnsignedByte()) == Protocol.JOB) {
+        int start = in.readInt();
+        int count = in.readInt();
+        double[] samples;
+        try (TaskTracker.Task task = taskTracker.task(
+            String.format("Rendering samples %d-%d", start, start + count - 1), count)) {
+          samples = renderJob(manager, renderer, context, start, count, task);
+        }
+        synchronized (out) {
+          out.writeByte(Protocol.RESULT);
+          out.writeInt(start);
+          Protocol.writeSamples(out, samples);
+          out.flush();
+        }
+      }
+      if (type != Protocol.STOP) {
+        throw new IOException("Unexpected message " + type);
+      }
+      Log.info("Render coordinator finished");
+    } finally {
+      if (keepalive != null) {
+        keepalive.interrupt();
+      }
+      manager.pool.interrupt();
+      File[] files = directory.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          //noinspection ResultOfMethodCallIgnored
+          file.delete();
+        }
+      }
+      //noinspection ResultOfMethodCallIgnored
+      directory.delete();
+    }
+  }
+
+  /**
+   * Render the samples with indices {@code start} to {@code start + count - 1}.
+   *
+   * @return the average of the rendered samples for each pixel
+   */
+  private static double[] renderJob(DefaultRenderManager manager, Renderer renderer,
+      JobContext context, int start, int count, TaskTracker.Task task)
+      throws InterruptedException {
+    Scene scene = manager.bufferedScene;
+    int sppPerPass = context.sppPerPass;
+    double[] samples = scene.getSampleBuffer();
+    // The renderer weights the current buffer by the sample index, so with
+    // a cleared buffer the result is the sum of the job samples divided by
+    // the end index.
+    Arrays.fill(samples, 0);
+    scene.spp = start;
+    int end = start + count;
+    try {
+      while (scene.spp < end) {
+        context.sppPerPass = Math.min(sppPerPass, end - scene.spp);
+        scene.setTargetSpp(scene.spp + context.sppPerPass);
+        renderer.render(manager);
+        task.update(count, scene.spp - start);
+      }
+    } finally {
+      context.sppPerPass = sppPerPass;
+    }
+    double scale = end / (double) count;
+    for (int i = 0; i < samples.length; ++i) {
+      samples[i] *= scale;
+    }
+    return samples;
+  }
+}
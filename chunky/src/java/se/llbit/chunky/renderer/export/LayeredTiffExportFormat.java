@@ -0,0 +1,74 @@
+package se.llbit.chunky.renderer.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.IntToDoubleFunction;
+import se.llbit.chunky.renderer.AuxiliaryBuffers;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.log.Log;
+import se.llbit.tiff.TiffFileWriter;
+import se.llbit.util.TaskTracker;
+
+/**
+ * Multi-page TIFF with 32-bit color channels, containing the linear
+ * (unprocessed) color and the auxiliary buffers as separate layers:
+ * albedo, normal, depth and emission.
+ */
+public class LayeredTiffExportFormat implements PictureExportFormat {
+
+  @Override
+  public String getName() {
+    return "TIFF_32_LAYERS";
+  }
+
+  @Override
+  public String getDescription() {
+    return "TIFF, 32-bit layers (color, albedo, normal, depth, emission)";
+  }
+
+  @Override
+  public String getExtension() {
+    return ".tiff";
+  }
+
+  @Override
+  public boolean usesAuxiliaryBuffers() {
+    return true;
+  }
+
+  @Override
+  public void write(OutputStream out, Scene scene, TaskTracker taskTracker) throws IOException {
+    int width = scene.canvasWidth();
+    int height = scene.canvasHeight();
+    double[] samples = scene.getSampleBuffer();
+    IntToDoubleFunction color = i -> samples[i];
+
+    String[] names;
+    IntToDoubleFunction[] layers;
+    AuxiliaryBuffers aux = scene.getAuxiliaryBuffers();
+    if (aux != null && aux.hasSamples() && aux.width == width && aux.height == height) {
+      float[] albedo = aux.getAlbedo();
+      float[] normal = aux.getNormal();
+      float[] depth = aux.getDepth();
+      float[] emission = aux.getEmission();
+      names = new String[] { "color", "albedo", "normal", "depth", "emission" };
+      layers = new IntToDoubleFunction[] {
+          color,
+          i -> albedo[i],
+          i -> normal[i],
+          i -> depth[i / 3],
+          i -> emission[i],
+      };
+    } else {
+      Log.warn("No auxiliary buffers have been recorded for this render. "
+          + "Only the color layer will be exported.");
+      names = new String[] { "color" };
+      layers = new IntToDoubleFunction[] { color };
+    }
+
+    try (TaskTracker.Task task = taskTracker.task("Writing TIFF layers");
+        TiffFileWriter writer = new TiffFileWriter(out)) {
+      writer.writeLayers(width, height, names, layers, task);
+    }
+  }
+}
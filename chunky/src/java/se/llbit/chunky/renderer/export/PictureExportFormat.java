@@ -42,6 +42,27 @@ public interface PictureExportFormat {
     return false;
   }
 
+  /**
+   * Check if this format writes the auxiliary buffers (albedo, normal, depth
+   * and emission). The auxiliary buffers are recorded while rendering if the
+   * output format uses them.
+   *
+   * @return True if this format uses the auxiliary buffers, false otherwise
+   */
+  default boolean usesAuxiliaryBuffers() {
+    return false;
+  }
+
+  /**
+   * Check if this format writes the sample buffer. Formats that do not use
+   * the sample buffer only write the finalized frame (and alpha channel).
+   *
+   * @return True if this format uses the sample buffer, false otherwise
+   */
+  default boolean usesSampleBuffer() {
+    return true;
+  }
+
   /**
    * Write the picture of the given scene into the given output stream, optionally reporting
    * progress to a task tracker.
@@ -39,6 +39,8 @@ public abstract class PictureExportFormats {
 
     registerFormat(new Tiff32ExportFormat());
     registerFormat(new PfmExportFormat());
+    registerFormat(new LayeredTiffExportFormat());
+    registerFormat(new TiledTiffExportFormat());
   }
 
   /**
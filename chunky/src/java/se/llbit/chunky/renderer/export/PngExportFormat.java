@@ -29,6 +29,11 @@ public class PngExportFormat implements PictureExportFormat {
     return true;
   }
 
+  @Override
+  public boolean usesSampleBuffer() {
+    return false;
+  }
+
   @Override
   public void write(OutputStream out, Scene scene, TaskTracker taskTracker) throws IOException {
     try (TaskTracker.Task task = taskTracker.task("Writing PNG");
@@ -0,0 +1,43 @@
+package se.llbit.chunky.renderer.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.tiff.TiffFileWriter;
+import se.llbit.util.TaskTracker;
+
+/**
+ * Tiled TIFF with 32-bit color channels, compressed with Deflate and the
+ * floating point predictor. Tiles are encoded in parallel and streamed to
+ * the output, which makes this format suitable for very large renders.
+ */
+public class TiledTiffExportFormat implements PictureExportFormat {
+
+  @Override
+  public String getName() {
+    return "TIFF_32_TILED";
+  }
+
+  @Override
+  public String getDescription() {
+    return "TIFF, 32-bit floating point, tiled and compressed";
+  }
+
+  @Override
+  public String getExtension() {
+    return ".tiff";
+  }
+
+  @Override
+  public boolean isTransparencySupported() {
+    return false;
+  }
+
+  @Override
+  public void write(OutputStream out, Scene scene, TaskTracker taskTracker) throws IOException {
+    try (TaskTracker.Task task = taskTracker.task("Writing tiled TIFF");
+        TiffFileWriter writer = new TiffFileWriter(out)) {
+      writer.writeTiled(scene, TiffFileWriter.Compression.DEFLATE_PREDICTOR, task);
+    }
+  }
+}
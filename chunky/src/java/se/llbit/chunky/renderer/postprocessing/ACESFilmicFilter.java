@@ -8,7 +8,7 @@ import se.llbit.math.QuickMath;
  * Implementation of ACES filmic tone mapping
  * @link https://knarkowicz.wordpress.com/2016/01/06/aces-filmic-tone-mapping-curve/
  */
-public class ACESFilmicFilter extends SimplePixelPostProcessingFilter {
+public class ACESFilmicFilter extends TransferFunctionFilter {
   private static final float aces_a = 2.51f;
   private static final float aces_b = 0.03f;
   private static final float aces_c = 2.43f;
@@ -16,11 +16,9 @@ public class ACESFilmicFilter extends SimplePixelPostProcessingFilter {
   private static final float aces_e = 0.14f;
   
   @Override
-  public void processPixel(double[] pixel) {
-    for(int i = 0; i < 3; ++i) {
-      pixel[i] = QuickMath.max(QuickMath.min((pixel[i] * (aces_a * pixel[i] + aces_b)) / (pixel[i] * (aces_c * pixel[i] + aces_d) + aces_e), 1), 0);
-      pixel[i] = FastMath.pow(pixel[i], 1 / Scene.DEFAULT_GAMMA);
-    }
+  protected double transfer(double value) {
+    value = QuickMath.max(QuickMath.min((value * (aces_a * value + aces_b)) / (value * (aces_c * value + aces_d) + aces_e), 1), 0);
+    return FastMath.pow(value, 1 / Scene.DEFAULT_GAMMA);
   }
 
   @Override
@@ -0,0 +1,225 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.postprocessing;
+
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.AuxiliaryBuffers;
+import se.llbit.util.TaskTracker;
+import se.llbit.util.ThreadBudget;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Edge-avoiding à-trous wavelet denoiser.
+ *
+ * <p>The image is smoothed with a B3 spline kernel of increasing size,
+ * where the weight of each neighbour is reduced by differences in color,
+ * albedo, normal and depth. Albedo, normal and depth are taken from the
+ * auxiliary buffers if available. The albedo is divided out of the image
+ * before filtering and multiplied back in afterwards, so that textures are
+ * not blurred.
+ *
+ * <p>See Dammertz et al., "Edge-Avoiding À-Trous Wavelet Transform for fast
+ * Global Illumination Filtering", HPG 2010.
+ */
+public class AtrousDenoiser {
+  public static final int DEFAULT_ITERATIONS = 5;
+
+  /** Tile size for parallel filtering. */
+  private static final int TILE_SIZE = 64;
+
+  private static final double[] KERNEL = { 1 / 16.0, 1 / 4.0, 3 / 8.0, 1 / 4.0, 1 / 16.0 };
+
+  /** Smallest albedo divided out of the image. */
+  private static final double MIN_ALBEDO = 0.01;
+
+  /** Neighbours with smaller weights than {@code exp(-MAX_EXPONENT)} are skipped. */
+  private static final double MAX_EXPONENT = 12;
+
+  private static final double SIGMA_COLOR = 0.5;
+  private static final double SIGMA_NORMAL = 0.3;
+  private static final double SIGMA_ALBEDO = 0.2;
+  private static final double SIGMA_DEPTH = 0.05;
+
+  private final int iterations;
+
+  public AtrousDenoiser() {
+    this(DEFAULT_ITERATIONS);
+  }
+
+  /**
+   * @param iterations number of filter iterations. The filter radius is
+   * {@code 2 * (2^iterations - 1)} pixels.
+   */
+  public AtrousDenoiser(int iterations) {
+    this.iterations = iterations;
+  }
+
+  /**
+   * Denoise a linear RGB image.
+   *
+   * @param input linear RGB image, three values per pixel
+   * @param aux auxiliary buffers used to guide the filter, may be {@code null}
+   * @return the denoised image, three values per pixel
+   */
+  public double[] denoise(int width, int height, double[] input, AuxiliaryBuffers aux,
+      TaskTracker.Task task) {
+    int pixels = width * height;
+    boolean guided = aux != null && aux.hasSamples()
+        && aux.width == width && aux.height == height;
+    float[] albedo = guided ? aux.getAlbedo() : null;
+    float[] normal = guided ? aux.getNormal() : null;
+    float[] depth = guided ? aux.getDepth() : null;
+
+    // Divide out the albedo. Color differences are computed on compressed
+    // values (x / (1 + x)), so that very bright pixels do not dominate the
+    // color weight.
+    double[] modulation = new double[pixels * 3];
+    double[] current = new double[pixels * 3];
+    for (int i = 0; i < pixels; ++i) {
+      boolean hit = guided && depth[i] > 0;
+      for (int c = 0; c < 3; ++c) {
+        int offset = i * 3 + c;
+        modulation[offset] = hit ? Math.max(albedo[offset], MIN_ALBEDO) : 1;
+        current[offset] = input[offset] / modulation[offset];
+      }
+    }
+
+    int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+    int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+    int tiles = tilesX * tilesY;
+    task.update(iterations * tiles, 0);
+    AtomicInteger done = new AtomicInteger(0);
+
+    double[] next = new double[pixels * 3];
+    double[] compressed = new double[pixels * 3];
+    for (int iteration = 0; iteration < iterations; ++iteration) {
+      for (int i = 0; i < pixels * 3; ++i) {
+        compressed[i] = current[i] / (1 + current[i]);
+      }
+      int step = 1 << iteration;
+      // The color weight gets stricter for each iteration, since the
+      // image gets smoother.
+      double sigmaColor = SIGMA_COLOR / step;
+      double[] source = current;
+      double[] target = next;
+      try (ThreadBudget.Section section = Chunky.getThreadBudget().enter(ThreadBudget.Priority.FINALIZE)) {
+        Chunky.getCommonThreads().submit(() -> {
+          IntStream.range(0, tiles).parallel().forEach(tile -> {
+            int x0 = (tile % tilesX) * TILE_SIZE;
+            int y0 = (tile / tilesX) * TILE_SIZE;
+            filterTile(width, height, x0, y0, Math.min(x0 + TILE_SIZE, width),
+                Math.min(y0 + TILE_SIZE, height), step, sigmaColor, source, compressed, target,
+                albedo, normal, depth);
+            task.update(iterations * tiles, done.incrementAndGet());
+          });
+        }).join();
+      }
+      next = current;
+      current = target;
+    }
+
+    // Multiply the albedo back in.
+    for (int i = 0; i < pixels * 3; ++i) {
+      current[i] *= modulation[i];
+    }
+    return current;
+  }
+
+  private static void filterTile(int width, int height, int x0, int y0, int x1, int y1,
+      int step, double sigmaColor, double[] source, double[] compressed, double[] target,
+      float[] albedo, float[] normal, float[] depth) {
+    double colorScale = 1 / (sigmaColor * sigmaColor);
+    double normalScale = 1 / (SIGMA_NORMAL * SIGMA_NORMAL);
+    double albedoScale = 1 / (SIGMA_ALBEDO * SIGMA_ALBEDO);
+    double depthScale = 1 / (SIGMA_DEPTH * step);
+    for (int y = y0; y < y1; ++y) {
+      for (int x = x0; x < x1; ++x) {
+        int p = y * width + x;
+        double pr = compressed[p * 3];
+        double pg = compressed[p * 3 + 1];
+        double pb = compressed[p * 3 + 2];
+        double sumR = 0, sumG = 0, sumB = 0;
+        double sumWeight = 0;
+        for (int j = 0; j < 5; ++j) {
+          int qy = y + (j - 2) * step;
+          if (qy < 0 || qy >= height) {
+            continue;
+          }
+          for (int i = 0; i < 5; ++i) {
+            int qx = x + (i - 2) * step;
+            if (qx < 0 || qx >= width) {
+              continue;
+            }
+            int q = qy * width + qx;
+            double dr = compressed[q * 3] - pr;
+            double dg = compressed[q * 3 + 1] - pg;
+            double db = compressed[q * 3 + 2] - pb;
+            double exponent = (dr * dr + dg * dg + db * db) * colorScale;
+            if (depth != null) {
+              exponent += distanceSquared(normal, p, q) * normalScale;
+              exponent += distanceSquared(albedo, p, q) * albedoScale;
+              double zp = depth[p];
+              double zq = depth[q];
+              double zmax = Math.max(zp, zq);
+              if (zmax > 0) {
+                exponent += Math.abs(zp - zq) / zmax * depthScale;
+              }
+            }
+            if (exponent > MAX_EXPONENT) {
+              continue;
+            }
+            double weight = KERNEL[i] * KERNEL[j] * fastExp(-exponent);
+            sumR += source[q * 3] * weight;
+            sumG += source[q * 3 + 1] * weight;
+            sumB += source[q * 3 + 2] * weight;
+            sumWeight += weight;
+          }
+        }
+        // The center pixel always has a positive weight.
+        target[p * 3] = sumR / sumWeight;
+        target[p * 3 + 1] = sumG / sumWeight;
+        target[p * 3 + 2] = sumB / sumWeight;
+      }
+    }
+  }
+
+  /**
+   * Approximation of {@code exp(x)} for {@code -MAX_EXPONENT <= x <= 0},
+   * computed as {@code (1 + x/256)^256}.
+   */
+  private static double fastExp(double x) {
+    double y = 1 + x / 256;
+    y *= y;
+    y *= y;
+    y *= y;
+    y *= y;
+    y *= y;
+    y *= y;
+    y *= y;
+    y *= y;
+    return y;
+  }
+
+  private static double distanceSquared(float[] buffer, int p, int q) {
+    double dx = buffer[q * 3] - buffer[p * 3];
+    double dy = buffer[q * 3 + 1] - buffer[p * 3 + 1];
+    double dz = buffer[q * 3 + 2] - buffer[p * 3 + 2];
+    return dx * dx + dy * dy + dz * dz;
+  }
+}
@@ -3,12 +3,10 @@ package se.llbit.chunky.renderer.postprocessing;
 import org.apache.commons.math3.util.FastMath;
 import se.llbit.chunky.renderer.scene.Scene;
 
-public class GammaCorrectionFilter extends SimplePixelPostProcessingFilter {
+public class GammaCorrectionFilter extends TransferFunctionFilter {
   @Override
-  public void processPixel(double[] pixel) {
-    for(int i = 0; i < 3; ++i) {
-      pixel[i] = FastMath.pow(pixel[i], 1 / Scene.DEFAULT_GAMMA);
-    }
+  protected double transfer(double value) {
+    return FastMath.pow(value, 1 / Scene.DEFAULT_GAMMA);
   }
 
   @Override
@@ -4,7 +4,7 @@ package se.llbit.chunky.renderer.postprocessing;
  * Implementation of Hable tone mapping
  * @link http://filmicworlds.com/blog/filmic-tonemapping-operators/
  */
-public class HableToneMappingFilter extends SimplePixelPostProcessingFilter {
+public class HableToneMappingFilter extends TransferFunctionFilter {
   private static final float hA = 0.15f;
   private static final float hB = 0.50f;
   private static final float hC = 0.10f;
@@ -15,14 +15,12 @@ public class HableToneMappingFilter extends SimplePixelPostProcessingFilter {
   private static final float whiteScale = 1.0f / (((hW * (hA * hW + hC * hB) + hD * hE) / (hW * (hA * hW + hB) + hD * hF)) - hE / hF);
   
   @Override
-  public void processPixel(double[] pixel) {
+  protected double transfer(double value) {
     // This adjusts the exposure by a factor of 16 so that the resulting exposure approximately matches the other
     // post-processing methods. Without this, the image would be very dark.
-    for(int i = 0; i < 3; ++i) {
-      pixel[i] *= 16;
-      pixel[i] = ((pixel[i] * (hA * pixel[i] + hC * hB) + hD * hE) / (pixel[i] * (hA * pixel[i] + hB) + hD * hF)) - hE / hF;
-      pixel[i] *= whiteScale;
-    }
+    value *= 16;
+    value = ((value * (hA * value + hC * hB) + hD * hE) / (value * (hA * value + hB) + hD * hF)) - hE / hF;
+    return value * whiteScale;
   }
 
   @Override
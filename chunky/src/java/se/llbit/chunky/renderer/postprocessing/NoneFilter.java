@@ -1,8 +1,9 @@
 package se.llbit.chunky.renderer.postprocessing;
 
-public class NoneFilter extends SimplePixelPostProcessingFilter {
+public class NoneFilter extends TransferFunctionFilter {
   @Override
-  public void processPixel(double[] pixel) {
+  protected double transfer(double value) {
+    return value;
   }
 
   @Override
@@ -1,6 +1,8 @@
 package se.llbit.chunky.renderer.postprocessing;
 
 import se.llbit.chunky.plugin.PluginApi;
+import se.llbit.chunky.resources.BitmapImage;
+import se.llbit.math.ColorUtil;
 
 /**
  * Post processing filter that supports processing one pixel at a time.
@@ -18,4 +20,30 @@ public interface PixelPostProcessingFilter extends PostProcessingFilter {
    * @param output The output buffer for the processed pixel
    */
   void processPixel(int width, int height, double[] input, int x, int y, double exposure, double[] output);
+
+  /**
+   * Post process a rectangular region of the image and write it to the output image
+   * @param width The width of the image
+   * @param height The height of the image
+   * @param input The input linear image as double array
+   * @param x0 The first column of the region
+   * @param y0 The first row of the region
+   * @param x1 The column after the last column of the region
+   * @param y1 The row after the last row of the region
+   * @param exposure The exposure value
+   * @param output The output image
+   */
+  default void processRegion(int width, int height, double[] input, int x0, int y0, int x1, int y1,
+      double exposure, BitmapImage output) {
+    double[] pixel = new double[3];
+    for (int y = y0; y < y1; ++y) {
+      for (int x = x0; x < x1; ++x) {
+        processPixel(width, height, input, x, y, exposure, pixel);
+        for (int i = 0; i < 3; ++i) {
+          pixel[i] = Math.min(1.0, pixel[i]);
+        }
+        output.data[y * width + x] = ColorUtil.getRGB(pixel);
+      }
+    }
+  }
 }
@@ -2,14 +2,12 @@ package se.llbit.chunky.renderer.postprocessing;
 
 import org.apache.commons.math3.util.FastMath;
 
-public class PreviewFilter extends SimplePixelPostProcessingFilter {
+public class PreviewFilter extends TransferFunctionFilter {
   public static final PreviewFilter INSTANCE = new PreviewFilter();
 
   @Override
-  public void processPixel(double[] pixel) {
-    for(int i = 0; i < 3; ++i) {
-      pixel[i] = FastMath.sqrt(pixel[i]);
-    }
+  protected double transfer(double value) {
+    return FastMath.sqrt(value);
   }
 
   @Override
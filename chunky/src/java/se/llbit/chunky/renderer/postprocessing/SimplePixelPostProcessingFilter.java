@@ -2,8 +2,8 @@ package se.llbit.chunky.renderer.postprocessing;
 
 import se.llbit.chunky.main.Chunky;
 import se.llbit.chunky.resources.BitmapImage;
-import se.llbit.math.ColorUtil;
 import se.llbit.util.TaskTracker;
+import se.llbit.util.ThreadBudget;
 
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
@@ -12,6 +12,11 @@ import java.util.stream.IntStream;
  * Base class for post processing filter that process each pixel independently
  */
 public abstract class SimplePixelPostProcessingFilter implements PixelPostProcessingFilter {
+  /**
+   * Number of rows processed together by {@link #processFrame}.
+   */
+  protected static final int ROW_BLOCK = 16;
+
   /**
    * Post process a single pixel
    * @param pixel the rgb component of the pixel. Input/output parameter.
@@ -21,28 +26,19 @@ public abstract class SimplePixelPostProcessingFilter implements PixelPostProces
 
   @Override
   public void processFrame(int width, int height, double[] input, BitmapImage output, double exposure, TaskTracker.Task task) {
-    task.update(height, 0);
+    int blocks = (height + ROW_BLOCK - 1) / ROW_BLOCK;
+    task.update(blocks, 0);
     AtomicInteger done = new AtomicInteger(0);
-    Chunky.getCommonThreads().submit(() -> {
-      IntStream.range(0, height).parallel().forEach(y -> {
-        double[] pixelBuffer = new double[3];
-
-        int rowOffset = y * width;
-        for (int x = 0; x < width; x++) {
-          int pixelOffset = (rowOffset + x) * 3;
-          for(int i = 0; i < 3; ++i) {
-            pixelBuffer[i] = input[pixelOffset + i] * exposure;
-          }
-          processPixel(pixelBuffer);
-          for(int i = 0; i < 3; ++i) {
-            pixelBuffer[i] = Math.min(1.0, pixelBuffer[i]);
-          }
-          output.setPixel(x, y, ColorUtil.getRGB(pixelBuffer));
-        }
-
-        task.update(height, done.incrementAndGet());
-      });
-    }).join();
+    try (ThreadBudget.Section section = Chunky.getThreadBudget().enter(ThreadBudget.Priority.FINALIZE)) {
+      Chunky.getCommonThreads().submit(() -> {
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+          int y0 = block * ROW_BLOCK;
+          int y1 = Math.min(height, y0 + ROW_BLOCK);
+          processRegion(width, height, input, 0, y0, width, y1, exposure, output);
+          task.update(blocks, done.incrementAndGet());
+        });
+      }).join();
+    }
   }
 
   @Override
@@ -6,13 +6,11 @@ import se.llbit.math.QuickMath;
  * Implementation of the tone mapping operator from Jim Hejl and Richard Burgess-Dawson
  * @link http://filmicworlds.com/blog/filmic-tonemapping-operators/
  */
-public class Tonemap1Filter extends SimplePixelPostProcessingFilter {
+public class Tonemap1Filter extends TransferFunctionFilter {
   @Override
-  public void processPixel(double[] pixel) {
-    for(int i = 0; i < 3; ++i) {
-      pixel[i] = QuickMath.max(0, pixel[i] - 0.004);
-      pixel[i] = (pixel[i] * (6.2 * pixel[i] + .5)) / (pixel[i] * (6.2 * pixel[i] + 1.7) + 0.06);
-    }
+  protected double transfer(double value) {
+    value = QuickMath.max(0, value - 0.004);
+    return (value * (6.2 * value + .5)) / (value * (6.2 * value + 1.7) + 0.06);
   }
 
   @Override
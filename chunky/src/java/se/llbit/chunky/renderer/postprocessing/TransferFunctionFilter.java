@@ -0,0 +1,183 @@
+package se.llbit.chunky.renderer.postprocessing;
+
+import se.llbit.chunky.resources.BitmapImage;
+
+import java.util.Arrays;
+
+/**
+ * Base class for post processing filters that apply the same monotonically
+ * non-decreasing transfer function to each color channel.
+ *
+ * <p>The transfer function is only evaluated when the filter is first used, to
+ * find the input values where the 8-bit output changes. Processing a frame
+ * then only needs a table lookup per channel instead of evaluating the
+ * transfer function, and gives the same output as clamping and quantizing
+ * the transfer function result.
+ */
+public abstract class TransferFunctionFilter extends SimplePixelPostProcessingFilter {
+  /**
+   * Number of cells in the coarse lookup table. Each cell gives the lowest
+   * output level for inputs in the cell.
+   */
+  private static final int CELLS = 4096;
+
+  /**
+   * Inputs above this value are assumed to never reach a higher output level.
+   */
+  private static final double MAX_INPUT = 1e12;
+
+  /**
+   * The lowest input values for each output level. {@code thresholds[k]} is
+   * the lowest input with output level {@code k}, and levels that are never
+   * reached have threshold infinity.
+   */
+  private double[] thresholds;
+  private int[] cells;
+  private double cellScale;
+  private double limit;
+  private int maxLevel;
+  private int zeroLevel;
+
+  /**
+   * Subclasses that override {@link #processPixel(double[])} are processed
+   * one pixel at a time instead.
+   */
+  private boolean useTables;
+
+  private volatile boolean initialized = false;
+
+  /**
+   * Apply the transfer function to one color channel.
+   *
+   * @param value channel value, the exposure has already been applied
+   */
+  protected abstract double transfer(double value);
+
+  @Override
+  public void processPixel(double[] pixel) {
+    for (int i = 0; i < 3; ++i) {
+      pixel[i] = transfer(pixel[i]);
+    }
+  }
+
+  @Override
+  public void processRegion(int width, int height, double[] input, int x0, int y0, int x1, int y1,
+      double exposure, BitmapImage output) {
+    initialize();
+    if (!useTables) {
+      super.processRegion(width, height, input, x0, y0, x1, y1, exposure, output);
+      return;
+    }
+    int[] data = output.data;
+    for (int y = y0; y < y1; ++y) {
+      int index = y * width + x0;
+      int end = y * width + x1;
+      for (; index < end; ++index) {
+        int offset = index * 3;
+        int r = level(input[offset] * exposure);
+        int g = level(input[offset + 1] * exposure);
+        int b = level(input[offset + 2] * exposure);
+        data[index] = 0xFF000000 | (r << 16) | (g << 8) | b;
+      }
+    }
+  }
+
+  /**
+   * @return the 8-bit output level for a channel value
+   */
+  private int level(double value) {
+    if (!(value > 0)) {
+      // Zero, negative or NaN.
+      return zeroLevel;
+    }
+    if (value >= limit) {
+      return maxLevel;
+    }
+    int level = cells[(int) (value * cellScale)];
+    while (value >= thresholds[level + 1]) {
+      level += 1;
+    }
+    return level;
+  }
+
+  /**
+   * The output level of the transfer function, computed in the same way as
+   * in {@link PixelPostProcessingFilter#processRegion}.
+   */
+  private int quantize(double value) {
+    double clamped = Math.min(1.0, transfer(value));
+    return Math.max(0, (int) (255 * clamped + .5));
+  }
+
+  private void initialize() {
+    if (!initialized) {
+      synchronized (this) {
+        if (!initialized) {
+          try {
+            useTables = getClass().getMethod("processPixel", double[].class).getDeclaringClass()
+                == TransferFunctionFilter.class;
+          } catch (NoSuchMethodException e) {
+            useTables = false;
+          }
+          if (useTables) {
+            buildTables();
+          }
+          initialized = true;
+        }
+      }
+    }
+  }
+
+  private void buildTables() {
+    thresholds = new double[257];
+    thresholds[256] = Double.POSITIVE_INFINITY;
+    zeroLevel = Math.min(255, quantize(0));
+    maxLevel = zeroLevel;
+    for (int k = 0; k <= zeroLevel; ++k) {
+      thresholds[k] = 0;
+    }
+    double lo = 0;
+    for (int k = zeroLevel + 1; k <= 255; ++k) {
+      double hi = Math.max(lo, 1);
+      while (quantize(hi) < k && hi < MAX_INPUT) {
+        lo = hi;
+        hi *= 2;
+      }
+      if (quantize(hi) < k) {
+        for (; k <= 255; ++k) {
+          thresholds[k] = Double.POSITIVE_INFINITY;
+        }
+        break;
+      }
+      // Find the lowest value reaching this level by bisection.
+      while (true) {
+        double mid = lo + (hi - lo) / 2;
+        if (mid <= lo || mid >= hi) {
+          break;
+        }
+        if (quantize(mid) >= k) {
+          hi = mid;
+        } else {
+          lo = mid;
+        }
+      }
+      thresholds[k] = hi;
+      maxLevel = k;
+    }
+    limit = maxLevel > zeroLevel ? thresholds[maxLevel] : Double.POSITIVE_INFINITY;
+    cellScale = maxLevel > zeroLevel ? CELLS / limit : 0;
+    cells = new int[CELLS + 1];
+    if (maxLevel > zeroLevel) {
+      int level = zeroLevel;
+      for (int i = 0; i <= CELLS; ++i) {
+        double value = i / cellScale;
+        while (value >= thresholds[level + 1]) {
+          level += 1;
+        }
+        cells[i] = level;
+      }
+    } else {
+      Arrays.fill(cells, zeroLevel);
+    }
+  }
+}
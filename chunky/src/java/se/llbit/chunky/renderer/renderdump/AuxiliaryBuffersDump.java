@@ -0,0 +1,250 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.renderdump;
+
+import se.llbit.chunky.renderer.AlphaBuffer;
+import se.llbit.chunky.renderer.AuxiliaryBuffers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads and writes the auxiliary buffers and the alpha buffer sections of a
+ * render dump.
+ *
+ * <p>Each section starts with the number of samples per pixel in the
+ * buffers. If this is zero, nothing else follows. Otherwise the buffers
+ * follow as a deflate compressed stream of floats. The auxiliary buffers
+ * section contains the albedo, normal, depth and emission buffers. It is
+ * read until the end of the deflate stream and must be the last part of the
+ * dump. The alpha section contains only the sky coverage, and the compressed
+ * data is preceded by its length so that other data can follow it.
+ */
+class AuxiliaryBuffersDump {
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  private AuxiliaryBuffersDump() {
+  }
+
+  static void write(DataOutputStream outputStream, AuxiliaryBuffers aux) throws IOException {
+    if (aux == null || !aux.hasSamples()) {
+      outputStream.writeInt(0);
+    } else {
+      writeSection(outputStream, aux.spp(), buffers(aux));
+    }
+  }
+
+  /**
+   * Read the auxiliary buffers section into the buffers of a scene.
+   */
+  static void read(DataInputStream inputStream, AuxiliaryBuffers aux) throws IOException {
+    int spp = inputStream.readInt();
+    if (aux == null) {
+      return;
+    }
+    if (spp == 0) {
+      aux.clear();
+      return;
+    }
+    aux.allocate();
+    readSection(inputStream, buffers(aux));
+    aux.setSpp(spp);
+  }
+
+  /**
+   * Read the auxiliary buffers section and merge it with the buffers of a scene.
+   */
+  static void merge(DataInputStream inputStream, AuxiliaryBuffers aux) throws IOException {
+    if (aux == null || !aux.hasSamples()) {
+      read(inputStream, aux);
+      return;
+    }
+    int dumpSpp = inputStream.readInt();
+    if (dumpSpp == 0) {
+      return;
+    }
+    int previousSpp = aux.spp();
+    mergeSection(inputStream, previousSpp / (float) (previousSpp + dumpSpp), buffers(aux));
+    aux.setSpp(previousSpp + dumpSpp);
+  }
+
+  static void writeAlpha(DataOutputStream outputStream, AlphaBuffer alpha) throws IOException {
+    if (alpha == null || !alpha.hasSamples()) {
+      outputStream.writeInt(0);
+    } else {
+      outputStream.writeInt(alpha.spp());
+      // The coverage is mostly zero or one, so it compresses well.
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      writeCompressed(compressed, alpha.getAlpha());
+      outputStream.writeInt(compressed.size());
+      compressed.writeTo(outputStream);
+    }
+  }
+
+  /**
+   * Read the alpha section into the alpha buffer of a scene.
+   */
+  static void readAlpha(DataInputStream inputStream, AlphaBuffer alpha) throws IOException {
+    int spp = inputStream.readInt();
+    if (spp == 0) {
+      if (alpha != null) {
+        alpha.clear();
+      }
+      return;
+    }
+    InputStream compressed = compressedAlpha(inputStream);
+    if (alpha == null) {
+      return;
+    }
+    alpha.allocate();
+    readSection(compressed, alpha.getAlpha());
+    alpha.setSpp(spp);
+  }
+
+  /**
+   * Read the alpha section and merge it with the alpha buffer of a scene.
+   */
+  static void mergeAlpha(DataInputStream inputStream, AlphaBuffer alpha) throws IOException {
+    if (alpha == null || !alpha.hasSamples()) {
+      readAlpha(inputStream, alpha);
+      return;
+    }
+    int dumpSpp = inputStream.readInt();
+    if (dumpSpp == 0) {
+      return;
+    }
+    int previousSpp = alpha.spp();
+    mergeSection(compressedAlpha(inputStream), previousSpp / (float) (previousSpp + dumpSpp),
+        alpha.getAlpha());
+    alpha.setSpp(previousSpp + dumpSpp);
+  }
+
+  /**
+   * Read the compressed data of the alpha section.
+   */
+  private static InputStream compressedAlpha(DataInputStream inputStream) throws IOException {
+    byte[] compressed = new byte[inputStream.readInt()];
+    inputStream.readFully(compressed);
+    return new ByteArrayInputStream(compressed);
+  }
+
+  private static void writeSection(DataOutputStream outputStream, int spp, float[]... buffers)
+      throws IOException {
+    outputStream.writeInt(spp);
+    writeCompressed(outputStream, buffers);
+  }
+
+  private static void writeCompressed(OutputStream outputStream, float[]... buffers)
+      throws IOException {
+    // Don't close the underlying stream when the deflater is finished.
+    OutputStream notClosing = new FilterOutputStream(outputStream) {
+      @Override public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+
+      @Override public void close() throws IOException {
+        flush();
+      }
+    };
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try (DeflaterOutputStream out = new DeflaterOutputStream(notClosing, deflater, CHUNK_SIZE)) {
+      for (float[] buffer : buffers) {
+        writeFloats(out, buffer);
+      }
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static void readSection(InputStream inputStream, float[]... buffers) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      DataInputStream in = new DataInputStream(new InflaterInputStream(inputStream, inflater));
+      for (float[] buffer : buffers) {
+        readFloats(in, buffer, buffer.length);
+      }
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Merge the section with the buffers. The current buffer values are
+   * weighted by {@code sa} and the values in the dump by {@code 1 - sa}.
+   */
+  private static void mergeSection(InputStream inputStream, float sa, float[]... buffers)
+      throws IOException {
+    float sb = 1 - sa;
+    float[] chunk = new float[CHUNK_SIZE];
+    Inflater inflater = new Inflater();
+    try {
+      DataInputStream in = new DataInputStream(new InflaterInputStream(inputStream, inflater));
+      for (float[] buffer : buffers) {
+        for (int offset = 0; offset < buffer.length; offset += CHUNK_SIZE) {
+          int length = Math.min(CHUNK_SIZE, buffer.length - offset);
+          readFloats(in, chunk, length);
+          for (int i = 0; i < length; ++i) {
+            buffer[offset + i] = buffer[offset + i] * sa + chunk[i] * sb;
+          }
+        }
+      }
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static float[][] buffers(AuxiliaryBuffers aux) {
+    return new float[][] { aux.getAlbedo(), aux.getNormal(), aux.getDepth(), aux.getEmission() };
+  }
+
+  private static void writeFloats(OutputStream out, float[] values) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE * 4);
+    FloatBuffer floats = bytes.asFloatBuffer();
+    for (int offset = 0; offset < values.length; offset += CHUNK_SIZE) {
+      int length = Math.min(CHUNK_SIZE, values.length - offset);
+      floats.clear();
+      floats.put(values, offset, length);
+      out.write(bytes.array(), 0, length * 4);
+    }
+  }
+
+  /**
+   * Read floats into the start of a buffer.
+   */
+  private static void readFloats(DataInputStream in, float[] values, int length) throws IOException {
+    byte[] bytes = new byte[Math.min(CHUNK_SIZE, length) * 4];
+    FloatBuffer floats = ByteBuffer.wrap(bytes).asFloatBuffer();
+    for (int offset = 0; offset < length; offset += CHUNK_SIZE) {
+      int count = Math.min(CHUNK_SIZE, length - offset);
+      in.readFully(bytes, 0, count * 4);
+      floats.clear();
+      floats.get(values, offset, count);
+    }
+  }
+}
@@ -25,9 +25,17 @@ import java.util.function.IntConsumer;
 
 class CompressedFloatDumpFormat extends DumpFormat {
 
-  public static final DumpFormat INSTANCE = new CompressedFloatDumpFormat();
+  public static final DumpFormat INSTANCE = new CompressedFloatDumpFormat(false);
 
-  private CompressedFloatDumpFormat() {
+  /**
+   * Compressed samples followed by the alpha buffer and the auxiliary buffers.
+   */
+  public static final DumpFormat WITH_BUFFERS = new CompressedFloatDumpFormat(true);
+
+  private final boolean buffers;
+
+  private CompressedFloatDumpFormat(boolean buffers) {
+    this.buffers = buffers;
   }
 
   @Override
@@ -40,4 +48,30 @@ class CompressedFloatDumpFormat extends DumpFormat {
   public void writeSamples(DataOutputStream outputStream, Scene scene, IntConsumer pixelProgress) throws IOException {
     FloatingPointCompressor.compress(outputStream, scene.getSampleBuffer(), pixelProgress);
   }
+
+  @Override
+  protected void readAuxiliaryBuffers(DataInputStream inputStream, Scene scene) throws IOException {
+    if (buffers) {
+      AuxiliaryBuffersDump.readAlpha(inputStream, scene.getAlphaBuffer());
+      AuxiliaryBuffersDump.read(inputStream, scene.getAuxiliaryBuffers());
+    } else {
+      super.readAuxiliaryBuffers(inputStream, scene);
+    }
+  }
+
+  @Override
+  protected void mergeAuxiliaryBuffers(DataInputStream inputStream, Scene scene) throws IOException {
+    if (buffers) {
+      AuxiliaryBuffersDump.mergeAlpha(inputStream, scene.getAlphaBuffer());
+      AuxiliaryBuffersDump.merge(inputStream, scene.getAuxiliaryBuffers());
+    }
+  }
+
+  @Override
+  protected void writeAuxiliaryBuffers(DataOutputStream outputStream, Scene scene) throws IOException {
+    if (buffers) {
+      AuxiliaryBuffersDump.writeAlpha(outputStream, scene.getAlphaBuffer());
+      AuxiliaryBuffersDump.write(outputStream, scene.getAuxiliaryBuffers());
+    }
+  }
 }
@@ -43,6 +43,7 @@ abstract class DumpFormat {
     try (TaskTracker.Task task = taskTracker.task("Loading render dump", scene.canvasWidth() * scene.canvasHeight())) {
       readHeader(inputStream, scene);
       readSamples(inputStream, scene, pixelProgress -> updateTask(task, scene, pixelProgress));
+      readAuxiliaryBuffers(inputStream, scene);
     }
   }
 
@@ -82,11 +83,41 @@ abstract class DumpFormat {
         if (prog % width == 0)
           task.update(prog/width);
       });
+      mergeAuxiliaryBuffers(inputStream, scene);
       scene.spp += previousSpp;
       scene.renderTime += previousRenderTime;
     }
   }
 
+  /**
+   * Read a dump and add its samples to an accumulator. Unlike
+   * {@link #merge}, this does not modify the sample buffer or the samples per
+   * pixel of the scene directly, so several dumps can be accumulated
+   * concurrently. The alpha and auxiliary buffers are merged into the scene
+   * while holding the lock of the accumulator.
+   *
+   * @throws IllegalStateException If the width or height of the scene do not match the width or height in the dump.
+   * The accumulator is not modified in this case.
+   */
+  void accumulate(DataInputStream inputStream, Scene scene, SampleAccumulator accumulator)
+      throws IOException, IllegalStateException {
+    int width = inputStream.readInt();
+    int height = inputStream.readInt();
+    if (width != scene.canvasWidth() || height != scene.canvasHeight()) {
+      throw new IllegalStateException("Scene size does not match dump size");
+    }
+    int dumpSpp = inputStream.readInt();
+    long dumpRenderTime = inputStream.readLong();
+
+    SampleAccumulator.Batch batch = accumulator.batch(dumpSpp);
+    readSamples(inputStream, scene, batch, pixelProgress -> {});
+    batch.flush();
+    synchronized (accumulator) {
+      mergeAuxiliaryBuffers(inputStream, scene);
+    }
+    accumulator.addDump(dumpSpp, dumpRenderTime);
+  }
+
   protected void mergeSamples(DataInputStream inputStream, int previousSpp, Scene scene, IntConsumer pixelProgress)
       throws IOException {
     int dumpSpp = scene.spp;
@@ -112,6 +143,7 @@ abstract class DumpFormat {
     try (TaskTracker.Task task = taskTracker.task("Saving render dump", scene.canvasWidth() * scene.canvasHeight())) {
       writeHeader(outputStream, scene);
       writeSamples(outputStream, scene, pixelProgress -> updateTask(task, scene, pixelProgress));
+      writeAuxiliaryBuffers(outputStream, scene);
       outputStream.flush();
     }
   }
@@ -126,6 +158,33 @@ abstract class DumpFormat {
   protected abstract void writeSamples(DataOutputStream outputStream, Scene scene, IntConsumer pixelProgress)
       throws IOException;
 
+  /**
+   * Read the auxiliary buffers and the alpha buffer after the samples.
+   * Formats without these buffers discard the buffers of the scene, since
+   * they do not match the loaded samples.
+   */
+  protected void readAuxiliaryBuffers(DataInputStream inputStream, Scene scene) throws IOException {
+    if (scene.getAuxiliaryBuffers() != null) {
+      scene.getAuxiliaryBuffers().clear();
+    }
+    if (scene.getAlphaBuffer() != null) {
+      scene.getAlphaBuffer().clear();
+    }
+  }
+
+  /**
+   * Merge the auxiliary buffers after the samples. Formats without auxiliary
+   * buffers keep the auxiliary buffers of the scene.
+   */
+  protected void mergeAuxiliaryBuffers(DataInputStream inputStream, Scene scene) throws IOException {
+  }
+
+  /**
+   * Write the auxiliary buffers after the samples, if supported by the format.
+   */
+  protected void writeAuxiliaryBuffers(DataOutputStream outputStream, Scene scene) throws IOException {
+  }
+
   private void updateTask(TaskTracker.Task task, Scene scene, int pixelProgress) {
     int x = scene.width * scene.height / 100;
     // reduce number of update calls (performance reasons)
@@ -18,46 +18,68 @@ package se.llbit.chunky.renderer.renderdump;
 
 import it.unimi.dsi.fastutil.io.FastBufferedInputStream;
 import it.unimi.dsi.fastutil.io.FastBufferedOutputStream;
+import se.llbit.chunky.main.Chunky;
 import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.log.Log;
 import se.llbit.util.TaskTracker;
+import se.llbit.util.ThreadBudget;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
 /**
  * Logic for loading render dumps using the correct strategy from DumpFormat for the given dump version. Automatically
  * falls back to classic format if no format version is found in the dump file.
- * <p>
- * TODO for diligent contributors: clean up code duplication
  */
 public class RenderDump {
   static final byte[] DUMP_FORMAT_MAGIC_NUMBER = {0x44, 0x55, 0x4D, 0x50};
 
-  static final int CURRENT_DUMP_VERSION = 1;
+  static final int CURRENT_DUMP_VERSION = 2;
 
   private static DumpFormat getDumpFormatForVersion(int version) {
     switch (version) {
       case 1:
         return CompressedFloatDumpFormat.INSTANCE;
+      case 2:
+        return CompressedFloatDumpFormat.WITH_BUFFERS;
       default:
         return ClassicDumpFormat.INSTANCE;
     }
   }
 
   /**
-   * Load a scene dump from the given file into the scene. This overwrites ssp, renderTime and samples in the scene.
-   *
-   * @throws IllegalStateException If the width or height of the scene do not match the width or height in the dump.
-   * @throws IOException           If the dump format is unknown or file access fails
+   * A dump stream positioned after the magic number and version number, and
+   * the format to read it with.
    */
-  public static void load(InputStream inputStream, Scene scene, TaskTracker taskTracker)
-      throws IOException, IllegalStateException {
+  private static final class FormatStream {
+    final DumpFormat format;
+    final DataInputStream in;
+
+    FormatStream(DumpFormat format, DataInputStream in) {
+      this.format = format;
+      this.in = in;
+    }
+  }
+
+  /**
+   * Detect the dump format version. Dumps without the magic number are in
+   * the classic gzipped format.
+   */
+  private static FormatStream open(InputStream inputStream) throws IOException {
     int magicNumberLength = DUMP_FORMAT_MAGIC_NUMBER.length;
 
     PushbackInputStream pushbackInputStream = new PushbackInputStream(inputStream, magicNumberLength);
@@ -69,15 +91,27 @@ public class RenderDump {
 
       DataInputStream dataInputStream = new DataInputStream(pushbackInputStream);
       int dumpVersion = dataInputStream.readInt();
-      getDumpFormatForVersion(dumpVersion).load(dataInputStream, scene, taskTracker);
+      return new FormatStream(getDumpFormatForVersion(dumpVersion), dataInputStream);
     } else {
       // Old format that is a gzipped stream, the header needs to be pushed back
       pushbackInputStream.unread(magicNumber, 0, 4);
       DataInputStream dataInputStream = new DataInputStream(new GZIPInputStream(pushbackInputStream));
-      getDumpFormatForVersion(0).load(dataInputStream, scene, taskTracker);
+      return new FormatStream(getDumpFormatForVersion(0), dataInputStream);
     }
   }
 
+  /**
+   * Load a scene dump from the given file into the scene. This overwrites ssp, renderTime and samples in the scene.
+   *
+   * @throws IllegalStateException If the width or height of the scene do not match the width or height in the dump.
+   * @throws IOException           If the dump format is unknown or file access fails
+   */
+  public static void load(InputStream inputStream, Scene scene, TaskTracker taskTracker)
+      throws IOException, IllegalStateException {
+    FormatStream dump = open(inputStream);
+    dump.format.load(dump.in, scene, taskTracker);
+  }
+
   /**
    * Merge a scene dump from the given file into the scene. This overwrites ssp, renderTime and samples in the scene.
    *
@@ -86,31 +120,70 @@ public class RenderDump {
    */
   public static void merge(InputStream inputStream, Scene scene, TaskTracker taskTracker)
       throws IOException, IllegalStateException {
-    int magicNumberLength = DUMP_FORMAT_MAGIC_NUMBER.length;
-
-    PushbackInputStream pushbackInputStream = new PushbackInputStream(new FastBufferedInputStream(inputStream), magicNumberLength);
-    byte[] magicNumber = new byte[magicNumberLength];
-
-    // If the file starts with the magic number, it is the new format containing a version number
-    if (magicNumberLength == pushbackInputStream.read(magicNumber, 0, magicNumberLength)
-        && Arrays.equals(DUMP_FORMAT_MAGIC_NUMBER, magicNumber)) {
+    FormatStream dump = open(new FastBufferedInputStream(inputStream));
+    dump.format.merge(dump.in, scene, taskTracker);
+  }
 
-      DataInputStream dataInputStream = new DataInputStream(pushbackInputStream);
-      int dumpVersion = dataInputStream.readInt();
-      getDumpFormatForVersion(dumpVersion).merge(dataInputStream, scene, taskTracker);
-    } else {
-      // Old format that is a gzipped stream, the header needs to be pushed back
-      pushbackInputStream.unread(magicNumber, 0, 4);
-      DataInputStream dataInputStream = new DataInputStream(new GZIPInputStream(pushbackInputStream));
-      getDumpFormatForVersion(0).merge(dataInputStream, scene, taskTracker);
+  /**
+   * Merge several render dumps into the scene in a single pass.
+   *
+   * <p>The dumps are decoded in parallel and their samples are added to the
+   * scene weighted by the samples per pixel of each dump, so the result is
+   * the same as merging the dumps one by one. Dumps with a different canvas
+   * size than the scene are rejected and do not contribute to the result.
+   *
+   * @return the number of dumps that were merged
+   * @throws IOException If reading a dump fails. The samples of the scene are invalid after a failed merge.
+   */
+  public static int merge(List<File> dumps, Scene scene, TaskTracker taskTracker) throws IOException {
+    SampleAccumulator accumulator = new SampleAccumulator(scene);
+    AtomicInteger merged = new AtomicInteger();
+    AtomicInteger done = new AtomicInteger();
+    try (TaskTracker.Task task = taskTracker.task("Merging render dumps", dumps.size());
+        ThreadBudget.Section section = Chunky.getThreadBudget().enter(ThreadBudget.Priority.BACKGROUND)) {
+      List<CompletableFuture<Void>> results = new ArrayList<>(dumps.size());
+      for (File dump : dumps) {
+        results.add(CompletableFuture.runAsync(() -> {
+          try (InputStream inputStream = new FastBufferedInputStream(new FileInputStream(dump))) {
+            FormatStream stream = open(inputStream);
+            stream.format.accumulate(stream.in, scene, accumulator);
+            merged.incrementAndGet();
+          } catch (IllegalStateException e) {
+            Log.warnf("Rejected render dump %s: %s", dump, e.getMessage());
+          } catch (IOException e) {
+            throw new UncheckedIOException("Failed to merge render dump " + dump, e);
+          }
+          synchronized (done) {
+            // Update in order, so that the progress never decreases.
+            task.update(dumps.size(), done.incrementAndGet());
+          }
+        }, Chunky.getCommonThreads()));
+      }
+      CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw new IOException("Failed to merge render dumps", e.getCause());
     }
+    accumulator.finish(scene);
+    return merged.get();
   }
 
+  /**
+   * Save a scene dump. Dumps without auxiliary buffer or alpha samples are
+   * written in format version 1, so they can still be read by older versions.
+   */
   public static void save(OutputStream outputStream, Scene scene, TaskTracker taskTracker) throws IOException {
     outputStream.write(DUMP_FORMAT_MAGIC_NUMBER);
     DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
-    DumpFormat format = getDumpFormatForVersion(CURRENT_DUMP_VERSION);
-    dataOutputStream.writeInt(CURRENT_DUMP_VERSION);
+    int version = CURRENT_DUMP_VERSION;
+    if ((scene.getAuxiliaryBuffers() == null || !scene.getAuxiliaryBuffers().hasSamples())
+        && (scene.getAlphaBuffer() == null || !scene.getAlphaBuffer().hasSamples())) {
+      version = 1;
+    }
+    DumpFormat format = getDumpFormatForVersion(version);
+    dataOutputStream.writeInt(version);
     format.save(dataOutputStream, scene, taskTracker);
   }
 }
@@ -0,0 +1,131 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.renderdump;
+
+import se.llbit.chunky.renderer.scene.Scene;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the samples of several render dumps into the sample buffer of
+ * a scene, weighted by the samples per pixel of each dump.
+ *
+ * <p>While merging, the sample buffer holds the sums of the weighted
+ * samples. Dumps can be added concurrently: each dump adds its samples in
+ * batches, and the buffer is split into stripes with one lock each so that
+ * dumps that are decoded at the same time rarely wait for each other.
+ */
+class SampleAccumulator {
+  private static final int STRIPE_PIXELS = 1 << 14;
+  private static final int BATCH_PIXELS = 1 << 10;
+
+  private final double[] buffer;
+  private final Object[] locks;
+  private long spp;
+  private long renderTime;
+
+  /**
+   * Start accumulating into the sample buffer of the scene. The current
+   * samples of the scene are kept, weighted by the samples per pixel of the scene.
+   */
+  SampleAccumulator(Scene scene) {
+    buffer = scene.getSampleBuffer();
+    spp = scene.spp;
+    renderTime = scene.renderTime;
+    if (spp == 0) {
+      Arrays.fill(buffer, 0);
+    } else {
+      Arrays.parallelSetAll(buffer, i -> buffer[i] * spp);
+    }
+    int pixels = buffer.length / 3;
+    locks = new Object[(pixels + STRIPE_PIXELS - 1) / STRIPE_PIXELS];
+    for (int i = 0; i < locks.length; ++i) {
+      locks[i] = new Object();
+    }
+  }
+
+  /**
+   * Create a consumer that adds the samples of one dump. The consumer must
+   * be flushed after the last sample.
+   *
+   * @param weight the samples per pixel of the dump
+   */
+  Batch batch(int weight) {
+    return new Batch(weight);
+  }
+
+  /**
+   * Count the samples per pixel and render time of a dump after its samples have been added.
+   */
+  synchronized void addDump(int dumpSpp, long dumpRenderTime) {
+    spp += dumpSpp;
+    renderTime += dumpRenderTime;
+  }
+
+  /**
+   * Write the averaged samples, the total samples per pixel and the render time to the scene.
+   */
+  synchronized void finish(Scene scene) {
+    if (spp > 0) {
+      double scale = 1.0 / spp;
+      Arrays.parallelSetAll(buffer, i -> buffer[i] * scale);
+    }
+    scene.spp = (int) Math.min(Integer.MAX_VALUE, spp);
+    scene.renderTime = renderTime;
+  }
+
+  /**
+   * Collects a run of consecutive samples within one stripe and adds them to
+   * the buffer while holding the lock of the stripe.
+   */
+  class Batch implements PixelConsumer {
+    private final double weight;
+    private final double[] samples = new double[BATCH_PIXELS * 3];
+    private int start = -1;
+    private int size = 0;
+
+    Batch(int weight) {
+      this.weight = weight;
+    }
+
+    @Override public void consume(int pixelIndex, double r, double g, double b) {
+      if (size == BATCH_PIXELS || pixelIndex != start + size
+          || pixelIndex / STRIPE_PIXELS != start / STRIPE_PIXELS) {
+        flush();
+        start = pixelIndex;
+      }
+      int index = size * 3;
+      samples[index] = r;
+      samples[index + 1] = g;
+      samples[index + 2] = b;
+      size += 1;
+    }
+
+    void flush() {
+      if (size == 0) {
+        return;
+      }
+      int offset = start * 3;
+      synchronized (locks[start / STRIPE_PIXELS]) {
+        for (int i = 0; i < size * 3; ++i) {
+          buffer[offset + i] += samples[i] * weight;
+        }
+      }
+      size = 0;
+    }
+  }
+}
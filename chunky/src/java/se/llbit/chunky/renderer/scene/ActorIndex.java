@@ -0,0 +1,124 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import se.llbit.chunky.entity.Entity;
+import se.llbit.math.QuickMath;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector3;
+
+/**
+ * Spatial hash of actors, used to avoid adding the same actor twice while
+ * loading chunks.
+ *
+ * <p>Two actors are duplicates if they have the same class and their
+ * positions are closer than {@code sqrt(Ray.EPSILON)}. Actors are hashed by
+ * block position and class, so a lookup only looks at the few actors in the
+ * same block instead of all actors in the scene.
+ */
+class ActorIndex {
+  private static final double RADIUS = Math.sqrt(Ray.EPSILON);
+
+  private static final class Key {
+    final int x, y, z;
+    final Class<?> type;
+
+    Key(int x, int y, int z, Class<?> type) {
+      this.x = x;
+      this.y = y;
+      this.z = z;
+      this.type = type;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return x == other.x && y == other.y && z == other.z && type == other.type;
+    }
+
+    @Override public int hashCode() {
+      return Objects.hash(x, y, z, type);
+    }
+  }
+
+  private final Map<Key, List<Entity>> cells = new HashMap<>();
+
+  ActorIndex(Iterable<Entity> actors) {
+    for (Entity actor : actors) {
+      add(actor);
+    }
+  }
+
+  /**
+   * Add an actor without checking for duplicates.
+   */
+  void add(Entity actor) {
+    Vector3 p = actor.position;
+    Key key = new Key((int) QuickMath.floor(p.x), (int) QuickMath.floor(p.y),
+        (int) QuickMath.floor(p.z), actor.getClass());
+    cells.computeIfAbsent(key, k -> new ArrayList<>(1)).add(actor);
+  }
+
+  /**
+   * Add an actor if there is no duplicate of it in the index.
+   *
+   * @return {@code true} if the actor was added
+   */
+  boolean addIfAbsent(Entity actor) {
+    if (contains(actor)) {
+      return false;
+    }
+    add(actor);
+    return true;
+  }
+
+  /**
+   * @return {@code true} if there is an actor of the same class within
+   * {@code sqrt(Ray.EPSILON)} of the given actor
+   */
+  boolean contains(Entity actor) {
+    Vector3 p = actor.position;
+    int x0 = (int) QuickMath.floor(p.x - RADIUS), x1 = (int) QuickMath.floor(p.x + RADIUS);
+    int y0 = (int) QuickMath.floor(p.y - RADIUS), y1 = (int) QuickMath.floor(p.y + RADIUS);
+    int z0 = (int) QuickMath.floor(p.z - RADIUS), z1 = (int) QuickMath.floor(p.z + RADIUS);
+    for (int x = x0; x <= x1; ++x) {
+      for (int y = y0; y <= y1; ++y) {
+        for (int z = z0; z <= z1; ++z) {
+          List<Entity> cell = cells.get(new Key(x, y, z, actor.getClass()));
+          if (cell != null) {
+            for (Entity other : cell) {
+              Vector3 distance = new Vector3(other.position);
+              distance.sub(p);
+              if (distance.lengthSquared() < Ray.EPSILON) {
+                return true;
+              }
+            }
+          }
+        }
+      }
+    }
+    return false;
+  }
+}
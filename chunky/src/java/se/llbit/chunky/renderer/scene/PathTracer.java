@@ -21,6 +21,7 @@ import se.llbit.chunky.block.Air;
 import se.llbit.chunky.block.Water;
 import se.llbit.chunky.model.WaterModel;
 import se.llbit.chunky.renderer.EmitterSamplingStrategy;
+import se.llbit.chunky.renderer.MisHeuristic;
 import se.llbit.chunky.renderer.WorkerState;
 import se.llbit.chunky.world.Material;
 import se.llbit.math.*;
@@ -47,9 +48,14 @@ public class PathTracer implements RayTracer {
     } else {
       ray.setCurrentMaterial(Air.INSTANCE);
     }
+    state.primaryTransmittance = 1;
     pathTrace(scene, ray, state, 1, true);
   }
 
+  @Override public boolean tracksSkyHits() {
+    return true;
+  }
+
   /**
    * Path trace the ray in this scene.
    *
@@ -65,19 +71,25 @@ public class PathTracer implements RayTracer {
     Vector3 od = new Vector3(ray.d);
     double airDistance = 0;
 
+    // Transmittance of the camera ray if this ray continues it, otherwise zero.
+    double transmittance = state.primaryTransmittance;
+    state.primaryTransmittance = 0;
+
     while (true) {
 
       if (!PreviewRayTracer.nextIntersection(scene, ray)) {
         if (ray.getPrevMaterial().isWater()) {
           ray.color.set(0, 0, 0, 1);
           hit = true;
+        } else if (transmittance > 0 && scene.transparentSky()) {
+          // The camera ray reached the transparent sky, possibly through
+          // translucent surfaces.
+          state.skyTransmittance = transmittance;
         } else if (ray.depth == 0) {
           // Direct sky hit.
-          if (!scene.transparentSky()) {
-            scene.sky.getSkyColorInterpolated(ray);
-            scene.addSkyFog(ray);
-            hit = true;
-          }
+          scene.sky.getSkyColorInterpolated(ray);
+          scene.addSkyFog(ray);
+          hit = true;
         } else if (ray.specular) {
           // Indirect sky hit - specular color.
           scene.sky.getSkySpecularColor(ray);
@@ -86,6 +98,9 @@ public class PathTracer implements RayTracer {
         } else {
           // Indirect sky hit - diffuse color.
           scene.sky.getSkyColor(ray);
+          ray.color.x *= ray.skyWeight;
+          ray.color.y *= ray.skyWeight;
+          ray.color.z *= ray.skyWeight;
           // Skip sky fog - likely not noticeable in diffuse reflection.
           hit = true;
         }
@@ -105,6 +120,7 @@ public class PathTracer implements RayTracer {
       }
 
       float pSpecular = currentMat.specular;
+      double survival = 1;
 
       double pDiffuse = ray.color.w;
 
@@ -133,7 +149,8 @@ public class PathTracer implements RayTracer {
 
         firstReflection = false;
 
-        if (!scene.kill(ray.depth + 1, random)) {
+        survival = continuePath(scene, ray, doMetal ? maxComponent(ray.color) : 1, random);
+        if (survival > 0) {
           Ray reflected = new Ray();
           reflected.specularReflection(ray, random);
 
@@ -157,9 +174,15 @@ public class PathTracer implements RayTracer {
         if (random.nextFloat() < pDiffuse) {
           // Diffuse reflection.
 
+          if (state.aux != null) {
+            state.aux.recordHit(ray, scene.camera.getPosition(), scene.origin,
+                scene.emittersEnabled ? currentMat.emittance * scene.emitterIntensity : 0);
+          }
+
           firstReflection = false;
 
-          if (!scene.kill(ray.depth + 1, random)) {
+          survival = continuePath(scene, ray, maxComponent(ray.color), random);
+          if (survival > 0) {
             Ray reflected = new Ray();
 
             float emittance = 0;
@@ -191,6 +214,11 @@ public class PathTracer implements RayTracer {
               }
             }
 
+            boolean skySampling = scene.skySampling && scene.sky.canSampleSkyLight();
+            if (skySampling) {
+              sampleSkyLight(scene, ray, state, indirectEmitterColor);
+            }
+
             if (scene.sunEnabled) {
               reflected.set(ray);
               scene.sun.getRandomSunDirection(reflected, random);
@@ -215,6 +243,9 @@ public class PathTracer implements RayTracer {
                 Vector4 attenuation = state.attenuation;
                 if (attenuation.w > 0) {
                   double mult = QuickMath.abs(reflected.d.dot(ray.n));
+                  if (frontLight) {
+                    mult *= scene.sunMisHeuristic.weight(1 / Sun.SOLID_ANGLE, mult / Math.PI);
+                  }
                   directLightR = attenuation.x * attenuation.w * mult;
                   directLightG = attenuation.y * attenuation.w * mult;
                   directLightB = attenuation.z * attenuation.w * mult;
@@ -223,6 +254,34 @@ public class PathTracer implements RayTracer {
               }
 
               reflected.diffuseReflection(ray, random);
+              if (skySampling) {
+                setSkyWeight(scene, ray, reflected);
+              }
+
+              if (scene.sunMisHeuristic != MisHeuristic.NONE) {
+                // The diffuse reflection can also find the sun. Add its
+                // contribution, weighted against the sun sample above.
+                double cos = reflected.d.dot(ray.n);
+                if (cos > 0 && scene.sun.isInSunCone(reflected.d)) {
+                  Ray sunRay = new Ray();
+                  sunRay.set(reflected);
+                  sunRay.setCurrentMaterial(sunRay.getPrevMaterial(), sunRay.getPrevData());
+                  getDirectLightAttenuation(scene, sunRay, state);
+                  Vector4 attenuation = state.attenuation;
+                  if (attenuation.w > 0) {
+                    // The sun radiance that gives the same irradiance as the sun
+                    // sample above, divided by the pdf of the cosine-weighted
+                    // diffuse reflection.
+                    double mult = Math.PI / Sun.SOLID_ANGLE
+                        * scene.sunMisHeuristic.weight(cos / Math.PI, 1 / Sun.SOLID_ANGLE);
+                    directLightR += attenuation.x * attenuation.w * mult;
+                    directLightG += attenuation.y * attenuation.w * mult;
+                    directLightB += attenuation.z * attenuation.w * mult;
+                    hit = true;
+                  }
+                }
+              }
+
               hit = pathTrace(scene, reflected, state, 0, false) || hit;
               if (hit) {
                 ray.color.x = ray.color.x * (emittance + directLightR * scene.sun.emittance.x + (
@@ -240,6 +299,9 @@ public class PathTracer implements RayTracer {
 
             } else {
               reflected.diffuseReflection(ray, random);
+              if (skySampling) {
+                setSkyWeight(scene, ray, reflected);
+              }
 
               hit = pathTrace(scene, reflected, state, 0, false) || hit;
               if (hit) {
@@ -270,7 +332,8 @@ public class PathTracer implements RayTracer {
           double radicand = 1 - n1n2 * n1n2 * (1 - cosTheta * cosTheta);
           if (doRefraction && radicand < Ray.EPSILON) {
             // Total internal reflection.
-            if (!scene.kill(ray.depth + 1, random)) {
+            survival = continuePath(scene, ray, 1, random);
+            if (survival > 0) {
               Ray reflected = new Ray();
               reflected.specularReflection(ray, random);
               if (pathTrace(scene, reflected, state, 1, false)) {
@@ -282,7 +345,9 @@ public class PathTracer implements RayTracer {
               }
             }
           } else {
-            if (!scene.kill(ray.depth + 1, random)) {
+            survival = continuePath(scene, ray,
+                maxComponent(ray.color) * pDiffuse + (1 - pDiffuse), random);
+            if (survival > 0) {
               Ray refracted = new Ray();
               refracted.set(ray);
 
@@ -323,6 +388,7 @@ public class PathTracer implements RayTracer {
                   refracted.o.scaleAdd(Ray.OFFSET, refracted.d);
                 }
 
+                state.primaryTransmittance = transmittance / survival;
                 if (pathTrace(scene, refracted, state, 1, false)) {
                   ray.color.x = ray.color.x * pDiffuse + (1 - pDiffuse);
                   ray.color.y = ray.color.y * pDiffuse + (1 - pDiffuse);
@@ -338,10 +404,12 @@ public class PathTracer implements RayTracer {
 
         } else {
 
+          ray.throughput *= maxComponent(ray.color) * pDiffuse + (1 - pDiffuse);
           Ray transmitted = new Ray();
           transmitted.set(ray);
           transmitted.o.scaleAdd(Ray.OFFSET, transmitted.d);
 
+          state.primaryTransmittance = transmittance;
           if (pathTrace(scene, transmitted, state, 1, false)) {
             ray.color.x = ray.color.x * pDiffuse + (1 - pDiffuse);
             ray.color.y = ray.color.y * pDiffuse + (1 - pDiffuse);
@@ -354,6 +422,13 @@ public class PathTracer implements RayTracer {
         }
       }
 
+      if (hit && survival > 0 && survival < 1) {
+        // Compensate for the paths terminated by Russian roulette.
+        ray.color.x /= survival;
+        ray.color.y /= survival;
+        ray.color.z /= survival;
+      }
+
       if (hit && prevMat.isWater()) {
         // Render water fog effect.
         if(scene.waterVisibility == 0) {
@@ -422,6 +497,31 @@ public class PathTracer implements RayTracer {
     return hit;
   }
 
+  /**
+   * Decide if the path continues after the current hit. Uses Russian roulette
+   * based on the path throughput if enabled in the scene, otherwise only the
+   * path depth decides.
+   *
+   * @param albedo attenuation of the path at the current hit
+   * @return the probability that the path survived with, or 0 if the path
+   * was terminated
+   */
+  private static double continuePath(Scene scene, Ray ray, double albedo, Random random) {
+    if (!scene.russianRoulette) {
+      return scene.kill(ray.depth + 1, random) ? 0 : 1;
+    }
+    double throughput = ray.throughput * albedo;
+    double survival = scene.russianRoulette(ray.depth + 1, throughput, random);
+    if (survival > 0) {
+      ray.throughput = throughput / survival;
+    }
+    return survival;
+  }
+
+  private static double maxComponent(Vector4 color) {
+    return Math.max(color.x, Math.max(color.y, color.z));
+  }
+
   /**
    * Cast a shadow ray from the intersection point (given by ray) to the emitter
    * at position pos. Returns the contribution of this emitter (0 if the emitter is occluded)
@@ -471,6 +571,45 @@ public class PathTracer implements RayTracer {
     return indirectEmitterColor;
   }
 
+  /**
+   * Sample a sky light direction from the skymap and add its contribution,
+   * weighted against diffuse reflections reaching the sky, to the given color.
+   */
+  private static void sampleSkyLight(Scene scene, Ray ray, WorkerState state, Vector4 color) {
+    Ray skyRay = new Ray();
+    skyRay.set(ray);
+    double pdf = scene.sky.sampleSkyDirection(skyRay.d, state.random);
+    if (pdf <= 0) {
+      return;
+    }
+    double cos = skyRay.d.dot(ray.n);
+    if (cos <= 0) {
+      return;
+    }
+    skyRay.setCurrentMaterial(skyRay.getPrevMaterial(), skyRay.getPrevData());
+    getDirectLightAttenuation(scene, skyRay, state);
+    Vector4 attenuation = state.attenuation;
+    if (attenuation.w > 0) {
+      scene.sky.getSkyColor(skyRay);
+      // Diffuse BRDF (without albedo) times cosine, divided by the pdf.
+      double mult = attenuation.w * cos / (Math.PI * pdf)
+          * MisHeuristic.POWER.weight(pdf, cos / Math.PI);
+      color.x += skyRay.color.x * attenuation.x * mult;
+      color.y += skyRay.color.y * attenuation.y * mult;
+      color.z += skyRay.color.z * attenuation.z * mult;
+    }
+  }
+
+  /**
+   * Set the weight of the sky light for a diffuse reflection, so that it
+   * combines with {@link #sampleSkyLight} using the power heuristic.
+   */
+  private static void setSkyWeight(Scene scene, Ray ray, Ray reflected) {
+    double cos = reflected.d.dot(ray.n);
+    reflected.skyWeight = MisHeuristic.POWER.weight(cos / Math.PI,
+        scene.sky.skyDirectionPdf(reflected.d));
+  }
+
   /**
    * Calculate direct lighting attenuation.
    */
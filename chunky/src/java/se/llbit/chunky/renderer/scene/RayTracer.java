@@ -28,4 +28,13 @@ import se.llbit.chunky.renderer.WorkerState;
  */
 public interface RayTracer {
   void trace(Scene scene, WorkerState state);
+
+  /**
+   * @return {@code true} if this ray tracer sets {@link WorkerState#skyTransmittance}
+   * when a camera ray reaches the sky. Otherwise the alpha channel for
+   * transparent sky is computed in a separate pass after rendering.
+   */
+  default boolean tracksSkyHits() {
+    return false;
+  }
 }
@@ -27,6 +27,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -34,7 +39,6 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -66,6 +70,7 @@ import se.llbit.chunky.renderer.*;
 import se.llbit.chunky.renderer.export.PictureExportFormats;
 import se.llbit.chunky.renderer.export.PictureExportFormat;
 import se.llbit.chunky.renderer.projection.ProjectionMode;
+import se.llbit.chunky.renderer.postprocessing.AtrousDenoiser;
 import se.llbit.chunky.renderer.postprocessing.PostProcessingFilter;
 import se.llbit.chunky.renderer.postprocessing.PostProcessingFilters;
 import se.llbit.chunky.renderer.postprocessing.PreviewFilter;
@@ -84,6 +89,7 @@ import se.llbit.chunky.world.World;
 import se.llbit.chunky.world.WorldTexture;
 import se.llbit.json.Json;
 import se.llbit.json.JsonArray;
+import se.llbit.json.JsonMember;
 import se.llbit.json.JsonObject;
 import se.llbit.json.JsonParser;
 import se.llbit.json.JsonValue;
@@ -107,6 +113,7 @@ import java.util.*;
 import java.util.concurrent.*;
 import se.llbit.util.mojangapi.MojangApi;
 import se.llbit.util.mojangapi.PlayerSkin;
+import se.llbit.util.ThreadBudget;
 
 /**
  * Encapsulates scene and render state.
@@ -124,6 +131,9 @@ public class Scene implements JsonSerializable, Refreshable {
 
   protected static final double fSubSurface = 0.3;
 
+  /** Number of bounces before paths can be terminated by Russian roulette. */
+  public static final int RUSSIAN_ROULETTE_DEPTH = 3;
+
   /** Minimum canvas width. */
   public static final int MIN_CANVAS_WIDTH = 20;
 
@@ -200,6 +210,19 @@ public class Scene implements JsonSerializable, Refreshable {
    */
   public int height;
 
+  /**
+   * Size of the full frame when the canvas is a crop window of a larger
+   * frame, or zero when the canvas is the full frame.
+   */
+  private int fullWidth = 0;
+  private int fullHeight = 0;
+
+  /**
+   * Position of the canvas in the full frame.
+   */
+  private int cropX = 0;
+  private int cropY = 0;
+
   public PostProcessingFilter postProcessingFilter = DEFAULT_POSTPROCESSING_FILTER;
   public PictureExportFormat outputMode = PictureExportFormats.PNG;
   public long renderTime;
@@ -244,6 +267,45 @@ public class Scene implements JsonSerializable, Refreshable {
    */
   protected boolean fastFog = true;
 
+  /**
+   * Traverse the world and water octrees in lockstep instead of one after the other.
+   */
+  protected boolean lockstepWaterTraversal = false;
+
+  /**
+   * Sampler used by the path tracing renderer.
+   */
+  protected SamplerType samplerType = SamplerType.RANDOM;
+
+  /**
+   * Seed mixed into the samples of the path tracing renderer. A new seed is
+   * picked for each scene that is created or loaded, so independent renders
+   * of the same scene (for example renders that are merged later) produce
+   * independent samples. The seed is not saved in the scene description.
+   */
+  protected long renderSeed = new Random().nextLong();
+
+  /**
+   * Heuristic for combining sun sampling and diffuse reflection sampling
+   * of the sun with multiple importance sampling. This is off by default:
+   * at the default sun radius the sun sample alone is already close to
+   * optimal for diffuse surfaces, and MIS only reduces noise for large suns
+   * that are partly below the horizon.
+   */
+  protected MisHeuristic sunMisHeuristic = MisHeuristic.NONE;
+
+  /**
+   * Sample sky light directions from the skymap brightness, in addition to
+   * diffuse reflections.
+   */
+  protected boolean skySampling = false;
+
+  /**
+   * Terminate paths with Russian roulette based on the path throughput
+   * instead of only on the path depth.
+   */
+  protected boolean russianRoulette = false;
+
   /** Fog thickness. */
   protected double fogDensity = DEFAULT_FOG_DENSITY;
 
@@ -286,12 +348,12 @@ public class Scene implements JsonSerializable, Refreshable {
   /**
    * Entities in the scene.
    */
-  private Collection<Entity> entities = new LinkedList<>();
+  private Collection<Entity> entities = new ArrayList<>();
 
   /**
    * Poseable entities in the scene.
    */
-  private Collection<Entity> actors = new LinkedList<>();
+  private Collection<Entity> actors = new ArrayList<>();
 
   /** Poseable entities in the scene. */
   private Map<PlayerEntity, JsonObject> profiles = new HashMap<>();
@@ -338,6 +400,38 @@ public class Scene implements JsonSerializable, Refreshable {
 
   private byte[] alphaChannel;
 
+  /**
+   * Albedo, normal and depth buffers used to guide the denoiser.
+   * Shared with copies of this scene in the same way as the sample buffer.
+   */
+  protected AuxiliaryBuffers auxBuffers;
+
+  /**
+   * Sky coverage accumulated during rendering, used for the alpha channel.
+   * Shared with copies of this scene in the same way as the sample buffer.
+   */
+  protected AlphaBuffer alphaBuffer;
+
+  /**
+   * Denoise the frame before post processing.
+   */
+  protected boolean denoise = false;
+
+  /**
+   * The last denoised frame, reused when the frame is post processed again
+   * without new samples, for example when the exposure is changed.
+   */
+  private double[] denoised;
+  private double[] denoisedSamples;
+  private int denoisedSpp;
+  private long denoisedRenderTime;
+
+  /**
+   * Record the auxiliary buffers even if they are not needed for denoising
+   * or by the output format, so that they are saved in render dumps.
+   */
+  protected boolean recordAuxBuffers = false;
+
   private boolean finalized = false;
 
   private boolean finalizeBuffer = false;
@@ -420,6 +514,8 @@ public class Scene implements JsonSerializable, Refreshable {
     backBuffer = new BitmapImage(width, height);
     alphaChannel = new byte[width * height];
     samples = new double[width * height * 3];
+    auxBuffers = new AuxiliaryBuffers(width, height);
+    alphaBuffer = new AlphaBuffer(width, height);
   }
 
   /**
@@ -445,7 +541,7 @@ public class Scene implements JsonSerializable, Refreshable {
       worldOctree = other.worldOctree;
       waterOctree = other.waterOctree;
       entities = other.entities;
-      actors = new LinkedList<>(other.actors); // Create a copy so that entity changes can be reset.
+      actors = new ArrayList<>(other.actors); // Create a copy so that entity changes can be reset.
       profiles = other.profiles;
       bvh = other.bvh;
       actorBvh = other.actorBvh;
@@ -483,6 +579,12 @@ public class Scene implements JsonSerializable, Refreshable {
     fogDensity = other.fogDensity;
     skyFogDensity = other.skyFogDensity;
     fastFog = other.fastFog;
+    lockstepWaterTraversal = other.lockstepWaterTraversal;
+    samplerType = other.samplerType;
+    renderSeed = other.renderSeed;
+    sunMisHeuristic = other.sunMisHeuristic;
+    skySampling = other.skySampling;
+    russianRoulette = other.russianRoulette;
     yClipMin = other.yClipMin;
     yClipMax = other.yClipMax;
 
@@ -502,6 +604,11 @@ public class Scene implements JsonSerializable, Refreshable {
 
     finalized = false;
 
+    fullWidth = other.fullWidth;
+    fullHeight = other.fullHeight;
+    cropX = other.cropX;
+    cropY = other.cropY;
+
     if (samples != other.samples) {
       width = other.width;
       height = other.height;
@@ -509,6 +616,8 @@ public class Scene implements JsonSerializable, Refreshable {
       frontBuffer = other.frontBuffer;
       alphaChannel = other.alphaChannel;
       samples = other.samples;
+      auxBuffers = other.auxBuffers;
+      alphaBuffer = other.alphaBuffer;
     }
 
     octreeImplementation = other.octreeImplementation;
@@ -558,6 +667,7 @@ public class Scene implements JsonSerializable, Refreshable {
    */
   public synchronized void loadScene(RenderContext context, String sceneName, TaskTracker taskTracker)
       throws IOException {
+    renderSeed = new Random().nextLong();
     try {
       loadDescription(context.getSceneDescriptionInputStream(sceneName));
     } catch (FileNotFoundException e) {
@@ -676,6 +786,15 @@ public class Scene implements JsonSerializable, Refreshable {
    */
   public BlockPalette getPalette() { return palette; }
 
+  /**
+   * Replace the block palette and octrees without loading chunks.
+   */
+  void setOctrees(BlockPalette palette, Octree worldOctree, Octree waterOctree) {
+    this.palette = palette;
+    this.worldOctree = worldOctree;
+    this.waterOctree = waterOctree;
+  }
+
   /**
    * Trace a ray in this scene. This offsets the ray origin to
    * move it into the scene coordinate space.
@@ -751,7 +870,10 @@ public class Scene implements JsonSerializable, Refreshable {
    * @param ray   the ray
    * @return {@code true} if the ray intersects a voxel
    */
-  private boolean worldIntersection(Ray ray) {
+  boolean worldIntersection(Ray ray) {
+    if (lockstepWaterTraversal) {
+      return worldIntersectionLockstep(ray);
+    }
     Ray start = new Ray(ray);
     start.setCurrentMaterial(ray.getPrevMaterial(), ray.getPrevData());
     boolean hit = false;
@@ -793,6 +915,92 @@ public class Scene implements JsonSerializable, Refreshable {
     return hit;
   }
 
+  /**
+   * Same as {@link #worldIntersection(Ray)}, but marches the world and water
+   * octrees in lockstep. The march that is furthest behind is advanced until it
+   * passes the other one, and a march is aborted as soon as it can no longer
+   * produce the closest hit. This avoids marching through the whole scene twice
+   * while giving exactly the same result as the two separate traversals.
+   *
+   * @param ray   the ray
+   * @return {@code true} if the ray intersects a voxel
+   */
+  private boolean worldIntersectionLockstep(Ray ray) {
+    Ray start = new Ray(ray);
+    start.setCurrentMaterial(ray.getPrevMaterial(), ray.getPrevData());
+    boolean inWater = start.getCurrentMaterial().isWater();
+    Ray worldRay = new Ray(start);
+    worldRay.setCurrentMaterial(start.getPrevMaterial(), start.getPrevData());
+    Ray waterRay = new Ray(start);
+    waterRay.setCurrentMaterial(start.getPrevMaterial(), start.getPrevData());
+    Octree.RayMarch world = worldOctree.marchEnterBlock(this, worldRay, palette);
+    Octree.RayMarch water = inWater
+        ? waterOctree.marchExitWater(this, waterRay, palette)
+        : waterOctree.marchEnterBlock(this, waterRay, palette);
+
+    // Block models may report hits slightly before the leaf where they were found,
+    // so marches are only aborted once they are safely past the point where they
+    // could still win. The final comparisons below are the same as in the
+    // two-pass traversal.
+    double margin = Ray.OFFSET;
+    double tMax = ray.t;
+    while (world.isRunning() || water.isRunning()) {
+      double worldBound = tMax;
+      if (water.getState() == Octree.RayMarch.HIT) {
+        worldBound = Math.min(worldBound, inWater ? waterRay.distance + Ray.EPSILON : waterRay.distance);
+      }
+      worldBound += margin;
+      double waterBound = tMax;
+      if (world.getState() == Octree.RayMarch.HIT && worldRay.distance < tMax) {
+        waterBound = worldRay.distance;
+      }
+      waterBound += margin;
+
+      if (world.isRunning() && (!water.isRunning() || world.frontier() <= water.frontier())) {
+        double limit = water.isRunning() ? Math.min(water.frontier(), worldBound) : worldBound;
+        if (world.advance(limit) == Octree.RayMarch.RUNNING && world.frontier() > worldBound) {
+          world.abort();
+        }
+      } else {
+        double limit = world.isRunning() ? Math.min(world.frontier(), waterBound) : waterBound;
+        if (water.advance(limit) == Octree.RayMarch.RUNNING && water.frontier() > waterBound) {
+          water.abort();
+        }
+      }
+    }
+
+    boolean hit = false;
+    if (world.getState() == Octree.RayMarch.HIT && worldRay.distance < ray.t) {
+      ray.t = worldRay.distance;
+      ray.n.set(worldRay.n);
+      ray.color.set(worldRay.color);
+      ray.setPrevMaterial(worldRay.getPrevMaterial(), worldRay.getPrevData());
+      ray.setCurrentMaterial(worldRay.getCurrentMaterial(), worldRay.getCurrentData());
+      hit = true;
+    }
+    boolean waterHit = water.getState() == Octree.RayMarch.HIT;
+    if (inWater) {
+      if (waterHit && waterRay.distance < ray.t - Ray.EPSILON) {
+        ray.t = waterRay.distance;
+        ray.n.set(waterRay.n);
+        ray.color.set(waterRay.color);
+        ray.setPrevMaterial(waterRay.getPrevMaterial(), waterRay.getPrevData());
+        ray.setCurrentMaterial(waterRay.getCurrentMaterial(), waterRay.getCurrentData());
+        hit = true;
+      } else if (ray.getPrevMaterial() == Air.INSTANCE) {
+        ray.setPrevMaterial(Water.INSTANCE, 1 << Water.FULL_BLOCK);
+      }
+    } else if (waterHit && waterRay.distance < ray.t) {
+      ray.t = waterRay.distance;
+      ray.n.set(waterRay.n);
+      ray.color.set(waterRay.color);
+      ray.setPrevMaterial(waterRay.getPrevMaterial(), waterRay.getPrevData());
+      ray.setCurrentMaterial(waterRay.getCurrentMaterial(), waterRay.getCurrentData());
+      hit = true;
+    }
+    return hit;
+  }
+
   public void updateOpacity(Ray ray) {
     if (ray.getCurrentMaterial().isWater() || (ray.getCurrentMaterial() == Air.INSTANCE
         && ray.getPrevMaterial().isWater())) {
@@ -819,6 +1027,31 @@ public class Scene implements JsonSerializable, Refreshable {
     return depth >= rayDepth && random.nextDouble() < .5f;
   }
 
+  /**
+   * Russian roulette based on path throughput. Paths continue with a
+   * probability equal to their throughput (at most one), so paths that can
+   * only contribute little light are terminated early. The contribution of a
+   * surviving path must be divided by the returned survival probability.
+   *
+   * <p>The first {@link #RUSSIAN_ROULETTE_DEPTH} bounces are never terminated,
+   * and no path is longer than the ray depth.
+   *
+   * @param depth depth of the next ray
+   * @param throughput path throughput, including the next bounce
+   * @return the probability that the path survived with, or 0 if the path
+   * needs to die now
+   */
+  public final double russianRoulette(int depth, double throughput, Random random) {
+    if (depth > rayDepth) {
+      return 0;
+    }
+    if (depth < RUSSIAN_ROULETTE_DEPTH) {
+      return 1;
+    }
+    double survival = Math.min(1, throughput);
+    return random.nextDouble() < survival ? survival : 0;
+  }
+
   /**
    * Reload all loaded chunks.
    */
@@ -889,11 +1122,11 @@ public class Scene implements JsonSerializable, Refreshable {
     }
 
     try (TaskTracker.Task task = taskTracker.task("(2/6) Loading entities")) {
-      entities = new LinkedList<>();
+      entities = new ArrayList<>();
       if (actors.isEmpty() && PersistentSettings.getLoadPlayers()) {
         // We don't load actor entities if some already exists. Loading actor entities
         // risks resetting posed actors when reloading chunks for an existing scene.
-        actors = new LinkedList<>();
+        actors = new ArrayList<>();
         profiles = new HashMap<>();
         Collection<PlayerEntity> players = world.playerEntities();
         int done = 1;
@@ -938,6 +1171,7 @@ public class Scene implements JsonSerializable, Refreshable {
     }
 
     try (TaskTracker.Task task = taskTracker.task("(3/6) Loading chunks")) {
+      ActorIndex actorIndex = new ActorIndex(actors);
       int done = 1;
       int target = chunksToLoad.size();
 
@@ -1034,7 +1268,9 @@ public class Scene implements JsonSerializable, Refreshable {
                 entities.add(
                     new PaintingEntity(new Vector3(x, y, z), tag.get("Motive").stringValue(), yaw));
               } else if (id.equals("minecraft:armor_stand")) {
-                actors.add(new ArmorStand(new Vector3(x, y, z), tag));
+                Entity armorStand = new ArmorStand(new Vector3(x, y, z), tag);
+                actors.add(armorStand);
+                actorIndex.add(armorStand);
               }
             }
           }
@@ -1080,14 +1316,7 @@ public class Scene implements JsonSerializable, Refreshable {
 
                     if(entity instanceof Poseable && !(entity instanceof Lectern && !((Lectern) entity).hasBook())) {
                       // don't add the actor again if it was already loaded from json
-                      if(actors.stream().noneMatch(actor -> {
-                        if(actor.getClass().equals(entity.getClass())) {
-                          Vector3 distance = new Vector3(actor.position);
-                          distance.sub(entity.position);
-                          return distance.lengthSquared() < Ray.EPSILON;
-                        }
-                        return false;
-                      })) {
+                      if(actorIndex.addIfAbsent(entity)) {
                         actors.add(entity);
                       }
                     } else {
@@ -1274,14 +1503,7 @@ public class Scene implements JsonSerializable, Refreshable {
               }
               if (blockEntity instanceof Poseable) {
                 // don't add the actor again if it was already loaded from json
-                if (actors.stream().noneMatch(actor -> {
-                  if (actor.getClass().equals(blockEntity.getClass())) {
-                    Vector3 distance = new Vector3(actor.position);
-                    distance.sub(blockEntity.position);
-                    return distance.lengthSquared() < Ray.EPSILON;
-                  }
-                  return false;
-                })) {
+                if (actorIndex.addIfAbsent(blockEntity)) {
                   actors.add(blockEntity);
                 }
               } else {
@@ -1394,6 +1616,7 @@ public class Scene implements JsonSerializable, Refreshable {
 
       worldOctree.endFinalization();
       waterOctree.endFinalization();
+      palette.bakeModels();
     }
 
     for (Entity entity : actors) {
@@ -1569,6 +1792,10 @@ public class Scene implements JsonSerializable, Refreshable {
   /**
    * Start rendering. This wakes up threads waiting on a scene
    * state change, even if the scene state did not actually change.
+   *
+   * <p>This is also used to set up scenes that are rendered or post processed
+   * without a render manager, so that they use the render post processing
+   * filter instead of the preview filter.
    */
   public synchronized void startHeadlessRender() {
     mode = RenderMode.RENDERING;
@@ -1765,6 +1992,52 @@ public class Scene implements JsonSerializable, Refreshable {
     }
   }
 
+  /**
+   * Enable or disable denoising of the frame before post processing.
+   * This does not restart the render.
+   */
+  public synchronized void setDenoise(boolean value) {
+    denoise = value;
+  }
+
+  public boolean getDenoise() {
+    return denoise;
+  }
+
+  /**
+   * Enable or disable recording of the auxiliary buffers. They are also
+   * recorded when denoising or when the output format needs them.
+   * This does not restart the render.
+   */
+  public synchronized void setRecordAuxiliaryBuffers(boolean value) {
+    recordAuxBuffers = value;
+  }
+
+  public boolean getRecordAuxiliaryBuffers() {
+    return recordAuxBuffers;
+  }
+
+  /**
+   * @return {@code true} if the renderer should record the auxiliary buffers
+   */
+  public boolean recordAuxiliaryBuffers() {
+    return recordAuxBuffers || denoise || outputMode.usesAuxiliaryBuffers();
+  }
+
+  /**
+   * @return The auxiliary buffers, used to guide the denoiser
+   */
+  public AuxiliaryBuffers getAuxiliaryBuffers() {
+    return auxBuffers;
+  }
+
+  /**
+   * @return The sky coverage accumulated during rendering
+   */
+  public AlphaBuffer getAlphaBuffer() {
+    return alphaBuffer;
+  }
+
   /**
    * @return The current emitter intensity
    */
@@ -1907,6 +2180,8 @@ public class Scene implements JsonSerializable, Refreshable {
   public synchronized void copyTransients(Scene other) {
     name = other.name;
     postProcessingFilter = other.postProcessingFilter;
+    denoise = other.denoise;
+    recordAuxBuffers = other.recordAuxBuffers;
     exposure = other.exposure;
     dumpFrequency = other.dumpFrequency;
     saveSnapshots = other.saveSnapshots;
@@ -1941,6 +2216,55 @@ public class Scene implements JsonSerializable, Refreshable {
    * new canvas size is not identical to the current canvas size.
    */
   public synchronized void setCanvasSize(int canvasWidth, int canvasHeight) {
+    if (fullWidth != 0) {
+      fullWidth = 0;
+      fullHeight = 0;
+      cropX = 0;
+      cropY = 0;
+      refresh();
+    }
+    resizeCanvas(canvasWidth, canvasHeight);
+  }
+
+  /**
+   * Make the canvas a crop window of a larger frame. Camera rays and
+   * samples are computed as for the full frame, so a crop window renders
+   * exactly the same pixels as the corresponding part of the full frame,
+   * but only the crop window needs sample buffers.
+   *
+   * @param fullWidth width of the full frame
+   * @param fullHeight height of the full frame
+   * @param x left edge of the crop window in the full frame
+   * @param y top edge of the crop window in the full frame
+   * @param cropWidth width of the crop window, this is the new canvas width
+   * @param cropHeight height of the crop window, this is the new canvas height
+   * @throws IllegalArgumentException if the crop window is not inside the full frame,
+   * or is smaller than the minimum canvas size
+   */
+  public synchronized void setCanvasCrop(int fullWidth, int fullHeight, int x, int y,
+      int cropWidth, int cropHeight) {
+    if (cropWidth < MIN_CANVAS_WIDTH || cropHeight < MIN_CANVAS_HEIGHT
+        || x < 0 || y < 0 || x + cropWidth > fullWidth || y + cropHeight > fullHeight) {
+      throw new IllegalArgumentException(String.format(
+          "Invalid crop window %dx%d+%d+%d for a %dx%d frame",
+          cropWidth, cropHeight, x, y, fullWidth, fullHeight));
+    }
+    if (cropWidth == fullWidth && cropHeight == fullHeight) {
+      setCanvasSize(fullWidth, fullHeight);
+      return;
+    }
+    if (this.fullWidth != fullWidth || this.fullHeight != fullHeight
+        || cropX != x || cropY != y) {
+      this.fullWidth = fullWidth;
+      this.fullHeight = fullHeight;
+      cropX = x;
+      cropY = y;
+      refresh();
+    }
+    resizeCanvas(cropWidth, cropHeight);
+  }
+
+  private void resizeCanvas(int canvasWidth, int canvasHeight) {
     int newWidth = Math.max(MIN_CANVAS_WIDTH, canvasWidth);
     int newHeight = Math.max(MIN_CANVAS_HEIGHT, canvasHeight);
     if (newWidth != width || newHeight != height) {
@@ -1951,6 +2275,41 @@ public class Scene implements JsonSerializable, Refreshable {
     }
   }
 
+  /**
+   * @return {@code true} if the canvas is a crop window of a larger frame
+   */
+  public boolean isCropped() {
+    return fullWidth != 0;
+  }
+
+  /**
+   * @return Width of the full frame, this is the canvas width unless the canvas is cropped
+   */
+  public int fullWidth() {
+    return fullWidth != 0 ? fullWidth : width;
+  }
+
+  /**
+   * @return Height of the full frame, this is the canvas height unless the canvas is cropped
+   */
+  public int fullHeight() {
+    return fullHeight != 0 ? fullHeight : height;
+  }
+
+  /**
+   * @return Left edge of the canvas in the full frame
+   */
+  public int cropX() {
+    return cropX;
+  }
+
+  /**
+   * @return Top edge of the canvas in the full frame
+   */
+  public int cropY() {
+    return cropY;
+  }
+
   /**
    * @return Canvas width
    */
@@ -1973,8 +2332,7 @@ public class Scene implements JsonSerializable, Refreshable {
       Log.error("Can't save snapshot: bad output directory!");
       return;
     }
-    String fileName = String.format("%s-%d%s", name, spp, getOutputMode().getExtension());
-    File targetFile = new File(directory, fileName);
+    File targetFile = new File(directory, snapshotFileName());
     if (!directory.exists()) {
       directory.mkdirs();
     }
@@ -1987,6 +2345,62 @@ public class Scene implements JsonSerializable, Refreshable {
     writeImage(targetFile, getOutputMode(), taskTracker);
   }
 
+  /**
+   * @return the file name of a snapshot of the current frame
+   */
+  public String snapshotFileName() {
+    return String.format("%s-%d%s", name, spp, getOutputMode().getExtension());
+  }
+
+  /**
+   * Finalize the current frame and copy it, so that the frame can be written
+   * while rendering continues.
+   *
+   * <p>The copy has the settings of this scene, including the name and
+   * output format, and copies of the frame buffers used by the output
+   * format, but no world. The copy is already finalized and is written
+   * directly with the output format.
+   */
+  public synchronized Scene copyFrame(TaskTracker taskTracker) {
+    PictureExportFormat mode = getOutputMode();
+    if (mode.isTransparencySupported()) {
+      computeAlpha(taskTracker);
+    }
+    if (!finalized) {
+      postProcessFrame(taskTracker);
+    }
+    Scene copy = new Scene();
+    copy.copyState(this, false);
+    copy.copyTransients(this);
+    copy.backBuffer = new BitmapImage(backBuffer);
+    copy.frontBuffer = copy.backBuffer;
+    copy.alphaChannel = transparentSky ? alphaChannel.clone() : new byte[0];
+    copy.samples = mode.usesSampleBuffer() ? samples.clone() : new double[0];
+    copy.auxBuffers = mode.usesAuxiliaryBuffers()
+        ? new AuxiliaryBuffers(auxBuffers)
+        : new AuxiliaryBuffers(width, height);
+    copy.alphaBuffer = new AlphaBuffer(width, height);
+    copy.finalized = true;
+    return copy;
+  }
+
+  /**
+   * Copy this scene with its own sample buffer and frame buffers, so that the
+   * render dump and snapshots can be saved from the copy while samples are
+   * still being added to this scene. The copy shares the world of this scene.
+   * The alpha and auxiliary buffers are not copied.
+   */
+  public synchronized Scene copySamples() {
+    Scene copy = new Scene(this);
+    copy.samples = samples.clone();
+    copy.backBuffer = new BitmapImage(width, height);
+    copy.frontBuffer = new BitmapImage(width, height);
+    copy.alphaChannel = new byte[width * height];
+    copy.auxBuffers = new AuxiliaryBuffers(width, height);
+    copy.alphaBuffer = new AlphaBuffer(width, height);
+    return copy;
+  }
+
   /**
    * Save the current frame as a PNG or TIFF image, depending on this scene's outputMode.
    */
@@ -2023,13 +2437,21 @@ public class Scene implements JsonSerializable, Refreshable {
 
   /**
    * Compute the alpha channel.
+   *
+   * <p>The sky coverage accumulated during rendering is used if it covers all
+   * samples of the current frame. Otherwise, for example after merging a render
+   * dump without sky coverage, the alpha channel is computed by tracing extra
+   * rays.
    */
   private void computeAlpha(TaskTracker taskTracker) {
     if (transparentSky) {
       if (!this.getOutputMode().isTransparencySupported()) {
         Log.warn("Can not use transparent sky with " + this.getOutputMode().getName() +  " output mode. Use PNG instead.");
+      } else if (alphaBuffer.hasSamples() && alphaBuffer.spp() == spp) {
+        alphaBuffer.toAlphaChannel(alphaChannel);
       } else {
-        try (TaskTracker.Task task = taskTracker.task("Computing alpha channel")) {
+        try (TaskTracker.Task task = taskTracker.task("Computing alpha channel");
+            ThreadBudget.Section section = Chunky.getThreadBudget().enter(ThreadBudget.Priority.FINALIZE)) {
           AtomicInteger done = new AtomicInteger(0);
 
           Chunky.getCommonThreads().submit(() -> {
@@ -2061,12 +2483,42 @@ public class Scene implements JsonSerializable, Refreshable {
    * but in some cases an separate post processing pass is needed.
    */
   public void postProcessFrame(TaskTracker.Task task) {
+    postProcessFrame(task, true);
+  }
+
+  /**
+   * Post-process all pixels in the current frame.
+   *
+   * @param allowDenoise {@code false} to skip denoising for an intermediate
+   * frame. The frame is then not considered finalized.
+   */
+  public void postProcessFrame(TaskTracker.Task task, boolean allowDenoise) {
     PostProcessingFilter filter = postProcessingFilter;
     if(mode == RenderMode.PREVIEW) {
       filter = PreviewFilter.INSTANCE;
     }
-    filter.processFrame(width, height, samples, backBuffer, exposure, task);
-    finalized = true;
+    double[] input = samples;
+    boolean denoiseFrame = denoise && mode != RenderMode.PREVIEW;
+    if (denoiseFrame && allowDenoise) {
+      input = denoisedFrame(task);
+    }
+    filter.processFrame(width, height, input, backBuffer, exposure, task);
+    finalized = allowDenoise || !denoiseFrame;
+  }
+
+  /**
+   * Denoise the sample buffer. The result is cached until more samples are
+   * rendered, since denoising is far more expensive than post processing.
+   */
+  private synchronized double[] denoisedFrame(TaskTracker.Task task) {
+    if (denoised == null || denoisedSamples != samples || denoisedSpp != spp
+        || denoisedRenderTime != renderTime) {
+      denoised = new AtrousDenoiser().denoise(width, height, samples, auxBuffers, task);
+      denoisedSamples = samples;
+      denoisedSpp = spp;
+      denoisedRenderTime = renderTime;
+    }
+    return denoised;
   }
 
   public void postProcessFrame(TaskTracker taskTracker) {
@@ -2092,8 +2544,12 @@ public class Scene implements JsonSerializable, Refreshable {
     try (TaskTracker.Task task = taskTracker.task("Saving Grid")) {
       Log.info("Saving Grid " + filename);
 
-      try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(context.getSceneFileOutputStream(filename)))) {
-        emitterGrid.store(out);
+      try {
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+            context.getSceneFileOutputStream(filename + ".tmp")))) {
+          emitterGrid.store(out);
+        }
+        replaceSceneFile(context, filename);
       } catch (IOException e) {
         Log.warn("Couldn't save Grid", e);
       }
@@ -2111,9 +2567,13 @@ public class Scene implements JsonSerializable, Refreshable {
       Log.info("Saving octree " + fileName);
 
       boolean saved = false;
-      try (DataOutputStream out = new DataOutputStream(new FastBufferedOutputStream(new GZIPOutputStream(context.getSceneFileOutputStream(fileName))))) {
-        OctreeFileFormat.store(out, worldOctree, waterOctree, palette,
-            grassTexture, foliageTexture, waterTexture);
+      try {
+        try (DataOutputStream out = new DataOutputStream(new FastBufferedOutputStream(new GZIPOutputStream(
+            context.getSceneFileOutputStream(fileName + ".tmp"))))) {
+          OctreeFileFormat.store(out, worldOctree, waterOctree, palette,
+              grassTexture, foliageTexture, waterTexture);
+        }
+        replaceSceneFile(context, fileName);
         saved = true;
 
         task.update(2);
@@ -2128,6 +2588,17 @@ public class Scene implements JsonSerializable, Refreshable {
     }
   }
 
+  /**
+   * Replace a scene file with the temporary file {@code fileName + ".tmp"}.
+   * The octree and emitter grid are written this way because the files can
+   * be hard links shared by the shards of a scene, and must not be
+   * overwritten in place.
+   */
+  private static void replaceSceneFile(RenderContext context, String fileName) throws IOException {
+    Files.move(context.getSceneFile(fileName + ".tmp").toPath(),
+        context.getSceneFile(fileName).toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
   public synchronized void saveDump(RenderContext context, TaskTracker taskTracker) {
     File dumpFile = context.getSceneFile(name + ".dump");
     Log.info("Saving render dump: " + dumpFile);
@@ -2187,6 +2658,7 @@ public class Scene implements JsonSerializable, Refreshable {
         waterTexture = data.waterColors;
         palette = data.palette;
         palette.applyMaterials();
+        palette.bakeModels();
         Log.info("Octree loaded");
         calculateOctreeOrigin(chunks, data.version < 6);
         camera.setWorldSize(1 << worldOctree.getDepth());
@@ -2252,8 +2724,10 @@ public class Scene implements JsonSerializable, Refreshable {
    */
   public void computeAlpha(int x, int y, WorkerState state) {
     Ray ray = state.ray;
-    double halfWidth = width / (2.0 * height);
-    double invHeight = 1.0 / height;
+    double halfWidth = fullWidth() / (2.0 * fullHeight());
+    double invHeight = 1.0 / fullHeight();
+    x += cropX;
+    y += cropY;
 
     // Rotated grid supersampling.
 
@@ -2464,6 +2938,18 @@ public class Scene implements JsonSerializable, Refreshable {
     }
   }
 
+  /**
+   * Merge several render dumps into this scene in a single pass.
+   *
+   * @throws IOException if reading one of the dumps fails
+   */
+  public void mergeDumps(List<File> dumpFiles, TaskTracker taskTracker) throws IOException {
+    Log.infof("Merging %d render dumps", dumpFiles.size());
+    int merged = RenderDump.merge(dumpFiles, this, taskTracker);
+    postProcessFrame(taskTracker);
+    Log.infof("Merged %d of %d render dumps", merged, dumpFiles.size());
+  }
+
   public void setSaveSnapshots(boolean value) {
     saveSnapshots = value;
   }
@@ -2554,12 +3040,22 @@ public class Scene implements JsonSerializable, Refreshable {
     json.add("name", name);
     json.add("width", width);
     json.add("height", height);
+    if (fullWidth != 0) {
+      JsonObject crop = new JsonObject();
+      crop.add("fullWidth", fullWidth);
+      crop.add("fullHeight", fullHeight);
+      crop.add("x", cropX);
+      crop.add("y", cropY);
+      json.add("crop", crop);
+    }
     json.add("yClipMin", yClipMin);
     json.add("yClipMax", yClipMax);
     json.add("yMin", yMin);
     json.add("yMax", yMax);
     json.add("exposure", exposure);
     json.add("postprocess", postProcessingFilter.getId());
+    json.add("denoise", denoise);
+    json.add("auxiliaryBuffers", recordAuxBuffers);
     json.add("outputMode", outputMode.getName());
     json.add("renderTime", renderTime);
     json.add("spp", spp);
@@ -2588,6 +3084,11 @@ public class Scene implements JsonSerializable, Refreshable {
     fogColorObj.add("blue", fogColor.z);
     json.add("fogColor", fogColorObj);
     json.add("fastFog", fastFog);
+    json.add("lockstepWaterTraversal", lockstepWaterTraversal);
+    json.add("samplerType", samplerType.name());
+    json.add("sunMisHeuristic", sunMisHeuristic.name());
+    json.add("skySampling", skySampling);
+    json.add("russianRoulette", russianRoulette);
     json.add("biomeColorsEnabled", biomeColors);
     json.add("transparentSky", transparentSky);
     json.add("fogDensity", fogDensity);
@@ -2796,6 +3297,47 @@ public class Scene implements JsonSerializable, Refreshable {
     }
   }
 
+  /**
+   * Settings in the scene description that do not affect the rendered samples.
+   */
+  private static final Set<String> NON_RENDER_SETTINGS = new HashSet<>(Arrays.asList(
+      "name", "exposure", "postprocess", "denoise", "auxiliaryBuffers", "outputMode",
+      "renderTime", "spp", "sppTarget", "dumpFrequency", "saveSnapshots", "cameraPresets",
+      "previewRenderer", "lockstepWaterTraversal"));
+
+  /**
+   * Compute a hash of the settings in a scene description that affect the
+   * rendered samples. Render dumps of scenes with different hashes should not
+   * be merged. The world path is ignored, since it usually differs between
+   * computers rendering the same scene.
+   *
+   * @return hexadecimal SHA-256 hash
+   */
+  public static String renderHash(JsonObject description) {
+    JsonObject settings = new JsonObject();
+    for (JsonMember member : description) {
+      if (member.name.equals("world") && member.value.isObject()) {
+        JsonObject world = new JsonObject();
+        world.add("dimension", member.value.object().get("dimension"));
+        settings.add("world", world);
+      } else if (!NON_RENDER_SETTINGS.contains(member.name)) {
+        settings.add(member.name, member.value);
+      }
+    }
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] hash = digest.digest(settings.toCompactString().getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform implements SHA-256.
+      throw new Error(e);
+    }
+  }
+
   /**
    * Write the scene description as JSON.
    *
@@ -2826,6 +3368,19 @@ public class Scene implements JsonSerializable, Refreshable {
       height = newHeight;
       initBuffers();
     }
+    if (json.get("crop").isObject()) {
+      JsonObject crop = json.get("crop").object();
+      fullWidth = crop.get("fullWidth").intValue(fullWidth());
+      fullHeight = crop.get("fullHeight").intValue(fullHeight());
+      cropX = crop.get("x").intValue(cropX);
+      cropY = crop.get("y").intValue(cropY);
+    } else {
+      // Not a crop window, for example after loading a shard and then the full scene.
+      fullWidth = 0;
+      fullHeight = 0;
+      cropX = 0;
+      cropY = 0;
+    }
 
     yClipMin = json.get("yClipMin").asInt(yClipMin);
     yClipMax = json.get("yClipMax").asInt(yClipMax);
@@ -2842,6 +3397,8 @@ public class Scene implements JsonSerializable, Refreshable {
               }
               return DEFAULT_POSTPROCESSING_FILTER;
             });
+    denoise = json.get("denoise").boolValue(denoise);
+    recordAuxBuffers = json.get("auxiliaryBuffers").boolValue(recordAuxBuffers);
     outputMode = PictureExportFormats
       .getFormat(json.get("outputMode").stringValue(outputMode.getName()))
       .orElse(PictureExportFormats.PNG);
@@ -2875,6 +3432,19 @@ public class Scene implements JsonSerializable, Refreshable {
     fogColor.y = fogColorObj.get("green").doubleValue(fogColor.y);
     fogColor.z = fogColorObj.get("blue").doubleValue(fogColor.z);
     fastFog = json.get("fastFog").boolValue(fastFog);
+    lockstepWaterTraversal = json.get("lockstepWaterTraversal").boolValue(lockstepWaterTraversal);
+    try {
+      samplerType = SamplerType.valueOf(json.get("samplerType").stringValue(samplerType.name()));
+    } catch (IllegalArgumentException e) {
+      Log.warn("Unknown sampler type: " + json.get("samplerType").stringValue(""));
+    }
+    try {
+      sunMisHeuristic = MisHeuristic.valueOf(json.get("sunMisHeuristic").stringValue(sunMisHeuristic.name()));
+    } catch (IllegalArgumentException e) {
+      Log.warn("Unknown MIS heuristic: " + json.get("sunMisHeuristic").stringValue(""));
+    }
+    skySampling = json.get("skySampling").boolValue(skySampling);
+    russianRoulette = json.get("russianRoulette").boolValue(russianRoulette);
     biomeColors = json.get("biomeColorsEnabled").boolValue(biomeColors);
     transparentSky = json.get("transparentSky").boolValue(transparentSky);
     fogDensity = json.get("fogDensity").doubleValue(fogDensity);
@@ -2938,8 +3508,8 @@ public class Scene implements JsonSerializable, Refreshable {
     }
 
     if (json.get("entities").isArray() || json.get("actors").isArray()) {
-      entities = new LinkedList<>();
-      actors = new LinkedList<>();
+      entities = new ArrayList<>();
+      actors = new ArrayList<>();
       // Previously poseable entities were stored in the entities array
       // rather than the actors array. In future versions only the actors
       // array should contain poseable entities.
@@ -2987,6 +3557,7 @@ public class Scene implements JsonSerializable, Refreshable {
     }
     spp = 0;
     renderTime = 0;
+    denoised = null;
     setResetReason(reason);
     notifyAll();
   }
@@ -3074,6 +3645,97 @@ public class Scene implements JsonSerializable, Refreshable {
     return fastFog;
   }
 
+  /**
+   * Set whether the world and water octrees are traversed in lockstep.
+   * This gives the same result as traversing them separately, but is faster
+   * for scenes with a lot of water.
+   */
+  public void setLockstepWaterTraversal(boolean value) {
+    if (lockstepWaterTraversal != value) {
+      lockstepWaterTraversal = value;
+      refresh();
+    }
+  }
+
+  public boolean lockstepWaterTraversal() {
+    return lockstepWaterTraversal;
+  }
+
+  /**
+   * Change the sampler used by the path tracing renderer.
+   */
+  public void setSamplerType(SamplerType type) {
+    if (samplerType != type) {
+      samplerType = type;
+      refresh();
+    }
+  }
+
+  public SamplerType getSamplerType() {
+    return samplerType;
+  }
+
+  /**
+   * @return the seed mixed into the samples of the path tracing renderer
+   */
+  public long getRenderSeed() {
+    return renderSeed;
+  }
+
+  /**
+   * Set the render seed. Renders with the same seed produce the same sample
+   * for the same pixel and sample index.
+   */
+  public void setRenderSeed(long seed) {
+    renderSeed = seed;
+  }
+
+  /**
+   * Enable or disable Russian roulette based on path throughput. When
+   * disabled, paths are only terminated based on their depth.
+   */
+  public void setRussianRoulette(boolean value) {
+    if (russianRoulette != value) {
+      russianRoulette = value;
+      refresh();
+    }
+  }
+
+  public boolean getRussianRoulette() {
+    return russianRoulette;
+  }
+
+  /**
+   * Set the heuristic used to combine sun sampling with diffuse reflection
+   * sampling. {@code MisHeuristic.NONE} (the default) only uses sun sampling.
+   */
+  public void setSunMisHeuristic(MisHeuristic heuristic) {
+    if (sunMisHeuristic != heuristic) {
+      sunMisHeuristic = heuristic;
+      refresh();
+    }
+  }
+
+  public MisHeuristic getSunMisHeuristic() {
+    return sunMisHeuristic;
+  }
+
+  /**
+   * Enable or disable sampling of sky light directions. This only has an
+   * effect for panoramic skymaps, and reduces noise for skymaps with small
+   * bright areas.
+   */
+  public void setSkySampling(boolean value) {
+    if (skySampling != value) {
+      skySampling = value;
+      refresh();
+    }
+  }
+
+  public boolean getSkySampling() {
+    return skySampling;
+  }
+
   /**
    * @return {@code true} if volumetric fog is enabled
    */
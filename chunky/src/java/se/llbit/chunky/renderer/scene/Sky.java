@@ -144,6 +144,13 @@ public class Sky implements JsonSerializable {
   private final Scene scene;
   private double rotation = 0;
   private boolean mirrored = true;
+
+  /**
+   * Sky light distribution of the panoramic skymap. This is built the first
+   * time a sky light direction is sampled, and is reset to {@code null} when
+   * the skymap or the mirroring changes.
+   */
+  private volatile SkymapDistribution skymapDistribution = null;
   private boolean cloudsEnabled = false;
   private double cloudSize = DEFAULT_CLOUD_SIZE;
   private final Vector3 cloudOffset = new Vector3(0, DEFAULT_CLOUD_HEIGHT, 0);
@@ -207,6 +214,7 @@ public class Sky implements JsonSerializable {
   public void loadSkymap(String fileName) {
     skymapFileName = fileName;
     skymap = loadSkyTexture(fileName, skymap);
+    invalidateSkymapDistribution();
     scene.refresh();
   }
 
@@ -221,6 +229,7 @@ public class Sky implements JsonSerializable {
     skymap = other.skymap;
     rotation = other.rotation;
     mirrored = other.mirrored;
+    skymapDistribution = other.skymapDistribution;
     skyLightModifier = other.skyLightModifier;
     gradient = new ArrayList<>(other.gradient);
     color.set(other.color);
@@ -459,6 +468,67 @@ public class Sky implements JsonSerializable {
     }
   }
 
+  /**
+   * @return {@code true} if sky light directions can be sampled with
+   * {@link #sampleSkyDirection(Vector3, Random)}. This is only supported for
+   * panoramic skymaps.
+   */
+  public boolean canSampleSkyLight() {
+    return mode == SkyMode.SKYMAP_PANORAMIC && skymap != Texture.EMPTY_TEXTURE;
+  }
+
+  /**
+   * Sample a sky light direction, with probability proportional to the
+   * brightness of the skymap.
+   *
+   * @param d the sampled direction is stored here
+   * @return the probability density of the sampled direction with respect to
+   * solid angle, or 0 if no direction was sampled
+   */
+  public double sampleSkyDirection(Vector3 d, Random random) {
+    SkymapDistribution distribution = getSkymapDistribution();
+    return distribution != null ? distribution.sample(rotation, random, d) : 0;
+  }
+
+  /**
+   * @return the probability density of {@link #sampleSkyDirection(Vector3, Random)}
+   * sampling the given direction
+   */
+  public double skyDirectionPdf(Vector3 d) {
+    SkymapDistribution distribution = getSkymapDistribution();
+    return distribution != null ? distribution.pdf(rotation, d) : 0;
+  }
+
+  /**
+   * @return the sky light distribution of the skymap, or {@code null} if sky
+   * light directions can not be sampled
+   */
+  private SkymapDistribution getSkymapDistribution() {
+    if (!canSampleSkyLight()) {
+      return null;
+    }
+    SkymapDistribution distribution = skymapDistribution;
+    if (distribution == null) {
+      synchronized (this) {
+        distribution = skymapDistribution;
+        if (distribution == null) {
+          distribution = SkymapDistribution.build(skymap, mirrored);
+          skymapDistribution = distribution;
+        }
+      }
+    }
+    return distribution;
+  }
+
+  /**
+   * Discard the sky light distribution after the skymap or the mirroring
+   * changed. This waits for a distribution that is being built to finish,
+   * so that it is not stored after the change.
+   */
+  private synchronized void invalidateSkymapDistribution() {
+    skymapDistribution = null;
+  }
+
   /**
    * Set the polar offset of the skymap.
    */
@@ -480,6 +550,7 @@ public class Sky implements JsonSerializable {
   public void setMirrored(boolean b) {
     if (b != mirrored) {
       mirrored = b;
+      invalidateSkymapDistribution();
       scene.refresh();
     }
   }
@@ -507,6 +578,7 @@ public class Sky implements JsonSerializable {
           skyboxFileName[i] = "";
         }
       }
+      invalidateSkymapDistribution();
       scene.refresh();
     }
   }
@@ -652,6 +724,7 @@ public class Sky implements JsonSerializable {
       default:
         break;
     }
+    invalidateSkymapDistribution();
   }
 
   /**
@@ -27,6 +27,7 @@ import se.llbit.math.ColorUtil;
 import se.llbit.math.QuickMath;
 import se.llbit.math.Ray;
 import se.llbit.math.Vector3;
+import se.llbit.util.ThreadBudget;
 
 /**
  * A sky cache. Precalculates sky colors and them uses cached values with bilinear interpolation.
@@ -71,7 +72,8 @@ public class SkyCache {
   public synchronized void precalculateSky() {
     double[][][] skyTexture = new double[skyResolution + 1][skyResolution + 1][3];
 
-    try {
+    // The render preview waits for the sky, so this is interactive work.
+    try (ThreadBudget.Section section = Chunky.getThreadBudget().enter(ThreadBudget.Priority.INTERACTIVE)) {
       Chunky.getCommonThreads().submit(() -> {
         IntStream.range(0, skyResolution + 1).parallel().forEach(i -> {
           for (int j = 0; j < skyResolution + 1; j++) {
@@ -0,0 +1,211 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import java.util.Random;
+
+import se.llbit.chunky.resources.Texture;
+import se.llbit.math.Constants;
+import se.llbit.math.Vector3;
+import se.llbit.math.Vector4;
+
+/**
+ * Piecewise constant distribution over a panoramic skymap, proportional to
+ * the luminance of the skymap times the solid angle of each texel. This is
+ * used to sample sky light directions, so that bright parts of the sky (like
+ * the sun in an HDRI skymap) are found without relying on diffuse reflections
+ * hitting them by chance.
+ *
+ * <p>Distributions are computed at a limited resolution. Building a
+ * distribution reads the whole skymap, so {@link Sky} builds it once when the
+ * skymap changes.
+ */
+public final class SkymapDistribution {
+  private static final int MAX_WIDTH = 1024;
+  private static final int MAX_HEIGHT = 512;
+
+  private final int width;
+  private final int height;
+  private final boolean mirrored;
+
+  /** Cumulative distribution of the rows, {@code height + 1} values. */
+  private final double[] marginal;
+
+  /** Cumulative distribution of each row, {@code width + 1} values per row. */
+  private final double[] conditional;
+
+  /** Probability density of each cell with respect to texture coordinates. */
+  private final double[] density;
+
+  private SkymapDistribution(int width, int height, boolean mirrored, double[] marginal,
+      double[] conditional, double[] density) {
+    this.width = width;
+    this.height = height;
+    this.mirrored = mirrored;
+    this.marginal = marginal;
+    this.conditional = conditional;
+    this.density = density;
+  }
+
+  /**
+   * Build the distribution for a panoramic skymap.
+   *
+   * @param mirrored {@code true} if the skymap only covers the upper hemisphere
+   * and is mirrored below the horizon
+   * @return the distribution, or {@code null} if the skymap is completely black
+   */
+  public static SkymapDistribution build(Texture skymap, boolean mirrored) {
+    int textureWidth = skymap.getWidth();
+    int textureHeight = skymap.getHeight();
+    int width = Math.max(1, Math.min(textureWidth, MAX_WIDTH));
+    int height = Math.max(1, Math.min(textureHeight, MAX_HEIGHT));
+
+    // Average the luminance of the texels in each cell.
+    double[] weight = new double[width * height];
+    int[] count = new int[width * height];
+    Vector4 color = new Vector4();
+    for (int y = 0; y < textureHeight; ++y) {
+      int row = (int) ((long) y * height / textureHeight) * width;
+      double v = (y + 0.5) / textureHeight;
+      for (int x = 0; x < textureWidth; ++x) {
+        skymap.getColor((x + 0.5) / textureWidth, v, color);
+        int cell = row + (int) ((long) x * width / textureWidth);
+        weight[cell] += 0.2126 * color.x + 0.7152 * color.y + 0.0722 * color.z;
+        count[cell] += 1;
+      }
+    }
+
+    // Weight by the solid angle of the cells.
+    double[] marginal = new double[height + 1];
+    double[] conditional = new double[(width + 1) * height];
+    for (int j = 0; j < height; ++j) {
+      double cos = Math.cos(elevation((j + 0.5) / height, mirrored));
+      double sum = 0;
+      for (int i = 0; i < width; ++i) {
+        int cell = j * width + i;
+        if (count[cell] > 0) {
+          weight[cell] = Math.max(0, weight[cell] / count[cell] * cos);
+        }
+        sum += weight[cell];
+        conditional[j * (width + 1) + i + 1] = sum;
+      }
+      marginal[j + 1] = marginal[j] + sum;
+    }
+    double total = marginal[height];
+    if (!(total > 0) || Double.isInfinite(total)) {
+      return null;
+    }
+
+    double[] density = new double[width * height];
+    for (int j = 0; j < height; ++j) {
+      double rowSum = conditional[j * (width + 1) + width];
+      for (int i = 0; i <= width; ++i) {
+        if (rowSum > 0) {
+          conditional[j * (width + 1) + i] /= rowSum;
+        }
+      }
+      marginal[j + 1] /= total;
+      for (int i = 0; i < width; ++i) {
+        density[j * width + i] = weight[j * width + i] / total * width * height;
+      }
+    }
+    marginal[height] = 1;
+    return new SkymapDistribution(width, height, mirrored, marginal, conditional, density);
+  }
+
+  private static double elevation(double v, boolean mirrored) {
+    return mirrored ? v * Constants.HALF_PI : v * Math.PI - Constants.HALF_PI;
+  }
+
+  /**
+   * Find the interval of a cumulative distribution containing a value.
+   */
+  private static int find(double[] cdf, int offset, int size, double value) {
+    int lo = 0;
+    int hi = size - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (cdf[offset + mid] <= value) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Sample a direction.
+   *
+   * @param rotation the skymap rotation
+   * @param d the sampled direction is stored here
+   * @return the probability density of the direction with respect to solid
+   * angle, or 0 if no direction could be sampled
+   */
+  public double sample(double rotation, Random random, Vector3 d) {
+    double r1 = random.nextDouble();
+    double r2 = random.nextDouble();
+    int j = find(marginal, 0, height, r1);
+    double rowWidth = marginal[j + 1] - marginal[j];
+    if (rowWidth <= 0) {
+      return 0;
+    }
+    double dv = (r1 - marginal[j]) / rowWidth;
+    int offset = j * (width + 1);
+    int i = find(conditional, offset, width, r2);
+    double cellWidth = conditional[offset + i + 1] - conditional[offset + i];
+    if (cellWidth <= 0) {
+      return 0;
+    }
+    double du = (r2 - conditional[offset + i]) / cellWidth;
+
+    double azimuth = (i + du) / width * Constants.TAU - rotation;
+    double elevation = elevation((j + dv) / height, mirrored);
+    if (mirrored && random.nextBoolean()) {
+      elevation = -elevation;
+    }
+    double cos = Math.cos(elevation);
+    if (cos <= 0) {
+      return 0;
+    }
+    d.set(cos * Math.cos(azimuth), Math.sin(elevation), cos * Math.sin(azimuth));
+    return density[j * width + i] / (2 * Math.PI * Math.PI * cos);
+  }
+
+  /**
+   * @param rotation the skymap rotation
+   * @param d normalized direction
+   * @return the probability density of sampling the direction with respect to solid angle
+   */
+  public double pdf(double rotation, Vector3 d) {
+    double cos = Math.sqrt(d.x * d.x + d.z * d.z);
+    if (cos <= 0) {
+      return 0;
+    }
+    double u = (Math.atan2(d.z, d.x) + rotation) / Constants.TAU;
+    u = (u % 1 + 1) % 1;
+    double v;
+    if (mirrored) {
+      v = Math.abs(Math.asin(d.y)) / Constants.HALF_PI;
+    } else {
+      v = (Math.asin(d.y) + Constants.HALF_PI) / Math.PI;
+    }
+    int i = Math.min((int) (u * width), width - 1);
+    int j = Math.min((int) (v * height), height - 1);
+    return density[j * width + i] / (2 * Math.PI * Math.PI * cos);
+  }
+}
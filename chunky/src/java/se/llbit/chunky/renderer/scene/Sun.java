@@ -116,6 +116,11 @@ public class Sun implements JsonSerializable {
   public static final double RADIUS_COS = FastMath.cos(RADIUS);
   public static final double RADIUS_SIN = FastMath.sin(RADIUS);
 
+  /**
+   * Solid angle of the sun.
+   */
+  public static final double SOLID_ANGLE = 2 * Math.PI * (1 - RADIUS_COS);
+
   private static final double AMBIENT = .3;
 
   private double intensity = DEFAULT_INTENSITY;
@@ -312,7 +317,16 @@ public class Sun implements JsonSerializable {
   }
 
   /**
-   * Point ray in random direction within sun solid angle
+   * @return {@code true} if the direction is inside the sun solid angle
+   */
+  public boolean isInSunCone(Vector3 d) {
+    return d.dot(sw) >= RADIUS_COS;
+  }
+
+  /**
+   * Point ray in random direction within sun solid angle. The directions are
+   * uniformly distributed over the solid angle, with probability density
+   * {@code 1 / SOLID_ANGLE}.
    */
   public void getRandomSunDirection(Ray reflected, Random random) {
     double x1 = random.nextDouble();
@@ -19,7 +19,6 @@ package se.llbit.chunky.ui;
 
 import javafx.application.Application;
 import javafx.application.HostServices;
-import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -62,8 +61,7 @@ public class ChunkyFx extends Application {
       stage.getIcons().add(new Image(getClass().getResourceAsStream("/chunky-icon.png")));
       stage.setOnCloseRequest(event -> {
         PersistentSettings.setWindowPosition(new WindowPosition(stage));
-        Platform.exit();
-        System.exit(0);
+        controller.exit();
       });
       File stylesheet = new File(SettingsDirectory.getSettingsDirectory(), "style.css");
       if (stylesheet.isFile()) {
@@ -99,6 +99,7 @@ import se.llbit.log.Log;
 import se.llbit.math.Vector3;
 import se.llbit.util.ProgressListener;
 import se.llbit.util.TaskTracker;
+import se.llbit.util.ThreadBudget;
 
 /**
  * Controller for the main Chunky window.
@@ -206,6 +207,7 @@ public class ChunkyFxController
     }
   };
   private final TaskTracker taskTracker = new TaskTracker(progressListener);
+  private final SnapshotWriter snapshotWriter = new SnapshotWriter(taskTracker);
 
   public RenderController getRenderController() {
     return renderController;
@@ -352,7 +354,7 @@ public class ChunkyFxController
     renderManager.setSnapshotControl(SnapshotControl.DEFAULT);
     renderManager.setOnFrameCompleted((scene1, spp) -> {
       if (renderManager.getSnapshotControl().saveSnapshot(scene1, spp)) {
-        scene1.saveSnapshot(new File(renderController.getContext().getSceneDirectory(), "snapshots"), taskTracker, renderController.getContext().numRenderThreads());
+        snapshotWriter.save(scene1, new File(renderController.getContext().getSceneDirectory(), "snapshots"));
       }
 
       if (renderManager.getSnapshotControl().saveRenderDump(scene1, spp)) {
@@ -662,10 +664,7 @@ public class ChunkyFxController
       mapView.setYMax(256);
     }
 
-    menuExit.setOnAction(event -> {
-      Platform.exit();
-      System.exit(0);
-    });
+    menuExit.setOnAction(event -> exit());
 
     canvas = new RenderCanvasFx(chunky.getSceneManager().getScene(),
         chunky.getRenderController().getRenderManager());
@@ -708,6 +707,19 @@ public class ChunkyFxController
         PersistentSettings.setSppTargetDefault(scene.getTargetSpp()));
   }
 
+  /**
+   * Exit Chunky once the snapshots that are still being written are done.
+   */
+  void exit() {
+    try {
+      snapshotWriter.awaitIdle();
+    } catch (InterruptedException e) {
+      // Exit without waiting.
+    }
+    Platform.exit();
+    System.exit(0);
+  }
+
   public void setApplication(Application app) {
     documentationLink.setOnAction(
         e -> app.getHostServices().showDocument("https://lemaik.github.io/chunky"));
@@ -768,7 +780,9 @@ public class ChunkyFxController
       if (!target.getName().endsWith(format.getExtension())) {
         target = new File(target.getPath() + format.getExtension());
       }
-      scene.saveFrame(target, format, taskTracker, renderController.getContext().numRenderThreads());
+      try (ThreadBudget.Section section = Chunky.getThreadBudget().enter(ThreadBudget.Priority.INTERACTIVE)) {
+        scene.saveFrame(target, format, taskTracker, renderController.getContext().numRenderThreads());
+      }
     }
   }
 
@@ -777,7 +791,7 @@ public class ChunkyFxController
       PipedInputStream in = new PipedInputStream();
       PipedOutputStream out = new PipedOutputStream(in);
       new Thread(() -> {
-        try {
+        try (ThreadBudget.Section section = Chunky.getThreadBudget().enter(ThreadBudget.Priority.INTERACTIVE)) {
           scene.writeFrame(out, PictureExportFormats.PNG, new TaskTracker(ProgressListener.NONE), renderController.getContext().numRenderThreads());
         } catch (IOException e) {
           Log.warn("Failed to copy image to clipboard", e);
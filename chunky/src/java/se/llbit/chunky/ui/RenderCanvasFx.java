@@ -61,6 +61,16 @@ public class RenderCanvasFx extends ScrollPane implements Repaintable, SceneStat
   private WritableImage image;
 
   private final AtomicBoolean painting = new AtomicBoolean(false);
+
+  /**
+   * The region of the frame that has not yet been copied to the image.
+   * Guarded by {@code dirtyLock}.
+   */
+  private final Object dirtyLock = new Object();
+  private int dirtyX0 = 0;
+  private int dirtyY0 = 0;
+  private int dirtyX1 = Integer.MAX_VALUE;
+  private int dirtyY1 = Integer.MAX_VALUE;
   private final Canvas canvas;
   private final Group guideGroup;
   private final StackPane canvasPane;
@@ -201,10 +211,12 @@ public class RenderCanvasFx extends ScrollPane implements Repaintable, SceneStat
 
     canvas.setOnMouseClicked(event -> {
       if (event.getButton() == MouseButton.SECONDARY) {
-        double invHeight = 1.0 / canvas.getHeight();
-        double halfWidth = canvas.getWidth() / (2.0 * canvas.getHeight());
-        target.set(-halfWidth + event.getX() * invHeight,
-            -0.5 + event.getY() * invHeight);
+        // The canvas shows the crop window of a cropped scene, so the click
+        // is mapped to full frame coordinates like the camera rays.
+        double invHeight = 1.0 / scene.fullHeight();
+        double halfWidth = scene.fullWidth() / (2.0 * scene.fullHeight());
+        target.set(-halfWidth + (scene.cropX() + event.getX()) * invHeight,
+            -0.5 + (scene.cropY() + event.getY()) * invHeight);
         contextMenu.show(getScene().getWindow(), event.getScreenX(), event.getScreenY());
       }
     });
@@ -358,19 +370,51 @@ public class RenderCanvasFx extends ScrollPane implements Repaintable, SceneStat
   }
 
   @Override public void repaint() {
+    repaint(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+  }
+
+  @Override public void repaint(int x0, int y0, int x1, int y1) {
+    markDirty(x0, y0, x1, y1);
     updateCanvasFit();
     if (painting.compareAndSet(false, true)) {
       forceRepaint();
     }
   }
 
+  private void markDirty(int x0, int y0, int x1, int y1) {
+    synchronized (dirtyLock) {
+      dirtyX0 = Math.min(dirtyX0, x0);
+      dirtyY0 = Math.min(dirtyY0, y0);
+      dirtyX1 = Math.max(dirtyX1, x1);
+      dirtyY1 = Math.max(dirtyY1, y1);
+    }
+  }
+
   public void forceRepaint() {
     painting.set(true);
+    int x0, y0, x1, y1;
+    synchronized (dirtyLock) {
+      x0 = dirtyX0;
+      y0 = dirtyY0;
+      x1 = dirtyX1;
+      y1 = dirtyY1;
+      dirtyX0 = dirtyY0 = Integer.MAX_VALUE;
+      dirtyX1 = dirtyY1 = 0;
+    }
     renderManager.withBufferedImage(bitmap -> {
       if (bitmap.width == (int) image.getWidth()
           && bitmap.height == (int) image.getHeight()) {
-        image.getPixelWriter().setPixels(0, 0, bitmap.width, bitmap.height, PIXEL_FORMAT,
-            bitmap.data, 0, bitmap.width);
+        int left = Math.max(0, x0);
+        int top = Math.max(0, y0);
+        int right = Math.min(bitmap.width, x1);
+        int bottom = Math.min(bitmap.height, y1);
+        if (left < right && top < bottom) {
+          image.getPixelWriter().setPixels(left, top, right - left, bottom - top, PIXEL_FORMAT,
+              bitmap.data, top * bitmap.width + left, bitmap.width);
+        }
+      } else {
+        // Copy the whole frame once the image has the right size.
+        markDirty(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
       }
     });
     Platform.runLater(() -> {
@@ -402,6 +446,7 @@ public class RenderCanvasFx extends ScrollPane implements Repaintable, SceneStat
     canvas.setHeight(height);
     if (image == null || width != image.getWidth() || height != image.getHeight()) {
       image = new WritableImage(width, height);
+      markDirty(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
     }
 
     if (fitToScreen) {
@@ -31,6 +31,7 @@ import javafx.util.StringConverter;
 import se.llbit.chunky.PersistentSettings;
 import se.llbit.chunky.renderer.RenderManager;
 import se.llbit.chunky.renderer.Renderer;
+import se.llbit.chunky.renderer.SamplerType;
 import se.llbit.chunky.renderer.export.PictureExportFormats;
 import se.llbit.chunky.renderer.RenderController;
 import se.llbit.chunky.renderer.export.PictureExportFormat;
@@ -62,6 +63,9 @@ public class AdvancedTab extends ScrollPane implements RenderControlsTab, Initia
   @FXML private Button mergeRenderDump;
   @FXML private CheckBox shutdown;
   @FXML private CheckBox fastFog;
+  @FXML private CheckBox lockstepWaterTraversal;
+  @FXML private CheckBox russianRoulette;
+  @FXML private CheckBox auxiliaryBuffers;
   @FXML private IntegerAdjuster cacheResolution;
   @FXML private DoubleAdjuster animationTime;
   @FXML private ChoiceBox<PictureExportFormat> outputMode;
@@ -71,6 +75,7 @@ public class AdvancedTab extends ScrollPane implements RenderControlsTab, Initia
   @FXML private CheckBox preventNormalEmitterWithSampling;
   @FXML private ChoiceBox<String> rendererSelect;
   @FXML private ChoiceBox<String> previewSelect;
+  @FXML private ChoiceBox<SamplerType> samplerType;
 
   public AdvancedTab() throws IOException {
     FXMLLoader loader = new FXMLLoader(getClass().getResource("AdvancedTab.fxml"));
@@ -127,6 +132,18 @@ public class AdvancedTab extends ScrollPane implements RenderControlsTab, Initia
     fastFog.setTooltip(new Tooltip("Enable faster fog rendering algorithm."));
     fastFog.selectedProperty()
             .addListener((observable, oldValue, newValue) -> scene.setFastFog(newValue));
+    lockstepWaterTraversal.setTooltip(new Tooltip(
+        "Traverse the world and water octrees in a single pass. Faster for scenes with a lot of water."));
+    lockstepWaterTraversal.selectedProperty()
+            .addListener((observable, oldValue, newValue) -> scene.setLockstepWaterTraversal(newValue));
+    russianRoulette.setTooltip(new Tooltip(
+        "Terminate dark paths early and let bright paths continue up to the ray depth."));
+    russianRoulette.selectedProperty()
+            .addListener((observable, oldValue, newValue) -> scene.setRussianRoulette(newValue));
+    auxiliaryBuffers.setTooltip(new Tooltip(
+        "Record albedo, normal, depth and emission buffers. They are saved in render dumps and can be exported as TIFF layers."));
+    auxiliaryBuffers.selectedProperty()
+            .addListener((observable, oldValue, newValue) -> scene.setRecordAuxiliaryBuffers(newValue));
     cacheResolution.setName("Sky cache resolution");
     cacheResolution.setTooltip("Resolution of the sky cache. Lower values will use less memory and improve performance but can cause sky artifacts.");
     cacheResolution.setRange(1, 4096);
@@ -212,6 +229,13 @@ public class AdvancedTab extends ScrollPane implements RenderControlsTab, Initia
     previewSelect.setTooltip(new Tooltip("The renderer to use for the preview."));
     previewSelect.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) ->
         scene.setPreviewRenderer(newValue));
+
+    samplerType.setTooltip(new Tooltip(
+        "Random: independent random samples.\n"
+        + "Sobol: stratified low-discrepancy samples, converges faster for most scenes."));
+    samplerType.getItems().addAll(SamplerType.values());
+    samplerType.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) ->
+        scene.setSamplerType(newValue));
   }
 
   public boolean shutdownAfterCompletedRender() {
@@ -222,6 +246,9 @@ public class AdvancedTab extends ScrollPane implements RenderControlsTab, Initia
   public void update(Scene scene) {
     outputMode.getSelectionModel().select(scene.getOutputMode());
     fastFog.setSelected(scene.fastFog());
+    lockstepWaterTraversal.setSelected(scene.lockstepWaterTraversal());
+    russianRoulette.setSelected(scene.getRussianRoulette());
+    auxiliaryBuffers.setSelected(scene.getRecordAuxiliaryBuffers());
     renderThreads.set(PersistentSettings.getNumThreads());
     cpuLoad.set(PersistentSettings.getCPULoad());
     rayDepth.set(scene.getRayDepth());
@@ -232,6 +259,7 @@ public class AdvancedTab extends ScrollPane implements RenderControlsTab, Initia
     animationTime.set(scene.getAnimationTime());
     rendererSelect.getSelectionModel().select(scene.getRenderer());
     previewSelect.getSelectionModel().select(scene.getPreviewRenderer());
+    samplerType.getSelectionModel().select(scene.getSamplerType());
   }
 
   @Override
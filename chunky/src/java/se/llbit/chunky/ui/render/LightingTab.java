@@ -31,6 +31,7 @@ import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Tooltip;
 import javafx.scene.paint.Color;
 import se.llbit.chunky.renderer.EmitterSamplingStrategy;
+import se.llbit.chunky.renderer.MisHeuristic;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.chunky.renderer.scene.Sky;
 import se.llbit.chunky.renderer.scene.Sun;
@@ -55,11 +56,13 @@ public class LightingTab extends ScrollPane implements RenderControlsTab, Initia
   @FXML private DoubleAdjuster sunIntensity;
   @FXML private AngleAdjuster sunAzimuth;
   @FXML private AngleAdjuster sunAltitude;
+  @FXML private CheckBox skySampling;
   @FXML private CheckBox enableEmitters;
   @FXML private CheckBox enableSunlight;
   @FXML private CheckBox drawSun;
   @FXML private LuxColorPicker sunColor;
   @FXML private ChoiceBox<EmitterSamplingStrategy> emitterSamplingStrategy;
+  @FXML private ChoiceBox<MisHeuristic> sunMisHeuristic;
 
   private ChangeListener<Color> sunColorListener = (observable, oldValue, newValue) ->
       scene.sun().setColor(ColorUtil.fromFx(newValue));
@@ -101,6 +104,11 @@ public class LightingTab extends ScrollPane implements RenderControlsTab, Initia
     sunAltitude.setTooltip("Change the angle to the sun above the horizon.");
     sunAltitude.onValueChange(value -> scene.sun().setAltitude(QuickMath.degToRad(value)));
 
+    skySampling.selectedProperty().addListener(
+        (observable, oldValue, newValue) -> scene.setSkySampling(newValue));
+    skySampling.setTooltip(new Tooltip(
+        "Sample bright parts of panoramic skymaps directly. Reduces noise for HDR skymaps."));
+
     enableEmitters.selectedProperty().addListener(
         (observable, oldValue, newValue) -> scene.setEmittersEnabled(newValue));
     enableSunlight.selectedProperty().addListener(
@@ -129,6 +137,13 @@ public class LightingTab extends ScrollPane implements RenderControlsTab, Initia
           }
         });
     emitterSamplingStrategy.setTooltip(new Tooltip("Determine how emitters are sampled at each bounce"));
+
+    sunMisHeuristic.getItems().addAll(MisHeuristic.values());
+    sunMisHeuristic.getSelectionModel().selectedItemProperty().addListener(
+        (observable, oldValue, newValue) -> scene.setSunMisHeuristic(newValue));
+    sunMisHeuristic.setTooltip(new Tooltip(
+        "Combine sun sampling with diffuse reflections that hit the sun (multiple importance sampling).\n"
+            + "Only reduces noise for large suns near the horizon, so it is off by default."));
   }
 
   @Override
@@ -143,6 +158,7 @@ public class LightingTab extends ScrollPane implements RenderControlsTab, Initia
     sunIntensity.set(scene.sun().getIntensity());
     sunAzimuth.set(-QuickMath.radToDeg(scene.sun().getAzimuth()));
     sunAltitude.set(QuickMath.radToDeg(scene.sun().getAltitude()));
+    skySampling.setSelected(scene.getSkySampling());
     enableEmitters.setSelected(scene.getEmittersEnabled());
     enableSunlight.setSelected(scene.getDirectLight());
     drawSun.setSelected(scene.sun().drawTexture());
@@ -150,6 +166,7 @@ public class LightingTab extends ScrollPane implements RenderControlsTab, Initia
     sunColor.setColor(ColorUtil.toFx(scene.sun().getColor()));
     sunColor.colorProperty().addListener(sunColorListener);
     emitterSamplingStrategy.getSelectionModel().select(scene.getEmitterSamplingStrategy());
+    sunMisHeuristic.getSelectionModel().select(scene.getSunMisHeuristic());
   }
 
   @Override public String getTabTitle() {
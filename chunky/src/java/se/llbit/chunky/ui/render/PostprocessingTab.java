@@ -20,9 +20,11 @@ import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Node;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Separator;
+import javafx.scene.control.Tooltip;
 import javafx.util.StringConverter;
 import se.llbit.chunky.renderer.postprocessing.NoneFilter;
 import se.llbit.chunky.renderer.postprocessing.PostProcessingFilter;
@@ -45,6 +47,7 @@ public class PostprocessingTab extends ScrollPane implements RenderControlsTab,
 
   @FXML private DoubleAdjuster exposure;
   @FXML private ChoiceBox<PostProcessingFilter> postprocessingFilter;
+  @FXML private CheckBox denoise;
 
   public PostprocessingTab() throws IOException {
     FXMLLoader loader = new FXMLLoader(getClass().getResource("PostprocessingTab.fxml"));
@@ -61,6 +64,7 @@ public class PostprocessingTab extends ScrollPane implements RenderControlsTab,
   @Override public void update(Scene scene) {
     postprocessingFilter.getSelectionModel().select(scene.getPostProcessingFilter());
     exposure.set(scene.getExposure());
+    denoise.setSelected(scene.getDenoise());
   }
 
   @Override public String getTabTitle() {
@@ -97,6 +101,13 @@ public class PostprocessingTab extends ScrollPane implements RenderControlsTab,
         return PostProcessingFilters.getPostProcessingFilterFromName(string).orElse(Scene.DEFAULT_POSTPROCESSING_FILTER);
       }
     });
+    denoise.setTooltip(new Tooltip(
+        "Denoise the image before post processing, guided by albedo, normal and depth buffers."));
+    denoise.selectedProperty().addListener((observable, oldValue, newValue) -> {
+      scene.setDenoise(newValue);
+      scene.postProcessFrame(new TaskTracker(ProgressListener.NONE));
+      controller.getCanvas().forceRepaint();
+    });
     exposure.setName("Exposure");
     exposure.setRange(Scene.MIN_EXPOSURE, Scene.MAX_EXPOSURE);
     exposure.makeLogarithmic();
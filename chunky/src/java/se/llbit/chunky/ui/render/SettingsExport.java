@@ -68,12 +68,13 @@ class SettingsExport extends Stage {
     groups.put("Emitters", set("emittersEnabled", "emitterIntensity"));
     groups.put("Entities", set("actors", "renderActors"));
     groups.put("Fog", set("fogColor", "fastFog", "fogDensity"));
-    groups.put("Sky", set("sky", "transparentSky"));
-    groups.put("Sun", set("sun", "sunEnabled"));
+    groups.put("Sky", set("sky", "transparentSky", "skySampling"));
+    groups.put("Sun", set("sun", "sunEnabled", "sunMisHeuristic"));
     groups.put("Water", set("waterColor", "waterOpacity", "waterVisibility", "useCustomWaterColor", "waterHeight", "stillWater"));
     groups.put("Misc", set("sppTarget", "dumpFrequency", "saveSnapshots", "world", "outputMode",
         "biomeColorsEnabled", "exposure"));
-    groups.put("Advanced", set("postprocess", "rayDepth"));
+    groups.put("Advanced", set("postprocess", "denoise", "rayDepth", "lockstepWaterTraversal", "samplerType",
+        "russianRoulette", "auxiliaryBuffers"));
 
     defaultIncluded.add("Fog");
     defaultIncluded.add("Water");
@@ -31,6 +31,7 @@ import se.llbit.chunky.block.Air;
 import se.llbit.chunky.block.Block;
 import se.llbit.chunky.block.Water;
 import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.model.BakedQuadModel;
 import se.llbit.chunky.model.TexturedBlockModel;
 import se.llbit.chunky.model.WaterModel;
 import se.llbit.chunky.plugin.PluginApi;
@@ -535,7 +536,7 @@ public class Octree {
         ray.o.scaleAdd(distance, ray.d);
         ray.distance += distance;
         distance = 0;
-        if (currentBlock.intersect(ray, scene)) {
+        if (intersectBlock(currentBlock, ray, scene)) {
           if (prevBlock != currentBlock)
             return true;
 
@@ -662,7 +663,7 @@ public class Octree {
 
       if (!currentBlock.isWater()) {
         if (currentBlock.localIntersect) {
-          if (!currentBlock.intersect(ray, scene)) {
+          if (!intersectBlock(currentBlock, ray, scene)) {
             ray.setCurrentMaterial(Air.INSTANCE);
           }
           return true;
@@ -740,6 +741,401 @@ public class Octree {
     }
   }
 
+  /**
+   * Intersect the ray with a block that has a local intersection model, using the
+   * baked model of the block if there is one.
+   */
+  private static boolean intersectBlock(Block block, Ray ray, Scene scene) {
+    BakedQuadModel bakedModel = block.bakedModel;
+    if (bakedModel != null) {
+      return bakedModel.intersect(ray);
+    }
+    return block.intersect(ray, scene);
+  }
+
+  /**
+   * Start an incremental ray march that intersects the ray with the geometry
+   * inside the octree. Running the march to completion is equivalent to
+   * {@link #enterBlock(Scene, Ray, BlockPalette)}.
+   */
+  public RayMarch marchEnterBlock(Scene scene, Ray ray, BlockPalette palette) {
+    RayMarch march = new RayMarch();
+    march.start(this, scene, ray, palette, false);
+    return march;
+  }
+
+  /**
+   * Start an incremental ray march that advances the ray until it leaves the
+   * current water body. Running the march to completion is equivalent to
+   * {@link #exitWater(Scene, Ray, BlockPalette)}.
+   */
+  public RayMarch marchExitWater(Scene scene, Ray ray, BlockPalette palette) {
+    RayMarch march = new RayMarch();
+    march.start(this, scene, ray, palette, true);
+    return march;
+  }
+
+  /**
+   * A ray march through the octree that can be paused and resumed.
+   *
+   * <p>The march is paused whenever the ray is about to enter an octree leaf
+   * further away than the limit passed to {@link #advance(double)}. All
+   * traversal state is kept between calls, so a march that is advanced in
+   * several steps produces exactly the same result as a march that is run to
+   * completion in one go. This makes it possible to traverse several octrees
+   * in lockstep and stop early once one of them can no longer produce the
+   * closest hit.
+   */
+  public static final class RayMarch {
+    /** The march has not finished yet. */
+    public static final int RUNNING = 0;
+
+    /** The march finished with an intersection. */
+    public static final int HIT = 1;
+
+    /** The march finished without intersection, or was aborted. */
+    public static final int MISS = 2;
+
+    private OctreeImplementation implementation;
+    private Scene scene;
+    private Ray ray;
+    private BlockPalette palette;
+    private boolean exitWater;
+    private int depth;
+    private final IntIntMutablePair typeAndLevel = new IntIntMutablePair(0, 0);
+
+    private int state = RUNNING;
+
+    // Distance along the ray from the current ray origin (only used when entering blocks).
+    private double distance = 0;
+
+    // floating point division are slower than multiplication so we cache them
+    // We also try to limit the number of time the ray origin is updated
+    // as it would require to recompute those values
+    private double invDx, invDy, invDz;
+    private double offsetX, offsetY, offsetZ;
+
+    private RayMarch() {
+    }
+
+    private void start(Octree octree, Scene scene, Ray ray, BlockPalette palette,
+        boolean exitWater) {
+      this.implementation = octree.implementation;
+      this.scene = scene;
+      this.ray = ray;
+      this.palette = palette;
+      this.exitWater = exitWater;
+      this.depth = implementation.getDepth();
+      state = RUNNING;
+      distance = 0;
+      if (!octree.isInside(ray.o) && !octree.enterOctree(ray)) {
+        state = MISS;
+      } else if (!exitWater) {
+        invDx = 1 / ray.d.x;
+        invDy = 1 / ray.d.y;
+        invDz = 1 / ray.d.z;
+        offsetX = -ray.o.x * invDx;
+        offsetY = -ray.o.y * invDy;
+        offsetZ = -ray.o.z * invDz;
+      }
+    }
+
+    /**
+     * @return the current state of the march: {@link #RUNNING}, {@link #HIT} or {@link #MISS}
+     */
+    public int getState() {
+      return state;
+    }
+
+    public boolean isRunning() {
+      return state == RUNNING;
+    }
+
+    /**
+     * @return the distance along the ray where the march continues. Any
+     * intersection found by the march is (up to {@link Ray#EPSILON}) at least
+     * this far away.
+     */
+    public double frontier() {
+      return ray.distance + distance;
+    }
+
+    /**
+     * Stop the march without intersection. Used when the march can no longer
+     * produce the closest hit.
+     */
+    public void abort() {
+      state = MISS;
+    }
+
+    /**
+     * Continue the march until it finishes or the frontier passes the given limit.
+     *
+     * @return the state of the march after advancing
+     */
+    public int advance(double limit) {
+      if (state == RUNNING) {
+        if (exitWater) {
+          advanceExitWater(limit);
+        } else {
+          advanceEnterBlock(limit);
+        }
+      }
+      return state;
+    }
+
+    private void advanceEnterBlock(double limit) {
+      // Marching is done in a top-down fashion: at each step, the octree is descended from the root to find the leaf
+      // node the ray is in. Terminating the march is then decided based on the block type in that leaf node. Finally the
+      // ray is advanced to the boundary of the current leaf node and the next, ready for the next iteration.
+      while (true) {
+        if (ray.distance + distance > limit) {
+          return; // Paused.
+        }
+
+        // Add small offset past the intersection to avoid
+        // recursion to the same octree node!
+        int x = (int) Math.floor(ray.o.x + ray.d.x * (distance + Ray.OFFSET));
+        int y = (int) Math.floor(ray.o.y + ray.d.y * (distance + Ray.OFFSET));
+        int z = (int) Math.floor(ray.o.z + ray.d.z * (distance + Ray.OFFSET));
+
+        int lx = x >>> depth;
+        int ly = y >>> depth;
+        int lz = z >>> depth;
+
+        if (lx != 0 || ly != 0 || lz != 0) {
+          state = MISS; // outside of octree!
+          return;
+        }
+
+        implementation.getWithLevel(typeAndLevel, x, y, z);
+        int type = typeAndLevel.leftInt();
+        int level = typeAndLevel.rightInt();
+
+        lx = x >>> level;
+        ly = y >>> level;
+        lz = z >>> level;
+
+        // Test intersection
+        Block currentBlock = palette.get(type);
+        Material prevBlock = ray.getCurrentMaterial();
+
+        ray.setPrevMaterial(prevBlock, ray.getCurrentData());
+        ray.setCurrentMaterial(currentBlock);
+
+        if (currentBlock.localIntersect) {
+          // Other functions expect the ray origin to be in the block they test so here time
+          // to update it
+          // Updating the origin also means that new offsetX/offsetY/offsetZ must be computed
+          // but that is done a after the intersection test only if necessary
+          // and not if we are leaving the function anyway
+          ray.o.scaleAdd(distance, ray.d);
+          ray.distance += distance;
+          distance = 0;
+          if (intersectBlock(currentBlock, ray, scene)) {
+            if (prevBlock != currentBlock) {
+              state = HIT;
+              return;
+            }
+
+            ray.o.scaleAdd(Ray.OFFSET, ray.d);
+            offsetX = -ray.o.x * invDx;
+            offsetY = -ray.o.y * invDy;
+            offsetZ = -ray.o.z * invDz;
+            continue;
+          } else {
+            // Exit ray from this local block.
+            ray.setCurrentMaterial(Air.INSTANCE); // Current material is air.
+            ray.exitBlock(x, y, z);
+            offsetX = -ray.o.x * invDx;
+            offsetY = -ray.o.y * invDy;
+            offsetZ = -ray.o.z * invDz;
+            continue;
+          }
+        } else if (!currentBlock.isSameMaterial(prevBlock) && currentBlock != Air.INSTANCE) {
+          // Origin and distance of ray need to be updated
+          ray.o.scaleAdd(distance, ray.d);
+          ray.distance += distance;
+          distance = 0;
+          TexturedBlockModel.getIntersectionColor(ray);
+          if (currentBlock.opaque) {
+            ray.color.w = 1;
+          }
+          state = HIT;
+          return;
+        }
+
+        // No intersection, exit current octree leaf.
+        int nx = 0, ny = 0, nz = 0;
+        double tNear = Double.POSITIVE_INFINITY;
+
+        // Testing all six sides of the current leaf node and advancing to the closest intersection
+        // Every side is unconditionally tested because the origin of the ray can be outside the block
+        // The computation involves a multiplication and an addition so we could use a fma (need java 9+)
+        // but according to measurement, performance are identical
+        double t = (lx << level) * invDx + offsetX;
+        if (t > distance + Ray.EPSILON) {
+          tNear = t;
+          nx = 1;
+        }
+        t = ((lx + 1) << level) * invDx + offsetX;
+        if (t < tNear && t > distance + Ray.EPSILON) {
+          tNear = t;
+          nx = -1;
+        }
+
+        t = (ly << level) * invDy + offsetY;
+        if (t < tNear && t > distance + Ray.EPSILON) {
+          tNear = t;
+          ny = 1;
+          nx = 0;
+        }
+        t = ((ly + 1) << level) * invDy + offsetY;
+        if (t < tNear && t > distance + Ray.EPSILON) {
+          tNear = t;
+          ny = -1;
+          nx = 0;
+        }
+
+        t = (lz << level) * invDz + offsetZ;
+        if (t < tNear && t > distance + Ray.EPSILON) {
+          tNear = t;
+          nz = 1;
+          nx = ny = 0;
+        }
+        t = ((lz + 1) << level) * invDz + offsetZ;
+        if (t < tNear && t > distance + Ray.EPSILON) {
+          tNear = t;
+          nz = -1;
+          nx = ny = 0;
+        }
+
+        ray.n.set(nx, ny, nz);
+
+        distance = tNear;
+      }
+    }
+
+    private void advanceExitWater(double limit) {
+      // Marching is done in a top-down fashion: at each step, the octree is descended from the root to find the leaf
+      // node the ray is in. Terminating the march is then decided based on the block type in that leaf node. Finally the
+      // ray is advanced to the boundary of the current leaf node and the next, ready for the next iteration.
+      while (true) {
+        if (ray.distance > limit) {
+          return; // Paused.
+        }
+
+        // Add small offset past the intersection to avoid
+        // recursion to the same octree node!
+        int x = (int) QuickMath.floor(ray.o.x + ray.d.x * Ray.OFFSET);
+        int y = (int) QuickMath.floor(ray.o.y + ray.d.y * Ray.OFFSET);
+        int z = (int) QuickMath.floor(ray.o.z + ray.d.z * Ray.OFFSET);
+
+        int lx = x >>> depth;
+        int ly = y >>> depth;
+        int lz = z >>> depth;
+
+        if (lx != 0 || ly != 0 || lz != 0) {
+          state = MISS; // outside of octree!
+          return;
+        }
+
+        // Descend the tree to find the current leaf node
+        implementation.getWithLevel(typeAndLevel, x, y, z);
+        int type = typeAndLevel.leftInt();
+        int level = typeAndLevel.rightInt();
+
+        lx = x >>> level;
+        ly = y >>> level;
+        lz = z >>> level;
+
+        // Test intersection
+        Block currentBlock = palette.get(type);
+        Material prevBlock = ray.getCurrentMaterial();
+
+        ray.setPrevMaterial(prevBlock, ray.getCurrentData());
+        ray.setCurrentMaterial(currentBlock);
+
+        if (!currentBlock.isWater()) {
+          if (currentBlock.localIntersect) {
+            if (!intersectBlock(currentBlock, ray, scene)) {
+              ray.setCurrentMaterial(Air.INSTANCE);
+            }
+          } else if (currentBlock != Air.INSTANCE) {
+            TexturedBlockModel.getIntersectionColor(ray);
+            if (currentBlock.opaque) {
+              ray.color.w = 1;
+            }
+          }
+          state = HIT;
+          return;
+        }
+
+        if (!(currentBlock instanceof Water && ((Water) currentBlock).isFullBlock())) {
+          if (WaterModel.intersectTop(ray)) {
+            ray.setCurrentMaterial(Air.INSTANCE);
+            state = HIT;
+            return;
+          } else {
+            ray.exitBlock(x, y, z);
+            continue;
+          }
+        }
+
+        // No intersection, exit current octree leaf.
+        int nx = 0, ny = 0, nz = 0;
+        double tNear = Double.POSITIVE_INFINITY;
+
+        // Testing all six sides of the current leaf node and advancing to the closest intersection
+        double t = ((lx << level) - ray.o.x) / ray.d.x;
+        if (t > Ray.EPSILON) {
+          tNear = t;
+          nx = 1;
+          ny = nz = 0;
+        } else {
+          t = (((lx + 1) << level) - ray.o.x) / ray.d.x;
+          if (t < tNear && t > Ray.EPSILON) {
+            tNear = t;
+            nx = -1;
+            ny = nz = 0;
+          }
+        }
+
+        t = ((ly << level) - ray.o.y) / ray.d.y;
+        if (t < tNear && t > Ray.EPSILON) {
+          tNear = t;
+          ny = 1;
+          nx = nz = 0;
+        } else {
+          t = (((ly + 1) << level) - ray.o.y) / ray.d.y;
+          if (t < tNear && t > Ray.EPSILON) {
+            tNear = t;
+            ny = -1;
+            nx = nz = 0;
+          }
+        }
+
+        t = ((lz << level) - ray.o.z) / ray.d.z;
+        if (t < tNear && t > Ray.EPSILON) {
+          tNear = t;
+          nz = 1;
+          nx = ny = 0;
+        } else {
+          t = (((lz + 1) << level) - ray.o.z) / ray.d.z;
+          if (t < tNear && t > Ray.EPSILON) {
+            tNear = t;
+            nz = -1;
+            nx = ny = 0;
+          }
+        }
+
+        ray.o.scaleAdd(tNear, ray.d);
+        ray.n.set(nx, ny, nz);
+        ray.distance += tNear;
+      }
+    }
+  }
+
   /**
    * Update the serialization timestamp.
    */
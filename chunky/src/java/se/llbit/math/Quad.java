@@ -152,6 +152,41 @@ public class Quad {
     return false;
   }
 
+  /**
+   * Number of values written by {@link #pack(double[], int)}.
+   */
+  public static final int PACKED_SIZE = 19;
+
+  /**
+   * Write the geometry of this quad to a flat array: origin, x vector, y vector,
+   * normal, plane offset, inverse squared x and y vector lengths and finally
+   * the UV parameters.
+   *
+   * @param dest destination array
+   * @param offset index of the first value to write
+   */
+  public void pack(double[] dest, int offset) {
+    dest[offset] = o.x;
+    dest[offset + 1] = o.y;
+    dest[offset + 2] = o.z;
+    dest[offset + 3] = xv.x;
+    dest[offset + 4] = xv.y;
+    dest[offset + 5] = xv.z;
+    dest[offset + 6] = yv.x;
+    dest[offset + 7] = yv.y;
+    dest[offset + 8] = yv.z;
+    dest[offset + 9] = n.x;
+    dest[offset + 10] = n.y;
+    dest[offset + 11] = n.z;
+    dest[offset + 12] = d;
+    dest[offset + 13] = xvl;
+    dest[offset + 14] = yvl;
+    dest[offset + 15] = uv.x;
+    dest[offset + 16] = uv.y;
+    dest[offset + 17] = uv.z;
+    dest[offset + 18] = uv.w;
+  }
+
   /**
    * @return Scaled copy of this quad
    */
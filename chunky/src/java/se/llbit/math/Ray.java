@@ -120,6 +120,19 @@ public class Ray {
    */
   public boolean specular;
 
+  /**
+   * Weight of the sky light if this ray escapes to the sky after a diffuse
+   * reflection. This is less than one when the sky light is also sampled
+   * explicitly.
+   */
+  public double skyWeight = 1;
+
+  /**
+   * Estimated path throughput from the camera to the origin of this ray,
+   * used for Russian roulette.
+   */
+  public double throughput = 1;
+
   /**
    * Builds an uninitialized ray.
    */
@@ -146,6 +159,8 @@ public class Ray {
     color.set(0, 0, 0, 0);
     emittance.set(0, 0, 0);
     specular = true;
+    skyWeight = 1;
+    throughput = 1;
   }
 
   /**
@@ -162,6 +177,8 @@ public class Ray {
     color.set(0, 0, 0, 0);
     emittance.set(0, 0, 0);
     specular = other.specular;
+    skyWeight = other.skyWeight;
+    throughput = other.throughput;
   }
 
   /**
@@ -319,6 +336,7 @@ public class Ray {
     o.scaleAdd(Ray.OFFSET, d);
     currentMaterial = prevMaterial;
     specular = false;
+    skyWeight = 1;
   }
 
   /**
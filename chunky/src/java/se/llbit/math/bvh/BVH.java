@@ -18,16 +18,23 @@
 package se.llbit.math.bvh;
 
 import se.llbit.chunky.entity.Entity;
+import se.llbit.chunky.main.Chunky;
 import se.llbit.chunky.plugin.PluginApi;
 import se.llbit.log.Log;
 import se.llbit.math.Intersectable;
 import se.llbit.math.Ray;
 import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
 import se.llbit.util.TaskTracker;
+import se.llbit.util.ThreadBudget;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 /**
  * Bounding Volume Hierarchy based on AABBs.
@@ -91,6 +98,57 @@ public interface BVH extends Intersectable {
       DEFAULT_IMPLEMENTATION = implementations.get("SAH_MA");
     }
 
+    /**
+     * Collect the primitives of all entities, updating the task progress from 0 to 500.
+     *
+     * <p>Entities with the same non-null instance key (see {@link Entity#getInstanceKey()})
+     * share one copy of their geometry: the model is built once and each entity only adds
+     * an {@link Instance} primitive that translates the model to the entity position.
+     *
+     * @param modelBuilder used to build a BVH for large shared models
+     */
+    public static Primitive[] collectPrimitives(Collection<Entity> entities, Vector3 worldOffset,
+        Function<Primitive[], BVH> modelBuilder, TaskTracker.Task task) {
+      double entityScaler = 500.0 / entities.size();
+      int done = 0;
+
+      Map<Object, List<Entity>> instanced = new LinkedHashMap<>();
+      List<Primitive> primitives = new ArrayList<>();
+      for (Entity entity : entities) {
+        Object key = entity.getInstanceKey();
+        if (key != null) {
+          instanced.computeIfAbsent(key, k -> new ArrayList<>()).add(entity);
+        } else {
+          primitives.addAll(entity.primitives(worldOffset));
+
+          done++;
+          task.updateInterval((int) (done * entityScaler), 1);
+        }
+      }
+
+      for (List<Entity> group : instanced.values()) {
+        if (group.size() == 1) {
+          primitives.addAll(group.get(0).primitives(worldOffset));
+        } else {
+          Vector3 first = group.get(0).position;
+          Instance.Model model = new Instance.Model(
+              group.get(0).primitives(new Vector3(-first.x, -first.y, -first.z))
+                  .toArray(new Primitive[0]),
+              modelBuilder);
+          for (Entity entity : group) {
+            primitives.add(new Instance(model,
+                entity.position.x + worldOffset.x,
+                entity.position.y + worldOffset.y,
+                entity.position.z + worldOffset.z));
+          }
+        }
+
+        done += group.size();
+        task.updateInterval((int) (done * entityScaler), 1);
+      }
+      return primitives.toArray(new Primitive[0]);
+    }
+
     /**
      * Construct a new BVH containing the given entities. This will generate the BVH using the
      * persistent BVH method (default is SAH_MA).
@@ -98,7 +156,8 @@ public interface BVH extends Intersectable {
     public static BVH create(String implementation, Collection<Entity> entities, Vector3 worldOffset, TaskTracker.Task task) {
       if (entities.isEmpty()) {
         return BVH.EMPTY;
-      } else {
+      }
+      try (ThreadBudget.Section section = Chunky.getThreadBudget().enter(ThreadBudget.Priority.BACKGROUND)) {
         return getImplementation(implementation).create(entities, worldOffset, task);
       }
     }
@@ -23,6 +23,8 @@ import org.apache.commons.math3.util.FastMath;
 import se.llbit.math.AABB;
 import se.llbit.math.Ray;
 import se.llbit.math.primitive.Primitive;
+import se.llbit.math.primitive.TexturedTriangle;
+import se.llbit.math.primitive.TriangleStore;
 
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -38,11 +40,24 @@ public abstract class BinaryBVH implements BVH {
 
     public static final int SPLIT_LIMIT = 4;
 
+    private static final Primitive[] NO_PRIMITIVES = new Primitive[0];
+
     /** Note: This is public for some plugins. Stability is not guaranteed. */
     public int[] packed;
     public int depth;
     public Primitive[][] packedPrimitives;
 
+    /**
+     * Copies of the textured triangles in {@code packedPrimitives}, used for
+     * intersection. The triangles of leaf {@code i} have the indices
+     * {@code leafTriangles[i]} to {@code leafTriangles[i+1]-1}.
+     */
+    private TriangleStore triangles;
+    private int[] leafTriangles;
+
+    /** The primitives of each leaf that are not in the triangle store. */
+    private Primitive[][] leafOthers;
+
     public static abstract class Node {
         public final AABB bb;
 
@@ -147,6 +162,39 @@ public abstract class BinaryBVH implements BVH {
         this.depth = packNode(root, data, packedPrimitives);
         this.packed = data.toIntArray();
         this.packedPrimitives = packedPrimitives.toArray(new Primitive[0][]);
+        packTriangles();
+    }
+
+    /**
+     * Copy the textured triangles of each leaf into the compact triangle store.
+     * Subclasses of {@code TexturedTriangle} are intersected as they are since they
+     * may override the intersection test. {@code packedPrimitives} is not changed.
+     */
+    private void packTriangles() {
+        triangles = new TriangleStore(packed.length / 7);
+        leafTriangles = new int[packedPrimitives.length + 1];
+        leafOthers = new Primitive[packedPrimitives.length][];
+        ArrayList<Primitive> others = new ArrayList<>();
+        for (int i = 0; i < packedPrimitives.length; ++i) {
+            leafTriangles[i] = triangles.size();
+            others.clear();
+            for (Primitive primitive : packedPrimitives[i]) {
+                if (primitive.getClass() == TexturedTriangle.class) {
+                    triangles.add((TexturedTriangle) primitive);
+                } else {
+                    others.add(primitive);
+                }
+            }
+            if (others.size() == packedPrimitives[i].length) {
+                leafOthers[i] = packedPrimitives[i];
+            } else if (others.isEmpty()) {
+                leafOthers[i] = NO_PRIMITIVES;
+            } else {
+                leafOthers[i] = others.toArray(NO_PRIMITIVES);
+            }
+        }
+        leafTriangles[packedPrimitives.length] = triangles.size();
+        triangles.trim();
     }
 
     /**
@@ -225,7 +273,10 @@ public abstract class BinaryBVH implements BVH {
             if (packed[currentNode] <= 0) {
                 // Is leaf
                 int primIndex = -packed[currentNode];
-                for (Primitive primitive : packedPrimitives[primIndex]) {
+                for (int i = leafTriangles[primIndex]; i < leafTriangles[primIndex + 1]; ++i) {
+                    hit = triangles.intersect(i, ray) | hit;
+                }
+                for (Primitive primitive : leafOthers[primIndex]) {
                     hit = primitive.intersect(ray) | hit;
                 }
 
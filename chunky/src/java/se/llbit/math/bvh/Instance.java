@@ -0,0 +1,104 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import se.llbit.math.AABB;
+import se.llbit.math.Intersectable;
+import se.llbit.math.Ray;
+import se.llbit.math.primitive.Primitive;
+
+import java.util.function.Function;
+
+/**
+ * A translated instance of shared model geometry.
+ *
+ * <p>The model is stored once, relative to the instance position, and every
+ * instance only stores its translation and bounds. The ray is moved into
+ * model space for the intersection test, so hit distance, normal and color
+ * are the same as if the model geometry had been copied to the instance
+ * position.
+ */
+public class Instance implements Primitive {
+
+    /**
+     * Shared model geometry.
+     */
+    public static class Model {
+        /**
+         * Models with fewer primitives than this are intersected by testing
+         * all primitives instead of using a BVH.
+         */
+        private static final int BVH_THRESHOLD = 16;
+
+        private final Intersectable geometry;
+        private final AABB bounds;
+        private final int size;
+
+        /**
+         * @param primitives model geometry, relative to the instance position
+         * @param builder used to build a BVH for large models
+         */
+        public Model(Primitive[] primitives, Function<Primitive[], BVH> builder) {
+            this.bounds = BinaryBVH.bb(primitives);
+            this.size = primitives.length;
+            if (primitives.length < BVH_THRESHOLD) {
+                this.geometry = ray -> {
+                    boolean hit = false;
+                    for (Primitive primitive : primitives) {
+                        hit = primitive.intersect(ray) | hit;
+                    }
+                    return hit;
+                };
+            } else {
+                this.geometry = builder.apply(primitives);
+            }
+        }
+
+        /**
+         * @return the number of primitives in the model
+         */
+        public int size() {
+            return size;
+        }
+    }
+
+    private final Model model;
+    private final AABB bounds;
+    private final double x, y, z;
+
+    public Instance(Model model, double x, double y, double z) {
+        this.model = model;
+        this.bounds = model.bounds.getTranslated(x, y, z);
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    @Override public boolean intersect(Ray ray) {
+        double ox = ray.o.x;
+        double oy = ray.o.y;
+        double oz = ray.o.z;
+        ray.o.set(ox - x, oy - y, oz - z);
+        boolean hit = model.geometry.closestIntersection(ray);
+        ray.o.set(ox, oy, oz);
+        return hit;
+    }
+
+    @Override public AABB bounds() {
+        return bounds;
+    }
+}
@@ -35,18 +35,8 @@ public class SahMaBVH extends BinaryBVH {
             @Override
             public BVH create(Collection<Entity> entities, Vector3 worldOffset, TaskTracker.Task task) {
                 task.update(1000, 0);
-                double entityScaler = 500.0 / entities.size();
-                int done = 0;
-
-                List<Primitive> primitives = new ArrayList<>();
-                for (Entity entity : entities) {
-                    primitives.addAll(entity.primitives(worldOffset));
-
-                    done++;
-                    task.updateInterval((int) (done * entityScaler), 1);
-                }
-                Primitive[] allPrimitives = primitives.toArray(new Primitive[0]);
-                primitives = null; // Allow the collection to be garbage collected during construction when only the array is used
+                Primitive[] allPrimitives = Factory.collectPrimitives(entities, worldOffset,
+                    model -> new SahMaBVH(model, i -> {}), task);
 
                 double primitiveScaler = 500.0 / allPrimitives.length;
                 return new SahMaBVH(allPrimitives, i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1));
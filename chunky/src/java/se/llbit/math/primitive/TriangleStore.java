@@ -0,0 +1,183 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.primitive;
+
+import java.util.Arrays;
+
+import se.llbit.chunky.world.Material;
+import se.llbit.math.Ray;
+
+/**
+ * Compact storage for textured triangles.
+ *
+ * <p>The triangle data is packed into one array, indexed by triangle id,
+ * instead of being spread over several objects per triangle. Intersecting a
+ * stored triangle gives the same result as {@link TexturedTriangle#intersect(Ray)}
+ * for the triangle it was created from.
+ */
+public final class TriangleStore {
+  private static final double EPSILON = 0.000001;
+
+  /**
+   * Doubles per triangle: origin, edge 1, edge 2, normal and texture coordinates.
+   */
+  private static final int STRIDE = 18;
+
+  private double[] data;
+  private Material[] materials;
+  private boolean[] doubleSided;
+  private int size = 0;
+
+  public TriangleStore() {
+    this(16);
+  }
+
+  public TriangleStore(int capacity) {
+    capacity = Math.max(capacity, 1);
+    data = new double[capacity * STRIDE];
+    materials = new Material[capacity];
+    doubleSided = new boolean[capacity];
+  }
+
+  /**
+   * @return the number of triangles in the store
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Copy a triangle into the store.
+   *
+   * @return the index of the stored triangle
+   */
+  public int add(TexturedTriangle triangle) {
+    if (size == materials.length) {
+      int capacity = materials.length * 2;
+      data = Arrays.copyOf(data, capacity * STRIDE);
+      materials = Arrays.copyOf(materials, capacity);
+      doubleSided = Arrays.copyOf(doubleSided, capacity);
+    }
+    int offset = size * STRIDE;
+    data[offset] = triangle.o.x;
+    data[offset + 1] = triangle.o.y;
+    data[offset + 2] = triangle.o.z;
+    data[offset + 3] = triangle.e1.x;
+    data[offset + 4] = triangle.e1.y;
+    data[offset + 5] = triangle.e1.z;
+    data[offset + 6] = triangle.e2.x;
+    data[offset + 7] = triangle.e2.y;
+    data[offset + 8] = triangle.e2.z;
+    data[offset + 9] = triangle.n.x;
+    data[offset + 10] = triangle.n.y;
+    data[offset + 11] = triangle.n.z;
+    data[offset + 12] = triangle.t1u;
+    data[offset + 13] = triangle.t1v;
+    data[offset + 14] = triangle.t2u;
+    data[offset + 15] = triangle.t2v;
+    data[offset + 16] = triangle.t3u;
+    data[offset + 17] = triangle.t3v;
+    materials[size] = triangle.material;
+    doubleSided[size] = triangle.doubleSided;
+    return size++;
+  }
+
+  /**
+   * Release unused capacity.
+   */
+  public void trim() {
+    if (size < materials.length) {
+      data = Arrays.copyOf(data, size * STRIDE);
+      materials = Arrays.copyOf(materials, size);
+      doubleSided = Arrays.copyOf(doubleSided, size);
+    }
+  }
+
+  /**
+   * Intersect the ray with a stored triangle, using the Möller-Trumbore
+   * triangle intersection algorithm.
+   *
+   * @return {@code true} if the ray hit the triangle closer than {@code ray.t}
+   */
+  public boolean intersect(int index, Ray ray) {
+    double[] data = this.data;
+    int offset = index * STRIDE;
+    double e1x = data[offset + 3];
+    double e1y = data[offset + 4];
+    double e1z = data[offset + 5];
+    double e2x = data[offset + 6];
+    double e2y = data[offset + 7];
+    double e2z = data[offset + 8];
+    double dx = ray.d.x;
+    double dy = ray.d.y;
+    double dz = ray.d.z;
+
+    // pvec = d x e2
+    double px = dy * e2z - dz * e2y;
+    double py = dz * e2x - dx * e2z;
+    double pz = dx * e2y - dy * e2x;
+    double det = e1x * px + e1y * py + e1z * pz;
+    if (doubleSided[index]) {
+      if (det > -EPSILON && det < EPSILON) {
+        return false;
+      }
+    } else if (det > -EPSILON) {
+      return false;
+    }
+    double recip = 1 / det;
+
+    // tvec = o - origin
+    double tx = ray.o.x - data[offset];
+    double ty = ray.o.y - data[offset + 1];
+    double tz = ray.o.z - data[offset + 2];
+
+    double u = (tx * px + ty * py + tz * pz) * recip;
+
+    if (u < 0 || u > 1) {
+      return false;
+    }
+
+    // qvec = tvec x e1
+    double qx = ty * e1z - tz * e1y;
+    double qy = tz * e1x - tx * e1z;
+    double qz = tx * e1y - ty * e1x;
+
+    double v = (dx * qx + dy * qy + dz * qz) * recip;
+
+    if (v < 0 || (u + v) > 1) {
+      return false;
+    }
+
+    double t = (e2x * qx + e2y * qy + e2z * qz) * recip;
+
+    if (t > EPSILON && t < ray.t) {
+      double w = 1 - u - v;
+      ray.u = data[offset + 12] * u + data[offset + 14] * v + data[offset + 16] * w;
+      ray.v = data[offset + 13] * u + data[offset + 15] * v + data[offset + 17] * w;
+      Material material = materials[index];
+      float[] color = material.getColor(ray.u, ray.v);
+      if (color[3] > 0) {
+        ray.color.set(color);
+        ray.setCurrentMaterial(material);
+        ray.t = t;
+        ray.n.set(data[offset + 9], data[offset + 10], data[offset + 11]);
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -1,7 +1,9 @@
 package se.llbit.pfm;
 
-import se.llbit.chunky.renderer.Postprocess;
+import se.llbit.chunky.main.Chunky;
 import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.util.OrderedPipeline;
+import se.llbit.util.RasterSource;
 import se.llbit.util.TaskTracker;
 
 import java.io.DataOutputStream;
@@ -13,11 +15,15 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Portable FloatMap image file writer.
  */
 public class PfmFileWriter implements AutoCloseable {
+  /** Number of rows converted per task. */
+  private static final int STRIP_ROWS = 16;
+
   private final DataOutputStream out;
 
   public PfmFileWriter(OutputStream out) {
@@ -34,23 +40,32 @@ public class PfmFileWriter implements AutoCloseable {
   }
 
   public void write(Scene scene, TaskTracker.Task task) throws IOException {
+    // Post processing is ignored because that would clip the color range and defeat the purpose of HDR.
+    write(RasterSource.of(scene.canvasWidth(), scene.canvasHeight(), scene.getSampleBuffer()), task);
+  }
+
+  /**
+   * Write the image. The rows are converted in parallel and written as they
+   * become available, so only a few rows are kept in memory at a time.
+   */
+  public void write(RasterSource source, TaskTracker.Task task) throws IOException {
     ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
 
-    writeHeader(scene, byteOrder);
+    writeHeader(source.width(), source.height(), byteOrder);
 
     // Image's actual data.
-    writePixelData(scene, byteOrder, task);
+    writePixelData(source, byteOrder, task);
 
     // No footer data to write.
   }
 
-  private void writeHeader(Scene scene, ByteOrder byteOrder) throws IOException {
+  private void writeHeader(int width, int height, ByteOrder byteOrder) throws IOException {
     //Declare File Type
     out.write("PF".getBytes(StandardCharsets.US_ASCII));
     out.write(0x0a);
 
     // Declare Image Size
-    out.write((scene.canvasWidth()+" "+scene.canvasHeight()).getBytes(StandardCharsets.US_ASCII));
+    out.write((width+" "+height).getBytes(StandardCharsets.US_ASCII));
     out.write(0x0a);
 
     // Declare Byte Order
@@ -58,30 +73,31 @@ public class PfmFileWriter implements AutoCloseable {
     out.write(0x0a);
   }
 
-  private void writePixelData(Scene scene, ByteOrder byteOrder, TaskTracker.Task task) throws IOException
+  private void writePixelData(RasterSource source, ByteOrder byteOrder, TaskTracker.Task task) throws IOException
   {
-    int width = scene.canvasWidth();
-    int height = scene.canvasHeight();
-
-    // one or the other will be used, depending on if postprocessing is enabled.
-    double[] pixel = new double[3];
-    double[] sampleBuffer = scene.getSampleBuffer();
-
-    // write each row...
-    for (int y = height-1; y >= 0; y--) {
-      task.update(height, height-y-1);
-
-      // Prepare our row buffers
-      ByteBuffer buffer = ByteBuffer.allocate(width*3*4).order(byteOrder);
+    int width = source.width();
+    int height = source.height();
+    int strips = (height + STRIP_ROWS - 1) / STRIP_ROWS;
+    ForkJoinPool pool = Chunky.getCommonThreads();
+
+    // PFM rows are stored bottom to top, so strips are read from the bottom of the image.
+    task.update(height, 0);
+    OrderedPipeline.run(strips, 2 * pool.getParallelism(), pool, strip -> {
+      int y1 = height - strip * STRIP_ROWS;
+      int y0 = Math.max(0, y1 - STRIP_ROWS);
+      int rowValues = width * 3;
+      float[] rgb = new float[(y1 - y0) * rowValues];
+      source.read(0, y0, width, y1, rgb);
+      ByteBuffer buffer = ByteBuffer.allocate(rgb.length * 4).order(byteOrder);
       FloatBuffer floatBuffer = buffer.asFloatBuffer();
-
-      // get the row's data as floats from raw pixel data
-      // (ignore post processing because that would clip the color range and defeat the purpose of HDR)
-        for (int x = 0; x < 3*width; x++)
-          floatBuffer.put((float)sampleBuffer[y*width*3+x]);
-
+      for (int row = y1 - y0 - 1; row >= 0; --row) {
+        floatBuffer.put(rgb, row * rowValues, rowValues);
+      }
+      return buffer.array();
+    }, (strip, bytes) -> {
       // Write buffer to stream
-      out.write(buffer.array());
-    }
+      out.write(bytes);
+      task.update(height, Math.min(height, (strip + 1) * STRIP_ROWS));
+    });
   }
 }
@@ -0,0 +1,281 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.png;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import se.llbit.util.OrderedPipeline;
+import se.llbit.util.TaskTracker;
+
+/**
+ * Encodes the image data of a PNG file in parallel.
+ *
+ * <p>The scanlines are split into blocks which are filtered and compressed
+ * independently. Each scanline uses the filter type that gives the smallest
+ * sum of absolute differences, which is the heuristic suggested by the PNG
+ * specification. The blocks are compressed as raw deflate streams primed with
+ * the end of the previous block as dictionary, so that matches can reach
+ * across block boundaries, and are then concatenated into a single zlib
+ * stream. The result is a standard PNG data stream.
+ */
+class IdatEncoder {
+  /** Minimum number of uncompressed bytes per block. */
+  private static final int BLOCK_BYTES = 1 << 17;
+
+  /** Size of the deflate window. */
+  private static final int DICTIONARY_BYTES = 1 << 15;
+
+  /** Zlib header for deflate with a 32 KiB window. */
+  private static final int ZLIB_HEADER = 0x789C;
+
+  private final int[] data;
+  private final byte[] alpha;
+  private final int width;
+  private final int height;
+  private final int bpp;
+  private final int rowBytes;
+  private final int rowsPerBlock;
+
+  /**
+   * @param alpha the alpha channel, or {@code null} to encode RGB data
+   */
+  IdatEncoder(int[] data, byte[] alpha, int width, int height) {
+    this.data = data;
+    this.alpha = alpha;
+    this.width = width;
+    this.height = height;
+    this.bpp = alpha == null ? 3 : 4;
+    this.rowBytes = width * bpp;
+    this.rowsPerBlock = Math.max(1, BLOCK_BYTES / (rowBytes + 1));
+  }
+
+  /** A compressed block and the filtered data it was compressed from. */
+  private static final class Block {
+    final byte[] filtered;
+    final byte[] compressed;
+
+    Block(byte[] filtered, byte[] compressed) {
+      this.filtered = filtered;
+      this.compressed = compressed;
+    }
+  }
+
+  /**
+   * Encode the image and write the zlib stream to the output.
+   * Blocks are written in order as soon as they have been compressed, and
+   * at most two blocks per thread are encoded ahead of the output.
+   */
+  void encode(OutputStream out, ForkJoinPool pool, TaskTracker.Task task) throws IOException {
+    int numBlocks = Math.max(1, (height + rowsPerBlock - 1) / rowsPerBlock);
+    Adler32 adler = new Adler32();
+    out.write(ZLIB_HEADER >>> 8);
+    out.write(ZLIB_HEADER & 0xFF);
+    OrderedPipeline.run(numBlocks, 2 * pool.getParallelism(), pool,
+        i -> encodeBlock(i, i == numBlocks - 1),
+        (i, block) -> {
+          task.update(numBlocks, i);
+          out.write(block.compressed);
+          adler.update(block.filtered);
+        });
+    int checksum = (int) adler.getValue();
+    out.write(checksum >>> 24);
+    out.write((checksum >>> 16) & 0xFF);
+    out.write((checksum >>> 8) & 0xFF);
+    out.write(checksum & 0xFF);
+    task.update(numBlocks, numBlocks);
+  }
+
+  /**
+   * Filter and compress one block. The end of the previous block is filtered
+   * again to be used as dictionary, so that blocks do not depend on each
+   * other. Filtering is cheap compared to compression, and each scanline
+   * only depends on itself and the scanline above, so this gives the same
+   * bytes as the previous block.
+   */
+  private Block encodeBlock(int index, boolean last) {
+    int y0 = Math.min(height, index * rowsPerBlock);
+    int y1 = Math.min(height, y0 + rowsPerBlock);
+    byte[] previous = null;
+    if (y0 > 0) {
+      int dictionaryRows = Math.min(y0, (DICTIONARY_BYTES + rowBytes) / (rowBytes + 1));
+      previous = filter(y0 - dictionaryRows, y0);
+    }
+    byte[] filtered = filter(y0, y1);
+    return new Block(filtered, compress(filtered, previous, last));
+  }
+
+  /**
+   * Filter the scanlines {@code y0} (inclusive) to {@code y1} (exclusive).
+   *
+   * @return the filtered scanlines, each prefixed by its filter type
+   */
+  private byte[] filter(int y0, int y1) {
+    byte[] out = new byte[(y1 - y0) * (rowBytes + 1)];
+    byte[] previous = new byte[rowBytes];
+    byte[] current = new byte[rowBytes];
+    if (y0 > 0) {
+      scanline(y0 - 1, previous);
+    }
+    int pos = 0;
+    for (int y = y0; y < y1; ++y) {
+      scanline(y, current);
+      int type = selectFilter(current, previous);
+      out[pos++] = (byte) type;
+      for (int i = 0; i < rowBytes; ++i) {
+        int a = i >= bpp ? current[i - bpp] & 0xFF : 0;
+        int b = previous[i] & 0xFF;
+        int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+        out[pos++] = (byte) (current[i] - predict(type, a, b, c));
+      }
+      byte[] tmp = previous;
+      previous = current;
+      current = tmp;
+    }
+    return out;
+  }
+
+  /**
+   * Select the filter type giving the smallest sum of absolute differences
+   * for a scanline.
+   */
+  private int selectFilter(byte[] current, byte[] previous) {
+    long none = 0, sub = 0, up = 0, average = 0, paeth = 0;
+    for (int i = 0; i < rowBytes; ++i) {
+      int x = current[i] & 0xFF;
+      int a = i >= bpp ? current[i - bpp] & 0xFF : 0;
+      int b = previous[i] & 0xFF;
+      int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+      none += Math.abs((byte) x);
+      sub += Math.abs((byte) (x - a));
+      up += Math.abs((byte) (x - b));
+      average += Math.abs((byte) (x - ((a + b) >>> 1)));
+      paeth += Math.abs((byte) (x - paethPredictor(a, b, c)));
+    }
+    int type = IDAT.FILTER_TYPE_NONE;
+    long best = none;
+    if (sub < best) {
+      type = IDAT.FILTER_TYPE_SUB;
+      best = sub;
+    }
+    if (up < best) {
+      type = IDAT.FILTER_TYPE_UP;
+      best = up;
+    }
+    if (average < best) {
+      type = IDAT.FILTER_TYPE_AVERAGE;
+      best = average;
+    }
+    if (paeth < best) {
+      type = IDAT.FILTER_TYPE_PAETH;
+    }
+    return type;
+  }
+
+  /**
+   * @param a the byte to the left
+   * @param b the byte above
+   * @param c the byte above and to the left
+   * @return the predicted value of a byte for the given filter type
+   */
+  private static int predict(int type, int a, int b, int c) {
+    switch (type) {
+      case IDAT.FILTER_TYPE_SUB:
+        return a;
+      case IDAT.FILTER_TYPE_UP:
+        return b;
+      case IDAT.FILTER_TYPE_AVERAGE:
+        return (a + b) >>> 1;
+      case IDAT.FILTER_TYPE_PAETH:
+        return paethPredictor(a, b, c);
+      default:
+        return 0;
+    }
+  }
+
+  private static int paethPredictor(int a, int b, int c) {
+    int p = a + b - c;
+    int pa = Math.abs(p - a);
+    int pb = Math.abs(p - b);
+    int pc = Math.abs(p - c);
+    if (pa <= pb && pa <= pc) {
+      return a;
+    } else if (pb <= pc) {
+      return b;
+    } else {
+      return c;
+    }
+  }
+
+  /**
+   * Write the unfiltered bytes of a scanline to the row buffer.
+   */
+  private void scanline(int y, byte[] row) {
+    int i = y * width;
+    int pos = 0;
+    for (int x = 0; x < width; ++x) {
+      int rgb = data[i];
+      row[pos++] = (byte) (rgb >> 16);
+      row[pos++] = (byte) (rgb >> 8);
+      row[pos++] = (byte) rgb;
+      if (alpha != null) {
+        row[pos++] = alpha[i];
+      }
+      i += 1;
+    }
+  }
+
+  /**
+   * Compress a filtered block as a raw deflate stream. All blocks but the
+   * last end with a sync flush so that the next block starts on a byte
+   * boundary.
+   *
+   * @param previous the previous block, used as dictionary
+   */
+  private static byte[] compress(byte[] block, byte[] previous, boolean last) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      if (previous != null && previous.length > 0) {
+        int length = Math.min(previous.length, DICTIONARY_BYTES);
+        deflater.setDictionary(previous, previous.length - length, length);
+      }
+      deflater.setInput(block);
+      ByteArrayOutputStream out = new ByteArrayOutputStream(block.length / 2 + 64);
+      byte[] buffer = new byte[Math.min(PngFileWriter.MAX_CHUNK_BYTES, block.length + 64)];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          int deflated = deflater.deflate(buffer);
+          out.write(buffer, 0, deflated);
+        }
+      } else {
+        int deflated;
+        do {
+          deflated = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          out.write(buffer, 0, deflated);
+        } while (deflated == buffer.length);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+}
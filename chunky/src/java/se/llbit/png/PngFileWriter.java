@@ -19,11 +19,11 @@ package se.llbit.png;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import se.llbit.chunky.main.Chunky;
 import se.llbit.util.TaskTracker;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.zip.Deflater;
 
 /**
  * @author Jesper Öqvist <jesper@llbit.se>
@@ -74,80 +74,59 @@ public class PngFileWriter implements AutoCloseable {
 
   /**
    * Write the image to a PNG file.
+   *
+   * <p>The image data is filtered and compressed in parallel on the common
+   * thread pool.
    */
   public void write(int[] data, int width, int height, TaskTracker.Task task)
       throws IOException {
     writeChunk(new IHDR(width, height));
-    IDATWriter idat = new IDATWriter();
-    int i = 0;
-    for (int y = 0; y < height; ++y) {
-      task.update(height, y);
-      idat.write(IDAT.FILTER_TYPE_NONE); // Scanline header.
-      for (int x = 0; x < width; ++x) {
-        int rgb = data[i++];
-        idat.write((rgb >> 16) & 0xFF);
-        idat.write((rgb >> 8) & 0xFF);
-        idat.write(rgb & 0xFF);
-      }
-      task.update(height, y + 1);
-    }
-    idat.close();
+    writeImageData(new IdatEncoder(data, null, width, height), task);
   }
 
   /**
    * Write the image to a PNG file.
+   *
+   * <p>The image data is filtered and compressed in parallel on the common
+   * thread pool.
    */
   public void write(int[] data, byte[] alpha, int width, int height,
       TaskTracker.Task task) throws IOException {
     writeChunk(new IHDR(width, height, IHDR.COLOR_TYPE_RGBA));
-    IDATWriter idat = new IDATWriter();
-    int i = 0;
-    for (int y = 0; y < height; ++y) {
-      task.update(height, y);
-      idat.write(IDAT.FILTER_TYPE_NONE); // Scanline header.
-      for (int x = 0; x < width; ++x) {
-        int rgb = data[i];
-        idat.write((rgb >> 16) & 0xFF);
-        idat.write((rgb >> 8) & 0xFF);
-        idat.write(rgb & 0xFF);
-        idat.write(alpha[i]);
-        i += 1;
-      }
-      task.update(height, y + 1);
+    writeImageData(new IdatEncoder(data, alpha, width, height), task);
+  }
+
+  private void writeImageData(IdatEncoder encoder, TaskTracker.Task task) throws IOException {
+    try (IDATOutputStream idat = new IDATOutputStream()) {
+      encoder.encode(idat, Chunky.getCommonThreads(), task);
     }
-    idat.close();
   }
 
-  class IDATWriter {
-    Deflater deflater = new Deflater();
-    int inputSize = 0;
-    byte[] inputBuf = new byte[MAX_CHUNK_BYTES];
+  /**
+   * Splits the compressed image data into IDAT chunks.
+   */
+  class IDATOutputStream extends OutputStream {
     int outputSize = 0;
     byte[] outputBuf = new byte[MAX_CHUNK_BYTES];
 
-    void write(int b) throws IOException {
-      if (inputSize == MAX_CHUNK_BYTES) {
-        deflater.setInput(inputBuf, 0, inputSize);
-        inputSize = 0;
-        deflate();
+    @Override public void write(int b) throws IOException {
+      if (outputSize == MAX_CHUNK_BYTES) {
+        writeChunk();
       }
-      inputBuf[inputSize++] = (byte) b;
-    }
-
-    void write16(int bb) throws IOException {
-      write(bb >> 8);
-      write(bb & 0xFF);
+      outputBuf[outputSize++] = (byte) b;
     }
 
-    private void deflate() throws IOException {
-      int deflated;
-      do {
+    @Override public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
         if (outputSize == MAX_CHUNK_BYTES) {
           writeChunk();
         }
-        deflated = deflater.deflate(outputBuf, outputSize, MAX_CHUNK_BYTES - outputSize);
-        outputSize += deflated;
-      } while (deflated != 0);
+        int n = Math.min(len, MAX_CHUNK_BYTES - outputSize);
+        System.arraycopy(b, off, outputBuf, outputSize, n);
+        outputSize += n;
+        off += n;
+        len -= n;
+      }
     }
 
     private void writeChunk() throws IOException {
@@ -169,17 +148,13 @@ public class PngFileWriter implements AutoCloseable {
       outputSize = 0;
     }
 
-    void close() throws IOException {
-      if (inputSize > 0) {
-        deflater.setInput(inputBuf, 0, inputSize);
-        deflater.finish();
-        inputSize = 0;
-        deflate();
-      }
+    /**
+     * Writes the remaining data. Does not close the underlying stream.
+     */
+    @Override public void close() throws IOException {
       if (outputSize > 0) {
         writeChunk();
       }
-      deflater.end();
     }
   }
 }
@@ -16,20 +16,35 @@
  */
 package se.llbit.tiff;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntToDoubleFunction;
+import java.util.zip.Deflater;
+import se.llbit.chunky.main.Chunky;
 import se.llbit.chunky.renderer.postprocessing.PixelPostProcessingFilter;
 import se.llbit.chunky.renderer.postprocessing.PostProcessingFilter;
 import se.llbit.chunky.renderer.postprocessing.PostProcessingFilters;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.log.Log;
+import se.llbit.util.OrderedPipeline;
+import se.llbit.util.RasterSource;
 import se.llbit.util.TaskTracker;
 
 /**
- * TIFF image output. This supports 32-bit floating point channel output.
+ * TIFF image output. This supports 32-bit floating point channel output,
+ * either as a single strip or as (optionally compressed) tiles.
  *
  * <p>Non-32bit output has been removed sine it was unused.
  *
@@ -41,15 +56,46 @@ public class TiffFileWriter implements AutoCloseable {
   private static final int SHORT = 3;
   private static final int LONG = 4;
   private static final int RATIONAL = 5;
+  private static final int LONG8 = 16;
+
+  /** Width and height of the tiles in tiled output. */
+  public static final int TILE_SIZE = 256;
+
+  /** Size of an uncompressed tile. */
+  private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 3 * 4;
+
+  /** Number of rows converted per task for strip output. */
+  private static final int STRIP_ROWS = 16;
+
+  /**
+   * Compression of tiled output.
+   */
+  public enum Compression {
+    /** Uncompressed tiles. */
+    NONE(1, false),
+
+    /** Deflate compressed tiles. */
+    DEFLATE(8, false),
+
+    /**
+     * Deflate compressed tiles using the floating point predictor, which
+     * usually compresses floating point images much better than plain Deflate.
+     */
+    DEFLATE_PREDICTOR(8, true);
+
+    final int tag;
+    final boolean floatingPointPredictor;
+
+    Compression(int tag, boolean floatingPointPredictor) {
+      this.tag = tag;
+      this.floatingPointPredictor = floatingPointPredictor;
+    }
+  }
 
   private final DataOutputStream out;
 
   public TiffFileWriter(OutputStream out) throws IOException {
     this.out = new DataOutputStream(out);
-    out.write(0x4D);
-    out.write(0x4D);
-    out.write(0x00);
-    out.write(0x2A);
   }
 
   /**
@@ -67,7 +113,23 @@ public class TiffFileWriter implements AutoCloseable {
     out.close();
   }
 
+  /**
+   * Writes the byte order mark and the TIFF or BigTIFF version number.
+   */
+  private void writeSignature(boolean bigTiff) throws IOException {
+    out.write(0x4D);
+    out.write(0x4D);
+    if (bigTiff) {
+      out.writeShort(0x2B);
+      out.writeShort(8); // Offset size.
+      out.writeShort(0);
+    } else {
+      out.writeShort(0x2A);
+    }
+  }
+
   private void writeHeader(int width, int height, int bytesPerSample) throws IOException {
+    writeSignature(false);
     out.writeInt(ifdOffset(width, height, bytesPerSample));
   }
 
@@ -221,6 +283,222 @@ public class TiffFileWriter implements AutoCloseable {
    * Write an image as a 32-bit per channel TIFF file.
    */
   public void write32(Scene scene, TaskTracker.Task task) throws IOException {
+    write32(postProcessed(scene), task);
+  }
+
+  /**
+   * Write an image as a 32-bit per channel TIFF file with a single strip.
+   * The rows are converted in parallel and written as they become available.
+   */
+  public void write32(RasterSource source, TaskTracker.Task task) throws IOException {
+    int width = source.width();
+    int height = source.height();
+    writeHeader(width, height, 4);
+
+    int strips = (height + STRIP_ROWS - 1) / STRIP_ROWS;
+    ForkJoinPool pool = Chunky.getCommonThreads();
+    task.update(height, 0);
+    OrderedPipeline.run(strips, 2 * pool.getParallelism(), pool, strip -> {
+      int y0 = strip * STRIP_ROWS;
+      int y1 = Math.min(height, y0 + STRIP_ROWS);
+      float[] rgb = new float[(y1 - y0) * width * 3];
+      source.read(0, y0, width, y1, rgb);
+      ByteBuffer buffer = ByteBuffer.allocate(rgb.length * 4);
+      buffer.asFloatBuffer().put(rgb);
+      return buffer.array();
+    }, (strip, bytes) -> {
+      out.write(bytes);
+      task.update(height, Math.min(height, (strip + 1) * STRIP_ROWS));
+    });
+    writeFooter(width, height, 4);
+  }
+
+  /**
+   * Write an image as a tiled 32-bit per channel TIFF file, using the
+   * post processing filter of the scene.
+   */
+  public void writeTiled(Scene scene, Compression compression, TaskTracker.Task task)
+      throws IOException {
+    writeTiled(postProcessed(scene), compression, task);
+  }
+
+  /**
+   * Write an image as a tiled 32-bit per channel TIFF file.
+   *
+   * <p>Tiles are read from the source and compressed in parallel, and are
+   * written in order as they become available, so only a few tiles are kept
+   * in memory at a time. The image directory is written before the image data
+   * and must contain the size of each tile. Compressed tiles are therefore
+   * written to a temporary file first, and copied to the output once all
+   * tile sizes are known. The BigTIFF format is used if the file would be
+   * larger than 4 GiB.
+   */
+  public void writeTiled(RasterSource source, Compression compression, TaskTracker.Task task)
+      throws IOException {
+    int width = source.width();
+    int height = source.height();
+    int tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+    int tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+    int numTiles = tilesAcross * tilesDown;
+    ForkJoinPool pool = Chunky.getCommonThreads();
+    int window = 2 * pool.getParallelism();
+    task.update(numTiles, 0);
+
+    long[] byteCounts = new long[numTiles];
+    File tileFile = null;
+    try {
+      if (compression == Compression.NONE) {
+        Arrays.fill(byteCounts, TILE_BYTES);
+      } else {
+        tileFile = File.createTempFile("chunky-tiles", ".bin");
+        try (OutputStream tiles = new BufferedOutputStream(new FileOutputStream(tileFile))) {
+          OrderedPipeline.run(numTiles, window, pool,
+              tile -> encodeTile(source, tile, tilesAcross, compression),
+              (tile, data) -> {
+                byteCounts[tile] = data.length;
+                tiles.write(data);
+                task.update(numTiles, tile + 1);
+              });
+        }
+      }
+      long dataSize = 0;
+      for (long count : byteCounts) {
+        dataSize += count;
+      }
+
+      boolean bigTiff = false;
+      long[] tileOffsets = new long[numTiles];
+      List<IfdEntry> ifd = tiledIfd(width, height, compression, tileOffsets, byteCounts, false);
+      long dataOffset = 8 + ifdSize(ifd, false);
+      if (dataOffset + dataSize > 0xFFFFFFFFL) {
+        bigTiff = true;
+        ifd = tiledIfd(width, height, compression, tileOffsets, byteCounts, true);
+        dataOffset = 16 + ifdSize(ifd, true);
+      }
+      long offset = dataOffset;
+      for (int tile = 0; tile < numTiles; ++tile) {
+        tileOffsets[tile] = offset;
+        offset += byteCounts[tile];
+      }
+
+      writeSignature(bigTiff);
+      if (bigTiff) {
+        out.writeLong(16);
+      } else {
+        out.writeInt(8);
+      }
+      writeIfd(ifd, bigTiff);
+
+      if (tileFile != null) {
+        Files.copy(tileFile.toPath(), out);
+      } else {
+        OrderedPipeline.run(numTiles, window, pool,
+            tile -> encodeTile(source, tile, tilesAcross, compression),
+            (tile, data) -> {
+              out.write(data);
+              task.update(numTiles, tile + 1);
+            });
+      }
+    } finally {
+      if (tileFile != null) {
+        tileFile.delete();
+      }
+    }
+  }
+
+  private List<IfdEntry> tiledIfd(int width, int height, Compression compression,
+      long[] tileOffsets, long[] byteCounts, boolean bigTiff) {
+    int offsetType = bigTiff ? LONG8 : LONG;
+    List<IfdEntry> ifd = new ArrayList<>();
+    ifd.add(new IfdEntry(0x0100, LONG, width)); // Width.
+    ifd.add(new IfdEntry(0x0101, LONG, height)); // Height.
+    ifd.add(new IfdEntry(0x0102, SHORT, 32, 32, 32)); // Bits per sample.
+    ifd.add(new IfdEntry(0x0103, SHORT, compression.tag)); // Compression type.
+    ifd.add(new IfdEntry(0x0106, SHORT, 2)); // RGB.
+    ifd.add(new IfdEntry(0x0112, SHORT, 1)); // First row is at the top of the image.
+    ifd.add(new IfdEntry(0x0115, SHORT, 3)); // Samples per pixel.
+    ifd.add(new IfdEntry(0x011A, RATIONAL, 1, 1)); // X resolution.
+    ifd.add(new IfdEntry(0x011B, RATIONAL, 1, 1)); // Y resolution.
+    ifd.add(new IfdEntry(0x011C, SHORT, 1)); // Chunky (interleaved) planar configuration.
+    ifd.add(new IfdEntry(0x0128, SHORT, 1)); // Resolution unit.
+    ifd.add(new IfdEntry(0x0131, "Chunky")); // Software.
+    if (compression.floatingPointPredictor) {
+      ifd.add(new IfdEntry(0x013D, SHORT, 3)); // Floating point predictor.
+    }
+    ifd.add(new IfdEntry(0x0142, LONG, TILE_SIZE)); // Tile width.
+    ifd.add(new IfdEntry(0x0143, LONG, TILE_SIZE)); // Tile length.
+    ifd.add(new IfdEntry(0x0144, offsetType, tileOffsets)); // Tile offsets.
+    ifd.add(new IfdEntry(0x0145, offsetType, byteCounts)); // Tile byte counts.
+    ifd.add(new IfdEntry(0x0153, SHORT, 3, 3, 3)); // Floating point samples.
+    return ifd;
+  }
+
+  /**
+   * Encode one tile. Tiles at the right and bottom edges are padded with zeros.
+   */
+  private static byte[] encodeTile(RasterSource source, int tile, int tilesAcross,
+      Compression compression) {
+    int x0 = (tile % tilesAcross) * TILE_SIZE;
+    int y0 = (tile / tilesAcross) * TILE_SIZE;
+    int x1 = Math.min(source.width(), x0 + TILE_SIZE);
+    int y1 = Math.min(source.height(), y0 + TILE_SIZE);
+    int rowValues = (x1 - x0) * 3;
+    float[] rgb = new float[(y1 - y0) * rowValues];
+    source.read(x0, y0, x1, y1, rgb);
+
+    int rowBytes = TILE_SIZE * 3 * 4;
+    byte[] data = new byte[TILE_BYTES];
+    for (int row = 0; row < y1 - y0; ++row) {
+      int offset = row * rowBytes;
+      if (compression.floatingPointPredictor) {
+        // Split the row into byte planes, most significant byte first, and
+        // store the difference to the previous sample of the same channel.
+        int planeSize = TILE_SIZE * 3;
+        for (int i = 0; i < rowValues; ++i) {
+          int bits = Float.floatToRawIntBits(rgb[row * rowValues + i]);
+          data[offset + i] = (byte) (bits >>> 24);
+          data[offset + planeSize + i] = (byte) (bits >>> 16);
+          data[offset + 2 * planeSize + i] = (byte) (bits >>> 8);
+          data[offset + 3 * planeSize + i] = (byte) bits;
+        }
+        for (int i = rowBytes - 1; i >= 3; --i) {
+          data[offset + i] -= data[offset + i - 3];
+        }
+      } else {
+        for (int i = 0; i < rowValues; ++i) {
+          int bits = Float.floatToRawIntBits(rgb[row * rowValues + i]);
+          int pos = offset + i * 4;
+          data[pos] = (byte) (bits >>> 24);
+          data[pos + 1] = (byte) (bits >>> 16);
+          data[pos + 2] = (byte) (bits >>> 8);
+          data[pos + 3] = (byte) bits;
+        }
+      }
+    }
+    if (compression == Compression.NONE) {
+      return data;
+    }
+
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(TILE_BYTES / 4);
+      byte[] buffer = new byte[0x10000];
+      while (!deflater.finished()) {
+        int deflated = deflater.deflate(buffer);
+        compressed.write(buffer, 0, deflated);
+      }
+      return compressed.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * @return a source for the post processed pixels of a scene
+   */
+  private static RasterSource postProcessed(Scene scene) {
     PostProcessingFilter filter = scene.getPostProcessingFilter();
     if (!(filter instanceof PixelPostProcessingFilter)) {
       Log.warn("The selected post processing filter (" + filter.getName()
@@ -228,24 +506,270 @@ public class TiffFileWriter implements AutoCloseable {
           "The TIFF will be exported without post-processing instead.");
       filter = PostProcessingFilters.NONE;
     }
-
+    PixelPostProcessingFilter pixelFilter = (PixelPostProcessingFilter) filter;
     int width = scene.canvasWidth();
     int height = scene.canvasHeight();
-    writeHeader(width, height, 4);
+    double[] samples = scene.getSampleBuffer();
+    double exposure = scene.getExposure();
+    return new RasterSource() {
+      @Override public int width() {
+        return width;
+      }
+
+      @Override public int height() {
+        return height;
+      }
 
-    for (int y = 0; y < height; ++y) {
-      task.update(height, y);
-      for (int x = 0; x < width; ++x) {
+      @Override public void read(int x0, int y0, int x1, int y1, float[] rgb) {
         double[] pixel = new double[3];
-        ((PixelPostProcessingFilter) filter)
-            .processPixel(width, height, scene.getSampleBuffer(), x, y, scene.getExposure(), pixel);
-        out.writeFloat((float) pixel[0]);
-        out.writeFloat((float) pixel[1]);
-        out.writeFloat((float) pixel[2]);
+        int i = 0;
+        for (int y = y0; y < y1; ++y) {
+          for (int x = x0; x < x1; ++x) {
+            pixelFilter.processPixel(width, height, samples, x, y, exposure, pixel);
+            rgb[i++] = (float) pixel[0];
+            rgb[i++] = (float) pixel[1];
+            rgb[i++] = (float) pixel[2];
+          }
+        }
       }
-      task.update(height, y + 1);
+    };
+  }
+
+  /**
+   * An image file directory entry. Values that do not fit in the entry are
+   * stored after the directory.
+   */
+  private static class IfdEntry {
+    final int tag;
+    final int type;
+    final int count;
+    final long[] values;
+
+    IfdEntry(int tag, int type, long... values) {
+      this.tag = tag;
+      this.type = type;
+      this.count = type == RATIONAL ? values.length / 2 : values.length;
+      this.values = values;
     }
-    writeFooter(width, height, 4);
+
+    IfdEntry(int tag, String value) {
+      this(tag, ASCII, asciiValues(value));
+    }
+
+    private static long[] asciiValues(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+      long[] values = new long[bytes.length + 1];
+      for (int i = 0; i < bytes.length; ++i) {
+        values[i] = bytes[i];
+      }
+      return values;
+    }
+
+    long size() {
+      return (long) count * typeSize(type);
+    }
+
+    /**
+     * @return the size of the values stored after the directory, padded to an even size
+     */
+    long externalSize(boolean bigTiff) {
+      long size = size();
+      return size <= (bigTiff ? 8 : 4) ? 0 : (size + 1) & ~1L;
+    }
+  }
+
+  private static int typeSize(int type) {
+    switch (type) {
+      case ASCII:
+        return 1;
+      case SHORT:
+        return 2;
+      case LONG:
+        return 4;
+      default:
+        return 8;
+    }
+  }
+
+  private static long ifdSize(List<IfdEntry> ifd, boolean bigTiff) {
+    long size = bigTiff ? 8 + 20 * ifd.size() + 8 : 2 + 12 * ifd.size() + 4;
+    for (IfdEntry entry : ifd) {
+      size += entry.externalSize(bigTiff);
+    }
+    return size;
+  }
+
+  /**
+   * Write an image file directory directly after the file header, followed
+   * by the values that do not fit in the directory entries.
+   */
+  private void writeIfd(List<IfdEntry> ifd, boolean bigTiff) throws IOException {
+    long headerSize = bigTiff ? 16 : 8;
+    long valuesOffset = headerSize + (bigTiff ? 8 + 20 * ifd.size() + 8 : 2 + 12 * ifd.size() + 4);
+    if (bigTiff) {
+      out.writeLong(ifd.size());
+    } else {
+      out.writeShort(ifd.size());
+    }
+    for (IfdEntry entry : ifd) {
+      out.writeShort(entry.tag);
+      out.writeShort(entry.type);
+      if (bigTiff) {
+        out.writeLong(entry.count);
+      } else {
+        out.writeInt(entry.count);
+      }
+      long external = entry.externalSize(bigTiff);
+      if (external > 0) {
+        if (bigTiff) {
+          out.writeLong(valuesOffset);
+        } else {
+          out.writeInt((int) valuesOffset);
+        }
+        valuesOffset += external;
+      } else {
+        writeValues(entry);
+        for (long i = entry.size(); i < (bigTiff ? 8 : 4); ++i) {
+          out.write(0);
+        }
+      }
+    }
+    // No next IFD.
+    if (bigTiff) {
+      out.writeLong(0);
+    } else {
+      out.writeInt(0);
+    }
+    for (IfdEntry entry : ifd) {
+      long external = entry.externalSize(bigTiff);
+      if (external > 0) {
+        writeValues(entry);
+        if (external > entry.size()) {
+          out.write(0);
+        }
+      }
+    }
+  }
+
+  private void writeValues(IfdEntry entry) throws IOException {
+    for (long value : entry.values) {
+      switch (entry.type) {
+        case ASCII:
+          out.write((int) value);
+          break;
+        case SHORT:
+          out.writeShort((int) value);
+          break;
+        case LONG:
+        case RATIONAL:
+          out.writeInt((int) value);
+          break;
+        default:
+          out.writeLong(value);
+          break;
+      }
+    }
+  }
+
+  /** Number of IFD entries for each page in a multi-page file. */
+  private static final int LAYER_IFD_ENTRIES = 14;
+
+  /** Space for page names, including the terminating zero byte. */
+  private static final int LAYER_NAME_SIZE = 32;
+
+  /** IFD size for each page, including the values stored after the IFD. */
+  private static final int LAYER_IFD_SIZE =
+      2 + 12 * LAYER_IFD_ENTRIES + 4 + 2 * 3 + 2 * 3 + 8 + 8 + LAYER_NAME_SIZE;
+
+  /**
+   * Write a multi-page TIFF file with one 32-bit floating point RGB image
+   * per layer. The layer names are stored as page names.
+   *
+   * @param layers channel values for each layer, indexed by
+   * {@code (y * width + x) * 3 + channel}
+   */
+  public void writeLayers(int width, int height, String[] names, IntToDoubleFunction[] layers,
+      TaskTracker.Task task) throws IOException {
+    int dataSize = width * height * 3 * 4;
+    int pageSize = dataSize + LAYER_IFD_SIZE;
+    writeSignature(false);
+    out.writeInt(8 + dataSize);
+    ByteBuffer row = ByteBuffer.allocate(width * 3 * 4);
+    task.update(layers.length * height, 0);
+    for (int layer = 0; layer < layers.length; ++layer) {
+      IntToDoubleFunction values = layers[layer];
+      for (int y = 0; y < height; ++y) {
+        row.clear();
+        int offset = y * width * 3;
+        for (int i = 0; i < width * 3; ++i) {
+          row.putFloat((float) values.applyAsDouble(offset + i));
+        }
+        out.write(row.array());
+        task.update(layers.length * height, layer * height + y + 1);
+      }
+      int dataOffset = 8 + layer * pageSize;
+      int nextIfd = layer + 1 < layers.length ? 8 + (layer + 1) * pageSize + dataSize : 0;
+      writeLayerIfd(width, height, dataOffset, dataOffset + dataSize, nextIfd, names[layer]);
+    }
+  }
+
+  private void writeLayerIfd(int width, int height, int dataOffset, int ifdOffset, int nextIfd,
+      String name) throws IOException {
+    int valuesOffset = ifdOffset + 2 + 12 * LAYER_IFD_ENTRIES + 4;
+    int offsetBps = valuesOffset;
+    int offsetSampleFormat = offsetBps + 2 * 3;
+    int offsetXres = offsetSampleFormat + 2 * 3;
+    int offsetYres = offsetXres + 8;
+    int offsetName = offsetYres + 8;
+    byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+    int nameLength = Math.min(nameBytes.length, LAYER_NAME_SIZE - 1);
+
+    out.writeShort(LAYER_IFD_ENTRIES);
+    writeEntry(0x0100, LONG, 1, width); // Width.
+    writeEntry(0x0101, LONG, 1, height); // Height.
+    writeEntry(0x0102, SHORT, 3, offsetBps); // Bits per sample.
+    writeShortEntry(0x0103, 1); // No compression.
+    writeShortEntry(0x0106, 2); // RGB.
+    writeEntry(0x0111, LONG, 1, dataOffset); // Strip offsets.
+    writeShortEntry(0x0115, 3); // Samples per pixel.
+    writeEntry(0x0116, LONG, 1, height); // Rows per strip.
+    writeEntry(0x0117, LONG, 1, width * height * 3 * 4); // Strip byte counts.
+    writeEntry(0x011A, RATIONAL, 1, offsetXres);
+    writeEntry(0x011B, RATIONAL, 1, offsetYres);
+    writeEntry(0x011D, ASCII, nameLength + 1, offsetName); // Page name.
+    writeShortEntry(0x0128, 1); // Resolution unit.
+    writeEntry(0x0153, SHORT, 3, offsetSampleFormat); // Floating point samples.
+    out.writeInt(nextIfd);
+
+    for (int i = 0; i < 3; ++i) {
+      out.writeShort(32);
+    }
+    for (int i = 0; i < 3; ++i) {
+      out.writeShort(3);
+    }
+    out.writeInt(1);
+    out.writeInt(1);
+    out.writeInt(1);
+    out.writeInt(1);
+    out.write(nameBytes, 0, nameLength);
+    for (int i = nameLength; i < LAYER_NAME_SIZE; ++i) {
+      out.write(0);
+    }
+  }
+
+  private void writeEntry(int tag, int type, int count, int value) throws IOException {
+    out.writeShort(tag);
+    out.writeShort(type);
+    out.writeInt(count);
+    out.writeInt(value);
+  }
+
+  private void writeShortEntry(int tag, int value) throws IOException {
+    out.writeShort(tag);
+    out.writeShort(SHORT);
+    out.writeInt(1);
+    out.writeShort(value);
+    out.writeShort(0);
   }
 
   private int ifdOffset(int width, int height, int bytesPerSample) {
@@ -0,0 +1,69 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+/**
+ * Computes a sequence of results in parallel and consumes them in order.
+ *
+ * <p>This is used by image writers to encode tiles or strips concurrently
+ * while still writing them to the output stream in file order.
+ */
+public final class OrderedPipeline {
+  private OrderedPipeline() {
+  }
+
+  public interface ResultConsumer<T> {
+    void accept(int index, T result) throws IOException;
+  }
+
+  /**
+   * Compute the results for the indices {@code 0} to {@code count - 1} on the
+   * executor and pass them to the consumer in index order. At most
+   * {@code window} results are computed ahead of the consumer, which bounds
+   * the memory used for results that are waiting to be consumed.
+   *
+   * @throws IOException if the consumer fails, or if computing a result fails
+   */
+  public static <T> void run(int count, int window, Executor executor, IntFunction<T> producer,
+      ResultConsumer<? super T> consumer) throws IOException {
+    window = Math.max(1, window);
+    ArrayDeque<CompletableFuture<T>> pending = new ArrayDeque<>(window);
+    int next = 0;
+    try {
+      for (int i = 0; i < count; ++i) {
+        while (next < count && next < i + window) {
+          int index = next++;
+          pending.add(CompletableFuture.supplyAsync(() -> producer.apply(index), executor));
+        }
+        consumer.accept(i, pending.remove().join());
+      }
+    } catch (CompletionException e) {
+      throw new IOException(e.getCause());
+    } finally {
+      for (CompletableFuture<T> result : pending) {
+        result.cancel(false);
+      }
+    }
+  }
+}
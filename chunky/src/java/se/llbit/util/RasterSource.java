@@ -0,0 +1,73 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util;
+
+/**
+ * A source of RGB pixel values that can be read region by region.
+ *
+ * <p>Image writers use this to pull the pixels of one tile or strip at a
+ * time, so that the image does not need to be copied into an intermediate
+ * buffer before it is written.
+ */
+public interface RasterSource {
+
+  /**
+   * @return image width in pixels
+   */
+  int width();
+
+  /**
+   * @return image height in pixels
+   */
+  int height();
+
+  /**
+   * Read the pixels in the region from {@code (x0, y0)} (inclusive) to
+   * {@code (x1, y1)} (exclusive). The values are stored row by row, with
+   * three values per pixel, starting at index 0 of the output array.
+   *
+   * <p>This may be called concurrently from several threads for different regions.
+   */
+  void read(int x0, int y0, int x1, int y1, float[] rgb);
+
+  /**
+   * @param samples RGB values indexed by {@code (y * width + x) * 3 + channel}
+   * @return a source reading the values of a sample buffer
+   */
+  static RasterSource of(int width, int height, double[] samples) {
+    return new RasterSource() {
+      @Override public int width() {
+        return width;
+      }
+
+      @Override public int height() {
+        return height;
+      }
+
+      @Override public void read(int x0, int y0, int x1, int y1, float[] rgb) {
+        int i = 0;
+        for (int y = y0; y < y1; ++y) {
+          int offset = (y * width + x0) * 3;
+          int end = (y * width + x1) * 3;
+          while (offset < end) {
+            rgb[i++] = (float) samples[offset++];
+          }
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,231 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * A thread budget shared by the render workers and the common thread pool.
+ *
+ * <p>Both pools have one thread per thread in the budget, so when both run
+ * at the same time the machine is oversubscribed. To avoid that, all work
+ * is done in sections with a priority. A section waits while work of a
+ * higher priority is running or waiting to run, so for example render
+ * workers stop taking new tiles while a frame is being finalized, and
+ * resume when the finalization is done.
+ *
+ * <p>Rendering is continuous, so background work does not wait for it.
+ * Instead background work gets a share of the budget: its parallel work
+ * runs on a separate pool of {@link #backgroundThreads()} threads (see
+ * {@link #pool(ForkJoinPool)}), and while a background section is running
+ * only the remaining threads of the budget take render jobs. Rendering
+ * thus continues, a little slower, while for example a snapshot is written.
+ * Nested sections, and sections entered from a thread pool, never wait:
+ * they are part of work that was already started.
+ *
+ * <p>The CPU load setting applies to all work except interactive work:
+ * after finalization and background sections the thread sleeps to keep the
+ * CPU usage at the requested level. Render workers use the same CPU load
+ * for their own sleep between render jobs.
+ */
+public final class ThreadBudget {
+  public enum Priority {
+    /** Work that the user is waiting for, like the render preview. */
+    INTERACTIVE,
+    /** Finalizing and saving frames. */
+    FINALIZE,
+    /** Path tracing. */
+    RENDER,
+    /** Loading scenes and other long running background work. */
+    BACKGROUND,
+  }
+
+  private static final long SLEEP_INTERVAL = 10;
+  private static final long MAX_SLEEP_TIME = 1000;
+
+  /**
+   * A section of work with a priority. Closing the section lets waiting
+   * lower priority work run.
+   */
+  public final class Section implements AutoCloseable {
+    private final Priority priority;
+    private final boolean outer;
+    private final long start = System.currentTimeMillis();
+
+    private Section(Priority priority, boolean outer) {
+      this.priority = priority;
+      this.outer = outer;
+    }
+
+    @Override public void close() {
+      if (outer) {
+        release(priority);
+        if (priority == Priority.FINALIZE || priority == Priority.BACKGROUND) {
+          throttle(System.currentTimeMillis() - start);
+        }
+      }
+    }
+  }
+
+  private static final ThreadLocal<Priority> current = new ThreadLocal<>();
+
+  private final int threads;
+  private final int backgroundThreads;
+  private ForkJoinPool backgroundPool;
+  private volatile int cpuLoad = 100;
+
+  private final int[] active = new int[Priority.values().length];
+  private final int[] waiting = new int[Priority.values().length];
+
+  public ThreadBudget(int threads) {
+    this.threads = Math.max(1, threads);
+    this.backgroundThreads = Math.max(1, this.threads / 4);
+  }
+
+  /**
+   * @return the number of threads in the budget
+   */
+  public int threads() {
+    return threads;
+  }
+
+  /**
+   * @return the number of threads used by background work
+   */
+  public int backgroundThreads() {
+    return backgroundThreads;
+  }
+
+  /**
+   * Select the pool for parallel work of the current thread. Work in
+   * background sections runs on the background pool, so that it only uses
+   * its share of the budget. Other work runs on the given pool.
+   *
+   * @param common the pool for work that is not background work
+   */
+  public ForkJoinPool pool(ForkJoinPool common) {
+    Thread thread = Thread.currentThread();
+    if (current.get() == Priority.BACKGROUND) {
+      return backgroundPool();
+    }
+    if (thread instanceof ForkJoinWorkerThread) {
+      ForkJoinPool pool = ((ForkJoinWorkerThread) thread).getPool();
+      synchronized (this) {
+        if (pool == backgroundPool) {
+          return pool;
+        }
+      }
+    }
+    return common;
+  }
+
+  private synchronized ForkJoinPool backgroundPool() {
+    if (backgroundPool == null) {
+      backgroundPool = new ForkJoinPool(backgroundThreads);
+    }
+    return backgroundPool;
+  }
+
+  /**
+   * @return the CPU load percentage
+   */
+  public int getCpuLoad() {
+    return cpuLoad;
+  }
+
+  /**
+   * Set the CPU load. Work will attempt (not guaranteed) to limit cpu usage to this value.
+   * @param cpuLoad percentage of cpu usage, will be clamped to [1..100]
+   */
+  public void setCpuLoad(int cpuLoad) {
+    this.cpuLoad = Math.max(Math.min(cpuLoad, 100), 1);
+  }
+
+  /**
+   * Start a section of work with the given priority, waiting until no work
+   * of a higher priority is running. Close the section when the work is done:
+   * <pre>
+   *   try (ThreadBudget.Section section = budget.enter(Priority.FINALIZE)) {
+   *     pool.submit(work).join();
+   *   }
+   * </pre>
+   *
+   * <p>If the thread is interrupted while waiting, the section starts
+   * immediately and the interrupt flag is kept set.
+   */
+  public Section enter(Priority priority) {
+    Priority outer = current.get();
+    if (outer != null || Thread.currentThread() instanceof ForkJoinWorkerThread) {
+      // Nested work, or work that is already running in the common thread pool.
+      return new Section(outer == null ? priority : outer, false);
+    }
+    acquire(priority);
+    current.set(priority);
+    return new Section(priority, true);
+  }
+
+  private synchronized void acquire(Priority priority) {
+    int index = priority.ordinal();
+    waiting[index] += 1;
+    try {
+      while (mustWait(priority)) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      waiting[index] -= 1;
+    }
+    active[index] += 1;
+  }
+
+  private synchronized void release(Priority priority) {
+    current.remove();
+    active[priority.ordinal()] -= 1;
+    notifyAll();
+  }
+
+  private boolean mustWait(Priority priority) {
+    int render = Priority.RENDER.ordinal();
+    for (int i = 0; i < priority.ordinal(); ++i) {
+      // Background work does not wait for rendering, it has its own share.
+      if (i != render && (active[i] > 0 || waiting[i] > 0)) {
+        return true;
+      }
+    }
+    if (priority == Priority.RENDER && active[Priority.BACKGROUND.ordinal()] > 0) {
+      // Leave the share of the running background work.
+      return active[render] >= Math.max(1, threads - backgroundThreads);
+    }
+    return false;
+  }
+
+  /**
+   * Sleep to limit the CPU usage after working for the given time.
+   */
+  private void throttle(long workTime) {
+    int load = cpuLoad;
+    if (load < 100 && workTime > SLEEP_INTERVAL) {
+      try {
+        Thread.sleep(Math.min(workTime * (100 - load) / load, MAX_SLEEP_TIME));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
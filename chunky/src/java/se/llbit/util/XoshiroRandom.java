@@ -0,0 +1,103 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util;
+
+import java.util.Random;
+
+/**
+ * Fast pseudo-random number generator using the xoshiro256++ algorithm
+ * by Blackman and Vigna.
+ *
+ * <p>Unlike {@link Random}, this generator is not thread safe: the state is
+ * updated without atomic operations, so an instance must only be used by one
+ * thread at a time. It has a period of 2^256-1 and passes the usual
+ * statistical tests, while {@link Random} only has 48 bits of state.
+ *
+ * <p>The state is initialized from the seed with SplitMix64, so similar seeds
+ * (for example consecutive pixel indices) give unrelated sequences.
+ */
+public class XoshiroRandom extends Random {
+  // Note: these must not have initializers since setSeed() is called by the
+  // superclass constructor.
+  private long s0, s1, s2, s3;
+
+  public XoshiroRandom(long seed) {
+    super(seed);
+  }
+
+  /**
+   * Reset the generator state from a seed.
+   */
+  @Override public void setSeed(long seed) {
+    long x = seed;
+    s0 = splitMix64(x += 0x9E3779B97F4A7C15L);
+    s1 = splitMix64(x += 0x9E3779B97F4A7C15L);
+    s2 = splitMix64(x += 0x9E3779B97F4A7C15L);
+    s3 = splitMix64(x + 0x9E3779B97F4A7C15L);
+  }
+
+  /**
+   * Set the generator state directly. The state must not be all zero.
+   */
+  void setState(long s0, long s1, long s2, long s3) {
+    this.s0 = s0;
+    this.s1 = s1;
+    this.s2 = s2;
+    this.s3 = s3;
+  }
+
+  /**
+   * The SplitMix64 output function.
+   */
+  public static long splitMix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  @Override public long nextLong() {
+    long result = Long.rotateLeft(s0 + s3, 23) + s0;
+    long t = s1 << 17;
+    s2 ^= s0;
+    s3 ^= s1;
+    s1 ^= s2;
+    s0 ^= s3;
+    s2 ^= t;
+    s3 = Long.rotateLeft(s3, 45);
+    return result;
+  }
+
+  @Override protected int next(int bits) {
+    return (int) (nextLong() >>> (64 - bits));
+  }
+
+  @Override public int nextInt() {
+    return (int) (nextLong() >>> 32);
+  }
+
+  @Override public double nextDouble() {
+    return (nextLong() >>> 11) * 0x1.0p-53;
+  }
+
+  @Override public float nextFloat() {
+    return (nextLong() >>> 40) * 0x1.0p-24f;
+  }
+
+  @Override public boolean nextBoolean() {
+    return nextLong() < 0;
+  }
+}
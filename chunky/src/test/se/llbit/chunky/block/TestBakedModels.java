@@ -0,0 +1,128 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.block;
+
+import org.junit.Test;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.model.BakedQuadModel;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.chunky.resources.BitmapImage;
+import se.llbit.chunky.resources.Texture;
+import se.llbit.math.Ray;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestBakedModels {
+  /**
+   * A texture with transparent pixels, so that alpha testing is exercised.
+   */
+  private static BitmapImage testImage() {
+    BitmapImage image = new BitmapImage(4, 4);
+    for (int y = 0; y < 4; ++y) {
+      for (int x = 0; x < 4; ++x) {
+        image.setPixel(x, y, ((x + y) % 3 == 0) ? 0x00000000 : 0xFF000000 | (x * 0x40) << 8 | y * 0x40);
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Test that baked block models intersect exactly like the original block models.
+   */
+  @Test public void testSameIntersection() {
+    BitmapImage image = testImage();
+    Texture texture = new Texture(image);
+    Texture.crops0.setTexture(image);
+    Texture.chain.setTexture(image);
+    Texture.bambooStalk.setTexture(image);
+    Texture.bambooSmallLeaves.setTexture(image);
+    Texture.bambooLargeLeaves.setTexture(image);
+
+    Block[] blocks = {
+        new SpriteBlock("test", texture),
+        new SpriteBlock("test", texture, "north"),
+        new SpriteBlock("test", texture, "up"),
+        new Wheat(0),
+        new Lantern("lantern", texture, false),
+        new Lantern("lantern", texture, true),
+        new Chain("chain", Texture.chain, "x"),
+        new Chain("chain", Texture.chain, "y"),
+        new Bamboo(1, "small"),
+        new Bamboo(0, "large"),
+    };
+    Scene scene = new Scene();
+    Random random = new Random(1234);
+    for (Block block : blocks) {
+      BakedQuadModel model = block.bake();
+      assertNotNull(model);
+      for (int i = 0; i < 2000; ++i) {
+        Ray ray = new Ray();
+        ray.o.set(3 + random.nextDouble(), 5 + random.nextDouble(), 7 + random.nextDouble());
+        ray.d.set(random.nextDouble() - 0.5, random.nextDouble() - 0.5, random.nextDouble() - 0.5);
+        ray.d.normalize();
+        Ray expected = new Ray(ray);
+
+        boolean expectedHit = block.intersect(expected, scene);
+        assertEquals(expectedHit, model.intersect(ray));
+        if (expectedHit) {
+          assertEquals(expected.t, ray.t, 0);
+          assertEquals(expected.distance, ray.distance, 0);
+          assertEquals(expected.o.x, ray.o.x, 0);
+          assertEquals(expected.o.y, ray.o.y, 0);
+          assertEquals(expected.o.z, ray.o.z, 0);
+          assertEquals(expected.n.x, ray.n.x, 0);
+          assertEquals(expected.n.y, ray.n.y, 0);
+          assertEquals(expected.n.z, ray.n.z, 0);
+          assertEquals(expected.color.x, ray.color.x, 0);
+          assertEquals(expected.color.y, ray.color.y, 0);
+          assertEquals(expected.color.z, ray.color.z, 0);
+          assertEquals(expected.color.w, ray.color.w, 0);
+        }
+      }
+    }
+  }
+
+  /**
+   * A block that overrides the intersection method of a baked block without
+   * also overriding the bake method must not be baked.
+   */
+  @Test public void testOverriddenIntersect() {
+    Block sprite = new SpriteBlock("test", new Texture());
+    Block custom = new SpriteBlock("custom", new Texture()) {
+      @Override public boolean intersect(Ray ray, Scene scene) {
+        return false;
+      }
+    };
+    Block customBaked = new SpriteBlock("custom", new Texture()) {
+      @Override public boolean intersect(Ray ray, Scene scene) {
+        return false;
+      }
+
+      @Override public BakedQuadModel bake() {
+        return null;
+      }
+    };
+    assertTrue(BlockPalette.canBake(sprite));
+    assertFalse(BlockPalette.canBake(custom));
+    assertTrue(BlockPalette.canBake(customBaked));
+  }
+}
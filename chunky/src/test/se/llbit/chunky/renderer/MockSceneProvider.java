@@ -20,7 +20,7 @@ import se.llbit.chunky.renderer.scene.Scene;
 
 import java.util.function.Consumer;
 
-class MockSceneProvider implements SceneProvider {
+public class MockSceneProvider implements SceneProvider {
   private final Scene scene;
   private boolean change = true;
 
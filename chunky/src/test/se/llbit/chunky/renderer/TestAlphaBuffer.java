@@ -0,0 +1,67 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestAlphaBuffer {
+  /**
+   * Each pass is averaged with the previous passes, weighted by sample count.
+   */
+  @Test public void testStore() {
+    AlphaBuffer alpha = new AlphaBuffer(2, 1);
+    alpha.allocate();
+    assertFalse(alpha.hasSamples());
+
+    alpha.store(0, 0, 4, 4, 0);
+    alpha.store(1, 0, 1.5, 4, 0);
+    alpha.addPass(4);
+    assertTrue(alpha.hasSamples());
+    assertEquals(4, alpha.spp());
+    assertEquals(1, alpha.getAlpha()[0], 0);
+    assertEquals(0.375, alpha.getAlpha()[1], 1e-6);
+
+    alpha.store(0, 0, 0, 12, 4);
+    alpha.store(1, 0, 12, 12, 4);
+    alpha.addPass(12);
+    assertEquals(16, alpha.spp());
+    assertEquals(0.25, alpha.getAlpha()[0], 1e-6);
+    assertEquals(0.84375, alpha.getAlpha()[1], 1e-6);
+
+    alpha.clear();
+    assertFalse(alpha.hasSamples());
+  }
+
+  /**
+   * Coverage outside [0, 1], which can happen with Russian roulette, is
+   * clamped in the alpha channel.
+   */
+  @Test public void testToAlphaChannel() {
+    AlphaBuffer alpha = new AlphaBuffer(5, 1);
+    alpha.allocate();
+    float[] coverage = { 0, 0.5f, 1, -0.25f, 1.5f };
+    System.arraycopy(coverage, 0, alpha.getAlpha(), 0, coverage.length);
+    byte[] channel = new byte[coverage.length];
+    alpha.toAlphaChannel(channel);
+    assertArrayEquals(new byte[] { 0, (byte) 128, (byte) 255, 0, (byte) 255 }, channel);
+  }
+}
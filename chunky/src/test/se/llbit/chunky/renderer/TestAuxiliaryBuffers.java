@@ -0,0 +1,61 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import org.junit.Test;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector3;
+import se.llbit.math.Vector3i;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestAuxiliaryBuffers {
+  /**
+   * The hit position is in octree coordinates, while the camera position is
+   * in world coordinates. The depth is the distance between them in world
+   * coordinates.
+   */
+  @Test public void testDepthWithOctreeOrigin() {
+    Vector3i origin = new Vector3i(-64, 0, 128);
+    Vector3 camera = new Vector3(-60, 70, 130);
+    Ray ray = new Ray();
+    // World position (-57, 74, 130): 5 blocks from the camera.
+    ray.o.set(7, 74, 2);
+    ray.color.set(0.5, 0.5, 0.5, 1);
+    ray.n.set(0, 1, 0);
+
+    AuxiliaryBuffers.Accumulator pixel = new AuxiliaryBuffers.Accumulator();
+    pixel.startPixel();
+    pixel.startSample();
+    pixel.recordHit(ray, camera, origin, 0);
+    // Only the first hit of a sample is recorded.
+    ray.o.set(0, 0, 0);
+    pixel.recordHit(ray, camera, origin, 0);
+    pixel.startSample();
+    // World position (-60, 70, 131): 1 block from the camera.
+    ray.o.set(4, 70, 3);
+    pixel.recordHit(ray, camera, origin, 0);
+
+    AuxiliaryBuffers aux = new AuxiliaryBuffers(1, 1);
+    aux.allocate();
+    aux.store(0, 0, pixel, 2, 0);
+    aux.addPass(2);
+    assertEquals(3, aux.getDepth()[0], 1e-6);
+    assertEquals(0.5, aux.getAlbedo()[0], 1e-6);
+    assertEquals(1, aux.getNormal()[1], 1e-6);
+  }
+}
@@ -49,7 +49,12 @@ public class TestBlankRender {
    */
   private static void renderAndCheckSamples(Scene scene, double[] expected)
       throws InterruptedException {
-    double[] samples = render(scene);
+    renderAndCheckSamples(scene, expected, 1);
+  }
+
+  private static void renderAndCheckSamples(Scene scene, double[] expected, int sppPerPass)
+      throws InterruptedException {
+    double[] samples = render(scene, sppPerPass);
     int offset = 0;
     for (int i = 0; i < WIDTH * HEIGHT; ++i) {
       // Check each channel value:
@@ -67,10 +72,15 @@ public class TestBlankRender {
 
   /** Renders a scene and returns the resulting sample buffer. */
   private static double[] render(Scene scene) throws InterruptedException {
+    return render(scene, 1);
+  }
+
+  private static double[] render(Scene scene, int sppPerPass) throws InterruptedException {
     // A single worker thread is used, with fixed PRNG seed.
     // This makes the path tracing results deterministic.
     ChunkyOptions options = ChunkyOptions.getDefaults();
     options.renderThreads = 1;
+    options.sppPerPass = sppPerPass;
     Chunky chunky = new Chunky(options);
     RenderContext context = new RenderContext(chunky);
     context.renderPoolFactory = (threads, seed) -> new RenderWorkerPool(threads, 0);
@@ -119,6 +129,22 @@ public class TestBlankRender {
     scene.sky().setColor(new Vector3(0.9, 0.8, 1.0));
     renderAndCheckSamples(scene, new double[] { 0.9, 0.8, 1.0 });
   }
+
+  /**
+   * Passes with several samples per pixel add up to the same brightness
+   * as single sample passes.
+   */
+  @Test public void testMultipleSamplesPerPass() throws InterruptedException {
+    final Scene scene = new Scene();
+    scene.setCanvasSize(WIDTH, HEIGHT);
+    scene.setRenderMode(RenderMode.RENDERING);
+    scene.setTargetSpp(12);
+    scene.setName("passes");
+    scene.sky().setSkyMode(Sky.SkyMode.SOLID_COLOR);
+    scene.sky().setColor(new Vector3(0.9, 0.8, 1.0));
+    renderAndCheckSamples(scene, new double[] { 0.9, 0.8, 1.0 }, 4);
+  }
+
   /**
    * Render with a gray gradient sky.
    */
@@ -179,4 +205,30 @@ public class TestBlankRender {
 
     compareSamples(samples1, render(scene), size, 0.005);
   }
+
+  /**
+   * Test that a crop window renders the same pixels as the corresponding
+   * part of the full frame.
+   */
+  @Test public void testCropWindow() throws InterruptedException {
+    final Scene scene = new Scene();
+    scene.setTargetSpp(2);
+    scene.setName("crop");
+    scene.setCanvasSize(3 * WIDTH, 2 * HEIGHT);
+    scene.setRenderMode(RenderMode.RENDERING);
+    scene.sky().setSkyMode(Sky.SkyMode.SIMULATED);
+    scene.camera().setProjectionMode(ProjectionMode.PANORAMIC);
+    scene.camera().setFoV(100);
+
+    double[] full = new double[3 * 3 * WIDTH * 2 * HEIGHT];
+    System.arraycopy(render(scene), 0, full, 0, full.length);
+
+    scene.setCanvasCrop(3 * WIDTH, 2 * HEIGHT, WIDTH, HEIGHT, WIDTH, HEIGHT);
+    double[] expected = new double[3 * WIDTH * HEIGHT];
+    for (int y = 0; y < HEIGHT; ++y) {
+      System.arraycopy(full, 3 * ((HEIGHT + y) * 3 * WIDTH + WIDTH), expected, 3 * y * WIDTH,
+          3 * WIDTH);
+    }
+    compareSamples(expected, render(scene), expected.length, 0.005);
+  }
 }
@@ -0,0 +1,112 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestDirtyTiles {
+  /** The last tile column is 4 pixels wide and the last tile row 6 pixels high. */
+  private static final int WIDTH = 3 * DirtyTiles.TILE_SIZE + 4;
+  private static final int HEIGHT = 2 * DirtyTiles.TILE_SIZE + 6;
+
+  private static void checkRegion(TileBasedRenderer.RenderTile region,
+      int x0, int x1, int y0, int y1) {
+    assertEquals(x0, region.x0);
+    assertEquals(x1, region.x1);
+    assertEquals(y0, region.y0);
+    assertEquals(y1, region.y1);
+  }
+
+  private static DirtyTiles clean() {
+    DirtyTiles tiles = new DirtyTiles();
+    tiles.resize(WIDTH, HEIGHT);
+    tiles.take();
+    assertTrue(tiles.isEmpty());
+    return tiles;
+  }
+
+  /**
+   * A resized frame is all dirty, and each tile row is one region clipped to
+   * the frame.
+   */
+  @Test public void testResize() {
+    DirtyTiles tiles = new DirtyTiles();
+    tiles.resize(WIDTH, HEIGHT);
+    assertFalse(tiles.isEmpty());
+    List<TileBasedRenderer.RenderTile> regions = tiles.take();
+    assertEquals(3, regions.size());
+    checkRegion(regions.get(0), 0, WIDTH, 0, 32);
+    checkRegion(regions.get(1), 0, WIDTH, 32, 64);
+    checkRegion(regions.get(2), 0, WIDTH, 64, HEIGHT);
+    assertTrue(tiles.isEmpty());
+    assertTrue(tiles.take().isEmpty());
+
+    // Same size: nothing becomes dirty.
+    tiles.resize(WIDTH, HEIGHT);
+    assertTrue(tiles.isEmpty());
+  }
+
+  /**
+   * Dirty tiles next to each other in a row are merged into one span, and
+   * separate tiles give separate spans.
+   */
+  @Test public void testSpanMerging() {
+    DirtyTiles tiles = clean();
+    tiles.mark(10, 10, 20, 20);
+    tiles.mark(70, 0, 80, 5);
+    tiles.mark(33, 40, 64, 41);
+    List<TileBasedRenderer.RenderTile> regions = tiles.take();
+    assertEquals(3, regions.size());
+    checkRegion(regions.get(0), 0, 32, 0, 32);
+    checkRegion(regions.get(1), 64, 96, 0, 32);
+    checkRegion(regions.get(2), 32, 64, 32, 64);
+
+    tiles.mark(10, 10, 20, 20);
+    tiles.mark(70, 0, 80, 5);
+    tiles.mark(40, 10, 50, 20);
+    regions = tiles.take();
+    assertEquals(1, regions.size());
+    checkRegion(regions.get(0), 0, 96, 0, 32);
+  }
+
+  /**
+   * Tiles at the right and bottom edges are clipped to the frame, and marked
+   * regions outside the frame are ignored.
+   */
+  @Test public void testFrameEdge() {
+    DirtyTiles tiles = clean();
+    tiles.mark(WIDTH - 1, HEIGHT - 1, WIDTH, HEIGHT);
+    List<TileBasedRenderer.RenderTile> regions = tiles.take();
+    assertEquals(1, regions.size());
+    checkRegion(regions.get(0), 96, WIDTH, 64, HEIGHT);
+
+    tiles.mark(90, 60, 1000, 1000);
+    regions = tiles.take();
+    assertEquals(2, regions.size());
+    checkRegion(regions.get(0), 64, WIDTH, 32, 64);
+    checkRegion(regions.get(1), 64, WIDTH, 64, HEIGHT);
+
+    tiles.mark(WIDTH, HEIGHT, WIDTH + 10, HEIGHT + 10);
+    assertTrue(tiles.isEmpty());
+  }
+}
@@ -0,0 +1,118 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import org.junit.Test;
+import se.llbit.chunky.main.ChunkyOptions;
+import se.llbit.chunky.renderer.scene.Scene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestRenderBudget {
+  private long time = 0;
+
+  private void renderPass(Scene scene, ChunkyOptions options, long sampleTime) {
+    time += options.sppPerPass * sampleTime;
+    scene.spp += options.sppPerPass;
+  }
+
+  /**
+   * Passes are sized to the preferred pass time, and the last passes end
+   * right before the deadline. The target SPP is not changed.
+   */
+  @Test public void testPassSizing() {
+    ChunkyOptions options = ChunkyOptions.getDefaults();
+    options.renderThreads = 4;
+    Scene scene = new Scene();
+    scene.setCanvasSize(100, 100);
+    scene.setTargetSpp(100000);
+    RenderBudget budget = new RenderBudget(options, 60000, () -> time);
+    budget.start(scene);
+
+    renderPass(scene, options, 100);
+    assertTrue(budget.passCompleted(scene));
+    assertEquals(RenderBudget.PASS_TIME / 100, options.sppPerPass);
+
+    do {
+      renderPass(scene, options, 100);
+      assertTrue(time <= 60000);
+    } while (budget.passCompleted(scene));
+    assertEquals(600, scene.spp);
+    assertEquals(100000, scene.getTargetSpp());
+  }
+
+  /**
+   * The longest measured save time is reserved before the deadline, and is
+   * not counted as render time.
+   */
+  @Test public void testSaveTime() {
+    ChunkyOptions options = ChunkyOptions.getDefaults();
+    Scene scene = new Scene();
+    scene.setCanvasSize(100, 100);
+    scene.setTargetSpp(100000);
+    RenderBudget budget = new RenderBudget(options, 60000, () -> time);
+    budget.start(scene);
+
+    renderPass(scene, options, 100);
+    assertTrue(budget.passCompleted(scene));
+    time += 3000;
+    budget.saveCompleted(3000);
+    time += 1000;
+    budget.saveCompleted(1000);
+    renderPass(scene, options, 100);
+    assertTrue(budget.passCompleted(scene));
+    // The save time did not change the measured sample time.
+    assertEquals(RenderBudget.PASS_TIME / 100, options.sppPerPass);
+
+    do {
+      renderPass(scene, options, 100);
+      assertTrue(time <= 57000);
+    } while (budget.passCompleted(scene));
+    assertEquals(57000, time);
+  }
+
+  /**
+   * The render stops at the target SPP before the deadline.
+   */
+  @Test public void testTargetReached() {
+    ChunkyOptions options = ChunkyOptions.getDefaults();
+    Scene scene = new Scene();
+    scene.setCanvasSize(100, 100);
+    scene.setTargetSpp(30);
+    RenderBudget budget = new RenderBudget(options, 60000, () -> time);
+    budget.start(scene);
+
+    renderPass(scene, options, 10);
+    assertTrue(budget.passCompleted(scene));
+    assertEquals(29, options.sppPerPass);
+    renderPass(scene, options, 10);
+    assertTrue(budget.passCompleted(scene));
+    assertEquals(30, scene.spp);
+    assertEquals(30, scene.getTargetSpp());
+  }
+
+  @Test public void testTileWidth() {
+    // Fast passes use large tiles, but there are still enough tiles for all threads.
+    assertEquals(250, RenderBudget.tileWidth(1000, 1000, 4, 1, 1));
+    // Slow passes use the default tile width.
+    assertEquals(RenderConstants.TILE_WIDTH_DEFAULT,
+        RenderBudget.tileWidth(1000, 1000, 4, 100, 100000));
+    // Tiny canvas.
+    assertEquals(1, RenderBudget.tileWidth(2, 2, 16, 1, 1));
+  }
+}
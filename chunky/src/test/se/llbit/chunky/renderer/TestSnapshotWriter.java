@@ -0,0 +1,158 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import org.junit.Test;
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.util.TaskTracker;
+import se.llbit.util.ThreadBudget;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestSnapshotWriter {
+  /**
+   * Records the SPP of each written snapshot instead of writing it, and
+   * blocks each write until it is released.
+   */
+  static class BlockingWriter extends SnapshotWriter {
+    final List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+    final Semaphore started = new Semaphore(0);
+    final Semaphore release = new Semaphore(0);
+    volatile ForkJoinPool pool;
+
+    BlockingWriter() {
+      super(TaskTracker.NONE);
+    }
+
+    @Override void write(Scene frame, File file) {
+      pool = Chunky.getCommonThreads();
+      started.release();
+      release.acquireUninterruptibly();
+      written.add(frame.spp);
+    }
+  }
+
+  private static final File DIRECTORY = new File("snapshots");
+
+  private final Scene scene = new Scene();
+
+  public TestSnapshotWriter() {
+    scene.setCanvasSize(20, 20);
+    scene.initBuffers();
+  }
+
+  private void save(SnapshotWriter writer, int spp) {
+    scene.spp = spp;
+    writer.save(scene, DIRECTORY);
+  }
+
+  /**
+   * While a snapshot is being written, the newest waiting snapshot is
+   * replaced by new snapshots, so the latest frame is always written.
+   */
+  @Test public void testCoalescing() throws InterruptedException {
+    BlockingWriter writer = new BlockingWriter();
+    save(writer, 1);
+    assertTrue(writer.started.tryAcquire(10, TimeUnit.SECONDS));
+    save(writer, 2);
+    save(writer, 3);
+    save(writer, 4);
+    writer.release.release(3);
+    writer.awaitIdle();
+    assertEquals(Arrays.asList(1, 2, 4), writer.written);
+  }
+
+  /**
+   * At most MAX_PENDING snapshots wait while one is being written.
+   */
+  @Test public void testBoundedQueue() throws InterruptedException {
+    BlockingWriter writer = new BlockingWriter();
+    save(writer, 1);
+    assertTrue(writer.started.tryAcquire(10, TimeUnit.SECONDS));
+    for (int spp = 2; spp <= 20; ++spp) {
+      save(writer, spp);
+    }
+    writer.release.release(20);
+    writer.awaitIdle();
+    assertEquals(1 + SnapshotWriter.MAX_PENDING, writer.written.size());
+    assertEquals(20, (int) writer.written.get(writer.written.size() - 1));
+  }
+
+  /**
+   * awaitIdle returns only after all queued snapshots have been written.
+   */
+  @Test public void testAwaitIdle() throws InterruptedException {
+    BlockingWriter writer = new BlockingWriter();
+    writer.awaitIdle();
+    save(writer, 1);
+    save(writer, 2);
+    Thread waiter = new Thread(() -> {
+      try {
+        writer.awaitIdle();
+      } catch (InterruptedException e) {
+        // Interrupted.
+      }
+    });
+    waiter.start();
+    assertTrue(writer.started.tryAcquire(10, TimeUnit.SECONDS));
+    waiter.join(100);
+    assertTrue(waiter.isAlive());
+    writer.release.release();
+    assertTrue(writer.started.tryAcquire(10, TimeUnit.SECONDS));
+    waiter.join(100);
+    assertTrue(waiter.isAlive());
+    writer.release.release();
+    waiter.join(10000);
+    assertFalse(waiter.isAlive());
+    assertEquals(Arrays.asList(1, 2), writer.written);
+  }
+
+  /**
+   * Snapshots are encoded on the background pool, and render jobs still
+   * start while a snapshot is being written.
+   */
+  @Test public void testRenderWhileWriting() throws InterruptedException {
+    BlockingWriter writer = new BlockingWriter();
+    save(writer, 1);
+    assertTrue(writer.started.tryAcquire(10, TimeUnit.SECONDS));
+    ThreadBudget budget = Chunky.getThreadBudget();
+    assertEquals(budget.backgroundThreads(), writer.pool.getParallelism());
+
+    Thread render = new Thread(() -> {
+      try (ThreadBudget.Section section = budget.enter(ThreadBudget.Priority.RENDER)) {
+        // A render job.
+      }
+    });
+    render.start();
+    render.join(10000);
+    assertFalse(render.isAlive());
+    writer.release.release();
+    writer.awaitIdle();
+  }
+}
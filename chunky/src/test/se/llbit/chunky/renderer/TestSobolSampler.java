@@ -0,0 +1,94 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestSobolSampler {
+  /**
+   * Each pair of dimensions of the first 16 samples of a pixel should have
+   * exactly one sample in each of the 4x4 strata of the unit square.
+   */
+  @Test public void testStratified() {
+    SobolSampler sampler = new SobolSampler();
+    for (int pair = 0; pair < 8; ++pair) {
+      boolean[] strata = new boolean[16];
+      for (int i = 0; i < 16; ++i) {
+        sampler.startSample(13, 37, i);
+        for (int k = 0; k < pair * 2; ++k) {
+          sampler.nextDouble();
+        }
+        double x = sampler.nextDouble();
+        double y = sampler.nextDouble();
+        int stratum = (int) (x * 4) * 4 + (int) (y * 4);
+        assertFalse(strata[stratum]);
+        strata[stratum] = true;
+      }
+    }
+  }
+
+  /**
+   * The samples only depend on the render seed, the pixel and the sample index.
+   */
+  @Test public void testDeterministic() {
+    SobolSampler a = new SobolSampler();
+    SobolSampler b = new SobolSampler();
+    b.startSample(1, 2, 3);
+    b.nextDouble();
+    for (int i = 0; i < 100; ++i) {
+      a.startSample(4, 5, i);
+      b.startSample(4, 5, i);
+      for (int k = 0; k < 10; ++k) {
+        assertEquals(a.nextDouble(), b.nextDouble(), 0);
+      }
+    }
+  }
+
+  /**
+   * Renders with different render seeds must not produce the same samples,
+   * otherwise merging them does not reduce noise.
+   */
+  @Test public void testRenderSeed() {
+    Sampler[][] samplers = {
+        { new SobolSampler(1), new SobolSampler(1), new SobolSampler(2) },
+        { new RandomSampler(new Random(0), 1), new RandomSampler(new Random(1), 1),
+            new RandomSampler(new Random(0), 2) },
+    };
+    for (Sampler[] s : samplers) {
+      int different = 0;
+      for (int i = 0; i < 100; ++i) {
+        s[0].startSample(4, 5, i);
+        s[1].startSample(4, 5, i);
+        s[2].startSample(4, 5, i);
+        for (int k = 0; k < 10; ++k) {
+          double sample = s[0].nextDouble();
+          assertEquals(sample, s[1].nextDouble(), 0);
+          if (sample != s[2].nextDouble()) {
+            different += 1;
+          }
+        }
+      }
+      assertTrue(different > 990);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.batch;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestBatchJob {
+  private static List<BatchJob> load(String json) throws IOException {
+    File file = File.createTempFile("batch", ".json");
+    try {
+      Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+      return BatchJob.load(file);
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test public void testLoad() throws IOException {
+    List<BatchJob> jobs = load("[ { \"scene\": \"castle\", \"presets\": [ \"front\", \"tower\" ],"
+        + " \"spp\": 256 }, { \"scene\": \"village\" } ]");
+    assertEquals(2, jobs.size());
+    assertEquals("castle", jobs.get(0).scene);
+    assertEquals(Arrays.asList("front", "tower"), jobs.get(0).presets);
+    assertEquals(256, jobs.get(0).spp);
+    assertEquals("village", jobs.get(1).scene);
+    assertEquals(Collections.emptyList(), jobs.get(1).presets);
+    assertEquals(-1, jobs.get(1).spp);
+  }
+
+  @Test public void testInvalid() {
+    for (String json : new String[] {
+        "{ \"scene\": \"castle\" }",
+        "[ { \"presets\": [ \"front\" ] } ]",
+        "[ { \"scene\": \"castle\" ",
+    }) {
+      try {
+        load(json);
+        fail("Loaded invalid batch file: " + json);
+      } catch (IOException expected) {
+      }
+    }
+  }
+
+  @Test public void testFileName() {
+    assertEquals("front", BatchJob.fileName("front"));
+    assertEquals("tower 2.v1", BatchJob.fileName("tower 2.v1"));
+    assertEquals("___etc_passwd", BatchJob.fileName("../etc/passwd"));
+    assertEquals("a_b_c_d_e_f_g_h_i_j", BatchJob.fileName("a/b\\c:d*e?f\"g<h>i|j"));
+    assertEquals("tab_", BatchJob.fileName("tab\t"));
+    assertEquals("__", BatchJob.fileName(".."));
+    assertEquals("end__", BatchJob.fileName("end. "));
+    assertEquals("_", BatchJob.fileName(""));
+  }
+}
@@ -0,0 +1,72 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.batch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestTrack {
+  /**
+   * Both linear and smooth tracks pass through the keyframes and are
+   * constant outside of the keyframe range.
+   */
+  @Test public void testKeyframes() {
+    int[] frames = { 0, 10, 40, 50 };
+    double[] values = { 1, 3, -2, 5 };
+    for (boolean smooth : new boolean[] { false, true }) {
+      Track track = new Track(frames, values, smooth);
+      for (int i = 0; i < frames.length; ++i) {
+        assertEquals(values[i], track.valueAt(frames[i]), 1e-12);
+      }
+      assertEquals(1, track.valueAt(-5), 0);
+      assertEquals(5, track.valueAt(60), 0);
+    }
+  }
+
+  @Test public void testLinear() {
+    Track track = new Track(new int[] { 0, 10, 30 }, new double[] { 0, 10, 0 }, false);
+    assertEquals(2.5, track.valueAt(2.5), 1e-12);
+    assertEquals(5, track.valueAt(20), 1e-12);
+  }
+
+  /**
+   * A smooth track with evenly changing values is a straight line, even
+   * with uneven keyframe spacing.
+   */
+  @Test public void testSmoothLine() {
+    Track track = new Track(new int[] { 0, 5, 20, 21 }, new double[] { 0, 10, 40, 42 }, true);
+    for (int frame = 0; frame <= 21; ++frame) {
+      assertEquals(2 * frame, track.valueAt(frame), 1e-9);
+    }
+  }
+
+  @Test public void testUnwrapAngles() {
+    double[] angles = Track.unwrapAngles(new double[] { 3, -3, 3, 0.5 });
+    assertEquals(3, angles[0], 1e-12);
+    assertEquals(-3 + 2 * Math.PI, angles[1], 1e-12);
+    assertEquals(3, angles[2], 1e-12);
+    assertEquals(0.5, angles[3], 1e-12);
+  }
+
+  @Test public void testInfiniteValues() {
+    Track track = new Track(new int[] { 0, 10 },
+        new double[] { Double.POSITIVE_INFINITY, 4 }, false);
+    assertEquals(Double.POSITIVE_INFINITY, track.valueAt(5), 0);
+    assertEquals(4, track.valueAt(10), 0);
+  }
+}
@@ -0,0 +1,205 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.distributed;
+
+import org.junit.Test;
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.main.ChunkyOptions;
+import se.llbit.chunky.renderer.DefaultRenderManager;
+import se.llbit.chunky.renderer.MockSceneProvider;
+import se.llbit.chunky.renderer.RenderContext;
+import se.llbit.chunky.renderer.SamplerType;
+import se.llbit.chunky.renderer.projection.ProjectionMode;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.chunky.renderer.scene.Sky;
+import se.llbit.math.Vector3;
+import se.llbit.util.TaskTracker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Renders a blank scene with a coordinator and two render nodes connected
+ * over the loopback interface.
+ */
+public class TestLoopbackRender {
+  private static final int WIDTH = Math.max(10, Scene.MIN_CANVAS_WIDTH);
+  private static final int HEIGHT = Math.max(10, Scene.MIN_CANVAS_HEIGHT);
+  private static final int TARGET_SPP = 10;
+  private static final int JOB_SPP = 2;
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  /**
+   * Connect a node to the coordinator, retrying until the coordinator
+   * accepts connections.
+   */
+  private static Thread startNode(Chunky chunky, int port, List<Throwable> errors) {
+    Thread thread = new Thread(() -> {
+      try {
+        for (int attempt = 0; ; ++attempt) {
+          try {
+            new RenderNode(chunky).render("localhost", port, TaskTracker.NONE);
+            return;
+          } catch (ConnectException e) {
+            if (attempt == 100) {
+              throw e;
+            }
+            Thread.sleep(100);
+          }
+        }
+      } catch (Throwable e) {
+        synchronized (errors) {
+          errors.add(e);
+        }
+      }
+    });
+    thread.start();
+    return thread;
+  }
+
+  @Test(timeout = 60000)
+  public void testLoopbackRender() throws Exception {
+    File directory = Files.createTempDirectory("chunky-loopback").toFile();
+    try {
+      ChunkyOptions options = ChunkyOptions.getDefaults();
+      options.renderThreads = 1;
+      Chunky chunky = new Chunky(options);
+      RenderContext context = new RenderContext(chunky);
+      context.setSceneDirectory(directory);
+
+      Scene scene = new Scene();
+      scene.setCanvasSize(WIDTH, HEIGHT);
+      scene.setName("loopback");
+      scene.setTargetSpp(TARGET_SPP);
+      scene.setSaveSnapshots(false);
+      scene.sky().setSkyMode(Sky.SkyMode.SOLID_COLOR);
+      scene.sky().setColor(new Vector3(0.9, 0.8, 1.0));
+      scene.saveScene(context, TaskTracker.NONE);
+      scene.startHeadlessRender();
+
+      int port = freePort();
+      List<Throwable> errors = new ArrayList<>();
+      Thread first = startNode(chunky, port, errors);
+      Thread second = startNode(chunky, port, errors);
+      new RenderCoordinator(scene, context, JOB_SPP).render(port, TaskTracker.NONE);
+      first.join();
+      second.join();
+      assertTrue(errors.toString(), errors.isEmpty());
+
+      assertEquals(TARGET_SPP, scene.spp);
+      double[] samples = scene.getSampleBuffer();
+      for (int i = 0; i < samples.length; i += 3) {
+        assertEquals(0.9, samples[i], 1e-6);
+        assertEquals(0.8, samples[i + 1], 1e-6);
+        assertEquals(1.0, samples[i + 2], 1e-6);
+      }
+
+      // The merged samples are saved in the render dump of the scene.
+      Scene loaded = new Scene();
+      try (FileInputStream in = new FileInputStream(new File(directory, "loopback.json"))) {
+        loaded.loadDescription(in);
+      }
+      assertTrue(loaded.loadDump(context, TaskTracker.NONE));
+      assertEquals(TARGET_SPP, loaded.spp);
+      double[] dumped = loaded.getSampleBuffer();
+      for (int i = 0; i < samples.length; ++i) {
+        assertEquals(samples[i], dumped[i], 1e-6);
+      }
+    } finally {
+      try (Stream<Path> paths = Files.walk(directory.toPath())) {
+        paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+      }
+    }
+  }
+
+  private static Scene panoramicScene(String name, int targetSpp) {
+    Scene scene = new Scene();
+    scene.setCanvasSize(WIDTH, HEIGHT);
+    scene.setName(name);
+    scene.setTargetSpp(targetSpp);
+    scene.setSaveSnapshots(false);
+    scene.setSamplerType(SamplerType.SOBOL);
+    scene.setRenderSeed(0x5EED);
+    scene.sky().setSkyMode(Sky.SkyMode.SIMULATED);
+    scene.camera().setProjectionMode(ProjectionMode.PANORAMIC);
+    scene.camera().setFoV(100);
+    scene.startHeadlessRender();
+    return scene;
+  }
+
+  /**
+   * Jobs rendered with several samples per pass, including a shorter last
+   * pass, give the same samples as rendering the scene on a single machine.
+   */
+  @Test(timeout = 60000)
+  public void testSamplesPerPassMatchLocalRender() throws Exception {
+    int targetSpp = 12;
+    ChunkyOptions options = ChunkyOptions.getDefaults();
+    options.renderThreads = 1;
+    options.sppPerPass = 3;
+    Chunky chunky = new Chunky(options);
+
+    DefaultRenderManager local = new DefaultRenderManager(new RenderContext(chunky), true);
+    local.setSceneProvider(new MockSceneProvider(panoramicScene("local", targetSpp)));
+    local.start();
+    local.join();
+    double[] expected = local.bufferedScene.getSampleBuffer();
+
+    File directory = Files.createTempDirectory("chunky-loopback").toFile();
+    try {
+      RenderContext context = new RenderContext(chunky);
+      context.setSceneDirectory(directory);
+      Scene scene = panoramicScene("passes", targetSpp);
+      scene.saveScene(context, TaskTracker.NONE);
+
+      int port = freePort();
+      List<Throwable> errors = new ArrayList<>();
+      Thread node = startNode(chunky, port, errors);
+      // Each job of four samples is rendered as a pass of three and a pass of one.
+      new RenderCoordinator(scene, context, 4).render(port, TaskTracker.NONE);
+      node.join();
+      assertTrue(errors.toString(), errors.isEmpty());
+
+      assertEquals(targetSpp, scene.spp);
+      double[] samples = scene.getSampleBuffer();
+      for (int i = 0; i < samples.length; ++i) {
+        assertEquals(expected[i], samples[i], 1e-9);
+      }
+    } finally {
+      try (Stream<Path> paths = Files.walk(directory.toPath())) {
+        paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+      }
+    }
+  }
+}
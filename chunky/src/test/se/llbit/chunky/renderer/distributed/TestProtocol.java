@@ -0,0 +1,69 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.distributed;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestProtocol {
+  private static byte[] write(double[] samples) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    Protocol.writeSamples(out, samples);
+    out.writeInt(0xCAFE);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Samples are sent as single precision floats, and the message ends right
+   * after the sample data.
+   */
+  @Test public void testSampleRoundTrip() throws IOException {
+    Random random = new Random(1234);
+    double[] samples = new double[3 * 123457];
+    for (int i = 0; i < samples.length; ++i) {
+      samples[i] = random.nextDouble() * 4;
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(write(samples)));
+    double[] result = new double[samples.length];
+    Protocol.readSamples(in, result);
+    for (int i = 0; i < samples.length; ++i) {
+      assertEquals((float) samples[i], result[i], 0);
+    }
+    assertEquals(0xCAFE, in.readInt());
+  }
+
+  @Test public void testSizeMismatch() throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(write(new double[30])));
+    try {
+      Protocol.readSamples(in, new double[33]);
+      fail("Expected exception.");
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+}
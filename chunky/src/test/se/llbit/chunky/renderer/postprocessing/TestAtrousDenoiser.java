@@ -0,0 +1,91 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.postprocessing;
+
+import org.junit.Test;
+import se.llbit.chunky.renderer.AuxiliaryBuffers;
+import se.llbit.util.TaskTracker;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestAtrousDenoiser {
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+
+  @Test public void testConstantImage() {
+    double[] input = new double[WIDTH * HEIGHT * 3];
+    for (int i = 0; i < input.length; ++i) {
+      input[i] = 0.25 * (i % 3 + 1);
+    }
+    double[] output = new AtrousDenoiser().denoise(WIDTH, HEIGHT, input, null, TaskTracker.Task.NONE);
+    for (int i = 0; i < input.length; ++i) {
+      assertEquals(input[i], output[i], 1e-9);
+    }
+  }
+
+  @Test public void testReducesNoise() {
+    Random random = new Random(1);
+    double[] input = new double[WIDTH * HEIGHT * 3];
+    for (int i = 0; i < input.length; ++i) {
+      input[i] = 0.5 + 0.1 * random.nextGaussian();
+    }
+    double[] output = new AtrousDenoiser().denoise(WIDTH, HEIGHT, input, null, TaskTracker.Task.NONE);
+    assertTrue(variance(output) < variance(input) / 10);
+  }
+
+  /**
+   * Noise is removed on both sides of a depth edge, but the edge is kept.
+   */
+  @Test public void testPreservesEdges() {
+    AuxiliaryBuffers aux = new AuxiliaryBuffers(WIDTH, HEIGHT);
+    aux.allocate();
+    Random random = new Random(2);
+    double[] input = new double[WIDTH * HEIGHT * 3];
+    for (int y = 0; y < HEIGHT; ++y) {
+      for (int x = 0; x < WIDTH; ++x) {
+        int index = y * WIDTH + x;
+        boolean near = x < WIDTH / 2;
+        for (int c = 0; c < 3; ++c) {
+          input[index * 3 + c] = (near ? 0.8 : 0.1) * (1 + 0.2 * random.nextGaussian());
+          aux.getAlbedo()[index * 3 + c] = 1;
+        }
+        aux.getNormal()[index * 3 + 2] = 1;
+        aux.getDepth()[index] = near ? 10 : 100;
+      }
+    }
+    aux.addPass(1);
+    double[] output = new AtrousDenoiser().denoise(WIDTH, HEIGHT, input, aux, TaskTracker.Task.NONE);
+    for (int y = 0; y < HEIGHT; ++y) {
+      assertEquals(0.8, output[(y * WIDTH + WIDTH / 2 - 1) * 3], 0.08);
+      assertEquals(0.1, output[(y * WIDTH + WIDTH / 2) * 3], 0.01);
+    }
+  }
+
+  private static double variance(double[] values) {
+    double sum = 0;
+    double sumSquared = 0;
+    for (double value : values) {
+      sum += value;
+      sumSquared += value * value;
+    }
+    double mean = sum / values.length;
+    return sumSquared / values.length - mean * mean;
+  }
+}
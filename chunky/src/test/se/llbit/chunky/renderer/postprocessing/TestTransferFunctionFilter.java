@@ -0,0 +1,98 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.postprocessing;
+
+import org.junit.Test;
+import se.llbit.chunky.resources.BitmapImage;
+import se.llbit.math.ColorUtil;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestTransferFunctionFilter {
+  private static final int WIDTH = 256;
+  private static final int HEIGHT = 64;
+
+  /**
+   * The lookup tables must give the same output as clamping and quantizing
+   * the transfer function result.
+   */
+  @Test public void testSameOutputAsTransferFunction() {
+    Random random = new Random(1234);
+    double[] input = new double[WIDTH * HEIGHT * 3];
+    for (int i = 0; i < input.length; ++i) {
+      switch (i % 4) {
+        case 0:
+          // Log-uniform values from 1e-7 to 1e3.
+          input[i] = Math.pow(10, random.nextDouble() * 10 - 7);
+          break;
+        case 1:
+          input[i] = random.nextDouble();
+          break;
+        case 2:
+          input[i] = random.nextInt(256) / 255.0;
+          break;
+        default:
+          input[i] = random.nextDouble() * 20;
+      }
+    }
+    input[0] = 0;
+    input[1] = 1e6;
+    input[2] = 1;
+
+    TransferFunctionFilter[] filters = {
+        new NoneFilter(), new GammaCorrectionFilter(), new Tonemap1Filter(),
+        new ACESFilmicFilter(), new HableToneMappingFilter(), PreviewFilter.INSTANCE,
+    };
+    for (TransferFunctionFilter filter : filters) {
+      for (double exposure : new double[] { 1, 0.37, 4 }) {
+        BitmapImage output = new BitmapImage(WIDTH, HEIGHT);
+        filter.processRegion(WIDTH, HEIGHT, input, 0, 0, WIDTH, HEIGHT, exposure, output);
+        double[] pixel = new double[3];
+        for (int y = 0; y < HEIGHT; ++y) {
+          for (int x = 0; x < WIDTH; ++x) {
+            filter.processPixel(WIDTH, HEIGHT, input, x, y, exposure, pixel);
+            for (int i = 0; i < 3; ++i) {
+              pixel[i] = Math.min(1.0, pixel[i]);
+            }
+            assertEquals(filter.getName() + " at (" + x + ", " + y + ")",
+                ColorUtil.getRGB(pixel), output.data[y * WIDTH + x]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Filters that override the per-pixel function are not processed with
+   * lookup tables.
+   */
+  @Test public void testOverriddenProcessPixel() {
+    TransferFunctionFilter filter = new GammaCorrectionFilter() {
+      @Override public void processPixel(double[] pixel) {
+        pixel[0] = 1;
+        pixel[1] = 0;
+        pixel[2] = 0;
+      }
+    };
+    double[] input = new double[WIDTH * 3];
+    BitmapImage output = new BitmapImage(WIDTH, 1);
+    filter.processRegion(WIDTH, 1, input, 0, 0, WIDTH, 1, 1, output);
+    assertEquals(0xFFFF0000, output.data[0]);
+  }
+}
@@ -18,20 +18,26 @@ package se.llbit.chunky.renderer.renderdump;
 
 import org.junit.Before;
 import org.junit.Test;
+import se.llbit.chunky.renderer.AlphaBuffer;
+import se.llbit.chunky.renderer.AuxiliaryBuffers;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.util.ProgressListener;
 import se.llbit.util.TaskTracker;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class RenderDumpTests {
@@ -139,6 +145,47 @@ public class RenderDumpTests {
     assertArrayEquals(postMergeSamples, Arrays.copyOf(scene.getSampleBuffer(), postMergeSamples.length), 0.0);
   }
 
+  /**
+   * Merging several dumps at once should give the same result as merging them
+   * one by one. Dumps with the wrong canvas size are rejected.
+   */
+  @Test
+  public void mergeMultipleDumpsTest() throws IOException {
+    int spp = 100;
+    long renderTime = 123456L;
+    double[] preMergeSamples = {0.5, 1.0, 2.0, 0.5, 1.0, 2.0, 2.0, 1.5, 2.5};
+
+    Scene expected = createTestScene(testWidth, testHeight, spp, renderTime);
+    System.arraycopy(preMergeSamples, 0, expected.getSampleBuffer(), 0, preMergeSamples.length);
+    RenderDump.merge(new ByteArrayInputStream(getTestDump("classicFormatDump")), expected, taskTracker);
+    RenderDump.merge(new ByteArrayInputStream(getTestDump("compressedFloatFormatDump")), expected, taskTracker);
+
+    File wrongSize = File.createTempFile("wrongSize", ".dump");
+    wrongSize.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(wrongSize)) {
+      RenderDump.save(out, createTestScene(testWidth * 2, testHeight, testSPP, testRenderTime), taskTracker);
+    }
+
+    Scene scene = createTestScene(testWidth, testHeight, spp, renderTime);
+    System.arraycopy(preMergeSamples, 0, scene.getSampleBuffer(), 0, preMergeSamples.length);
+    int merged = RenderDump.merge(Arrays.asList(
+        tempDump("classicFormatDump"), wrongSize, tempDump("compressedFloatFormatDump")),
+        scene, taskTracker);
+    assertEquals(2, merged);
+    assertEquals(spp + 2 * testSPP, scene.spp);
+    assertEquals(renderTime + 2 * testRenderTime, scene.renderTime);
+    assertArrayEquals(expected.getSampleBuffer(), scene.getSampleBuffer(), 1e-12);
+  }
+
+  private static File tempDump(String dumpName) throws IOException {
+    File file = File.createTempFile(dumpName, ".dump");
+    file.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(getTestDump(dumpName));
+    }
+    return file;
+  }
+
   /**
    * it is currently not expected to write the old format (but it would be possible)
    */
@@ -155,6 +202,157 @@ public class RenderDumpTests {
     assertArrayEquals(getTestDump(dumpName), outputStream.toByteArray());
   }
 
+  private static void fill(float[] buffer, Random random) {
+    for (int i = 0; i < buffer.length; ++i) {
+      buffer[i] = random.nextFloat();
+    }
+  }
+
+  private static void fill(AuxiliaryBuffers aux, Random random, int spp) {
+    aux.allocate();
+    fill(aux.getAlbedo(), random);
+    fill(aux.getNormal(), random);
+    fill(aux.getDepth(), random);
+    fill(aux.getEmission(), random);
+    aux.setSpp(spp);
+  }
+
+  /**
+   * The auxiliary buffers are saved in the dump and restored when loading it.
+   */
+  @Test
+  public void auxiliaryBuffersRoundTripTest() throws IOException {
+    Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    System.arraycopy(testSampleBuffer, 0, scene.getSampleBuffer(), 0, testSampleBuffer.length);
+    AuxiliaryBuffers aux = scene.getAuxiliaryBuffers();
+    fill(aux, new Random(1), testSPP / 2);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, scene, taskTracker);
+
+    Scene loaded = createTestScene(testWidth, testHeight, 0, 0);
+    RenderDump.load(new ByteArrayInputStream(outputStream.toByteArray()), loaded, taskTracker);
+    assertArrayEquals(testSampleBuffer, loaded.getSampleBuffer(), 0.0);
+    assertEquals(testSPP, loaded.spp);
+    assertEquals(testRenderTime, loaded.renderTime);
+    AuxiliaryBuffers loadedAux = loaded.getAuxiliaryBuffers();
+    assertEquals(testSPP / 2, loadedAux.spp());
+    assertArrayEquals(aux.getAlbedo(), loadedAux.getAlbedo(), 0);
+    assertArrayEquals(aux.getNormal(), loadedAux.getNormal(), 0);
+    assertArrayEquals(aux.getDepth(), loadedAux.getDepth(), 0);
+    assertArrayEquals(aux.getEmission(), loadedAux.getEmission(), 0);
+  }
+
+  /**
+   * A dump without auxiliary buffers is written in the old format, and
+   * loading it discards the auxiliary buffers of the scene since they do
+   * not match the loaded samples.
+   */
+  @Test
+  public void withoutAuxiliaryBuffersTest() throws IOException {
+    Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    System.arraycopy(testSampleBuffer, 0, scene.getSampleBuffer(), 0, testSampleBuffer.length);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, scene, taskTracker);
+    assertArrayEquals(getTestDump("compressedFloatFormatDump"), outputStream.toByteArray());
+
+    Scene loaded = createTestScene(testWidth, testHeight, 0, 0);
+    fill(loaded.getAuxiliaryBuffers(), new Random(2), 10);
+    RenderDump.load(new ByteArrayInputStream(outputStream.toByteArray()), loaded, taskTracker);
+    assertArrayEquals(testSampleBuffer, loaded.getSampleBuffer(), 0.0);
+    assertFalse(loaded.getAuxiliaryBuffers().hasSamples());
+  }
+
+  /**
+   * Merging a dump weights the auxiliary buffers by their own sample counts.
+   */
+  @Test
+  public void mergeAuxiliaryBuffersTest() throws IOException {
+    Scene dumped = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    fill(dumped.getAuxiliaryBuffers(), new Random(3), 30);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, dumped, taskTracker);
+
+    Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    AuxiliaryBuffers aux = scene.getAuxiliaryBuffers();
+    fill(aux, new Random(4), 10);
+    float[] depth = aux.getDepth().clone();
+    RenderDump.merge(new ByteArrayInputStream(outputStream.toByteArray()), scene, taskTracker);
+    assertEquals(40, aux.spp());
+    float[] dumpedDepth = dumped.getAuxiliaryBuffers().getDepth();
+    for (int i = 0; i < depth.length; ++i) {
+      assertEquals(depth[i] * 0.25f + dumpedDepth[i] * 0.75f, aux.getDepth()[i], 1e-6);
+    }
+  }
+
+  private static void fill(AlphaBuffer alpha, Random random, int spp) {
+    alpha.allocate();
+    fill(alpha.getAlpha(), random);
+    alpha.setSpp(spp);
+  }
+
+  /**
+   * The alpha buffer is saved in the dump before the auxiliary buffers, and
+   * both are restored when loading it.
+   */
+  @Test
+  public void alphaRoundTripTest() throws IOException {
+    Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    AlphaBuffer alpha = scene.getAlphaBuffer();
+    fill(alpha, new Random(5), testSPP);
+    fill(scene.getAuxiliaryBuffers(), new Random(6), testSPP / 4);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, scene, taskTracker);
+
+    Scene loaded = createTestScene(testWidth, testHeight, 0, 0);
+    RenderDump.load(new ByteArrayInputStream(outputStream.toByteArray()), loaded, taskTracker);
+    assertEquals(testSPP, loaded.getAlphaBuffer().spp());
+    assertArrayEquals(alpha.getAlpha(), loaded.getAlphaBuffer().getAlpha(), 0);
+    assertEquals(testSPP / 4, loaded.getAuxiliaryBuffers().spp());
+    assertArrayEquals(scene.getAuxiliaryBuffers().getNormal(),
+        loaded.getAuxiliaryBuffers().getNormal(), 0);
+  }
+
+  /**
+   * A dump with only an alpha buffer discards the auxiliary buffers of the
+   * loaded scene.
+   */
+  @Test
+  public void alphaWithoutAuxiliaryBuffersTest() throws IOException {
+    Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    AlphaBuffer alpha = scene.getAlphaBuffer();
+    fill(alpha, new Random(7), testSPP);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, scene, taskTracker);
+
+    Scene loaded = createTestScene(testWidth, testHeight, 0, 0);
+    fill(loaded.getAuxiliaryBuffers(), new Random(8), 10);
+    RenderDump.load(new ByteArrayInputStream(outputStream.toByteArray()), loaded, taskTracker);
+    assertArrayEquals(alpha.getAlpha(), loaded.getAlphaBuffer().getAlpha(), 0);
+    assertFalse(loaded.getAuxiliaryBuffers().hasSamples());
+  }
+
+  /**
+   * Merging a dump weights the alpha buffer by its own sample count.
+   */
+  @Test
+  public void mergeAlphaTest() throws IOException {
+    Scene dumped = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    fill(dumped.getAlphaBuffer(), new Random(9), 10);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, dumped, taskTracker);
+
+    Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    AlphaBuffer alpha = scene.getAlphaBuffer();
+    fill(alpha, new Random(10), 30);
+    float[] before = alpha.getAlpha().clone();
+    RenderDump.merge(new ByteArrayInputStream(outputStream.toByteArray()), scene, taskTracker);
+    assertEquals(40, alpha.spp());
+    float[] dumpedAlpha = dumped.getAlphaBuffer().getAlpha();
+    for (int i = 0; i < before.length; ++i) {
+      assertEquals(before[i] * 0.75f + dumpedAlpha[i] * 0.25f, alpha.getAlpha()[i], 1e-6);
+    }
+  }
+
   // This is just at the bottom because the strings are soooo lllooooonnnnngggggg
   private static final Map<String, String> testDumps = new HashMap<String, String>() {{
 
@@ -0,0 +1,131 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.renderer.MisHeuristic;
+import se.llbit.chunky.renderer.WorkerState;
+import se.llbit.math.Octree;
+import se.llbit.math.Ray;
+import se.llbit.util.XoshiroRandom;
+
+/**
+ * Convergence comparison of sun sampling with and without multiple importance
+ * sampling, using the path tracer.
+ *
+ * <p>The scene is a stone floor lit only by the sun, with a black sky. Rays
+ * are traced straight down onto a fixed grid of points on the floor. A
+ * reference is rendered with sun sampling only at a high sample count, and the
+ * relative RMSE of each heuristic is printed for increasing sample counts.
+ * All random numbers are seeded, so the output is the same for every run.
+ *
+ * <p>Run with {@code java se.llbit.chunky.renderer.scene.SunMisConvergence}.
+ */
+public class SunMisConvergence {
+  private static final int DEPTH = 4;
+  private static final int GRID = 16;
+  private static final int REFERENCE_SPP = 4096;
+  private static final int[] SPP = { 1, 4, 16, 64 };
+
+  public static void main(String[] args) {
+    Scene scene = floorScene();
+    PathTracer tracer = new PathTracer();
+    double[] altitudes = { Math.PI / 3, 0.2, Sun.RADIUS / 2 };
+    for (double altitude : altitudes) {
+      scene.sun().setAltitude(altitude);
+      scene.setSunMisHeuristic(MisHeuristic.NONE);
+      double[] reference = render(scene, tracer, REFERENCE_SPP, 1);
+      System.out.format("sun altitude %.3f, mean reference %.6f%n", altitude, mean(reference));
+      for (MisHeuristic heuristic : MisHeuristic.values()) {
+        scene.setSunMisHeuristic(heuristic);
+        System.out.format("  %-18s", heuristic);
+        for (int spp : SPP) {
+          double[] result = render(scene, tracer, spp, spp + 1);
+          System.out.format(" %3d spp: %.5f", spp, rmse(result, reference));
+        }
+        System.out.println();
+      }
+    }
+  }
+
+  /**
+   * A scene with a stone floor covering the bottom layer of the octree.
+   */
+  static Scene floorScene() {
+    BlockPalette palette = new BlockPalette();
+    int size = 1 << DEPTH;
+    Octree worldOctree = new Octree("NODE", DEPTH);
+    Octree waterOctree = new Octree("NODE", DEPTH);
+    for (int x = 0; x < size; ++x) {
+      for (int y = 0; y < size; ++y) {
+        for (int z = 0; z < size; ++z) {
+          worldOctree.set(y == 0 ? palette.stoneId : palette.airId, x, y, z);
+          waterOctree.set(palette.airId, x, y, z);
+        }
+      }
+    }
+    Scene scene = new Scene();
+    scene.setOctrees(palette, worldOctree, waterOctree);
+    scene.sky().setSkyMode(Sky.SkyMode.BLACK);
+    scene.setEmittersEnabled(false);
+    return scene;
+  }
+
+  /**
+   * Trace {@code spp} paths straight down at each point of the grid and
+   * return the average brightness of each point.
+   */
+  static double[] render(Scene scene, PathTracer tracer, int spp, long seed) {
+    WorkerState state = new WorkerState();
+    state.random = new XoshiroRandom(seed);
+    state.ray = new Ray();
+    double[] result = new double[GRID * GRID];
+    double step = (double) (1 << DEPTH) / GRID;
+    for (int i = 0; i < GRID * GRID; ++i) {
+      double sum = 0;
+      for (int k = 0; k < spp; ++k) {
+        state.ray.setDefault();
+        state.ray.o.set((i % GRID + 0.5) * step, 8, (i / GRID + 0.5) * step);
+        state.ray.d.set(0, -1, 0);
+        scene.rayTrace(tracer, state);
+        sum += (state.ray.color.x + state.ray.color.y + state.ray.color.z) / 3;
+      }
+      result[i] = sum / spp;
+    }
+    return result;
+  }
+
+  private static double mean(double[] values) {
+    double sum = 0;
+    for (double value : values) {
+      sum += value;
+    }
+    return sum / values.length;
+  }
+
+  /**
+   * RMSE relative to the mean of the reference.
+   */
+  static double rmse(double[] result, double[] reference) {
+    double sum = 0;
+    for (int i = 0; i < result.length; ++i) {
+      double error = result[i] - reference[i];
+      sum += error * error;
+    }
+    return Math.sqrt(sum / result.length) / mean(reference);
+  }
+}
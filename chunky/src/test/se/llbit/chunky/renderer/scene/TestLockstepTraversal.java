@@ -0,0 +1,75 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import org.junit.Test;
+import se.llbit.chunky.block.Air;
+import se.llbit.chunky.block.Water;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.math.Octree;
+import se.llbit.math.RandomOctrees;
+import se.llbit.math.Ray;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestLockstepTraversal {
+  /**
+   * Test that traversing the world and water octrees in lockstep gives
+   * bit-identical results to traversing them one after the other.
+   */
+  @Test public void testSameAsTwoPass() {
+    Random random = new Random(4711);
+    BlockPalette palette = new BlockPalette();
+    Octree worldOctree = new Octree("NODE", RandomOctrees.DEPTH);
+    Octree waterOctree = new Octree("NODE", RandomOctrees.DEPTH);
+    RandomOctrees.fill(palette, random, worldOctree, waterOctree);
+    Scene scene = new Scene();
+    scene.setOctrees(palette, worldOctree, waterOctree);
+
+    for (int i = 0; i < 2000; ++i) {
+      Ray ray = RandomOctrees.randomRay(random);
+      ray.t = Double.POSITIVE_INFINITY;
+      if ((i & 1) != 0) {
+        ray.setPrevMaterial(Water.INSTANCE, 1 << Water.FULL_BLOCK);
+      } else {
+        ray.setPrevMaterial(Air.INSTANCE, 0);
+      }
+      ray.setCurrentMaterial(Air.INSTANCE, 0);
+      Ray expected = new Ray(ray);
+      expected.setPrevMaterial(ray.getPrevMaterial(), ray.getPrevData());
+      expected.setCurrentMaterial(ray.getCurrentMaterial(), ray.getCurrentData());
+
+      scene.lockstepWaterTraversal = false;
+      boolean expectedHit = scene.worldIntersection(expected);
+      scene.lockstepWaterTraversal = true;
+      boolean hit = scene.worldIntersection(ray);
+
+      assertEquals(expectedHit, hit);
+      assertEquals(Double.doubleToRawLongBits(expected.t), Double.doubleToRawLongBits(ray.t));
+      assertEquals(Double.doubleToRawLongBits(expected.n.x), Double.doubleToRawLongBits(ray.n.x));
+      assertEquals(Double.doubleToRawLongBits(expected.n.y), Double.doubleToRawLongBits(ray.n.y));
+      assertEquals(Double.doubleToRawLongBits(expected.n.z), Double.doubleToRawLongBits(ray.n.z));
+      assertEquals(Double.doubleToRawLongBits(expected.color.w),
+          Double.doubleToRawLongBits(ray.color.w));
+      assertSame(expected.getCurrentMaterial(), ray.getCurrentMaterial());
+      assertSame(expected.getPrevMaterial(), ray.getPrevMaterial());
+    }
+  }
+}
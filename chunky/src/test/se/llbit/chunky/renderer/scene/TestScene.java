@@ -18,6 +18,18 @@
 package se.llbit.chunky.renderer.scene;
 
 import org.junit.Test;
+import se.llbit.chunky.renderer.AuxiliaryBuffers;
+import se.llbit.chunky.renderer.export.PictureExportFormat;
+import se.llbit.chunky.renderer.export.PictureExportFormats;
+import se.llbit.util.TaskTracker;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 
 public class TestScene {
   /**
@@ -30,4 +42,71 @@ public class TestScene {
     new Scene().setSpecular("minecraft:gravel", 0.3f);
     new Scene().setIor("minecraft:gravel", 0.3f);
   }
+
+  private static Scene frameScene() {
+    Scene scene = new Scene();
+    scene.setName("frame");
+    scene.setCanvasSize(20, 20);
+    scene.initBuffers();
+    scene.spp = 2;
+    Arrays.fill(scene.getSampleBuffer(), 0.5);
+    AuxiliaryBuffers aux = scene.getAuxiliaryBuffers();
+    aux.allocate();
+    aux.setSpp(2);
+    Arrays.fill(aux.getAlbedo(), 0.25f);
+    return scene;
+  }
+
+  /**
+   * A frame copy has the name, output format and SPP of the scene, and its
+   * own copy of the finalized frame. Formats that only write the finalized
+   * frame get no sample or auxiliary buffers.
+   */
+  @Test public void testCopyFramePng() {
+    Scene scene = frameScene();
+    scene.setOutputMode(PictureExportFormats.PNG);
+    Scene copy = scene.copyFrame(TaskTracker.NONE);
+    assertEquals("frame", copy.name());
+    assertEquals(PictureExportFormats.PNG, copy.getOutputMode());
+    assertEquals("frame-2.png", copy.snapshotFileName());
+    assertNotSame(scene.getBackBuffer(), copy.getBackBuffer());
+    assertArrayEquals(scene.getBackBuffer().data, copy.getBackBuffer().data);
+    assertEquals(0, copy.getSampleBuffer().length);
+    assertEquals(0, copy.getAlphaChannel().length);
+    assertFalse(copy.getAuxiliaryBuffers().hasSamples());
+  }
+
+  /**
+   * The alpha channel is copied when the sky is transparent.
+   */
+  @Test public void testCopyFrameAlpha() {
+    Scene scene = frameScene();
+    scene.setOutputMode(PictureExportFormats.PNG);
+    scene.setTransparentSky(true);
+    Scene copy = scene.copyFrame(TaskTracker.NONE);
+    assertNotSame(scene.getAlphaChannel(), copy.getAlphaChannel());
+    assertArrayEquals(scene.getAlphaChannel(), copy.getAlphaChannel());
+  }
+
+  /**
+   * Formats that write the samples or auxiliary buffers get copies of them.
+   */
+  @Test public void testCopyFrameBuffers() {
+    Scene scene = frameScene();
+    PictureExportFormat pfm = PictureExportFormats.getFormat("PFM").get();
+    scene.setOutputMode(pfm);
+    Scene copy = scene.copyFrame(TaskTracker.NONE);
+    assertEquals(pfm, copy.getOutputMode());
+    assertNotSame(scene.getSampleBuffer(), copy.getSampleBuffer());
+    assertArrayEquals(scene.getSampleBuffer(), copy.getSampleBuffer(), 0);
+    assertFalse(copy.getAuxiliaryBuffers().hasSamples());
+
+    scene.setOutputMode(PictureExportFormats.getFormat("TIFF_32_LAYERS").get());
+    copy = scene.copyFrame(TaskTracker.NONE);
+    assertTrue(copy.getAuxiliaryBuffers().hasSamples());
+    assertEquals(2, copy.getAuxiliaryBuffers().spp());
+    assertNotSame(scene.getAuxiliaryBuffers().getAlbedo(), copy.getAuxiliaryBuffers().getAlbedo());
+    assertArrayEquals(scene.getAuxiliaryBuffers().getAlbedo(),
+        copy.getAuxiliaryBuffers().getAlbedo(), 0);
+  }
 }
@@ -0,0 +1,85 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import org.junit.Test;
+import se.llbit.chunky.resources.BitmapImage;
+import se.llbit.chunky.resources.Texture;
+import se.llbit.math.Vector3;
+import se.llbit.math.Vector4;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestSkymapDistribution {
+  private static Texture skymap() {
+    BitmapImage image = new BitmapImage(16, 8);
+    for (int y = 0; y < 8; ++y) {
+      for (int x = 0; x < 16; ++x) {
+        image.setPixel(x, y, 0xFF101010);
+      }
+    }
+    // A small bright spot.
+    image.setPixel(5, 2, 0xFFFFFFFF);
+    return new Texture(image);
+  }
+
+  /**
+   * Samples have the same density as given by the pdf method.
+   */
+  @Test public void testSamplePdf() {
+    Texture skymap = skymap();
+    for (boolean mirrored : new boolean[] {false, true}) {
+      SkymapDistribution distribution = SkymapDistribution.build(skymap, mirrored);
+      Random random = new Random(1);
+      Vector3 d = new Vector3();
+      for (int i = 0; i < 1000; ++i) {
+        double pdf = distribution.sample(0.7, random, d);
+        assertTrue(pdf > 0);
+        assertEquals(1, d.length(), 1e-9);
+        assertEquals(pdf, distribution.pdf(0.7, d), pdf * 1e-6);
+      }
+    }
+  }
+
+  /**
+   * The pdf integrates to one over the sphere.
+   */
+  @Test public void testNormalized() {
+    SkymapDistribution distribution = SkymapDistribution.build(skymap(), false);
+    Random random = new Random(2);
+    Vector3 d = new Vector3();
+    double sum = 0;
+    int n = 400000;
+    for (int i = 0; i < n; ++i) {
+      // Uniform direction on the sphere.
+      double z = 2 * random.nextDouble() - 1;
+      double phi = 2 * Math.PI * random.nextDouble();
+      double r = Math.sqrt(1 - z * z);
+      d.set(r * Math.cos(phi), r * Math.sin(phi), z);
+      sum += distribution.pdf(0, d) * 4 * Math.PI;
+    }
+    assertEquals(1, sum / n, 0.02);
+  }
+
+  @Test public void testBlackSkymap() {
+    assertNull(SkymapDistribution.build(new Texture(new BitmapImage(4, 2)), false));
+  }
+}
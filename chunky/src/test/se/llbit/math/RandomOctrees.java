@@ -0,0 +1,74 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math;
+
+import se.llbit.chunky.chunk.BlockPalette;
+
+import java.util.Random;
+
+/**
+ * Random octrees for comparing octree traversal methods.
+ */
+public class RandomOctrees {
+  public static final int DEPTH = 4;
+
+  /**
+   * Fill octrees with a random mix of stone, water, water at level 3 and air.
+   * Water goes into the water octree, with air in the world octree at the
+   * same position, as when a scene is loaded. The same octree can be passed
+   * as both world and water octree to get all blocks in one octree.
+   */
+  public static void fill(BlockPalette palette, Random random, Octree world, Octree water) {
+    int size = 1 << DEPTH;
+    for (int x = 0; x < size; ++x) {
+      for (int y = 0; y < size; ++y) {
+        for (int z = 0; z < size; ++z) {
+          double p = random.nextDouble();
+          int block;
+          if (p < 0.1) {
+            block = palette.stoneId;
+          } else if (p < 0.5) {
+            block = palette.waterId;
+          } else if (p < 0.55) {
+            block = palette.getWaterId(3, 0);
+          } else {
+            block = palette.airId;
+          }
+          boolean isWater = block != palette.stoneId && block != palette.airId;
+          if (world != water) {
+            world.set(isWater ? palette.airId : block, x, y, z);
+            water.set(isWater ? block : palette.airId, x, y, z);
+          } else {
+            world.set(block, x, y, z);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return a ray starting at a random position inside the octree, in a random direction
+   */
+  public static Ray randomRay(Random random) {
+    Ray ray = new Ray();
+    double size = 1 << DEPTH;
+    ray.o.set(random.nextDouble() * size, random.nextDouble() * size, random.nextDouble() * size);
+    ray.d.set(random.nextDouble() - 0.5, random.nextDouble() - 0.5, random.nextDouble() - 0.5);
+    ray.d.normalize();
+    return ray;
+  }
+}
@@ -0,0 +1,76 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math;
+
+import org.junit.Test;
+import se.llbit.chunky.block.Air;
+import se.llbit.chunky.block.Water;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.renderer.scene.Scene;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestOctreeRayMarch {
+  /**
+   * Test that advancing a ray march in small steps gives exactly the same
+   * result as the non-incremental traversal.
+   */
+  @Test public void testIncrementalMarch() {
+    Random random = new Random(1234);
+    Scene scene = new Scene();
+    BlockPalette palette = new BlockPalette();
+    Octree octree = new Octree("NODE", RandomOctrees.DEPTH);
+    RandomOctrees.fill(palette, random, octree, octree);
+    for (int i = 0; i < 1000; ++i) {
+      boolean inWater = (i & 1) != 0;
+      Ray ray = RandomOctrees.randomRay(random);
+      if (inWater) {
+        ray.setCurrentMaterial(Water.INSTANCE, 1 << Water.FULL_BLOCK);
+      } else {
+        ray.setCurrentMaterial(Air.INSTANCE, 0);
+      }
+      Ray expected = new Ray(ray);
+      expected.setCurrentMaterial(ray.getCurrentMaterial(), ray.getCurrentData());
+      boolean expectedHit = inWater
+          ? octree.exitWater(scene, expected, palette)
+          : octree.enterBlock(scene, expected, palette);
+
+      Octree.RayMarch march = inWater
+          ? octree.marchExitWater(scene, ray, palette)
+          : octree.marchEnterBlock(scene, ray, palette);
+      double limit = 0;
+      while (march.isRunning()) {
+        march.advance(limit);
+        limit += 0.3;
+      }
+
+      assertEquals(expectedHit, march.getState() == Octree.RayMarch.HIT);
+      assertEquals(expected.distance, ray.distance, 0);
+      assertEquals(expected.o.x, ray.o.x, 0);
+      assertEquals(expected.o.y, ray.o.y, 0);
+      assertEquals(expected.o.z, ray.o.z, 0);
+      assertEquals(expected.n.x, ray.n.x, 0);
+      assertEquals(expected.n.y, ray.n.y, 0);
+      assertEquals(expected.n.z, ray.n.z, 0);
+      assertSame(expected.getCurrentMaterial(), ray.getCurrentMaterial());
+      assertSame(expected.getPrevMaterial(), ray.getPrevMaterial());
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import org.junit.Test;
+import se.llbit.chunky.resources.BitmapImage;
+import se.llbit.chunky.resources.Texture;
+import se.llbit.chunky.world.Material;
+import se.llbit.chunky.world.material.TextureMaterial;
+import se.llbit.math.Vector2;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.math.primitive.TexturedTriangle;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestBinaryBVH {
+  /**
+   * The packed primitives still contain every primitive after the textured
+   * triangles have been copied into the triangle store.
+   */
+  @Test public void testPackedPrimitivesComplete() {
+    Random random = new Random(1234);
+    Material material = new TextureMaterial(new Texture(new BitmapImage(1, 1)));
+    Primitive[] primitives = new Primitive[50];
+    for (int i = 0; i < primitives.length; ++i) {
+      Vector3 c = new Vector3(random.nextDouble() * 10, random.nextDouble() * 10,
+          random.nextDouble() * 10);
+      Vector3 e1 = new Vector3(c.x + random.nextDouble(), c.y, c.z);
+      Vector3 e2 = new Vector3(c.x, c.y + random.nextDouble(), c.z);
+      primitives[i] = new TexturedTriangle(c, e1, e2, new Vector2(0, 0), new Vector2(1, 0),
+          new Vector2(0, 1), material, false);
+    }
+
+    BinaryBVH bvh = new MidpointBVH(primitives.clone(), done -> {});
+
+    Set<Primitive> packed = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Primitive[] leaf : bvh.packedPrimitives) {
+      Collections.addAll(packed, leaf);
+    }
+    assertEquals(primitives.length, packed.size());
+    for (Primitive primitive : primitives) {
+      assertTrue(packed.contains(primitive));
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.primitive;
+
+import org.junit.Test;
+import se.llbit.chunky.resources.BitmapImage;
+import se.llbit.chunky.resources.Texture;
+import se.llbit.chunky.world.Material;
+import se.llbit.chunky.world.material.TextureMaterial;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector2;
+import se.llbit.math.Vector3;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestTriangleStore {
+  private static Vector3 randomPoint(Random random) {
+    return new Vector3(random.nextDouble(), random.nextDouble(), random.nextDouble());
+  }
+
+  /**
+   * Test that intersecting a stored triangle gives exactly the same result
+   * as intersecting the triangle object.
+   */
+  @Test public void testSameIntersection() {
+    Random random = new Random(4321);
+    BitmapImage image = new BitmapImage(2, 2);
+    image.setPixel(0, 0, 0xFFFF0000);
+    image.setPixel(1, 0, 0xFF00FF00);
+    image.setPixel(0, 1, 0x00000000);
+    image.setPixel(1, 1, 0xFFFFFFFF);
+    Material material = new TextureMaterial(new Texture(image));
+
+    TexturedTriangle[] triangles = new TexturedTriangle[50];
+    TriangleStore store = new TriangleStore(1);
+    for (int i = 0; i < triangles.length; ++i) {
+      triangles[i] = new TexturedTriangle(randomPoint(random), randomPoint(random),
+          randomPoint(random), new Vector2(0, 0), new Vector2(1, 0), new Vector2(0, 1),
+          material, (i & 1) == 0);
+      assertEquals(i, store.add(triangles[i]));
+    }
+    store.trim();
+
+    for (int i = 0; i < 2000; ++i) {
+      Ray ray = new Ray();
+      ray.o.set(random.nextDouble() * 2 - 0.5, random.nextDouble() * 2 - 0.5,
+          random.nextDouble() * 2 - 0.5);
+      ray.d.set(random.nextDouble() - 0.5, random.nextDouble() - 0.5, random.nextDouble() - 0.5);
+      ray.d.normalize();
+      ray.t = Double.POSITIVE_INFINITY;
+      Ray expected = new Ray(ray);
+      expected.t = Double.POSITIVE_INFINITY;
+
+      for (int j = 0; j < triangles.length; ++j) {
+        boolean expectedHit = triangles[j].intersect(expected);
+        assertEquals(expectedHit, store.intersect(j, ray));
+      }
+      assertEquals(expected.t, ray.t, 0);
+      assertEquals(expected.u, ray.u, 0);
+      assertEquals(expected.v, ray.v, 0);
+      assertEquals(expected.n.x, ray.n.x, 0);
+      assertEquals(expected.n.y, ray.n.y, 0);
+      assertEquals(expected.n.z, ray.n.z, 0);
+      assertEquals(expected.color.w, ray.color.w, 0);
+    }
+  }
+}
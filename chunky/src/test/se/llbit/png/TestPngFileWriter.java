@@ -0,0 +1,96 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.png;
+
+import org.junit.Test;
+import se.llbit.util.TaskTracker;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestPngFileWriter {
+  /**
+   * Smooth gradient with noise, large enough to be split into several blocks.
+   */
+  private static int[] testImage(int width, int height) {
+    Random random = new Random(1234);
+    int[] data = new int[width * height];
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        int r = (x * 255 / width) ^ (random.nextInt(4));
+        int g = y * 255 / height;
+        int b = random.nextInt(256);
+        data[y * width + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+      }
+    }
+    return data;
+  }
+
+  private static BufferedImage roundTrip(int[] data, byte[] alpha, int width, int height)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (PngFileWriter writer = new PngFileWriter(out)) {
+      if (alpha == null) {
+        writer.write(data, width, height, TaskTracker.Task.NONE);
+      } else {
+        writer.write(data, alpha, width, height, TaskTracker.Task.NONE);
+      }
+    }
+    return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  @Test public void testRgb() throws IOException {
+    int width = 301, height = 457;
+    int[] data = testImage(width, height);
+    BufferedImage image = roundTrip(data, null, width, height);
+    assertEquals(width, image.getWidth());
+    assertEquals(height, image.getHeight());
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        assertEquals(data[y * width + x], image.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test public void testRgba() throws IOException {
+    int width = 257, height = 389;
+    int[] data = testImage(width, height);
+    byte[] alpha = new byte[width * height];
+    new Random(4321).nextBytes(alpha);
+    BufferedImage image = roundTrip(data, alpha, width, height);
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        int i = y * width + x;
+        assertEquals((data[i] & 0xFFFFFF) | (alpha[i] << 24), image.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test public void testSingleRow() throws IOException {
+    int[] data = testImage(5, 1);
+    BufferedImage image = roundTrip(data, null, 5, 1);
+    for (int x = 0; x < 5; ++x) {
+      assertEquals(data[x], image.getRGB(x, 0));
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.tiff;
+
+import org.junit.Test;
+import se.llbit.util.RasterSource;
+import se.llbit.util.TaskTracker;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntToDoubleFunction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestTiffFileWriter {
+  private static final int WIDTH = 300;
+  private static final int HEIGHT = 270;
+
+  private static double[] testImage() {
+    Random random = new Random(1234);
+    double[] samples = new double[WIDTH * HEIGHT * 3];
+    for (int i = 0; i < samples.length; ++i) {
+      samples[i] = (i % (WIDTH * 3)) / 1000.0 + random.nextDouble() * 0.01;
+    }
+    return samples;
+  }
+
+  private static void checkTiled(TiffFileWriter.Compression compression) throws IOException {
+    double[] samples = testImage();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (TiffFileWriter writer = new TiffFileWriter(out)) {
+      writer.writeTiled(RasterSource.of(WIDTH, HEIGHT, samples), compression,
+          TaskTracker.Task.NONE);
+    }
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(WIDTH, image.getWidth());
+    assertEquals(HEIGHT, image.getHeight());
+    Raster raster = image.getRaster();
+    for (int y = 0; y < HEIGHT; ++y) {
+      for (int x = 0; x < WIDTH; ++x) {
+        for (int c = 0; c < 3; ++c) {
+          assertEquals((float) samples[(y * WIDTH + x) * 3 + c], raster.getSampleFloat(x, y, c), 0);
+        }
+      }
+    }
+  }
+
+  @Test public void testTiledUncompressed() throws IOException {
+    checkTiled(TiffFileWriter.Compression.NONE);
+  }
+
+  @Test public void testTiledDeflate() throws IOException {
+    checkTiled(TiffFileWriter.Compression.DEFLATE);
+  }
+
+  /**
+   * Each tile is read and compressed only once.
+   */
+  @Test public void testTilesEncodedOnce() throws IOException {
+    RasterSource image = RasterSource.of(WIDTH, HEIGHT, testImage());
+    AtomicInteger reads = new AtomicInteger();
+    RasterSource source = new RasterSource() {
+      @Override public int width() {
+        return WIDTH;
+      }
+
+      @Override public int height() {
+        return HEIGHT;
+      }
+
+      @Override public void read(int x0, int y0, int x1, int y1, float[] rgb) {
+        reads.incrementAndGet();
+        image.read(x0, y0, x1, y1, rgb);
+      }
+    };
+    try (TiffFileWriter writer = new TiffFileWriter(new ByteArrayOutputStream())) {
+      writer.writeTiled(source, TiffFileWriter.Compression.DEFLATE, TaskTracker.Task.NONE);
+    }
+    assertEquals(4, reads.get());
+  }
+
+  /**
+   * The floating point predictor is not supported by the ImageIO TIFF reader,
+   * so this decodes a single-tile image directly.
+   */
+  @Test public void testTiledDeflatePredictor() throws IOException, DataFormatException {
+    int width = 200, height = 100;
+    double[] samples = new double[width * height * 3];
+    Random random = new Random(4321);
+    for (int i = 0; i < samples.length; ++i) {
+      samples[i] = random.nextGaussian() * 10;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (TiffFileWriter writer = new TiffFileWriter(out)) {
+      writer.writeTiled(RasterSource.of(width, height, samples),
+          TiffFileWriter.Compression.DEFLATE_PREDICTOR, TaskTracker.Task.NONE);
+    }
+
+    ByteBuffer file = ByteBuffer.wrap(out.toByteArray());
+    int ifd = file.getInt(4);
+    int tileOffset = -1, tileBytes = -1, predictor = -1;
+    for (int i = 0; i < file.getShort(ifd); ++i) {
+      int entry = ifd + 2 + 12 * i;
+      switch (file.getShort(entry)) {
+        case 0x013D:
+          predictor = file.getShort(entry + 8);
+          break;
+        case 0x0144:
+          tileOffset = file.getInt(entry + 8);
+          break;
+        case 0x0145:
+          tileBytes = file.getInt(entry + 8);
+          break;
+      }
+    }
+    assertEquals(3, predictor);
+
+    int tileSize = TiffFileWriter.TILE_SIZE;
+    byte[] tile = new byte[tileSize * tileSize * 3 * 4];
+    Inflater inflater = new Inflater();
+    inflater.setInput(file.array(), tileOffset, tileBytes);
+    assertEquals(tile.length, inflater.inflate(tile));
+    inflater.end();
+
+    int rowValues = tileSize * 3;
+    int rowBytes = rowValues * 4;
+    for (int y = 0; y < height; ++y) {
+      int offset = y * rowBytes;
+      for (int i = 3; i < rowBytes; ++i) {
+        tile[offset + i] += tile[offset + i - 3];
+      }
+      for (int i = 0; i < width * 3; ++i) {
+        int bits = (tile[offset + i] & 0xFF) << 24
+            | (tile[offset + rowValues + i] & 0xFF) << 16
+            | (tile[offset + 2 * rowValues + i] & 0xFF) << 8
+            | (tile[offset + 3 * rowValues + i] & 0xFF);
+        assertEquals((float) samples[y * width * 3 + i], Float.intBitsToFloat(bits), 0);
+      }
+    }
+  }
+  /**
+   * Each layer is written as its own page, with the layer name stored in the
+   * page name tag and the IFDs chained in layer order.
+   */
+  @Test public void testLayers() throws IOException {
+    int width = 7, height = 5;
+    String[] names = { "color", "albedo", "normal" };
+    IntToDoubleFunction[] layers = new IntToDoubleFunction[names.length];
+    for (int layer = 0; layer < layers.length; ++layer) {
+      int base = layer * 1000;
+      layers[layer] = i -> (base + i) / 16.0;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (TiffFileWriter writer = new TiffFileWriter(out)) {
+      writer.writeLayers(width, height, names, layers, TaskTracker.Task.NONE);
+    }
+
+    ByteBuffer file = ByteBuffer.wrap(out.toByteArray());
+    int ifd = file.getInt(4);
+    for (int layer = 0; layer < names.length; ++layer) {
+      assertTrue(ifd > 0);
+      int entries = file.getShort(ifd);
+      int stripOffset = -1, stripBytes = -1, sampleFormat = -1;
+      String name = null;
+      for (int i = 0; i < entries; ++i) {
+        int entry = ifd + 2 + 12 * i;
+        switch (file.getShort(entry)) {
+          case 0x0100:
+            assertEquals(width, file.getInt(entry + 8));
+            break;
+          case 0x0101:
+            assertEquals(height, file.getInt(entry + 8));
+            break;
+          case 0x0111:
+            stripOffset = file.getInt(entry + 8);
+            break;
+          case 0x0117:
+            stripBytes = file.getInt(entry + 8);
+            break;
+          case 0x011D:
+            int length = file.getInt(entry + 4);
+            byte[] bytes = new byte[length - 1];
+            file.position(file.getInt(entry + 8));
+            file.get(bytes);
+            assertEquals(0, file.get());
+            name = new String(bytes, StandardCharsets.US_ASCII);
+            break;
+          case 0x0153:
+            sampleFormat = file.getShort(file.getInt(entry + 8));
+            break;
+        }
+      }
+      assertEquals(names[layer], name);
+      assertEquals(3, sampleFormat);
+      assertEquals(width * height * 3 * 4, stripBytes);
+      for (int i = 0; i < width * height * 3; ++i) {
+        assertEquals((float) layers[layer].applyAsDouble(i), file.getFloat(stripOffset + 4 * i), 0);
+      }
+      ifd = file.getInt(ifd + 2 + 12 * entries);
+    }
+    assertEquals(0, ifd);
+
+    ImageReader reader = ImageIO.getImageReadersByFormatName("tiff").next();
+    reader.setInput(ImageIO.createImageInputStream(new ByteArrayInputStream(out.toByteArray())));
+    assertEquals(names.length, reader.getNumImages(true));
+    Raster raster = reader.read(names.length - 1).getRaster();
+    assertEquals((float) layers[names.length - 1].applyAsDouble(3 * width * 3 + 1),
+        raster.getSampleFloat(0, 3, 1), 0);
+    reader.dispose();
+  }
+}
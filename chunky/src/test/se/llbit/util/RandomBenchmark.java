@@ -0,0 +1,65 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util;
+
+import java.util.Random;
+import java.util.function.LongFunction;
+
+/**
+ * Microbenchmark comparing the per-sample cost of the random number generators
+ * used by the render workers. Each simulated sample reseeds the generator (for
+ * generators that are reseeded per sample) and draws the number of random
+ * values used by a typical path.
+ *
+ * <p>Run with {@code java se.llbit.util.RandomBenchmark [samples] [values per sample]}.
+ */
+public class RandomBenchmark {
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) {
+    int samples = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    int valuesPerSample = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+    for (int round = 0; round < ROUNDS; ++round) {
+      boolean warmup = round < ROUNDS - 1;
+      run("java.util.Random", Random::new, false, samples, valuesPerSample, warmup);
+      run("XoshiroRandom", XoshiroRandom::new, false, samples, valuesPerSample, warmup);
+      run("XoshiroRandom, reseeded per sample", XoshiroRandom::new, true, samples,
+          valuesPerSample, warmup);
+    }
+  }
+
+  private static void run(String name, LongFunction<Random> factory, boolean reseed,
+      int samples, int valuesPerSample, boolean warmup) {
+    Random random = factory.apply(1234);
+    double sum = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < samples; ++i) {
+      if (reseed) {
+        random.setSeed(XoshiroRandom.splitMix64(i));
+      }
+      for (int j = 0; j < valuesPerSample; ++j) {
+        sum += random.nextDouble();
+      }
+    }
+    long time = System.nanoTime() - start;
+    if (!warmup) {
+      System.out.format("%-36s %8.2f ns/sample (%.3f)%n", name, time / (double) samples,
+          sum / ((double) samples * valuesPerSample));
+    }
+  }
+}
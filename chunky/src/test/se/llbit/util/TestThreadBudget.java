@@ -0,0 +1,232 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util;
+
+import org.junit.Test;
+import se.llbit.util.ThreadBudget.Priority;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestThreadBudget {
+  /** Time to wait for a section that should not start, in milliseconds. */
+  private static final long BLOCKED = 200;
+
+  /** Time to wait for a section that should start, in milliseconds. */
+  private static final long TIMEOUT = 10000;
+
+  private final ThreadBudget budget = new ThreadBudget(4);
+
+  /**
+   * A thread that enters a section and stays in it until released.
+   */
+  private class Worker extends Thread {
+    final Priority priority;
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    volatile boolean interrupted = false;
+
+    Worker(Priority priority) {
+      this.priority = priority;
+      start();
+    }
+
+    @Override public void run() {
+      try (ThreadBudget.Section section = budget.enter(priority)) {
+        interrupted = Thread.interrupted();
+        entered.countDown();
+        release.await();
+      } catch (InterruptedException e) {
+        // Released by interrupt.
+      }
+    }
+
+    boolean entered(long timeout) throws InterruptedException {
+      return entered.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    void finish() throws InterruptedException {
+      release.countDown();
+      join(TIMEOUT);
+      assertFalse(isAlive());
+    }
+  }
+
+  /**
+   * A section waits while higher priority work runs or waits to run.
+   */
+  @Test public void testPriorityOrder() throws InterruptedException {
+    Worker interactive = new Worker(Priority.INTERACTIVE);
+    assertTrue(interactive.entered(TIMEOUT));
+    Worker finalize = new Worker(Priority.FINALIZE);
+    assertFalse(finalize.entered(BLOCKED));
+    Worker render = new Worker(Priority.RENDER);
+    assertFalse(render.entered(BLOCKED));
+
+    interactive.finish();
+    assertTrue(finalize.entered(TIMEOUT));
+    // Render waits for the running finalization.
+    assertFalse(render.entered(BLOCKED));
+
+    finalize.finish();
+    assertTrue(render.entered(TIMEOUT));
+    render.finish();
+  }
+
+  /**
+   * Background work does not wait for rendering. While it runs, render jobs
+   * leave it its share of the budget instead of stopping.
+   */
+  @Test public void testBackgroundShare() throws InterruptedException {
+    assertEquals(1, budget.backgroundThreads());
+    Worker render1 = new Worker(Priority.RENDER);
+    Worker render2 = new Worker(Priority.RENDER);
+    assertTrue(render1.entered(TIMEOUT));
+    assertTrue(render2.entered(TIMEOUT));
+    Worker background = new Worker(Priority.BACKGROUND);
+    assertTrue(background.entered(TIMEOUT));
+
+    // Three of the four threads keep rendering.
+    Worker render3 = new Worker(Priority.RENDER);
+    assertTrue(render3.entered(TIMEOUT));
+    Worker render4 = new Worker(Priority.RENDER);
+    assertFalse(render4.entered(BLOCKED));
+    render1.finish();
+    assertTrue(render4.entered(TIMEOUT));
+
+    // All threads render when the background work is done.
+    Worker render5 = new Worker(Priority.RENDER);
+    assertFalse(render5.entered(BLOCKED));
+    background.finish();
+    assertTrue(render5.entered(TIMEOUT));
+    render2.finish();
+    render3.finish();
+    render4.finish();
+    render5.finish();
+  }
+
+  /**
+   * Background work waits for finalization, like other lower priority work.
+   */
+  @Test public void testBackgroundWaits() throws InterruptedException {
+    Worker finalize = new Worker(Priority.FINALIZE);
+    assertTrue(finalize.entered(TIMEOUT));
+    Worker background = new Worker(Priority.BACKGROUND);
+    assertFalse(background.entered(BLOCKED));
+    finalize.finish();
+    assertTrue(background.entered(TIMEOUT));
+    background.finish();
+  }
+
+  /**
+   * Parallel work of background sections runs on the background pool.
+   */
+  @Test public void testBackgroundPool() throws Exception {
+    ForkJoinPool common = new ForkJoinPool(budget.threads());
+    try {
+      assertSame(common, budget.pool(common));
+      ForkJoinPool pool;
+      try (ThreadBudget.Section section = budget.enter(Priority.BACKGROUND)) {
+        pool = budget.pool(common);
+        try (ThreadBudget.Section nested = budget.enter(Priority.FINALIZE)) {
+          assertSame(pool, budget.pool(common));
+        }
+      }
+      assertNotSame(common, pool);
+      assertEquals(budget.backgroundThreads(), pool.getParallelism());
+      // Work already running on the background pool stays there.
+      assertSame(pool, pool.submit(() -> budget.pool(common)).get(TIMEOUT, TimeUnit.MILLISECONDS));
+      assertSame(common, common.submit(() -> budget.pool(common)).get(TIMEOUT, TimeUnit.MILLISECONDS));
+      assertSame(common, budget.pool(common));
+    } finally {
+      common.shutdown();
+    }
+  }
+
+  /**
+   * Nested sections and sections entered from the common thread pool are
+   * part of work that already started, and never wait.
+   */
+  @Test public void testNestedSections() throws Exception {
+    CountDownLatch outerEntered = new CountDownLatch(1);
+    CountDownLatch enterInner = new CountDownLatch(1);
+    CountDownLatch innerEntered = new CountDownLatch(1);
+    Thread nested = new Thread(() -> {
+      try (ThreadBudget.Section outer = budget.enter(Priority.FINALIZE)) {
+        outerEntered.countDown();
+        enterInner.await();
+        try (ThreadBudget.Section inner = budget.enter(Priority.BACKGROUND)) {
+          innerEntered.countDown();
+        }
+      } catch (InterruptedException e) {
+        // Interrupted.
+      }
+    });
+    nested.start();
+    assertTrue(outerEntered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    // A new background section would wait for the interactive section.
+    Worker interactive = new Worker(Priority.INTERACTIVE);
+    assertTrue(interactive.entered(TIMEOUT));
+    enterInner.countDown();
+    assertTrue(innerEntered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    nested.join(TIMEOUT);
+    assertFalse(nested.isAlive());
+
+    ForkJoinPool pool = new ForkJoinPool(1);
+    try {
+      pool.submit(() -> {
+        try (ThreadBudget.Section section = budget.enter(Priority.FINALIZE)) {
+          // Nothing to do.
+        }
+      }).get(TIMEOUT, TimeUnit.MILLISECONDS);
+    } finally {
+      pool.shutdown();
+    }
+    interactive.finish();
+  }
+
+  /**
+   * A thread interrupted while waiting starts its section with the
+   * interrupt flag set.
+   */
+  @Test public void testInterrupt() throws InterruptedException {
+    Worker interactive = new Worker(Priority.INTERACTIVE);
+    assertTrue(interactive.entered(TIMEOUT));
+    Worker finalize = new Worker(Priority.FINALIZE);
+    assertFalse(finalize.entered(BLOCKED));
+    finalize.interrupt();
+    assertTrue(finalize.entered(TIMEOUT));
+    assertTrue(finalize.interrupted);
+    finalize.finish();
+
+    // The interrupted section was released, so render jobs only wait for
+    // the interactive section.
+    Worker render = new Worker(Priority.RENDER);
+    assertFalse(render.entered(BLOCKED));
+    interactive.finish();
+    assertTrue(render.entered(TIMEOUT));
+    render.finish();
+  }
+}
@@ -0,0 +1,56 @@
+/* Copyright (c) 2021 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestXoshiroRandom {
+  /**
+   * Compare against the reference implementation of xoshiro256++.
+   */
+  @Test public void testReference() {
+    XoshiroRandom random = new XoshiroRandom(0);
+    random.setState(1, 2, 3, 4);
+    assertEquals(41943041L, random.nextLong());
+    assertEquals(58720359L, random.nextLong());
+  }
+
+  @Test public void testSeed() {
+    XoshiroRandom a = new XoshiroRandom(17);
+    XoshiroRandom b = new XoshiroRandom(0);
+    b.nextLong();
+    b.setSeed(17);
+    for (int i = 0; i < 100; ++i) {
+      assertEquals(a.nextLong(), b.nextLong());
+    }
+  }
+
+  @Test public void testRange() {
+    XoshiroRandom random = new XoshiroRandom(3);
+    for (int i = 0; i < 10000; ++i) {
+      double d = random.nextDouble();
+      assertTrue(d >= 0 && d < 1);
+      float f = random.nextFloat();
+      assertTrue(f >= 0 && f < 1);
+      int n = random.nextInt(7);
+      assertTrue(n >= 0 && n < 7);
+    }
+  }
+}